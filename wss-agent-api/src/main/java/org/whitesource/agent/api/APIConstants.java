@@ -53,6 +53,12 @@ public final class APIConstants {
     public static final String SCAN_SUMMARY_INFO = "scanSummaryInfo";
     public static final String CONTRIBUTIONS = "contributions";
     public static final String IDENTIFIER = "identifier";
+    public static final String LOG_UPLOAD_ID = "logUploadId";
+    public static final String LOG_FILE_NAME = "logFileName";
+    public static final String LOG_OFFSET = "logOffset";
+    public static final String LOG_TOTAL_LENGTH = "logTotalLength";
+    public static final String LOG_CHUNK_INDEX = "logChunkIndex";
+    public static final String LOG_LAST_CHUNK = "logLastChunk";
     public static final int MAX_POST_SIZE = 209715200;     //= 200 MegaByte;
 
     /* --- Messages --- */
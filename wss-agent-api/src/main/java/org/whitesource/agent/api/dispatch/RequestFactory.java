@@ -686,6 +686,14 @@ public class RequestFactory {
         return (SendMetricsRequest) prepareRequest(request);
     }
 
+    public UploadScaLogsRequest newUploadScaLogsRequest(UploadScaLogsRequest request) {
+        return (UploadScaLogsRequest) prepareRequest(request);
+    }
+
+    public JwtAccessTokenRequest newJwtAccessTokenRequest(String orgToken, String userKey) {
+        return (JwtAccessTokenRequest) prepareRequest(new JwtAccessTokenRequest(orgToken, userKey));
+    }
+
     /* --- Protected methods --- */
 
     @Deprecated
@@ -8,6 +8,19 @@ public class UploadScaLogsRequest extends BaseRequest<UploadScaLogsResult> {
 
     /* --- Members --- */
 
+    private String uploadId;
+
+    private String fileName;
+
+    private long offset;
+
+    private long totalLength;
+
+    private int chunkIndex;
+
+    private boolean lastChunk;
+
+    private String logChunk;
 
     /* --- Constructors --- */
 
@@ -31,4 +44,74 @@ public class UploadScaLogsRequest extends BaseRequest<UploadScaLogsResult> {
         this.userKey = userKey;
         this.requesterEmail = requesterEmail;
     }
+
+    /* --- Getters / Setters --- */
+
+    /**
+     * @return Identifier shared by all the chunks of a log file upload.
+     */
+    public String getUploadId() {
+        return uploadId;
+    }
+
+    public void setUploadId(String uploadId) {
+        this.uploadId = uploadId;
+    }
+
+    public String getFileName() {
+        return fileName;
+    }
+
+    public void setFileName(String fileName) {
+        this.fileName = fileName;
+    }
+
+    /**
+     * @return Position of this chunk in the log file, in bytes.
+     */
+    public long getOffset() {
+        return offset;
+    }
+
+    public void setOffset(long offset) {
+        this.offset = offset;
+    }
+
+    /**
+     * @return Length of the whole log file, in bytes.
+     */
+    public long getTotalLength() {
+        return totalLength;
+    }
+
+    public void setTotalLength(long totalLength) {
+        this.totalLength = totalLength;
+    }
+
+    public int getChunkIndex() {
+        return chunkIndex;
+    }
+
+    public void setChunkIndex(int chunkIndex) {
+        this.chunkIndex = chunkIndex;
+    }
+
+    public boolean isLastChunk() {
+        return lastChunk;
+    }
+
+    public void setLastChunk(boolean lastChunk) {
+        this.lastChunk = lastChunk;
+    }
+
+    /**
+     * @return Content of this chunk of the log file.
+     */
+    public String getLogChunk() {
+        return logChunk;
+    }
+
+    public void setLogChunk(String logChunk) {
+        this.logChunk = logChunk;
+    }
 }
@@ -0,0 +1,265 @@
+/**
+ * Copyright (C) 2012 White Source Ltd.
+ * <p>
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * <p>
+ * http://www.apache.org/licenses/LICENSE-2.0
+ * <p>
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.whitesource.agent.client;
+
+import java.util.EnumMap;
+import java.util.Map;
+import java.util.PriorityQueue;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Limits the number of concurrent requests and the number of payload bytes in flight to a single service URL,
+ * across all the clients of the process.
+ * <p>
+ * Admission has two phases. A request first takes a slot with {@link #acquire(RequestPriority)}, before its payload
+ * is built, which bounds the number of payloads held in memory at once. Once the payload size is known, it reserves
+ * the bytes with {@link Permit#reserveBytes(long)} before uploading. A payload larger than the whole budget is let
+ * through alone.
+ * <p>
+ * Waiting requests are admitted strictly by priority, and first come first served within a priority,
+ * so a large request is never starved by smaller ones behind it.
+ */
+public class AdmissionController {
+
+    /* --- Static members --- */
+
+    public static final int DEFAULT_MAX_CONCURRENT_REQUESTS = 4;
+    public static final long DEFAULT_MAX_IN_FLIGHT_BYTES = 256L * 1024 * 1024;
+
+    private static final ConcurrentMap<String, AdmissionController> controllers = new ConcurrentHashMap<>();
+
+    /* --- Members --- */
+
+    private final Object lock = new Object();
+    private final PriorityQueue<Waiter> slotQueue = new PriorityQueue<>();
+    private final PriorityQueue<Waiter> bytesQueue = new PriorityQueue<>();
+    private final Map<RequestPriority, LatencyHistogram> waitTimes = new EnumMap<>(RequestPriority.class);
+    private int maxConcurrentRequests;
+    private long maxInFlightBytes;
+    private int activeRequests;
+    private long inFlightBytes;
+    private long sequence;
+
+    /* --- Constructors --- */
+
+    public AdmissionController(int maxConcurrentRequests, long maxInFlightBytes) {
+        this.maxConcurrentRequests = maxConcurrentRequests;
+        this.maxInFlightBytes = maxInFlightBytes;
+        for (RequestPriority priority : RequestPriority.values()) {
+            waitTimes.put(priority, new LatencyHistogram());
+        }
+    }
+
+    /* --- Static methods --- */
+
+    /**
+     * @return The controller shared by all the clients of the given service URL, created with the limits set by the
+     * {@link ClientConstants#MAX_CONCURRENT_REQUESTS_KEYWORD} and {@link ClientConstants#MAX_IN_FLIGHT_MEGABYTES_KEYWORD}
+     * system properties, or the default ones.
+     */
+    public static AdmissionController forServiceUrl(String serviceUrl) {
+        return controllers.computeIfAbsent(serviceUrl, url -> new AdmissionController(
+                Integer.getInteger(ClientConstants.MAX_CONCURRENT_REQUESTS_KEYWORD, DEFAULT_MAX_CONCURRENT_REQUESTS),
+                Long.getLong(ClientConstants.MAX_IN_FLIGHT_MEGABYTES_KEYWORD, DEFAULT_MAX_IN_FLIGHT_BYTES / (1024 * 1024)) * 1024 * 1024));
+    }
+
+    /**
+     * @return True if admission control was enabled for the process through system properties.
+     */
+    static boolean isEnabledBySystemProperties() {
+        return System.getProperty(ClientConstants.MAX_CONCURRENT_REQUESTS_KEYWORD) != null
+                || System.getProperty(ClientConstants.MAX_IN_FLIGHT_MEGABYTES_KEYWORD) != null;
+    }
+
+    /* --- Public methods --- */
+
+    /**
+     * Waits for a request slot.
+     *
+     * @param priority Priority of the request.
+     * @return Permit to close once the request completes.
+     * @throws InterruptedException If interrupted while waiting, no slot is held then.
+     */
+    public Permit acquire(RequestPriority priority) throws InterruptedException {
+        return new Permit(priority, await(priority, 0, true));
+    }
+
+    /* --- Private methods --- */
+
+    /**
+     * Slots and bytes are waited for in separate queues, as the requests waiting for bytes already hold
+     * a slot and must not be queued behind requests waiting for one.
+     */
+    private long await(RequestPriority priority, long bytes, boolean slot) throws InterruptedException {
+        long start = System.nanoTime();
+        PriorityQueue<Waiter> queue = slot ? slotQueue : bytesQueue;
+        synchronized (lock) {
+            Waiter waiter = new Waiter(priority, sequence++, bytes, slot);
+            queue.add(waiter);
+            try {
+                while (queue.peek() != waiter || !admissible(waiter)) {
+                    lock.wait();
+                }
+            } catch (InterruptedException e) {
+                queue.remove(waiter);
+                lock.notifyAll();
+                throw e;
+            }
+            queue.poll();
+            if (slot) {
+                activeRequests++;
+            }
+            inFlightBytes += bytes;
+            // the next waiter may be admissible as well
+            lock.notifyAll();
+        }
+        return System.nanoTime() - start;
+    }
+
+    private boolean admissible(Waiter waiter) {
+        if (waiter.slot) {
+            return activeRequests < maxConcurrentRequests;
+        }
+        return inFlightBytes == 0 || inFlightBytes + waiter.bytes <= maxInFlightBytes;
+    }
+
+    private void release(RequestPriority priority, long waitNanos, long bytes) {
+        waitTimes.get(priority).record(TimeUnit.NANOSECONDS.toMicros(waitNanos));
+        synchronized (lock) {
+            activeRequests--;
+            inFlightBytes -= bytes;
+            lock.notifyAll();
+        }
+    }
+
+    /* --- Getters / Setters --- */
+
+    /**
+     * @return Number of requests waiting for a slot or for bytes.
+     */
+    public int getQueueDepth() {
+        synchronized (lock) {
+            return slotQueue.size() + bytesQueue.size();
+        }
+    }
+
+    public int getActiveRequests() {
+        synchronized (lock) {
+            return activeRequests;
+        }
+    }
+
+    public long getInFlightBytes() {
+        synchronized (lock) {
+            return inFlightBytes;
+        }
+    }
+
+    /**
+     * @return Histogram of the time, in microseconds, completed requests of the given priority waited for
+     * a slot and for their bytes.
+     */
+    public LatencyHistogram getWaitTimes(RequestPriority priority) {
+        return waitTimes.get(priority);
+    }
+
+    public int getMaxConcurrentRequests() {
+        synchronized (lock) {
+            return maxConcurrentRequests;
+        }
+    }
+
+    public void setMaxConcurrentRequests(int maxConcurrentRequests) {
+        synchronized (lock) {
+            this.maxConcurrentRequests = maxConcurrentRequests;
+            lock.notifyAll();
+        }
+    }
+
+    public long getMaxInFlightBytes() {
+        synchronized (lock) {
+            return maxInFlightBytes;
+        }
+    }
+
+    public void setMaxInFlightBytes(long maxInFlightBytes) {
+        synchronized (lock) {
+            this.maxInFlightBytes = maxInFlightBytes;
+            lock.notifyAll();
+        }
+    }
+
+    /* --- Nested classes --- */
+
+    /**
+     * A request slot, possibly with reserved payload bytes. Closing it releases both.
+     */
+    public class Permit implements AutoCloseable {
+
+        private final RequestPriority priority;
+        private long waitNanos;
+        private long bytes;
+        private boolean closed;
+
+        private Permit(RequestPriority priority, long waitNanos) {
+            this.priority = priority;
+            this.waitNanos = waitNanos;
+        }
+
+        /**
+         * Waits until the given number of payload bytes fits in the budget, and reserves them.
+         *
+         * @throws InterruptedException If interrupted while waiting, no bytes are reserved then.
+         */
+        public void reserveBytes(long bytes) throws InterruptedException {
+            if (bytes > 0) {
+                waitNanos += await(priority, bytes, false);
+                this.bytes += bytes;
+            }
+        }
+
+        @Override
+        public void close() {
+            if (!closed) {
+                closed = true;
+                release(priority, waitNanos, bytes);
+            }
+        }
+    }
+
+    private static class Waiter implements Comparable<Waiter> {
+
+        private final RequestPriority priority;
+        private final long sequence;
+        private final long bytes;
+        private final boolean slot;
+
+        Waiter(RequestPriority priority, long sequence, long bytes, boolean slot) {
+            this.priority = priority;
+            this.sequence = sequence;
+            this.bytes = bytes;
+            this.slot = slot;
+        }
+
+        @Override
+        public int compareTo(Waiter other) {
+            int result = priority.compareTo(other.priority);
+            return result != 0 ? result : Long.compare(sequence, other.sequence);
+        }
+    }
+}
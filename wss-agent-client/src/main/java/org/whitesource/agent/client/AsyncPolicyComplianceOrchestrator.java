@@ -0,0 +1,488 @@
+/**
+ * Copyright (C) 2012 White Source Ltd.
+ * <p>
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * <p>
+ * http://www.apache.org/licenses/LICENSE-2.0
+ * <p>
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.whitesource.agent.client;
+
+import org.apache.commons.logging.Log;
+import org.apache.commons.logging.LogFactory;
+import org.whitesource.agent.api.dispatch.*;
+import org.whitesource.agent.api.model.ProjectEvents;
+
+import java.util.*;
+import java.util.concurrent.*;
+
+/**
+ * Drives the asynchronous policy compliance flow (submit, poll status, fetch response) on behalf of the caller.
+ * <p>
+ * All outstanding checks share a single scheduling thread: on every tick each check that is due has its status
+ * polled on the worker threads, and its next poll is scheduled with exponential backoff and jitter once that poll
+ * returns. The backoff is reset whenever the reported {@link ProjectEvents} show progress, and the response is
+ * fetched as soon as the check completes. Reported statuses are interpreted through {@link Outcome}.
+ * When the {@link AppFlags#ASYNC_CHECK_POLICIES_ENABLED} flag is off the synchronous policy check is used instead.
+ */
+public class AsyncPolicyComplianceOrchestrator {
+
+    /* --- Static members --- */
+
+    private static final Log logger = LogFactory.getLog(AsyncPolicyComplianceOrchestrator.class);
+
+    public static final long DEFAULT_INITIAL_POLL_DELAY_MILLIS = 1000;
+    public static final long DEFAULT_MAX_POLL_DELAY_MILLIS = 30 * 1000;
+    public static final double DEFAULT_BACKOFF_MULTIPLIER = 1.5;
+    public static final double DEFAULT_JITTER_FACTOR = 0.2;
+    public static final long DEFAULT_TIMEOUT_MILLIS = ClientConstants.DEFAULT_CONNECTION_TIMEOUT_MINUTES * 60 * 1000L;
+    public static final int DEFAULT_MAX_CONSECUTIVE_POLL_FAILURES = 5;
+    public static final int DEFAULT_WORKER_THREADS = 4;
+
+    private static final String THREAD_NAME_PREFIX = "wss-async-policy-check-";
+
+    /* --- Members --- */
+
+    private final WhitesourceService service;
+    private final ScheduledExecutorService poller;
+    private final ExecutorService workers;
+    private final Map<String, PendingCheck> pendingChecks = new ConcurrentHashMap<>();
+    private final Random random = new Random();
+
+    private long initialPollDelayMillis = DEFAULT_INITIAL_POLL_DELAY_MILLIS;
+    private long maxPollDelayMillis = DEFAULT_MAX_POLL_DELAY_MILLIS;
+    private double backoffMultiplier = DEFAULT_BACKOFF_MULTIPLIER;
+    private double jitterFactor = DEFAULT_JITTER_FACTOR;
+    private long timeoutMillis = DEFAULT_TIMEOUT_MILLIS;
+    private int maxConsecutivePollFailures = DEFAULT_MAX_CONSECUTIVE_POLL_FAILURES;
+
+    private ScheduledFuture<?> nextTick;
+    private long nextTickAt = Long.MAX_VALUE;
+
+    /* --- Constructors --- */
+
+    /**
+     * Constructor
+     *
+     * @param service WhiteSource service used to submit, poll and fetch the checks.
+     */
+    public AsyncPolicyComplianceOrchestrator(WhitesourceService service) {
+        this(service, DEFAULT_WORKER_THREADS);
+    }
+
+    /**
+     * Constructor
+     *
+     * @param service       WhiteSource service used to submit, poll and fetch the checks.
+     * @param workerThreads Number of threads used for submitting checks and fetching their responses.
+     */
+    public AsyncPolicyComplianceOrchestrator(WhitesourceService service, int workerThreads) {
+        this.service = service;
+        this.poller = Executors.newSingleThreadScheduledExecutor(new DaemonThreadFactory(THREAD_NAME_PREFIX + "poller"));
+        this.workers = Executors.newFixedThreadPool(Math.max(1, workerThreads), new DaemonThreadFactory(THREAD_NAME_PREFIX + "worker"));
+    }
+
+    /* --- Public methods --- */
+
+    /**
+     * @param configuration Configuration returned by the WhiteSource service.
+     * @return True if the organization has asynchronous policy checks enabled.
+     */
+    public static boolean isAsyncEnabled(ConfigurationResult configuration) {
+        if (configuration == null || configuration.getFlags() == null) {
+            return false;
+        }
+        Object flag = configuration.getFlags().get(AppFlags.ASYNC_CHECK_POLICIES_ENABLED);
+        return flag != null && Boolean.parseBoolean(String.valueOf(flag));
+    }
+
+    /**
+     * Checks policy compliance, asynchronously if the given configuration has the flag enabled.
+     *
+     * @param request       Check policy compliance request.
+     * @param configuration Configuration returned by the WhiteSource service.
+     * @return Future completed with the check result.
+     */
+    public CompletableFuture<AsyncCheckPolicyComplianceResponseResult> checkPolicyCompliance(AsyncCheckPolicyComplianceRequest request,
+                                                                                           ConfigurationResult configuration) {
+        return checkPolicyCompliance(request, isAsyncEnabled(configuration));
+    }
+
+    /**
+     * Checks policy compliance.
+     *
+     * @param request      Check policy compliance request.
+     * @param asyncEnabled Whether to use the asynchronous flow or fall back to the synchronous one.
+     * @return Future completed with the check result.
+     */
+    public CompletableFuture<AsyncCheckPolicyComplianceResponseResult> checkPolicyCompliance(AsyncCheckPolicyComplianceRequest request,
+                                                                                           boolean asyncEnabled) {
+        CompletableFuture<AsyncCheckPolicyComplianceResponseResult> future = new CompletableFuture<>();
+        try {
+            workers.execute(() -> {
+                try {
+                    if (asyncEnabled) {
+                        submit(request, future);
+                    } else {
+                        future.complete(toResponseResult(service.checkPolicyCompliance(toSyncRequest(request))));
+                    }
+                } catch (Exception e) {
+                    future.completeExceptionally(e);
+                }
+            });
+        } catch (RejectedExecutionException e) {
+            future.completeExceptionally(new WssServiceException("Orchestrator was shut down", e));
+        }
+        return future;
+    }
+
+    /**
+     * @return Number of checks that were submitted and are still being polled.
+     */
+    public int getPendingCount() {
+        return pendingChecks.size();
+    }
+
+    /**
+     * Stops polling; outstanding checks are completed exceptionally.
+     */
+    public void shutdown() {
+        poller.shutdownNow();
+        workers.shutdownNow();
+        for (PendingCheck check : pendingChecks.values()) {
+            check.future.completeExceptionally(new WssServiceException("Orchestrator was shut down"));
+        }
+        pendingChecks.clear();
+    }
+
+    /* --- Private methods --- */
+
+    private void submit(AsyncCheckPolicyComplianceRequest request,
+                        CompletableFuture<AsyncCheckPolicyComplianceResponseResult> future) throws WssServiceException {
+        AsyncCheckPolicyComplianceResult submitted = service.asyncCheckPolicyCompliance(request);
+        String identifier = submitted == null ? null : submitted.getIdentifier();
+        if (identifier == null || identifier.trim().length() == 0) {
+            throw new WssServiceException("Asynchronous policy check did not return an identifier");
+        }
+        logger.debug("Submitted asynchronous policy check " + identifier);
+
+        long now = System.currentTimeMillis();
+        PendingCheck check = new PendingCheck(identifier, request, future, now + timeoutMillis);
+        check.delayMillis = initialPollDelayMillis;
+        check.nextPollAt = now + jitter(initialPollDelayMillis);
+        pendingChecks.put(identifier, check);
+        scheduleTick(check.nextPollAt);
+    }
+
+    private synchronized void scheduleTick(long at) {
+        if (poller.isShutdown() || (nextTick != null && !nextTick.isDone() && nextTickAt <= at)) {
+            return;
+        }
+        if (nextTick != null) {
+            nextTick.cancel(false);
+        }
+        nextTickAt = at;
+        nextTick = poller.schedule(this::tick, Math.max(0, at - System.currentTimeMillis()), TimeUnit.MILLISECONDS);
+    }
+
+    private void tick() {
+        synchronized (this) {
+            nextTickAt = Long.MAX_VALUE;
+        }
+        long next = Long.MAX_VALUE;
+        for (PendingCheck check : pendingChecks.values()) {
+            long now = System.currentTimeMillis();
+            if (check.future.isDone()) {
+                pendingChecks.remove(check.identifier);
+            } else if (now >= check.deadline) {
+                pendingChecks.remove(check.identifier);
+                check.future.completeExceptionally(new WssServiceException(
+                        "Timed out waiting for asynchronous policy check " + check.identifier));
+            } else if (!check.polling && now >= check.nextPollAt) {
+                submitPoll(check);
+            }
+            if (pendingChecks.containsKey(check.identifier)) {
+                // a check being polled is rescheduled when its poll returns, only its deadline matters until then
+                next = Math.min(next, check.polling ? check.deadline : Math.min(check.nextPollAt, check.deadline));
+            }
+        }
+        if (next != Long.MAX_VALUE) {
+            scheduleTick(next);
+        }
+    }
+
+    private void submitPoll(PendingCheck check) {
+        check.polling = true;
+        try {
+            workers.execute(() -> {
+                try {
+                    poll(check);
+                } finally {
+                    check.polling = false;
+                    if (pendingChecks.containsKey(check.identifier)) {
+                        scheduleTick(check.nextPollAt);
+                    }
+                }
+            });
+        } catch (RejectedExecutionException e) {
+            check.polling = false;
+            pendingChecks.remove(check.identifier);
+            check.future.completeExceptionally(new WssServiceException("Orchestrator was shut down", e));
+        }
+    }
+
+    private void poll(PendingCheck check) {
+        AsyncCheckPolicyComplianceStatusRequest statusRequest = new AsyncCheckPolicyComplianceStatusRequest(check.identifier);
+        copyIdentity(check.request, statusRequest);
+        try {
+            AsyncCheckPolicyComplianceStatusResult status = service.asyncCheckPolicyComplianceStatus(statusRequest);
+            if (check.future.isDone()) {
+                // timed out or shut down while the poll was in flight
+                return;
+            }
+            check.consecutiveFailures = 0;
+            Outcome outcome = evaluate(check, status);
+            if (outcome == Outcome.FAILED) {
+                pendingChecks.remove(check.identifier);
+                check.future.completeExceptionally(new WssServiceException(
+                        "Asynchronous policy check " + check.identifier + " failed with status " + status.getStatus()));
+                return;
+            }
+            if (outcome == Outcome.COMPLETED) {
+                pendingChecks.remove(check.identifier);
+                fetch(check);
+                return;
+            }
+
+            int completedEvents = countCompletedEvents(check, status);
+            if (completedEvents > check.completedEvents) {
+                // progress was made, the rest is likely to follow shortly
+                check.completedEvents = completedEvents;
+                check.delayMillis = initialPollDelayMillis;
+            } else {
+                check.delayMillis = Math.min(maxPollDelayMillis, (long) (check.delayMillis * backoffMultiplier));
+            }
+        } catch (WssServiceException e) {
+            if (++check.consecutiveFailures >= maxConsecutivePollFailures) {
+                pendingChecks.remove(check.identifier);
+                check.future.completeExceptionally(e);
+                return;
+            }
+            logger.debug("Failed polling asynchronous policy check " + check.identifier + ": " + e.getMessage());
+            check.delayMillis = Math.min(maxPollDelayMillis, (long) (check.delayMillis * backoffMultiplier));
+        }
+        check.nextPollAt = System.currentTimeMillis() + jitter(check.delayMillis);
+    }
+
+    private void fetch(PendingCheck check) {
+        AsyncCheckPolicyComplianceResponseRequest responseRequest = new AsyncCheckPolicyComplianceResponseRequest(check.identifier);
+        copyIdentity(check.request, responseRequest);
+        try {
+            check.future.complete(service.asyncCheckPolicyRComplianceResponse(responseRequest));
+        } catch (Exception e) {
+            check.future.completeExceptionally(e);
+        }
+    }
+
+    /**
+     * The check is done once its overall status is completed or failed, or once all its project events are
+     * completed; any failed project event fails the check.
+     */
+    private Outcome evaluate(PendingCheck check, AsyncCheckPolicyComplianceStatusResult status) {
+        if (status == null) {
+            return Outcome.RUNNING;
+        }
+        Outcome overall = outcome(check, status.getStatus());
+        if (overall != Outcome.RUNNING) {
+            return overall;
+        }
+        Collection<ProjectEvents> events = status.getProjectEvents();
+        if (events == null || events.isEmpty()) {
+            return Outcome.RUNNING;
+        }
+        boolean allCompleted = true;
+        for (ProjectEvents event : events) {
+            Outcome eventOutcome = outcome(check, event.getStatus());
+            if (eventOutcome == Outcome.FAILED) {
+                return Outcome.FAILED;
+            }
+            allCompleted &= eventOutcome == Outcome.COMPLETED;
+        }
+        return allCompleted ? Outcome.COMPLETED : Outcome.RUNNING;
+    }
+
+    private int countCompletedEvents(PendingCheck check, AsyncCheckPolicyComplianceStatusResult status) {
+        int count = 0;
+        if (status != null && status.getProjectEvents() != null) {
+            for (ProjectEvents event : status.getProjectEvents()) {
+                if (outcome(check, event.getStatus()) == Outcome.COMPLETED) {
+                    count++;
+                }
+            }
+        }
+        return count;
+    }
+
+    private Outcome outcome(PendingCheck check, String status) {
+        if (status == null) {
+            return Outcome.RUNNING;
+        }
+        Outcome outcome = Outcome.of(status);
+        if (outcome == null) {
+            if (check.unrecognizedStatuses.add(status)) {
+                logger.warn("Unrecognized status " + status + " for asynchronous policy check " + check.identifier
+                        + ", treating it as still running");
+            }
+            return Outcome.RUNNING;
+        }
+        return outcome;
+    }
+
+    private long jitter(long delayMillis) {
+        double factor;
+        synchronized (random) {
+            factor = 1 + jitterFactor * (2 * random.nextDouble() - 1);
+        }
+        return Math.max(1, (long) (delayMillis * factor));
+    }
+
+    private void copyIdentity(BaseRequest<?> from, BaseRequest<?> to) {
+        to.setOrgToken(from.orgToken());
+        to.setUserKey(from.userKey());
+        to.setRequesterEmail(from.requesterEmail());
+        to.setProduct(from.product());
+        to.setProductVersion(from.productVersion());
+        to.setProductToken(from.productToken());
+    }
+
+    private CheckPolicyComplianceRequest toSyncRequest(AsyncCheckPolicyComplianceRequest request) {
+        CheckPolicyComplianceRequest syncRequest = new CheckPolicyComplianceRequest(request.getProjects(),
+                request.isForceCheckAllDependencies(), request.isPopulateVulnerabilities());
+        RequestUtils.copyRequestFields(request, syncRequest);
+        return syncRequest;
+    }
+
+    private AsyncCheckPolicyComplianceResponseResult toResponseResult(CheckPolicyComplianceResult result) {
+        if (result == null) {
+            return null;
+        }
+        AsyncCheckPolicyComplianceResponseResult response = new AsyncCheckPolicyComplianceResponseResult();
+        response.setOrganization(result.getOrganization());
+        response.setRequestToken(result.getRequestToken());
+        response.setExistingProjects(result.getExistingProjects());
+        response.setNewProjects(result.getNewProjects());
+        response.setProjectNewResources(result.getProjectNewResources());
+        return response;
+    }
+
+    /* --- Getters / Setters --- */
+
+    public long getInitialPollDelayMillis() {
+        return initialPollDelayMillis;
+    }
+
+    public void setInitialPollDelayMillis(long initialPollDelayMillis) {
+        this.initialPollDelayMillis = initialPollDelayMillis;
+    }
+
+    public long getMaxPollDelayMillis() {
+        return maxPollDelayMillis;
+    }
+
+    public void setMaxPollDelayMillis(long maxPollDelayMillis) {
+        this.maxPollDelayMillis = maxPollDelayMillis;
+    }
+
+    public double getBackoffMultiplier() {
+        return backoffMultiplier;
+    }
+
+    public void setBackoffMultiplier(double backoffMultiplier) {
+        this.backoffMultiplier = backoffMultiplier;
+    }
+
+    public double getJitterFactor() {
+        return jitterFactor;
+    }
+
+    public void setJitterFactor(double jitterFactor) {
+        this.jitterFactor = jitterFactor;
+    }
+
+    public long getTimeoutMillis() {
+        return timeoutMillis;
+    }
+
+    public void setTimeoutMillis(long timeoutMillis) {
+        this.timeoutMillis = timeoutMillis;
+    }
+
+    public int getMaxConsecutivePollFailures() {
+        return maxConsecutivePollFailures;
+    }
+
+    public void setMaxConsecutivePollFailures(int maxConsecutivePollFailures) {
+        this.maxConsecutivePollFailures = maxConsecutivePollFailures;
+    }
+
+    /* --- Nested classes --- */
+
+    /**
+     * What the orchestrator does with a status reported for a check or one of its project events, along with the
+     * statuses (compared case insensitively) that map to it. Any other status is logged and treated as running.
+     */
+    enum Outcome {
+
+        RUNNING("PENDING", "QUEUED", "IN_PROGRESS", "RUNNING", "PROCESSING", "STARTED"),
+        COMPLETED("SUCCESS", "SUCCEEDED", "COMPLETED", "FINISHED", "DONE"),
+        FAILED("FAILED", "FAILURE", "ERROR", "CANCELED", "CANCELLED");
+
+        private final Set<String> statuses;
+
+        Outcome(String... statuses) {
+            this.statuses = new HashSet<>(Arrays.asList(statuses));
+        }
+
+        /**
+         * @return The outcome of the given status, or null if it is not recognized.
+         */
+        static Outcome of(String status) {
+            String normalized = status.trim().toUpperCase(Locale.ROOT);
+            for (Outcome outcome : values()) {
+                if (outcome.statuses.contains(normalized)) {
+                    return outcome;
+                }
+            }
+            return null;
+        }
+    }
+
+    private static class PendingCheck {
+
+        private final String identifier;
+        private final AsyncCheckPolicyComplianceRequest request;
+        private final CompletableFuture<AsyncCheckPolicyComplianceResponseResult> future;
+        private final long deadline;
+        private long delayMillis;
+        private volatile long nextPollAt;
+        private volatile boolean polling;
+        private int completedEvents;
+        private int consecutiveFailures;
+        private final Set<String> unrecognizedStatuses = new HashSet<>();
+
+        private PendingCheck(String identifier, AsyncCheckPolicyComplianceRequest request,
+                             CompletableFuture<AsyncCheckPolicyComplianceResponseResult> future, long deadline) {
+            this.identifier = identifier;
+            this.request = request;
+            this.future = future;
+            this.deadline = deadline;
+        }
+    }
+}
@@ -0,0 +1,253 @@
+/**
+ * Copyright (C) 2012 White Source Ltd.
+ * <p>
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * <p>
+ * http://www.apache.org/licenses/LICENSE-2.0
+ * <p>
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.whitesource.agent.client;
+
+import com.google.gson.Gson;
+import com.google.gson.reflect.TypeToken;
+import org.apache.commons.codec.digest.DigestUtils;
+import org.whitesource.agent.api.dispatch.*;
+import org.whitesource.agent.api.model.AgentProjectInfo;
+import org.whitesource.agent.api.model.DependencyInfo;
+import org.whitesource.agent.api.model.ResourceInfo;
+import org.whitesource.agent.api.model.VulnerabilityInfo;
+import org.whitesource.agent.utils.JsonCodecs;
+
+import java.io.File;
+import java.util.*;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * A client which caches the per sha1 answers of {@link #getDependencyData(GetDependencyDataRequest)} and
+ * {@link #checkVulnerabilities(CheckVulnerabilitiesRequest)}.
+ * <p>
+ * Only dependencies that are not fully answered from the cache are sent to the service, and the cached and
+ * fresh answers are combined into a single result. Results are cached per organization, keyed by a hash of the
+ * organization token so that no token is written to the cache files. Cached resources are kept without their project
+ * specific paths, and every caller gets its own copies.
+ */
+public class CachingWssServiceClient extends ForwardingWssServiceClient {
+
+    /* --- Static members --- */
+
+    public static final int DEFAULT_MAX_ENTRIES = 100000;
+    public static final long DEFAULT_TTL_MILLIS = TimeUnit.HOURS.toMillis(24);
+
+    private static final String DEPENDENCY_DATA_FILE = "dependency-data-cache.json";
+    private static final String VULNERABILITIES_FILE = "vulnerabilities-cache.json";
+    private static final String KEY_SEPARATOR = ":";
+
+    /* --- Members --- */
+
+    private final Sha1ResultCache<ResourceInfo> dependencyDataCache;
+    private final Sha1ResultCache<Collection<VulnerabilityInfo>> vulnerabilitiesCache;
+    private final Map<String, String> organizations = new ConcurrentHashMap<>();
+    private final Gson gson = JsonCodecs.compact();
+
+    /* --- Constructors --- */
+
+    /**
+     * Constructor
+     *
+     * @param delegate Client to send the cache misses to.
+     */
+    public CachingWssServiceClient(WssServiceClient delegate) {
+        this(delegate, DEFAULT_MAX_ENTRIES, DEFAULT_TTL_MILLIS, null);
+    }
+
+    /**
+     * Constructor
+     *
+     * @param delegate       Client to send the cache misses to.
+     * @param maxEntries     Maximal number of results to keep per lookup type.
+     * @param ttlMillis      Time in milliseconds after which a cached result is considered stale.
+     * @param cacheDirectory Optional. Directory to persist the cached results in between runs.
+     */
+    public CachingWssServiceClient(WssServiceClient delegate, int maxEntries, long ttlMillis, File cacheDirectory) {
+        super(delegate);
+        dependencyDataCache = new Sha1ResultCache<>(maxEntries, ttlMillis, ResourceInfo.class,
+                cacheDirectory == null ? null : new File(cacheDirectory, DEPENDENCY_DATA_FILE));
+        vulnerabilitiesCache = new Sha1ResultCache<>(maxEntries, ttlMillis,
+                new TypeToken<Collection<VulnerabilityInfo>>() {}.getType(),
+                cacheDirectory == null ? null : new File(cacheDirectory, VULNERABILITIES_FILE));
+        dependencyDataCache.load();
+        vulnerabilitiesCache.load();
+    }
+
+    /* --- Overridden methods --- */
+
+    @Override
+    public GetDependencyDataResult getDependencyData(GetDependencyDataRequest request) throws WssServiceException {
+        String org = request.orgToken();
+        Map<String, ResourceInfo> cached = new LinkedHashMap<>();
+        List<AgentProjectInfo> misses = filterMisses(request.getProjects(), dependencyDataCache, org, cached);
+
+        GetDependencyDataResult result;
+        if (misses.isEmpty()) {
+            result = new GetDependencyDataResult(org == null ? null : organizations.get(org));
+        } else {
+            GetDependencyDataRequest upstream = new GetDependencyDataRequest(misses);
+            RequestUtils.copyRequestFields(request, upstream);
+            result = delegate.getDependencyData(upstream);
+            if (result == null) {
+                return null;
+            }
+            if (org != null && result.getOrganization() != null) {
+                organizations.put(org, result.getOrganization());
+            }
+            if (result.getResources() == null) {
+                result.setResources(new ArrayList<>());
+            }
+            for (ResourceInfo resource : result.getResources()) {
+                if (resource.getSha1() != null) {
+                    // the paths belong to the requesting project, not to the other callers of the cache
+                    ResourceInfo shared = copy(resource);
+                    shared.setSystemPath(null);
+                    shared.setManifestFileSystemPath(null);
+                    dependencyDataCache.put(key(org, resource.getSha1()), shared);
+                    cached.remove(resource.getSha1());
+                }
+            }
+        }
+        for (ResourceInfo resource : cached.values()) {
+            result.getResources().add(copy(resource));
+        }
+        return result;
+    }
+
+    @Override
+    public CheckVulnerabilitiesResult checkVulnerabilities(CheckVulnerabilitiesRequest request) throws WssServiceException {
+        String org = request.orgToken();
+        Map<String, Collection<VulnerabilityInfo>> cached = new LinkedHashMap<>();
+        List<AgentProjectInfo> misses = filterMisses(request.getProjects(), vulnerabilitiesCache, org, cached);
+
+        CheckVulnerabilitiesResult result;
+        if (misses.isEmpty()) {
+            result = new CheckVulnerabilitiesResult();
+        } else {
+            CheckVulnerabilitiesRequest upstream = new CheckVulnerabilitiesRequest(misses);
+            RequestUtils.copyRequestFields(request, upstream);
+            result = delegate.checkVulnerabilities(upstream);
+            if (result == null) {
+                return null;
+            }
+            if (result.getSha1ToVulnerabilitiesMap() == null) {
+                result.setSha1ToVulnerabilitiesMap(new HashMap<>());
+            }
+            // sha1s missing from the answer have no vulnerabilities, which is worth caching as well
+            Set<String> requested = new HashSet<>();
+            for (AgentProjectInfo project : misses) {
+                RequestUtils.collectSha1s(project.getDependencies(), requested);
+            }
+            for (String sha1 : requested) {
+                Collection<VulnerabilityInfo> vulnerabilities = result.getSha1ToVulnerabilitiesMap().get(sha1);
+                vulnerabilitiesCache.put(key(org, sha1), vulnerabilities == null ? Collections.emptyList() : vulnerabilities);
+                cached.remove(sha1);
+            }
+        }
+        for (Map.Entry<String, Collection<VulnerabilityInfo>> entry : cached.entrySet()) {
+            if (!entry.getValue().isEmpty()) {
+                result.getSha1ToVulnerabilitiesMap().put(entry.getKey(), entry.getValue());
+            }
+        }
+        return result;
+    }
+
+    /**
+     * Persists the cached results (if a cache directory was given) and shuts down the underlying client.
+     */
+    @Override
+    public void shutdown() {
+        flush();
+        super.shutdown();
+    }
+
+    /* --- Public methods --- */
+
+    /**
+     * Persists the cached results, if a cache directory was given.
+     */
+    public void flush() {
+        dependencyDataCache.save();
+        vulnerabilitiesCache.save();
+    }
+
+    /* --- Private methods --- */
+
+    /**
+     * Looks up all the dependencies of the given projects in the cache.
+     *
+     * @return Copies of the projects, holding only the top level dependencies which are not fully answered from the cache.
+     */
+    private <V> List<AgentProjectInfo> filterMisses(Collection<AgentProjectInfo> projects, Sha1ResultCache<V> cache,
+                                                    String org, Map<String, V> cached) {
+        List<AgentProjectInfo> misses = new ArrayList<>();
+        if (projects == null) {
+            return misses;
+        }
+        for (AgentProjectInfo project : projects) {
+            List<DependencyInfo> missing = new ArrayList<>();
+            for (DependencyInfo dependency : project.getDependencies()) {
+                if (!lookup(dependency, cache, org, cached)) {
+                    missing.add(dependency);
+                }
+            }
+            if (!missing.isEmpty()) {
+                misses.add(RequestUtils.copyProject(project, missing));
+            }
+        }
+        return misses;
+    }
+
+    /**
+     * @return True if the dependency and all its descendants are answered from the cache.
+     */
+    private <V> boolean lookup(DependencyInfo dependency, Sha1ResultCache<V> cache, String org, Map<String, V> cached) {
+        boolean hit = false;
+        String sha1 = dependency.getSha1();
+        if (sha1 != null && sha1.length() > 0) {
+            V value = cached.containsKey(sha1) ? cached.get(sha1) : cache.get(key(org, sha1));
+            if (value != null) {
+                cached.put(sha1, value);
+                hit = true;
+            }
+        }
+        if (dependency.hasChildren()) {
+            for (DependencyInfo child : dependency.getChildren()) {
+                hit &= lookup(child, cache, org, cached);
+            }
+        }
+        return hit;
+    }
+
+    private String key(String org, String sha1) {
+        return DigestUtils.sha1Hex(String.valueOf(org)) + KEY_SEPARATOR + sha1;
+    }
+
+    private ResourceInfo copy(ResourceInfo resource) {
+        return gson.fromJson(gson.toJson(resource, ResourceInfo.class), ResourceInfo.class);
+    }
+
+    /* --- Getters --- */
+
+    public Sha1ResultCache<ResourceInfo> getDependencyDataCache() {
+        return dependencyDataCache;
+    }
+
+    public Sha1ResultCache<Collection<VulnerabilityInfo>> getVulnerabilitiesCache() {
+        return vulnerabilitiesCache;
+    }
+}
@@ -28,12 +28,37 @@ public final class ClientConstants {
 
 	public static final String CONNECTION_TIMEOUT_KEYWORD = "wss.connectionTimeoutMinutes";
 
+	public static final String MAX_CONCURRENT_REQUESTS_KEYWORD = "wss.maxConcurrentRequests";
+
+	public static final String MAX_IN_FLIGHT_MEGABYTES_KEYWORD = "wss.maxInFlightMegabytes";
+
+	/**
+	 * When "true", the connections to the service are warmed up in the background as soon as a service is created.
+	 */
+	public static final String WARM_UP_KEYWORD = "wss.warmUp";
+
+	/**
+	 * When "true", request payloads are compressed on multiple threads, see {@link org.whitesource.agent.utils.ParallelGzipOutputStream}.
+	 */
+	public static final String PARALLEL_COMPRESSION_KEYWORD = "wss.parallelCompression";
+
+	/**
+	 * Codec of gzip transport request bodies as {@code name[:level]}, for example "gzip:1" or "zstd",
+	 * see {@link org.whitesource.agent.utils.PayloadCodecs}.
+	 */
+	public static final String PAYLOAD_CODEC_KEYWORD = "wss.payloadCodec";
+
 	public static final String DEFAULT_SERVICE_URL = "https://saas.whitesourcesoftware.com/agent";
 
 	public static final String APPLICATION_JSON = "application/json";
 
 	public static final int DEFAULT_CONNECTION_TIMEOUT_MINUTES = 60;
 
+	/**
+	 * Header carrying the url encoded request parameters when the payload is sent as a gzip encoded body.
+	 */
+	public static final String PARAMS_HEADER = "X-WSS-Params";
+
 	/* --- Constructors --- */
 	
 	/**
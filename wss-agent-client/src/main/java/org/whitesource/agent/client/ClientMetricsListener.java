@@ -0,0 +1,30 @@
+/**
+ * Copyright (C) 2012 White Source Ltd.
+ * <p>
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * <p>
+ * http://www.apache.org/licenses/LICENSE-2.0
+ * <p>
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.whitesource.agent.client;
+
+/**
+ * Receives the measurements of every request served by a {@link WssServiceClient}.
+ * <p>
+ * Implementations are called on the requesting thread, right after the request completed (or failed),
+ * and so should return quickly.
+ */
+public interface ClientMetricsListener {
+
+    /**
+     * @param metrics Measurements of the completed request.
+     */
+    void requestCompleted(RequestMetrics metrics);
+}
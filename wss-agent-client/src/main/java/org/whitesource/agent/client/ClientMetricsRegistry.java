@@ -0,0 +1,195 @@
+/**
+ * Copyright (C) 2012 White Source Ltd.
+ * <p>
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * <p>
+ * http://www.apache.org/licenses/LICENSE-2.0
+ * <p>
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.whitesource.agent.client;
+
+import org.whitesource.agent.api.dispatch.RequestType;
+import org.whitesource.agent.api.dispatch.SendMetricsRequest;
+
+import java.util.EnumMap;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * A {@link ClientMetricsListener} which aggregates the measurements per {@link RequestType}:
+ * latency histograms (in microseconds) for every {@link RequestPhase} and for the whole call,
+ * payload byte counts, retries and failures.
+ * <p>
+ * The aggregates can be reported to the service with {@link #toSendMetricsRequest(String, String, String)}.
+ */
+public class ClientMetricsRegistry implements ClientMetricsListener {
+
+    /* --- Static members --- */
+
+    private static final String SEPARATOR = ".";
+    private static final double[] REPORTED_PERCENTILES = {50, 90, 99};
+
+    /* --- Members --- */
+
+    private final Map<RequestType, TypeMetrics> metrics = new EnumMap<>(RequestType.class);
+
+    /* --- Constructors --- */
+
+    public ClientMetricsRegistry() {
+        for (RequestType requestType : RequestType.values()) {
+            metrics.put(requestType, new TypeMetrics());
+        }
+    }
+
+    /* --- Interface implementation methods --- */
+
+    @Override
+    public void requestCompleted(RequestMetrics requestMetrics) {
+        TypeMetrics typeMetrics = metrics.get(requestMetrics.getRequestType());
+        if (typeMetrics == null) {
+            return;
+        }
+        typeMetrics.requests.increment();
+        if (!requestMetrics.isSuccess()) {
+            typeMetrics.failures.increment();
+        }
+        typeMetrics.total.record(TimeUnit.NANOSECONDS.toMicros(requestMetrics.getTotalNanos()));
+        for (RequestPhase phase : RequestPhase.values()) {
+            long nanos = requestMetrics.getPhaseNanos(phase);
+            if (nanos > 0) {
+                typeMetrics.phases.get(phase).record(TimeUnit.NANOSECONDS.toMicros(nanos));
+            }
+        }
+        typeMetrics.rawBytes.add(requestMetrics.getRawBytes());
+        typeMetrics.compressedBytes.add(requestMetrics.getCompressedBytes());
+        typeMetrics.requestBytes.add(requestMetrics.getRequestBytes());
+        typeMetrics.retries.add(requestMetrics.getRetries());
+    }
+
+    /* --- Public methods --- */
+
+    /**
+     * @return The aggregates of the given request type.
+     */
+    public TypeMetrics get(RequestType requestType) {
+        return metrics.get(requestType);
+    }
+
+    /**
+     * Flattens the aggregates of all the request types which were served at least once, for example
+     * {@code UPDATE.upload.p99Micros}.
+     *
+     * @return Metric names to values.
+     */
+    public Map<String, String> toMap() {
+        Map<String, String> values = new LinkedHashMap<>();
+        for (Map.Entry<RequestType, TypeMetrics> entry : metrics.entrySet()) {
+            TypeMetrics typeMetrics = entry.getValue();
+            long requests = typeMetrics.getRequests();
+            if (requests == 0) {
+                continue;
+            }
+            String prefix = entry.getKey().getValue() + SEPARATOR;
+            values.put(prefix + "requests", String.valueOf(requests));
+            values.put(prefix + "failures", String.valueOf(typeMetrics.getFailures()));
+            values.put(prefix + "retries", String.valueOf(typeMetrics.getRetries()));
+            values.put(prefix + "rawBytes", String.valueOf(typeMetrics.getRawBytes()));
+            values.put(prefix + "compressedBytes", String.valueOf(typeMetrics.getCompressedBytes()));
+            values.put(prefix + "requestBytes", String.valueOf(typeMetrics.getRequestBytes()));
+            values.put(prefix + "compressionRatio", String.format("%.2f", typeMetrics.getCompressionRatio()));
+            putHistogram(values, prefix + "total", typeMetrics.getTotal());
+            for (RequestPhase phase : RequestPhase.values()) {
+                LatencyHistogram histogram = typeMetrics.getPhase(phase);
+                if (histogram.getCount() > 0) {
+                    putHistogram(values, prefix + phase.name().toLowerCase(), histogram);
+                }
+            }
+        }
+        return values;
+    }
+
+    /**
+     * @return A request reporting the current aggregates, see {@link #toMap()}.
+     */
+    public SendMetricsRequest toSendMetricsRequest(String orgToken, String userKey, String product) {
+        return new SendMetricsRequest(orgToken, userKey, product, toMap());
+    }
+
+    /* --- Private methods --- */
+
+    private void putHistogram(Map<String, String> values, String prefix, LatencyHistogram histogram) {
+        for (double percentile : REPORTED_PERCENTILES) {
+            values.put(prefix + SEPARATOR + "p" + (int) percentile + "Micros", String.valueOf(histogram.getValueAtPercentile(percentile)));
+        }
+        values.put(prefix + SEPARATOR + "maxMicros", String.valueOf(histogram.getMax()));
+    }
+
+    /* --- Nested classes --- */
+
+    /**
+     * The aggregates of a single request type.
+     */
+    public static class TypeMetrics {
+
+        private final LongAdder requests = new LongAdder();
+        private final LongAdder failures = new LongAdder();
+        private final LongAdder retries = new LongAdder();
+        private final LongAdder rawBytes = new LongAdder();
+        private final LongAdder compressedBytes = new LongAdder();
+        private final LongAdder requestBytes = new LongAdder();
+        private final LatencyHistogram total = new LatencyHistogram();
+        private final Map<RequestPhase, LatencyHistogram> phases = new EnumMap<>(RequestPhase.class);
+
+        TypeMetrics() {
+            for (RequestPhase phase : RequestPhase.values()) {
+                phases.put(phase, new LatencyHistogram());
+            }
+        }
+
+        public long getRequests() {
+            return requests.sum();
+        }
+
+        public long getFailures() {
+            return failures.sum();
+        }
+
+        public long getRetries() {
+            return retries.sum();
+        }
+
+        public long getRawBytes() {
+            return rawBytes.sum();
+        }
+
+        public long getCompressedBytes() {
+            return compressedBytes.sum();
+        }
+
+        public long getRequestBytes() {
+            return requestBytes.sum();
+        }
+
+        public double getCompressionRatio() {
+            long compressed = compressedBytes.sum();
+            return compressed == 0 ? 0 : (double) rawBytes.sum() / compressed;
+        }
+
+        public LatencyHistogram getTotal() {
+            return total;
+        }
+
+        public LatencyHistogram getPhase(RequestPhase phase) {
+            return phases.get(phase);
+        }
+    }
+}
@@ -0,0 +1,268 @@
+/**
+ * Copyright (C) 2012 White Source Ltd.
+ * <p>
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * <p>
+ * http://www.apache.org/licenses/LICENSE-2.0
+ * <p>
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.whitesource.agent.client;
+
+import com.google.gson.Gson;
+import com.google.gson.JsonParseException;
+import org.apache.commons.codec.digest.DigestUtils;
+import org.apache.commons.logging.Log;
+import org.apache.commons.logging.LogFactory;
+import org.whitesource.agent.api.dispatch.ConfigurationRequest;
+import org.whitesource.agent.api.dispatch.ConfigurationResult;
+import org.whitesource.agent.utils.JsonCodecs;
+
+import java.io.*;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.*;
+
+/**
+ * A client which answers {@link #getConfiguration(ConfigurationRequest)} from the last known configuration,
+ * so agents don't wait for the service on startup.
+ * <p>
+ * The last configuration of each organization, product and project is kept in memory and optionally in a file
+ * under a cache directory, so it survives between runs. Cached configurations older than the revalidation time are
+ * still served, while the service is asked again on a background daemon thread. If the answer differs from the cached
+ * one (by its content fingerprint), the cache is updated and the {@link ConfigurationChangeListener}s are notified.
+ * Configurations older than the max age are not served, and the caller waits for the service instead.
+ */
+public class ConfigurationCachingClient extends ForwardingWssServiceClient {
+
+    /* --- Static members --- */
+
+    private static final Log logger = LogFactory.getLog(ConfigurationCachingClient.class);
+
+    public static final long DEFAULT_REVALIDATE_AFTER_MILLIS = TimeUnit.MINUTES.toMillis(1);
+    public static final long DEFAULT_MAX_AGE_MILLIS = TimeUnit.DAYS.toMillis(7);
+
+    private static final String FILE_PREFIX = "configuration-";
+    private static final String FILE_SUFFIX = ".json";
+    private static final String TMP_SUFFIX = ".tmp";
+    private static final String KEY_SEPARATOR = "\n";
+
+    /* --- Members --- */
+
+    private final File cacheDirectory;
+    private final Gson gson = JsonCodecs.compact();
+    private final ConcurrentMap<String, Entry> entries = new ConcurrentHashMap<>();
+    private final Set<String> revalidating = ConcurrentHashMap.newKeySet();
+    private final List<ConfigurationChangeListener> listeners = new CopyOnWriteArrayList<>();
+    private final ExecutorService executor;
+
+    private volatile long revalidateAfterMillis = DEFAULT_REVALIDATE_AFTER_MILLIS;
+    private volatile long maxAgeMillis = DEFAULT_MAX_AGE_MILLIS;
+
+    /* --- Constructors --- */
+
+    /**
+     * Constructor
+     *
+     * @param delegate       Client to fetch the configurations with.
+     * @param cacheDirectory Optional. Directory to persist the configurations in between runs.
+     */
+    public ConfigurationCachingClient(WssServiceClient delegate, File cacheDirectory) {
+        super(delegate);
+        this.cacheDirectory = cacheDirectory;
+        executor = Executors.newSingleThreadExecutor(new DaemonThreadFactory("wss-configuration-revalidation"));
+    }
+
+    /* --- Overridden methods --- */
+
+    @Override
+    public ConfigurationResult getConfiguration(ConfigurationRequest request) throws WssServiceException {
+        String key = key(request);
+        Entry entry = entries.get(key);
+        if (entry == null) {
+            entry = load(key);
+            if (entry != null) {
+                Entry existing = entries.putIfAbsent(key, entry);
+                entry = existing == null ? entry : existing;
+            }
+        }
+
+        long age = entry == null ? Long.MAX_VALUE : System.currentTimeMillis() - entry.fetchedAt;
+        if (age > maxAgeMillis) {
+            return fetch(key, request);
+        }
+        if (age > revalidateAfterMillis) {
+            revalidate(key, request);
+        }
+        return gson.fromJson(entry.json, ConfigurationResult.class);
+    }
+
+    /**
+     * Stops the background revalidations and shuts down the underlying client.
+     */
+    @Override
+    public void shutdown() {
+        executor.shutdownNow();
+        super.shutdown();
+    }
+
+    /* --- Public methods --- */
+
+    public void addListener(ConfigurationChangeListener listener) {
+        listeners.add(listener);
+    }
+
+    public void removeListener(ConfigurationChangeListener listener) {
+        listeners.remove(listener);
+    }
+
+    /**
+     * Drops the cached configuration of the given request, in memory and on disk.
+     */
+    public void invalidate(ConfigurationRequest request) {
+        String key = key(request);
+        entries.remove(key);
+        if (cacheDirectory != null && !file(key).delete() && file(key).exists()) {
+            logger.warn("Failed to delete cached configuration " + file(key));
+        }
+    }
+
+    /* --- Private methods --- */
+
+    /**
+     * Asks the service for the configuration and updates the cache, notifying the listeners if it changed.
+     */
+    private ConfigurationResult fetch(String key, ConfigurationRequest request) throws WssServiceException {
+        ConfigurationResult result = delegate.getConfiguration(request);
+        if (result == null) {
+            return null;
+        }
+        Entry entry = new Entry();
+        entry.json = gson.toJson(result);
+        entry.fingerprint = DigestUtils.sha1Hex(entry.json);
+        entry.fetchedAt = System.currentTimeMillis();
+        Entry previous = entries.put(key, entry);
+        save(key, entry);
+        if (previous != null && !previous.fingerprint.equals(entry.fingerprint)) {
+            ConfigurationResult previousResult = gson.fromJson(previous.json, ConfigurationResult.class);
+            for (ConfigurationChangeListener listener : listeners) {
+                try {
+                    listener.configurationChanged(request, previousResult, gson.fromJson(entry.json, ConfigurationResult.class));
+                } catch (RuntimeException e) {
+                    logger.warn("Configuration change listener failed: " + e.getMessage(), e);
+                }
+            }
+        }
+        return result;
+    }
+
+    /**
+     * Fetches the configuration in the background, unless a revalidation of the same key is already running.
+     */
+    private void revalidate(String key, ConfigurationRequest request) {
+        if (!revalidating.add(key)) {
+            return;
+        }
+        try {
+            executor.execute(() -> {
+                try {
+                    fetch(key, request);
+                } catch (WssServiceException | RuntimeException e) {
+                    logger.warn("Failed to revalidate configuration, keeping the cached one: " + e.getMessage());
+                } finally {
+                    revalidating.remove(key);
+                }
+            });
+        } catch (RejectedExecutionException e) {
+            revalidating.remove(key);
+        }
+    }
+
+    private String key(ConfigurationRequest request) {
+        return DigestUtils.sha1Hex(request.orgToken() + KEY_SEPARATOR + request.userKey() + KEY_SEPARATOR
+                + request.productToken() + KEY_SEPARATOR + request.product() + KEY_SEPARATOR + request.productVersion()
+                + KEY_SEPARATOR + request.aggregateProjectToken() + KEY_SEPARATOR + request.aggregateProjectName());
+    }
+
+    private Entry load(String key) {
+        if (cacheDirectory == null) {
+            return null;
+        }
+        File file = file(key);
+        if (!file.isFile()) {
+            return null;
+        }
+        try (Reader reader = new InputStreamReader(new FileInputStream(file), StandardCharsets.UTF_8)) {
+            Entry entry = gson.fromJson(reader, Entry.class);
+            return entry == null || entry.json == null || entry.fingerprint == null ? null : entry;
+        } catch (IOException | JsonParseException e) {
+            logger.warn("Failed to read cached configuration " + file + ": " + e.getMessage());
+            return null;
+        }
+    }
+
+    private void save(String key, Entry entry) {
+        if (cacheDirectory == null) {
+            return;
+        }
+        File file = file(key);
+        File tempFile = new File(cacheDirectory, file.getName() + TMP_SUFFIX + Thread.currentThread().getId());
+        try {
+            if (!cacheDirectory.isDirectory() && !cacheDirectory.mkdirs()) {
+                throw new IOException("Unable to create directory " + cacheDirectory);
+            }
+            try (Writer writer = new OutputStreamWriter(new FileOutputStream(tempFile), StandardCharsets.UTF_8)) {
+                gson.toJson(entry, writer);
+            }
+            Files.move(tempFile.toPath(), file.toPath(), StandardCopyOption.REPLACE_EXISTING);
+        } catch (IOException e) {
+            logger.warn("Failed to write cached configuration " + file + ": " + e.getMessage());
+        }
+    }
+
+    private File file(String key) {
+        return new File(cacheDirectory, FILE_PREFIX + key + FILE_SUFFIX);
+    }
+
+    /* --- Getters / Setters --- */
+
+    public long getRevalidateAfterMillis() {
+        return revalidateAfterMillis;
+    }
+
+    /**
+     * @param revalidateAfterMillis Age after which a cached configuration is revalidated in the background.
+     */
+    public void setRevalidateAfterMillis(long revalidateAfterMillis) {
+        this.revalidateAfterMillis = revalidateAfterMillis;
+    }
+
+    public long getMaxAgeMillis() {
+        return maxAgeMillis;
+    }
+
+    /**
+     * @param maxAgeMillis Age after which a cached configuration is no longer served.
+     */
+    public void setMaxAgeMillis(long maxAgeMillis) {
+        this.maxAgeMillis = maxAgeMillis;
+    }
+
+    /* --- Nested classes --- */
+
+    static class Entry {
+
+        private String json;
+        private String fingerprint;
+        private long fetchedAt;
+    }
+}
@@ -0,0 +1,34 @@
+/**
+ * Copyright (C) 2012 White Source Ltd.
+ * <p>
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * <p>
+ * http://www.apache.org/licenses/LICENSE-2.0
+ * <p>
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.whitesource.agent.client;
+
+import org.whitesource.agent.api.dispatch.ConfigurationRequest;
+import org.whitesource.agent.api.dispatch.ConfigurationResult;
+
+/**
+ * Notified by a {@link ConfigurationCachingClient} when a revalidation found that the configuration changed.
+ * <p>
+ * Implementations are usually called on a background thread.
+ */
+public interface ConfigurationChangeListener {
+
+    /**
+     * @param request  Request for which the configuration changed.
+     * @param previous The configuration that was cached so far.
+     * @param current  The new configuration.
+     */
+    void configurationChanged(ConfigurationRequest request, ConfigurationResult previous, ConfigurationResult current);
+}
@@ -0,0 +1,148 @@
+/**
+ * Copyright (C) 2012 White Source Ltd.
+ * <p>
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * <p>
+ * http://www.apache.org/licenses/LICENSE-2.0
+ * <p>
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.whitesource.agent.client;
+
+import org.apache.commons.logging.Log;
+import org.apache.commons.logging.LogFactory;
+
+import javax.net.ssl.SSLSocket;
+import java.io.IOException;
+import java.net.*;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Warms up the connection to a service endpoint in the background, so the first request does not pay for it.
+ * <p>
+ * Warming up resolves the endpoint's host name, which populates the JVM's address cache, and for https endpoints
+ * completes a TLS handshake through the {@link SharedSslContexts shared context}, which puts a session in its cache.
+ * The connection itself is closed afterwards: the clients never reuse connections, but the handshake of their
+ * first request resumes the cached session instead of running a full one.
+ * <p>
+ * When the endpoint is reached through a system proxy, only the proxy's host name is resolved, as the proxy
+ * sets up the tunnel and may require authentication.
+ */
+final class ConnectionWarmer {
+
+    /* --- Static members --- */
+
+    private static final Log logger = LogFactory.getLog(ConnectionWarmer.class);
+
+    static final int DEFAULT_CONNECT_TIMEOUT_MILLIS = (int) TimeUnit.SECONDS.toMillis(10);
+
+    /**
+     * TLS 1.3 servers send the session ticket after the handshake, so it is awaited for up to this long.
+     */
+    static final int SESSION_TICKET_WAIT_MILLIS = (int) TimeUnit.SECONDS.toMillis(1);
+
+    private static final String HTTPS = "https";
+    private static final int HTTPS_PORT = 443;
+
+    private static final ExecutorService executor = Executors.newCachedThreadPool(new DaemonThreadFactory("wss-warm-up"));
+
+    /* --- Static methods --- */
+
+    /**
+     * Starts warming up the connection to the given endpoint.
+     *
+     * @param serviceUrl             Endpoint to warm up.
+     * @param ignoreCertificateCheck Whether the endpoint's certificate is trusted regardless of the trust store.
+     * @param useSystemProxy         Whether the endpoint is reached through the system proxy, if one is found.
+     * @return Future completing with true if the endpoint was warmed up, or false if warming up failed.
+     */
+    static CompletableFuture<Boolean> warmUp(String serviceUrl, boolean ignoreCertificateCheck, boolean useSystemProxy) {
+        return CompletableFuture.supplyAsync(() -> run(serviceUrl, ignoreCertificateCheck, useSystemProxy), executor);
+    }
+
+    /* --- Private methods --- */
+
+    private static boolean run(String serviceUrl, boolean ignoreCertificateCheck, boolean useSystemProxy) {
+        long start = System.currentTimeMillis();
+        try {
+            URI uri = new URI(serviceUrl);
+            String host = uri.getHost();
+            if (host == null) {
+                logger.debug("Not warming up " + serviceUrl + ": no host name");
+                return false;
+            }
+            boolean https = HTTPS.equalsIgnoreCase(uri.getScheme());
+
+            Proxy proxy = useSystemProxy ? selectProxy(uri) : Proxy.NO_PROXY;
+            if (proxy.type() != Proxy.Type.DIRECT && proxy.address() instanceof InetSocketAddress) {
+                InetAddress.getAllByName(((InetSocketAddress) proxy.address()).getHostString());
+            } else {
+                InetAddress[] addresses = InetAddress.getAllByName(host);
+                if (https) {
+                    int port = uri.getPort() < 0 ? HTTPS_PORT : uri.getPort();
+                    handshake(addresses[0], host, port, ignoreCertificateCheck);
+                }
+            }
+            logger.debug("Warmed up " + serviceUrl + " in " + (System.currentTimeMillis() - start) + " ms");
+            return true;
+        } catch (IOException | URISyntaxException | RuntimeException e) {
+            logger.debug("Failed to warm up " + serviceUrl + ": " + e.getMessage());
+            return false;
+        }
+    }
+
+    private static void handshake(InetAddress address, String host, int port, boolean ignoreCertificateCheck) throws IOException {
+        Socket socket = new Socket();
+        try {
+            socket.connect(new InetSocketAddress(address, port), DEFAULT_CONNECT_TIMEOUT_MILLIS);
+            socket.setSoTimeout(DEFAULT_CONNECT_TIMEOUT_MILLIS);
+            // the session is cached by host name and port, which is what the clients' connections look up
+            SSLSocket sslSocket = (SSLSocket) SharedSslContexts.get(ignoreCertificateCheck).getSocketFactory()
+                    .createSocket(socket, host, port, true);
+            socket = sslSocket;
+            sslSocket.startHandshake();
+            sslSocket.setSoTimeout(SESSION_TICKET_WAIT_MILLIS);
+            try {
+                sslSocket.getInputStream().read();
+            } catch (SocketTimeoutException e) {
+                // expected, nothing was requested
+            }
+        } finally {
+            try {
+                socket.close();
+            } catch (IOException e) {
+                // ignore
+            }
+        }
+    }
+
+    private static Proxy selectProxy(URI uri) {
+        ProxySelector selector = SystemProxyDiscovery.getProxySelector();
+        if (selector != null) {
+            List<Proxy> proxies = selector.select(uri);
+            if (proxies != null && !proxies.isEmpty() && proxies.get(0) != null) {
+                return proxies.get(0);
+            }
+        }
+        return Proxy.NO_PROXY;
+    }
+
+    /* --- Constructors --- */
+
+    /**
+     * Private default constructor
+     */
+    private ConnectionWarmer() {
+        // avoid instantiation
+    }
+}
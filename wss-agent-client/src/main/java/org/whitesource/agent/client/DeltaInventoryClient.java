@@ -0,0 +1,269 @@
+/**
+ * Copyright (C) 2012 White Source Ltd.
+ * <p>
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * <p>
+ * http://www.apache.org/licenses/LICENSE-2.0
+ * <p>
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.whitesource.agent.client;
+
+import org.apache.commons.logging.Log;
+import org.apache.commons.logging.LogFactory;
+import org.whitesource.agent.api.dispatch.UpdateInventoryRequest;
+import org.whitesource.agent.api.dispatch.UpdateInventoryResult;
+import org.whitesource.agent.api.dispatch.UpdateType;
+import org.whitesource.agent.api.model.AgentProjectInfo;
+import org.whitesource.agent.api.model.DependencyInfo;
+
+import java.io.File;
+import java.util.*;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * A client which turns full {@link UpdateType#OVERRIDE} inventory updates into incremental ones.
+ * <p>
+ * After every successful update the inventory of each project is recorded in an {@link InventorySnapshotStore}.
+ * On the next update, projects with a usable snapshot are sent as a {@link UpdateType#REMOVE} request holding the
+ * top level dependencies that are gone or changed, followed by an {@link UpdateType#APPEND} request holding the new
+ * or changed ones (and nothing else). A changed dependency is one whose sub tree differs from the snapshot.
+ * If either of them fails, the projects are overridden instead, so an applied removal never leaves the inventory
+ * incomplete.
+ * <p>
+ * Projects fall back to a regular override when:
+ * <ul>
+ *     <li>There is no snapshot, or it is older than the maximal snapshot age.</li>
+ *     <li>The project metadata (coordinates, tags etc.) has changed.</li>
+ *     <li>A top level dependency has no sha1, or a sha1 appears twice.</li>
+ *     <li>The delta is larger than the configured share of the inventory, so an override is about as cheap.</li>
+ * </ul>
+ * Requests aggregating modules and requests of other update types are passed as is.
+ */
+public class DeltaInventoryClient extends ForwardingWssServiceClient {
+
+    /* --- Static members --- */
+
+    private static final Log logger = LogFactory.getLog(DeltaInventoryClient.class);
+
+    public static final long DEFAULT_MAX_SNAPSHOT_AGE_MILLIS = TimeUnit.DAYS.toMillis(7);
+    public static final double DEFAULT_MAX_DELTA_RATIO = 0.5;
+
+    /* --- Members --- */
+
+    private final InventorySnapshotStore store;
+    private long maxSnapshotAgeMillis = DEFAULT_MAX_SNAPSHOT_AGE_MILLIS;
+    private double maxDeltaRatio = DEFAULT_MAX_DELTA_RATIO;
+
+    /* --- Constructors --- */
+
+    /**
+     * Constructor
+     *
+     * @param delegate          Client to send the updates to.
+     * @param snapshotDirectory Directory to keep the inventory snapshots in.
+     */
+    public DeltaInventoryClient(WssServiceClient delegate, File snapshotDirectory) {
+        this(delegate, new InventorySnapshotStore(snapshotDirectory));
+    }
+
+    /**
+     * Constructor
+     *
+     * @param delegate Client to send the updates to.
+     * @param store    Store of the inventory snapshots.
+     */
+    public DeltaInventoryClient(WssServiceClient delegate, InventorySnapshotStore store) {
+        super(delegate);
+        this.store = store;
+    }
+
+    /* --- Overridden methods --- */
+
+    @Override
+    public UpdateInventoryResult updateInventory(UpdateInventoryRequest request) throws WssServiceException {
+        Collection<AgentProjectInfo> projects = request.getProjects() == null ? Collections.emptyList() : request.getProjects();
+        UpdateType updateType = request.getUpdateType() == null ? UpdateType.OVERRIDE : request.getUpdateType();
+        if (updateType != UpdateType.OVERRIDE || request.aggregateModules()) {
+            // the server side inventory is no longer known
+            for (AgentProjectInfo project : projects) {
+                String key = projectKey(request, project);
+                if (key != null && updateType != UpdateType.SOFT_RUN) {
+                    store.delete(key);
+                }
+            }
+            return delegate.updateInventory(request);
+        }
+
+        List<AgentProjectInfo> overrides = new ArrayList<>();
+        List<AgentProjectInfo> removals = new ArrayList<>();
+        List<AgentProjectInfo> additions = new ArrayList<>();
+        List<AgentProjectInfo> deltas = new ArrayList<>();
+        Map<String, InventorySnapshotStore.Snapshot> snapshots = new LinkedHashMap<>();
+        List<String> unidentified = new ArrayList<>();
+        for (AgentProjectInfo project : projects) {
+            String key = projectKey(request, project);
+            InventorySnapshotStore.Snapshot current = key == null ? null : store.createSnapshot(project);
+            if (current == null) {
+                overrides.add(project);
+                if (key != null) {
+                    store.delete(key);
+                } else {
+                    unidentified.add(String.valueOf(project.getCoordinates()));
+                }
+                continue;
+            }
+            snapshots.put(key, current);
+            if (computeDelta(project, store.load(key), current, removals, additions)) {
+                deltas.add(project);
+            } else {
+                overrides.add(project);
+            }
+        }
+        if (!unidentified.isEmpty()) {
+            logger.debug("Projects without token or coordinates are always overridden: " + unidentified);
+        }
+
+        try {
+            UpdateInventoryResult result = null;
+            if (!overrides.isEmpty()) {
+                result = merge(result, delegate.updateInventory(copyRequest(request, overrides, UpdateType.OVERRIDE)));
+            }
+            if (!deltas.isEmpty()) {
+                try {
+                    if (!removals.isEmpty()) {
+                        result = merge(result, delegate.updateInventory(copyRequest(request, removals, UpdateType.REMOVE)));
+                    }
+                    result = merge(result, delegate.updateInventory(copyRequest(request, additions, UpdateType.APPEND)));
+                } catch (WssServiceException | RuntimeException e) {
+                    // the removals may have been applied without the additions
+                    logger.warn("Incremental inventory update failed, overriding the projects instead: " + e.getMessage());
+                    result = merge(result, delegate.updateInventory(copyRequest(request, deltas, UpdateType.OVERRIDE)));
+                }
+            }
+            if (result == null) {
+                // a request without projects
+                result = delegate.updateInventory(request);
+            }
+            for (Map.Entry<String, InventorySnapshotStore.Snapshot> entry : snapshots.entrySet()) {
+                store.save(entry.getKey(), entry.getValue());
+            }
+            return result;
+        } catch (WssServiceException | RuntimeException e) {
+            // a partially applied update leaves the server side inventory unknown
+            for (String key : snapshots.keySet()) {
+                store.delete(key);
+            }
+            throw e;
+        }
+    }
+
+    /* --- Private methods --- */
+
+    /**
+     * Adds the delta of the project to the removal and addition lists.
+     *
+     * @return False if the project should be overridden instead.
+     */
+    private boolean computeDelta(AgentProjectInfo project, InventorySnapshotStore.Snapshot previous,
+                                 InventorySnapshotStore.Snapshot current,
+                                 List<AgentProjectInfo> removals, List<AgentProjectInfo> additions) {
+        if (previous == null || previous.getDependencies() == null
+                || System.currentTimeMillis() - previous.getTimestamp() > maxSnapshotAgeMillis
+                || !current.getMetadataFingerprint().equals(previous.getMetadataFingerprint())) {
+            return false;
+        }
+
+        List<DependencyInfo> removed = new ArrayList<>();
+        for (Map.Entry<String, InventorySnapshotStore.DependencyEntry> entry : previous.getDependencies().entrySet()) {
+            InventorySnapshotStore.DependencyEntry currentEntry = current.getDependencies().get(entry.getKey());
+            if (currentEntry == null || !currentEntry.getFingerprint().equals(entry.getValue().getFingerprint())) {
+                removed.add(entry.getValue().toDependency(entry.getKey()));
+            }
+        }
+        List<DependencyInfo> added = new ArrayList<>();
+        for (DependencyInfo dependency : project.getDependencies()) {
+            InventorySnapshotStore.DependencyEntry previousEntry = previous.getDependencies().get(dependency.getSha1());
+            if (previousEntry == null || !previousEntry.getFingerprint().equals(current.getDependencies().get(dependency.getSha1()).getFingerprint())) {
+                added.add(dependency);
+            }
+        }
+
+        if (removed.size() + added.size() > maxDeltaRatio * Math.max(1, current.getDependencies().size())) {
+            return false;
+        }
+        if (!removed.isEmpty()) {
+            removals.add(RequestUtils.copyProject(project, removed));
+        }
+        // unchanged projects are still sent, with no dependencies, so the scan is registered
+        additions.add(RequestUtils.copyProject(project, added));
+        return true;
+    }
+
+    private String projectKey(UpdateInventoryRequest request, AgentProjectInfo project) {
+        return InventorySnapshotStore.projectKey(request.orgToken(), request.product(), request.productVersion(), project);
+    }
+
+    private UpdateInventoryRequest copyRequest(UpdateInventoryRequest request, List<AgentProjectInfo> projects, UpdateType updateType) {
+        UpdateInventoryRequest copy = new UpdateInventoryRequest(projects, updateType);
+        RequestUtils.copyRequestFields(request, copy);
+        return copy;
+    }
+
+    private UpdateInventoryResult merge(UpdateInventoryResult merged, UpdateInventoryResult result) {
+        if (merged == null || result == null) {
+            return merged == null ? result : merged;
+        }
+        addAllAbsent(merged.getUpdatedProjects(), result.getUpdatedProjects());
+        addAllAbsent(merged.getCreatedProjects(), result.getCreatedProjects());
+        if (result.getProjectNamesToIds() != null && merged.getProjectNamesToIds() != null) {
+            merged.getProjectNamesToIds().putAll(result.getProjectNamesToIds());
+        }
+        if (result.getProjectNamesToDetails() != null && merged.getProjectNamesToDetails() != null) {
+            merged.getProjectNamesToDetails().putAll(result.getProjectNamesToDetails());
+        }
+        return merged;
+    }
+
+    private void addAllAbsent(Collection<String> to, Collection<String> from) {
+        if (to != null && from != null) {
+            for (String value : from) {
+                if (!to.contains(value)) {
+                    to.add(value);
+                }
+            }
+        }
+    }
+
+    /* --- Getters / Setters --- */
+
+    public InventorySnapshotStore getStore() {
+        return store;
+    }
+
+    public long getMaxSnapshotAgeMillis() {
+        return maxSnapshotAgeMillis;
+    }
+
+    public void setMaxSnapshotAgeMillis(long maxSnapshotAgeMillis) {
+        this.maxSnapshotAgeMillis = maxSnapshotAgeMillis;
+    }
+
+    public double getMaxDeltaRatio() {
+        return maxDeltaRatio;
+    }
+
+    /**
+     * @param maxDeltaRatio Maximal number of removed and added dependencies, relative to the inventory size,
+     *                      for which a delta is sent rather than an override.
+     */
+    public void setMaxDeltaRatio(double maxDeltaRatio) {
+        this.maxDeltaRatio = maxDeltaRatio;
+    }
+}
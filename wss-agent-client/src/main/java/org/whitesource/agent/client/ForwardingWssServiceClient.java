@@ -0,0 +1,205 @@
+/**
+ * Copyright (C) 2012 White Source Ltd.
+ * <p>
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * <p>
+ * http://www.apache.org/licenses/LICENSE-2.0
+ * <p>
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.whitesource.agent.client;
+
+import org.apache.http.client.HttpClient;
+import org.whitesource.agent.api.dispatch.*;
+
+import java.util.Map;
+
+/**
+ * A client which forwards all calls to another client.
+ * Subclasses override the operations they decorate (caching, routing etc.).
+ */
+public class ForwardingWssServiceClient implements WssServiceClient {
+
+    /* --- Members --- */
+
+    protected final WssServiceClient delegate;
+
+    /* --- Constructors --- */
+
+    /**
+     * Constructor
+     *
+     * @param delegate Client to forward calls to.
+     */
+    public ForwardingWssServiceClient(WssServiceClient delegate) {
+        if (delegate == null) {
+            throw new IllegalArgumentException("Delegate client is null");
+        }
+        this.delegate = delegate;
+    }
+
+    /* --- Interface implementation methods --- */
+
+    @Override
+    public UpdateInventoryResult updateInventory(UpdateInventoryRequest request) throws WssServiceException {
+        return delegate.updateInventory(request);
+    }
+
+    @Deprecated
+    @Override
+    public CheckPoliciesResult checkPolicies(CheckPoliciesRequest request) throws WssServiceException {
+        return delegate.checkPolicies(request);
+    }
+
+    @Override
+    public CheckPolicyComplianceResult checkPolicyCompliance(CheckPolicyComplianceRequest request) throws WssServiceException {
+        return delegate.checkPolicyCompliance(request);
+    }
+
+    @Override
+    public AsyncCheckPolicyComplianceResult asyncCheckPolicyCompliance(AsyncCheckPolicyComplianceRequest request) throws WssServiceException {
+        return delegate.asyncCheckPolicyCompliance(request);
+    }
+
+    @Override
+    public AsyncCheckPolicyComplianceStatusResult asyncCheckPolicyComplianceStatus(AsyncCheckPolicyComplianceStatusRequest request) throws WssServiceException {
+        return delegate.asyncCheckPolicyComplianceStatus(request);
+    }
+
+    @Override
+    public AsyncCheckPolicyComplianceResponseResult asyncCheckPolicyComplianceResponse(AsyncCheckPolicyComplianceResponseRequest request) throws WssServiceException {
+        return delegate.asyncCheckPolicyComplianceResponse(request);
+    }
+
+    @Override
+    public GetDependencyDataResult getDependencyData(GetDependencyDataRequest request) throws WssServiceException {
+        return delegate.getDependencyData(request);
+    }
+
+    @Override
+    public SummaryScanResult summaryScan(SummaryScanRequest request) throws WssServiceException {
+        return delegate.summaryScan(request);
+    }
+
+    @Override
+    public CheckVulnerabilitiesResult checkVulnerabilities(CheckVulnerabilitiesRequest request) throws WssServiceException {
+        return delegate.checkVulnerabilities(request);
+    }
+
+    @Override
+    public ConfigurationResult getConfiguration(ConfigurationRequest request) throws WssServiceException {
+        return delegate.getConfiguration(request);
+    }
+
+    @Override
+    public SendMetricsResult sendMetrics(SendMetricsRequest request) throws WssServiceException {
+        return delegate.sendMetrics(request);
+    }
+
+    @Override
+    public UploadScaLogsResult uploadScaLogs(UploadScaLogsRequest request) throws WssServiceException {
+        return delegate.uploadScaLogs(request);
+    }
+
+    @Override
+    public JwtAccessTokenResult jwtAccessToken(JwtAccessTokenRequest request) throws WssServiceException {
+        return delegate.jwtAccessToken(request);
+    }
+
+    @Override
+    public String getServiceUrl() {
+        return delegate.getServiceUrl();
+    }
+
+    @Override
+    public HttpClient getHttpClient() {
+        return delegate.getHttpClient();
+    }
+
+    @Override
+    public int getConnectionTimeout() {
+        return delegate.getConnectionTimeout();
+    }
+
+    @Override
+    public int getConnectionTimeoutMinutes() {
+        return delegate.getConnectionTimeoutMinutes();
+    }
+
+    @Override
+    public boolean isProxy() {
+        return delegate.isProxy();
+    }
+
+    @Override
+    public String getProxyHost() {
+        return delegate.getProxyHost();
+    }
+
+    @Override
+    public int getProxyPort() {
+        return delegate.getProxyPort();
+    }
+
+    @Override
+    public String getProxyUsername() {
+        return delegate.getProxyUsername();
+    }
+
+    @Override
+    public String getProxyPassword() {
+        return delegate.getProxyPassword();
+    }
+
+    @Override
+    public boolean getIgnoreCertificateCheck() {
+        return delegate.getIgnoreCertificateCheck();
+    }
+
+    @Override
+    public void shutdown() {
+        delegate.shutdown();
+    }
+
+    @Override
+    public void setProxy(String host, int port, String username, String password) {
+        delegate.setProxy(host, port, username, password);
+    }
+
+    @Override
+    public void setConnectionTimeout(int timeout) {
+        delegate.setConnectionTimeout(timeout);
+    }
+
+    @Override
+    public void setHeaders(Map<String, String> headers) {
+        delegate.setHeaders(headers);
+    }
+
+    @Override
+    public Map<String, String> getHeaders() {
+        return delegate.getHeaders();
+    }
+
+    @Override
+    public void setMetricsListener(ClientMetricsListener metricsListener) {
+        delegate.setMetricsListener(metricsListener);
+    }
+
+    @Override
+    public ClientMetricsListener getMetricsListener() {
+        return delegate.getMetricsListener();
+    }
+
+    /* --- Getters --- */
+
+    public WssServiceClient getDelegate() {
+        return delegate;
+    }
+}
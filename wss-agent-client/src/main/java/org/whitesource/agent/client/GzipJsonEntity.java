@@ -0,0 +1,129 @@
+/**
+ * Copyright (C) 2012 White Source Ltd.
+ * <p>
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * <p>
+ * http://www.apache.org/licenses/LICENSE-2.0
+ * <p>
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.whitesource.agent.client;
+
+import com.google.gson.Gson;
+import org.apache.http.entity.AbstractHttpEntity;
+import org.apache.http.entity.ContentType;
+import org.whitesource.agent.utils.PayloadCodec;
+import org.whitesource.agent.utils.PayloadCodecs;
+
+import java.io.*;
+import java.nio.charset.StandardCharsets;
+
+/**
+ * A request body holding an object as compressed JSON, gzip unless another {@link PayloadCodec} is given.
+ * The JSON is streamed through the compressor as it is written, so it is never held in memory as a whole.
+ */
+class GzipJsonEntity extends AbstractHttpEntity {
+
+    /* --- Static members --- */
+
+    static final String GZIP = "gzip";
+
+    private static final int BUFFER_SIZE = 64 * 1024;
+
+    /* --- Members --- */
+
+    private final Gson gson;
+    private final Object payload;
+    private final RequestMetrics metrics;
+    private final PayloadCodec codec;
+
+    /* --- Constructors --- */
+
+    GzipJsonEntity(Gson gson, Object payload, RequestMetrics metrics) {
+        this(gson, payload, metrics, PayloadCodecs.gzip());
+    }
+
+    /**
+     * @param codec Compression format and level of the body, which also determines its content encoding.
+     */
+    GzipJsonEntity(Gson gson, Object payload, RequestMetrics metrics, PayloadCodec codec) {
+        this.gson = gson;
+        this.payload = payload;
+        this.metrics = metrics;
+        this.codec = codec;
+        setContentType(ContentType.APPLICATION_JSON.toString());
+        setContentEncoding(codec.getContentEncoding());
+        setChunked(true);
+    }
+
+    /* --- Interface implementation methods --- */
+
+    @Override
+    public boolean isRepeatable() {
+        return true;
+    }
+
+    @Override
+    public long getContentLength() {
+        return -1;
+    }
+
+    @Override
+    public InputStream getContent() throws IOException {
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        writeTo(out);
+        return new ByteArrayInputStream(out.toByteArray());
+    }
+
+    @Override
+    public void writeTo(OutputStream outStream) throws IOException {
+        CountingOutputStream compressed = new CountingOutputStream(outStream);
+        CountingOutputStream raw;
+        // closing the compressor completes the body, but the connection stream is left open
+        try (OutputStream encoder = codec.newOutputStream(new NonClosingOutputStream(compressed))) {
+            raw = new CountingOutputStream(encoder);
+            writeJson(raw);
+        }
+        compressed.flush();
+        metrics.setRawBytes(raw.getCount());
+        metrics.setCompressedBytes(compressed.getCount());
+    }
+
+    @Override
+    public boolean isStreaming() {
+        return false;
+    }
+
+    /* --- Private methods --- */
+
+    private void writeJson(OutputStream raw) throws IOException {
+        Writer writer = new BufferedWriter(new OutputStreamWriter(raw, StandardCharsets.UTF_8), BUFFER_SIZE);
+        gson.toJson(payload, writer);
+        writer.flush();
+    }
+
+    /* --- Nested classes --- */
+
+    private static class NonClosingOutputStream extends FilterOutputStream {
+
+        NonClosingOutputStream(OutputStream out) {
+            super(out);
+        }
+
+        @Override
+        public void write(byte[] bytes, int offset, int length) throws IOException {
+            out.write(bytes, offset, length);
+        }
+
+        @Override
+        public void close() throws IOException {
+            out.flush();
+        }
+    }
+}
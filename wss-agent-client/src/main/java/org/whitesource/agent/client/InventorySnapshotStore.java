@@ -0,0 +1,237 @@
+/**
+ * Copyright (C) 2012 White Source Ltd.
+ * <p>
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * <p>
+ * http://www.apache.org/licenses/LICENSE-2.0
+ * <p>
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.whitesource.agent.client;
+
+import com.google.gson.ExclusionStrategy;
+import com.google.gson.FieldAttributes;
+import com.google.gson.Gson;
+import com.google.gson.GsonBuilder;
+import com.google.gson.JsonParseException;
+import org.apache.commons.codec.digest.DigestUtils;
+import org.apache.commons.logging.Log;
+import org.apache.commons.logging.LogFactory;
+import org.whitesource.agent.api.model.AgentProjectInfo;
+import org.whitesource.agent.api.model.Coordinates;
+import org.whitesource.agent.api.model.DependencyInfo;
+import org.whitesource.agent.utils.JsonCodecs;
+
+import java.io.*;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.util.*;
+
+/**
+ * Keeps a compact snapshot of the last inventory acknowledged by the service for each project,
+ * one file per project under a base directory.
+ * <p>
+ * A snapshot holds the top level dependency sha1s, each with a fingerprint of its whole sub tree,
+ * and a fingerprint of the project metadata (coordinates, tags etc.). Dependency fingerprints cover only
+ * identity and content fields, so local details such as paths and modification times don't count as changes.
+ */
+public class InventorySnapshotStore {
+
+    /* --- Static members --- */
+
+    private static final Log logger = LogFactory.getLog(InventorySnapshotStore.class);
+
+    private static final String SNAPSHOT_SUFFIX = ".json";
+    private static final String TMP_SUFFIX = ".tmp";
+    private static final String KEY_SEPARATOR = "\n";
+
+    private static final Set<String> FINGERPRINT_FIELDS = new HashSet<>(Arrays.asList(
+            "groupId", "artifactId", "version", "type", "classifier", "scope", "optional", "isModule", "deduped",
+            "sha1", "fullHash", "commentlessSha1", "noNewLinesSha1", "otherPlatformSha1", "additionalSha1", "checksums",
+            "filename", "dependencyType", "hints", "vulnerabilityAnalysisResult", "commit", "architecture",
+            "languageVersion", "osInfo", "sourcePackageName", "release", "purl", "children"));
+    // the model adapters ignore exclusion strategies, so this uses the reflective adapters
+    private static final Gson FINGERPRINT = new GsonBuilder().addSerializationExclusionStrategy(new FingerprintFieldsStrategy()).create();
+
+    /* --- Members --- */
+
+    private final File directory;
+    private final Gson gson = JsonCodecs.compact();
+
+    /* --- Constructors --- */
+
+    /**
+     * Constructor
+     *
+     * @param directory Directory to keep the snapshot files in.
+     */
+    public InventorySnapshotStore(File directory) {
+        this.directory = directory;
+    }
+
+    /* --- Public methods --- */
+
+    /**
+     * @return Snapshot key of the project, or null if the project can't be identified.
+     */
+    public static String projectKey(String orgToken, String product, String productVersion, AgentProjectInfo project) {
+        String projectId = project.getProjectToken();
+        if (projectId == null || projectId.isEmpty()) {
+            Coordinates coordinates = project.getCoordinates();
+            if (coordinates == null || coordinates.getArtifactId() == null) {
+                return null;
+            }
+            projectId = coordinates.getGroupId() + KEY_SEPARATOR + coordinates.getArtifactId() + KEY_SEPARATOR + coordinates.getVersion();
+        }
+        return DigestUtils.sha1Hex(orgToken + KEY_SEPARATOR + product + KEY_SEPARATOR + productVersion + KEY_SEPARATOR + projectId);
+    }
+
+    /**
+     * Builds the snapshot of the given project.
+     *
+     * @return The snapshot, or null if the project can't be represented by one (dependencies without sha1 or duplicates).
+     */
+    public Snapshot createSnapshot(AgentProjectInfo project) {
+        Snapshot snapshot = new Snapshot();
+        snapshot.timestamp = System.currentTimeMillis();
+        snapshot.metadataFingerprint = DigestUtils.sha1Hex(gson.toJson(RequestUtils.copyProject(project, new ArrayList<>())));
+        for (DependencyInfo dependency : project.getDependencies()) {
+            String sha1 = dependency.getSha1();
+            if (sha1 == null || sha1.isEmpty() || snapshot.dependencies.containsKey(sha1)) {
+                return null;
+            }
+            DependencyEntry entry = new DependencyEntry();
+            entry.groupId = dependency.getGroupId();
+            entry.artifactId = dependency.getArtifactId();
+            entry.version = dependency.getVersion();
+            entry.fingerprint = DigestUtils.sha1Hex(FINGERPRINT.toJson(dependency));
+            snapshot.dependencies.put(sha1, entry);
+        }
+        return snapshot;
+    }
+
+    /**
+     * @param key Project key, see {@link #projectKey(String, String, String, AgentProjectInfo)}.
+     * @return The stored snapshot, or null if there is none or it can't be read.
+     */
+    public Snapshot load(String key) {
+        File file = file(key);
+        if (!file.isFile()) {
+            return null;
+        }
+        try (Reader reader = new InputStreamReader(new FileInputStream(file), StandardCharsets.UTF_8)) {
+            return gson.fromJson(reader, Snapshot.class);
+        } catch (IOException | JsonParseException e) {
+            logger.warn("Failed to read inventory snapshot " + file + ": " + e.getMessage());
+            return null;
+        }
+    }
+
+    public void save(String key, Snapshot snapshot) {
+        File file = file(key);
+        File tempFile = new File(directory, file.getName() + TMP_SUFFIX);
+        try {
+            if (!directory.isDirectory() && !directory.mkdirs()) {
+                throw new IOException("Unable to create directory " + directory);
+            }
+            try (Writer writer = new OutputStreamWriter(new FileOutputStream(tempFile), StandardCharsets.UTF_8)) {
+                gson.toJson(snapshot, writer);
+            }
+            Files.move(tempFile.toPath(), file.toPath(), StandardCopyOption.REPLACE_EXISTING);
+        } catch (IOException e) {
+            logger.warn("Failed to write inventory snapshot " + file + ": " + e.getMessage());
+            delete(key);
+        }
+    }
+
+    public void delete(String key) {
+        File file = file(key);
+        if (file.exists() && !file.delete()) {
+            logger.warn("Failed to delete inventory snapshot " + file);
+        }
+    }
+
+    /* --- Private methods --- */
+
+    private File file(String key) {
+        return new File(directory, key + SNAPSHOT_SUFFIX);
+    }
+
+    /* --- Getters --- */
+
+    public File getDirectory() {
+        return directory;
+    }
+
+    /* --- Nested classes --- */
+
+    // excluding the dependency fields which are local to the scanning machine (system path, last modified etc.)
+    private static class FingerprintFieldsStrategy implements ExclusionStrategy {
+
+        @Override
+        public boolean shouldSkipField(FieldAttributes field) {
+            return field.getDeclaringClass() == DependencyInfo.class && !FINGERPRINT_FIELDS.contains(field.getName());
+        }
+
+        @Override
+        public boolean shouldSkipClass(Class<?> clazz) {
+            return false;
+        }
+    }
+
+    /**
+     * The state of a single project as last acknowledged by the service.
+     */
+    public static class Snapshot {
+
+        private long timestamp;
+        private String metadataFingerprint;
+        private Map<String, DependencyEntry> dependencies = new HashMap<>();
+
+        public long getTimestamp() {
+            return timestamp;
+        }
+
+        public String getMetadataFingerprint() {
+            return metadataFingerprint;
+        }
+
+        /**
+         * @return Top level dependencies by sha1.
+         */
+        public Map<String, DependencyEntry> getDependencies() {
+            return dependencies;
+        }
+    }
+
+    /**
+     * A top level dependency, with enough details to remove it later on.
+     */
+    public static class DependencyEntry {
+
+        private String groupId;
+        private String artifactId;
+        private String version;
+        private String fingerprint;
+
+        /**
+         * @return Minimal dependency identifying this entry in a {@link org.whitesource.agent.api.dispatch.UpdateType#REMOVE} request.
+         */
+        public DependencyInfo toDependency(String sha1) {
+            DependencyInfo dependency = new DependencyInfo(groupId, artifactId, version);
+            dependency.setSha1(sha1);
+            return dependency;
+        }
+
+        public String getFingerprint() {
+            return fingerprint;
+        }
+    }
+}
@@ -0,0 +1,296 @@
+/**
+ * Copyright (C) 2012 White Source Ltd.
+ * <p>
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * <p>
+ * http://www.apache.org/licenses/LICENSE-2.0
+ * <p>
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.whitesource.agent.client;
+
+import com.google.gson.JsonElement;
+import com.google.gson.JsonObject;
+import com.google.gson.JsonParseException;
+import com.google.gson.JsonParser;
+import org.apache.commons.logging.Log;
+import org.apache.commons.logging.LogFactory;
+import org.whitesource.agent.api.dispatch.JwtAccessTokenResult;
+import org.whitesource.agent.api.dispatch.RequestFactory;
+
+import java.nio.charset.StandardCharsets;
+import java.util.Base64;
+import java.util.concurrent.*;
+
+/**
+ * Keeps a JWT access token per organization and user, so agents don't go to the service for every operation.
+ * <p>
+ * The expiry of a token is read from its <code>exp</code> claim. Tokens which are in use are refreshed on a
+ * background daemon thread ahead of their expiry, so callers are normally answered from memory. Concurrent
+ * requests for a missing or expired token share a single call to the service. Tokens which were not used
+ * since they were fetched are not refreshed, and are fetched again on demand.
+ */
+public class JwtTokenManager {
+
+    /* --- Static members --- */
+
+    private static final Log logger = LogFactory.getLog(JwtTokenManager.class);
+
+    public static final long DEFAULT_REFRESH_AHEAD_MILLIS = TimeUnit.MINUTES.toMillis(1);
+    public static final long DEFAULT_TTL_MILLIS = TimeUnit.MINUTES.toMillis(10);
+
+    private static final long MIN_REFRESH_DELAY_MILLIS = 1000;
+    private static final String EXPIRY_CLAIM = "exp";
+    private static final String KEY_SEPARATOR = ":";
+
+    /* --- Members --- */
+
+    private final WssServiceClient client;
+    private final RequestFactory requestFactory;
+    private final ConcurrentMap<String, CachedToken> tokens = new ConcurrentHashMap<>();
+    private final ConcurrentMap<String, CompletableFuture<CachedToken>> refreshes = new ConcurrentHashMap<>();
+    private final ScheduledThreadPoolExecutor scheduler;
+
+    private volatile long refreshAheadMillis = DEFAULT_REFRESH_AHEAD_MILLIS;
+    private volatile long defaultTtlMillis = DEFAULT_TTL_MILLIS;
+
+    /* --- Constructors --- */
+
+    /**
+     * Constructor
+     *
+     * @param service Service to fetch the tokens from.
+     */
+    public JwtTokenManager(WhitesourceService service) {
+        this(service.getClient(), service.getRequestFactory());
+    }
+
+    /**
+     * Constructor
+     *
+     * @param client         Client to fetch the tokens with.
+     * @param requestFactory Factory for the token requests, holding the agent details.
+     */
+    public JwtTokenManager(WssServiceClient client, RequestFactory requestFactory) {
+        this.client = client;
+        this.requestFactory = requestFactory;
+        scheduler = new ScheduledThreadPoolExecutor(1, new DaemonThreadFactory("wss-jwt-refresh"));
+        scheduler.setRemoveOnCancelPolicy(true);
+    }
+
+    /* --- Public methods --- */
+
+    /**
+     * @param orgToken Organization token.
+     * @param userKey  User key, may be null.
+     * @return A valid JWT access token.
+     * @throws WssServiceException If no valid token is cached and fetching one failed.
+     */
+    public String getToken(String orgToken, String userKey) throws WssServiceException {
+        return getTokenResult(orgToken, userKey).getJwtAccessToken();
+    }
+
+    /**
+     * @param orgToken Organization token.
+     * @param userKey  User key, may be null.
+     * @return The service answer holding a valid JWT access token.
+     * @throws WssServiceException If no valid token is cached and fetching one failed.
+     */
+    public JwtAccessTokenResult getTokenResult(String orgToken, String userKey) throws WssServiceException {
+        String key = key(orgToken, userKey);
+        CachedToken token = tokens.get(key);
+        long now = System.currentTimeMillis();
+        if (token != null && token.expiresAt > now) {
+            token.lastAccess = now;
+            return token.result;
+        }
+        return fetch(key, orgToken, userKey).result;
+    }
+
+    /**
+     * Drops the cached token, e.g. after the service rejected it. The next call fetches a new one.
+     *
+     * @param orgToken Organization token.
+     * @param userKey  User key, may be null.
+     */
+    public void invalidate(String orgToken, String userKey) {
+        CachedToken token = tokens.remove(key(orgToken, userKey));
+        if (token != null) {
+            token.cancelRefresh();
+        }
+    }
+
+    /**
+     * Stops the background refreshes and drops all cached tokens.
+     */
+    public void shutdown() {
+        scheduler.shutdownNow();
+        tokens.clear();
+    }
+
+    /* --- Package methods --- */
+
+    /**
+     * @param jwt Token to read.
+     * @return Expiry time of the token in milliseconds, or -1 if the token has no readable expiry claim.
+     */
+    static long parseExpiry(String jwt) {
+        String[] parts = jwt.split("\\.");
+        if (parts.length < 2) {
+            return -1;
+        }
+        try {
+            String payload = new String(Base64.getUrlDecoder().decode(parts[1]), StandardCharsets.UTF_8);
+            JsonObject claims = JsonParser.parseString(payload).getAsJsonObject();
+            JsonElement expiry = claims.get(EXPIRY_CLAIM);
+            return expiry == null || expiry.isJsonNull() ? -1 : TimeUnit.SECONDS.toMillis(expiry.getAsLong());
+        } catch (IllegalArgumentException | IllegalStateException | UnsupportedOperationException | JsonParseException e) {
+            return -1;
+        }
+    }
+
+    /* --- Private methods --- */
+
+    /**
+     * Fetches a new token, or waits for the fetch already running for the same key.
+     */
+    private CachedToken fetch(String key, String orgToken, String userKey) throws WssServiceException {
+        CompletableFuture<CachedToken> fetch = new CompletableFuture<>();
+        CompletableFuture<CachedToken> running = refreshes.putIfAbsent(key, fetch);
+        if (running != null) {
+            return await(running);
+        }
+        try {
+            JwtAccessTokenResult result = client.jwtAccessToken(requestFactory.newJwtAccessTokenRequest(orgToken, userKey));
+            if (result == null || result.getJwtAccessToken() == null || result.getJwtAccessToken().isEmpty()) {
+                throw new WssServiceException("Received an empty JWT access token");
+            }
+            long now = System.currentTimeMillis();
+            long expiresAt = parseExpiry(result.getJwtAccessToken());
+            CachedToken token = new CachedToken(result, expiresAt > 0 ? expiresAt : now + defaultTtlMillis, now);
+            CachedToken previous = tokens.put(key, token);
+            if (previous != null) {
+                previous.cancelRefresh();
+            }
+            scheduleRefresh(key, orgToken, userKey, token, refreshDelay(token, now));
+            fetch.complete(token);
+            return token;
+        } catch (WssServiceException | RuntimeException e) {
+            fetch.completeExceptionally(e);
+            throw e;
+        } finally {
+            refreshes.remove(key, fetch);
+        }
+    }
+
+    private CachedToken await(CompletableFuture<CachedToken> future) throws WssServiceException {
+        try {
+            return future.get();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new WssServiceException("Interrupted while waiting for a JWT access token", e);
+        } catch (ExecutionException e) {
+            Throwable cause = e.getCause();
+            if (cause instanceof WssServiceException) {
+                throw (WssServiceException) cause;
+            } else if (cause instanceof RuntimeException) {
+                throw (RuntimeException) cause;
+            }
+            throw new WssServiceException("Failed to fetch a JWT access token", cause);
+        }
+    }
+
+    /**
+     * @return Delay until the token should be refreshed: the refresh ahead time before its expiry,
+     * but no earlier than half its remaining lifetime.
+     */
+    private long refreshDelay(CachedToken token, long now) {
+        long remaining = token.expiresAt - now;
+        return Math.max(remaining - refreshAheadMillis, remaining / 2);
+    }
+
+    private void scheduleRefresh(String key, String orgToken, String userKey, CachedToken token, long delay) {
+        if (delay < MIN_REFRESH_DELAY_MILLIS || scheduler.isShutdown()) {
+            return;
+        }
+        try {
+            token.refresh = scheduler.schedule(() -> refresh(key, orgToken, userKey, token), delay, TimeUnit.MILLISECONDS);
+        } catch (RejectedExecutionException e) {
+            // shut down meanwhile
+        }
+    }
+
+    private void refresh(String key, String orgToken, String userKey, CachedToken token) {
+        if (tokens.get(key) != token) {
+            // invalidated or already replaced
+            return;
+        }
+        if (token.lastAccess == token.fetchedAt) {
+            tokens.remove(key, token);
+            return;
+        }
+        try {
+            fetch(key, orgToken, userKey);
+        } catch (WssServiceException | RuntimeException e) {
+            logger.warn("Failed to refresh JWT access token: " + e.getMessage());
+            long now = System.currentTimeMillis();
+            scheduleRefresh(key, orgToken, userKey, token, (token.expiresAt - now) / 2);
+        }
+    }
+
+    private String key(String orgToken, String userKey) {
+        return orgToken + KEY_SEPARATOR + userKey;
+    }
+
+    /* --- Getters / Setters --- */
+
+    public long getRefreshAheadMillis() {
+        return refreshAheadMillis;
+    }
+
+    public void setRefreshAheadMillis(long refreshAheadMillis) {
+        this.refreshAheadMillis = refreshAheadMillis;
+    }
+
+    public long getDefaultTtlMillis() {
+        return defaultTtlMillis;
+    }
+
+    /**
+     * @param defaultTtlMillis Lifetime to assume for tokens without an expiry claim.
+     */
+    public void setDefaultTtlMillis(long defaultTtlMillis) {
+        this.defaultTtlMillis = defaultTtlMillis;
+    }
+
+    /* --- Nested classes --- */
+
+    private static class CachedToken {
+
+        private final JwtAccessTokenResult result;
+        private final long expiresAt;
+        private final long fetchedAt;
+        private volatile long lastAccess;
+        private volatile ScheduledFuture<?> refresh;
+
+        CachedToken(JwtAccessTokenResult result, long expiresAt, long fetchedAt) {
+            this.result = result;
+            this.expiresAt = expiresAt;
+            this.fetchedAt = fetchedAt;
+            this.lastAccess = fetchedAt;
+        }
+
+        void cancelRefresh() {
+            ScheduledFuture<?> scheduled = refresh;
+            if (scheduled != null) {
+                scheduled.cancel(false);
+            }
+        }
+    }
+}
@@ -0,0 +1,76 @@
+/**
+ * Copyright (C) 2012 White Source Ltd.
+ * <p>
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * <p>
+ * http://www.apache.org/licenses/LICENSE-2.0
+ * <p>
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.whitesource.agent.client;
+
+import org.apache.http.HttpEntity;
+import org.apache.http.entity.HttpEntityWrapper;
+
+import java.io.IOException;
+import java.io.OutputStream;
+
+/**
+ * Wraps a request entity to measure when and how many times its body is written.
+ * Every write after the first one is a retry by the underlying http client.
+ */
+class MeteredHttpEntity extends HttpEntityWrapper {
+
+    /* --- Members --- */
+
+    private final RequestMetrics metrics;
+    private volatile long startNanos;
+    private volatile long writeEndNanos;
+
+    /* --- Constructors --- */
+
+    MeteredHttpEntity(HttpEntity entity, RequestMetrics metrics, long startNanos) {
+        super(entity);
+        this.metrics = metrics;
+        this.startNanos = startNanos;
+    }
+
+    /* --- Overridden methods --- */
+
+    @Override
+    public void writeTo(OutputStream outStream) throws IOException {
+        long writeStart = System.nanoTime();
+        if (metrics.getAttempts() == 0) {
+            metrics.addPhaseNanos(RequestPhase.CONNECT, writeStart - startNanos);
+        }
+        metrics.setAttempts(metrics.getAttempts() + 1);
+        CountingOutputStream counting = new CountingOutputStream(outStream);
+        super.writeTo(counting);
+        counting.flush();
+        writeEndNanos = System.nanoTime();
+        metrics.addPhaseNanos(RequestPhase.UPLOAD, writeEndNanos - writeStart);
+        metrics.setRequestBytes(counting.getCount());
+    }
+
+    /* --- Getters / Setters --- */
+
+    /**
+     * @return Time the body was last fully written, 0 if it wasn't.
+     */
+    long getWriteEndNanos() {
+        return writeEndNanos;
+    }
+
+    /**
+     * @param startNanos Time the request started being sent, from which connecting is measured.
+     */
+    void setStartNanos(long startNanos) {
+        this.startNanos = startNanos;
+    }
+}
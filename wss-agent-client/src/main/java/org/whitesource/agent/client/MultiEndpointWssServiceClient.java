@@ -0,0 +1,598 @@
+/**
+ * Copyright (C) 2012 White Source Ltd.
+ * <p>
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * <p>
+ * http://www.apache.org/licenses/LICENSE-2.0
+ * <p>
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.whitesource.agent.client;
+
+import org.apache.commons.logging.Log;
+import org.apache.commons.logging.LogFactory;
+import org.apache.http.client.HttpClient;
+import org.apache.http.conn.ConnectTimeoutException;
+import org.whitesource.agent.api.dispatch.*;
+
+import java.io.IOException;
+import java.net.ConnectException;
+import java.net.NoRouteToHostException;
+import java.net.UnknownHostException;
+import java.util.*;
+import java.util.concurrent.*;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * A client which spreads requests over several service endpoints (e.g. the application nodes of an on-premise
+ * installation), each served by its own {@link WssServiceClient}.
+ * <p>
+ * Each request goes to the healthy endpoint with the lowest exponentially weighted moving average of latency,
+ * weighted by the requests it is currently serving. Endpoints which were not used for a while are given another
+ * chance, so a node which recovered is measured again. An endpoint failing with a connection or server error is
+ * considered unhealthy for a back off period, and the request fails over to the next endpoint:
+ * <ul>
+ *     <li>Idempotent read requests fail over on any connection or server error.</li>
+ *     <li>Other requests fail over only if the connection could not be established, so they are never sent twice.</li>
+ * </ul>
+ * Optionally, an idempotent read request which is not answered within the 95th latency percentile of its endpoint
+ * is sent to the next endpoint as well, and the first answer is used.
+ */
+public class MultiEndpointWssServiceClient implements WssServiceClient {
+
+    /* --- Static members --- */
+
+    private static final Log logger = LogFactory.getLog(MultiEndpointWssServiceClient.class);
+
+    public static final String SERVICE_URL_SEPARATOR = ",";
+
+    public static final long DEFAULT_HEDGE_DELAY_MILLIS = 1000;
+    public static final long DEFAULT_PROBE_INTERVAL_MILLIS = TimeUnit.SECONDS.toMillis(30);
+    public static final long DEFAULT_INITIAL_BACKOFF_MILLIS = TimeUnit.SECONDS.toMillis(5);
+    public static final long DEFAULT_MAX_BACKOFF_MILLIS = TimeUnit.MINUTES.toMillis(2);
+
+    private static final double EWMA_ALPHA = 0.2;
+    private static final int MIN_HEDGE_SAMPLES = 20;
+    private static final double HEDGE_PERCENTILE = 95;
+
+    private static final Set<RequestType> IDEMPOTENT_TYPES = Collections.unmodifiableSet(EnumSet.of(
+            RequestType.GET_DEPENDENCY_DATA, RequestType.CHECK_VULNERABILITIES, RequestType.GET_CONFIGURATION));
+
+    /* --- Members --- */
+
+    private final List<Endpoint> endpoints;
+    private final ExecutorService hedgeExecutor;
+    private final LongAdder hedgedRequests = new LongAdder();
+    private final LongAdder failovers = new LongAdder();
+
+    private volatile boolean hedging;
+    private volatile long defaultHedgeDelayMillis = DEFAULT_HEDGE_DELAY_MILLIS;
+    private volatile long probeIntervalMillis = DEFAULT_PROBE_INTERVAL_MILLIS;
+    private volatile long initialBackoffMillis = DEFAULT_INITIAL_BACKOFF_MILLIS;
+    private volatile long maxBackoffMillis = DEFAULT_MAX_BACKOFF_MILLIS;
+
+    /* --- Constructors --- */
+
+    /**
+     * Constructor
+     *
+     * @param clients Clients of the endpoints, in order of preference for endpoints with no measurements yet.
+     */
+    public MultiEndpointWssServiceClient(List<? extends WssServiceClient> clients) {
+        if (clients == null || clients.isEmpty()) {
+            throw new IllegalArgumentException("No endpoint clients");
+        }
+        List<Endpoint> list = new ArrayList<>();
+        for (WssServiceClient client : clients) {
+            list.add(new Endpoint(client));
+        }
+        endpoints = Collections.unmodifiableList(list);
+        hedgeExecutor = Executors.newCachedThreadPool(new DaemonThreadFactory("wss-hedged-request"));
+    }
+
+    /* --- Static methods --- */
+
+    /**
+     * @param serviceUrls              URLs of the endpoints.
+     * @param setProxy                 Whether to use the proxy settings.
+     * @param connectionTimeoutMinutes Connection timeout of each endpoint.
+     * @param ignoreCertificateCheck   Whether to ignore certificate errors.
+     * @return A client over new {@link WssServiceClientImpl}s, one per URL.
+     */
+    public static MultiEndpointWssServiceClient forServiceUrls(List<String> serviceUrls, boolean setProxy,
+                                                               int connectionTimeoutMinutes, boolean ignoreCertificateCheck) {
+        List<WssServiceClient> clients = new ArrayList<>();
+        for (String serviceUrl : serviceUrls) {
+            clients.add(new WssServiceClientImpl(serviceUrl, setProxy, connectionTimeoutMinutes, ignoreCertificateCheck));
+        }
+        return new MultiEndpointWssServiceClient(clients);
+    }
+
+    /**
+     * @param serviceUrls Service URLs separated by {@value #SERVICE_URL_SEPARATOR}.
+     * @return The non empty URLs.
+     */
+    public static List<String> parseServiceUrls(String serviceUrls) {
+        List<String> urls = new ArrayList<>();
+        for (String url : serviceUrls.split(SERVICE_URL_SEPARATOR)) {
+            if (url.trim().length() > 0) {
+                urls.add(url.trim());
+            }
+        }
+        return urls;
+    }
+
+    /* --- Interface implementation methods --- */
+
+    @Override
+    public UpdateInventoryResult updateInventory(UpdateInventoryRequest request) throws WssServiceException {
+        return execute(request, client -> client.updateInventory(request));
+    }
+
+    @Deprecated
+    @Override
+    public CheckPoliciesResult checkPolicies(CheckPoliciesRequest request) throws WssServiceException {
+        return execute(request, client -> client.checkPolicies(request));
+    }
+
+    @Override
+    public CheckPolicyComplianceResult checkPolicyCompliance(CheckPolicyComplianceRequest request) throws WssServiceException {
+        return execute(request, client -> client.checkPolicyCompliance(request));
+    }
+
+    @Override
+    public AsyncCheckPolicyComplianceResult asyncCheckPolicyCompliance(AsyncCheckPolicyComplianceRequest request) throws WssServiceException {
+        return execute(request, client -> client.asyncCheckPolicyCompliance(request));
+    }
+
+    @Override
+    public AsyncCheckPolicyComplianceStatusResult asyncCheckPolicyComplianceStatus(AsyncCheckPolicyComplianceStatusRequest request) throws WssServiceException {
+        return execute(request, client -> client.asyncCheckPolicyComplianceStatus(request));
+    }
+
+    @Override
+    public AsyncCheckPolicyComplianceResponseResult asyncCheckPolicyComplianceResponse(AsyncCheckPolicyComplianceResponseRequest request) throws WssServiceException {
+        return execute(request, client -> client.asyncCheckPolicyComplianceResponse(request));
+    }
+
+    @Override
+    public GetDependencyDataResult getDependencyData(GetDependencyDataRequest request) throws WssServiceException {
+        return execute(request, client -> client.getDependencyData(request));
+    }
+
+    @Override
+    public SummaryScanResult summaryScan(SummaryScanRequest request) throws WssServiceException {
+        return execute(request, client -> client.summaryScan(request));
+    }
+
+    @Override
+    public CheckVulnerabilitiesResult checkVulnerabilities(CheckVulnerabilitiesRequest request) throws WssServiceException {
+        return execute(request, client -> client.checkVulnerabilities(request));
+    }
+
+    @Override
+    public ConfigurationResult getConfiguration(ConfigurationRequest request) throws WssServiceException {
+        return execute(request, client -> client.getConfiguration(request));
+    }
+
+    @Override
+    public SendMetricsResult sendMetrics(SendMetricsRequest request) throws WssServiceException {
+        return execute(request, client -> client.sendMetrics(request));
+    }
+
+    @Override
+    public UploadScaLogsResult uploadScaLogs(UploadScaLogsRequest request) throws WssServiceException {
+        return execute(request, client -> client.uploadScaLogs(request));
+    }
+
+    @Override
+    public JwtAccessTokenResult jwtAccessToken(JwtAccessTokenRequest request) throws WssServiceException {
+        return execute(request, client -> client.jwtAccessToken(request));
+    }
+
+    /**
+     * @return The URLs of all the endpoints, separated by {@value #SERVICE_URL_SEPARATOR}.
+     */
+    @Override
+    public String getServiceUrl() {
+        StringJoiner urls = new StringJoiner(SERVICE_URL_SEPARATOR);
+        for (Endpoint endpoint : endpoints) {
+            urls.add(endpoint.client.getServiceUrl());
+        }
+        return urls.toString();
+    }
+
+    /**
+     * @return The http client of the first endpoint.
+     */
+    @Override
+    public HttpClient getHttpClient() {
+        return first().getHttpClient();
+    }
+
+    @Override
+    public int getConnectionTimeout() {
+        return first().getConnectionTimeout();
+    }
+
+    @Override
+    public int getConnectionTimeoutMinutes() {
+        return first().getConnectionTimeoutMinutes();
+    }
+
+    @Override
+    public boolean isProxy() {
+        return first().isProxy();
+    }
+
+    @Override
+    public String getProxyHost() {
+        return first().getProxyHost();
+    }
+
+    @Override
+    public int getProxyPort() {
+        return first().getProxyPort();
+    }
+
+    @Override
+    public String getProxyUsername() {
+        return first().getProxyUsername();
+    }
+
+    @Override
+    public String getProxyPassword() {
+        return first().getProxyPassword();
+    }
+
+    @Override
+    public boolean getIgnoreCertificateCheck() {
+        return first().getIgnoreCertificateCheck();
+    }
+
+    @Override
+    public void shutdown() {
+        hedgeExecutor.shutdownNow();
+        for (Endpoint endpoint : endpoints) {
+            endpoint.client.shutdown();
+        }
+    }
+
+    @Override
+    public void setProxy(String host, int port, String username, String password) {
+        for (Endpoint endpoint : endpoints) {
+            endpoint.client.setProxy(host, port, username, password);
+        }
+    }
+
+    @Override
+    public void setConnectionTimeout(int timeout) {
+        for (Endpoint endpoint : endpoints) {
+            endpoint.client.setConnectionTimeout(timeout);
+        }
+    }
+
+    @Override
+    public void setHeaders(Map<String, String> headers) {
+        for (Endpoint endpoint : endpoints) {
+            endpoint.client.setHeaders(headers);
+        }
+    }
+
+    @Override
+    public Map<String, String> getHeaders() {
+        return first().getHeaders();
+    }
+
+    @Override
+    public void setMetricsListener(ClientMetricsListener metricsListener) {
+        for (Endpoint endpoint : endpoints) {
+            endpoint.client.setMetricsListener(metricsListener);
+        }
+    }
+
+    @Override
+    public ClientMetricsListener getMetricsListener() {
+        return first().getMetricsListener();
+    }
+
+    /* --- Private methods --- */
+
+    private <R> R execute(BaseRequest<?> request, Call<R> call) throws WssServiceException {
+        boolean idempotent = IDEMPOTENT_TYPES.contains(request.type());
+        long now = System.currentTimeMillis();
+        List<Endpoint> ranked = rank(now);
+        if (hedging && idempotent && ranked.size() > 1 && ranked.get(1).isHealthy(now)) {
+            return hedged(ranked.get(0), ranked.get(1), call);
+        }
+
+        WssServiceException failure = null;
+        for (Endpoint endpoint : ranked) {
+            if (failure != null) {
+                failovers.increment();
+            }
+            try {
+                return endpoint.call(call);
+            } catch (WssServiceException e) {
+                if (!canFailOver(e, idempotent)) {
+                    throw e;
+                }
+                logger.warn("Request to " + endpoint.getServiceUrl() + " failed: " + e.getMessage());
+                failure = e;
+            }
+        }
+        throw failure;
+    }
+
+    /**
+     * Sends the request to the primary endpoint, and to the secondary one as well if the primary did not answer
+     * within its hedge delay or failed. Returns the first answer.
+     */
+    private <R> R hedged(Endpoint primary, Endpoint secondary, Call<R> call) throws WssServiceException {
+        CompletionService<R> completionService = new ExecutorCompletionService<>(hedgeExecutor);
+        List<Future<R>> futures = new ArrayList<>();
+        WssServiceException failure = null;
+        try {
+            futures.add(completionService.submit(() -> primary.call(call)));
+            int pending = 1;
+            boolean hedged = false;
+            while (pending > 0) {
+                Future<R> done = hedged ? completionService.take()
+                        : completionService.poll(primary.hedgeDelayMillis(), TimeUnit.MILLISECONDS);
+                if (done == null) {
+                    hedgedRequests.increment();
+                    hedged = true;
+                    pending++;
+                    futures.add(completionService.submit(() -> secondary.call(call)));
+                    continue;
+                }
+                pending--;
+                try {
+                    return done.get();
+                } catch (ExecutionException e) {
+                    failure = unwrap(e);
+                    if (!hedged) {
+                        if (!canFailOver(failure, true)) {
+                            throw failure;
+                        }
+                        failovers.increment();
+                        hedged = true;
+                        pending++;
+                        futures.add(completionService.submit(() -> secondary.call(call)));
+                    }
+                }
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new WssServiceException("Interrupted while waiting for the service", e);
+        } catch (RejectedExecutionException e) {
+            throw new WssServiceException("Client is shut down", e);
+        } finally {
+            for (Future<R> future : futures) {
+                future.cancel(true);
+            }
+        }
+        throw failure;
+    }
+
+    /**
+     * @return The endpoints, healthy ones first, each group ordered by score.
+     */
+    private List<Endpoint> rank(long now) {
+        List<Endpoint> ranked = new ArrayList<>(endpoints);
+        Map<Endpoint, Double> scores = new HashMap<>();
+        for (Endpoint endpoint : ranked) {
+            scores.put(endpoint, endpoint.isHealthy(now) ? endpoint.score(now) : Double.MAX_VALUE);
+        }
+        ranked.sort(Comparator.comparing(scores::get));
+        return ranked;
+    }
+
+    private WssServiceException unwrap(ExecutionException e) {
+        Throwable cause = e.getCause();
+        if (cause instanceof WssServiceException) {
+            return (WssServiceException) cause;
+        } else if (cause instanceof RuntimeException) {
+            throw (RuntimeException) cause;
+        }
+        return new WssServiceException(cause.getMessage(), cause);
+    }
+
+    private boolean canFailOver(WssServiceException e, boolean idempotent) {
+        return idempotent ? isEndpointFailure(e) : isConnectFailure(e);
+    }
+
+    /**
+     * @return True if the endpoint could not answer, as opposed to answering with an error.
+     */
+    private static boolean isEndpointFailure(WssServiceException e) {
+        return e.getStatusCode() >= 500 || (e.getStatusCode() == 0 && e.getCause() instanceof IOException);
+    }
+
+    /**
+     * @return True if the request could not have reached the endpoint.
+     */
+    private static boolean isConnectFailure(WssServiceException e) {
+        Throwable cause = e.getCause();
+        return cause instanceof ConnectException || cause instanceof ConnectTimeoutException
+                || cause instanceof UnknownHostException || cause instanceof NoRouteToHostException;
+    }
+
+    private WssServiceClient first() {
+        return endpoints.get(0).client;
+    }
+
+    /* --- Getters / Setters --- */
+
+    public List<Endpoint> getEndpoints() {
+        return endpoints;
+    }
+
+    public boolean isHedging() {
+        return hedging;
+    }
+
+    /**
+     * @param hedging True to send slow idempotent read requests to a second endpoint as well.
+     */
+    public void setHedging(boolean hedging) {
+        this.hedging = hedging;
+    }
+
+    public long getDefaultHedgeDelayMillis() {
+        return defaultHedgeDelayMillis;
+    }
+
+    /**
+     * @param defaultHedgeDelayMillis Hedge delay of endpoints with too few measurements for a percentile.
+     */
+    public void setDefaultHedgeDelayMillis(long defaultHedgeDelayMillis) {
+        this.defaultHedgeDelayMillis = defaultHedgeDelayMillis;
+    }
+
+    public long getProbeIntervalMillis() {
+        return probeIntervalMillis;
+    }
+
+    /**
+     * @param probeIntervalMillis Time after which an unused endpoint is ranked as if it had no measurements.
+     */
+    public void setProbeIntervalMillis(long probeIntervalMillis) {
+        this.probeIntervalMillis = probeIntervalMillis;
+    }
+
+    public void setInitialBackoffMillis(long initialBackoffMillis) {
+        this.initialBackoffMillis = initialBackoffMillis;
+    }
+
+    public void setMaxBackoffMillis(long maxBackoffMillis) {
+        this.maxBackoffMillis = maxBackoffMillis;
+    }
+
+    public long getHedgedRequests() {
+        return hedgedRequests.sum();
+    }
+
+    public long getFailovers() {
+        return failovers.sum();
+    }
+
+    /* --- Nested classes --- */
+
+    private interface Call<R> {
+
+        R call(WssServiceClient client) throws WssServiceException;
+    }
+
+    /**
+     * A service endpoint and its measurements.
+     */
+    public class Endpoint {
+
+        private final WssServiceClient client;
+        private final LatencyHistogram latencyMicros = new LatencyHistogram();
+        private final AtomicInteger inFlight = new AtomicInteger();
+
+        private double ewmaMicros = Double.NaN;
+        private long lastUsed;
+        private int consecutiveFailures;
+        private long unhealthyUntil;
+
+        Endpoint(WssServiceClient client) {
+            this.client = client;
+        }
+
+        <R> R call(Call<R> call) throws WssServiceException {
+            inFlight.incrementAndGet();
+            long start = System.nanoTime();
+            try {
+                R result = call.call(client);
+                succeeded(TimeUnit.NANOSECONDS.toMicros(System.nanoTime() - start));
+                return result;
+            } catch (WssServiceException e) {
+                if (Thread.currentThread().isInterrupted() || e.getCause() instanceof InterruptedException) {
+                    // abandoned hedge, says nothing about the endpoint
+                    throw e;
+                }
+                if (isEndpointFailure(e)) {
+                    failed();
+                } else {
+                    succeeded(TimeUnit.NANOSECONDS.toMicros(System.nanoTime() - start));
+                }
+                throw e;
+            } finally {
+                inFlight.decrementAndGet();
+            }
+        }
+
+        synchronized boolean isHealthy(long now) {
+            return now >= unhealthyUntil;
+        }
+
+        /**
+         * @return The expected latency of the next request, 0 if unknown.
+         */
+        synchronized double score(long now) {
+            if (Double.isNaN(ewmaMicros) || now - lastUsed > probeIntervalMillis) {
+                return 0;
+            }
+            return ewmaMicros * (1 + inFlight.get());
+        }
+
+        long hedgeDelayMillis() {
+            if (latencyMicros.getCount() < MIN_HEDGE_SAMPLES) {
+                return defaultHedgeDelayMillis;
+            }
+            return Math.max(1, TimeUnit.MICROSECONDS.toMillis(latencyMicros.getValueAtPercentile(HEDGE_PERCENTILE)));
+        }
+
+        private synchronized void succeeded(long micros) {
+            latencyMicros.record(micros);
+            ewmaMicros = Double.isNaN(ewmaMicros) ? micros : EWMA_ALPHA * micros + (1 - EWMA_ALPHA) * ewmaMicros;
+            lastUsed = System.currentTimeMillis();
+            consecutiveFailures = 0;
+            unhealthyUntil = 0;
+        }
+
+        private synchronized void failed() {
+            int exponent = Math.min(consecutiveFailures, 20);
+            consecutiveFailures++;
+            lastUsed = System.currentTimeMillis();
+            unhealthyUntil = lastUsed + Math.min(maxBackoffMillis, initialBackoffMillis << exponent);
+        }
+
+        public String getServiceUrl() {
+            return client.getServiceUrl();
+        }
+
+        public WssServiceClient getClient() {
+            return client;
+        }
+
+        /**
+         * @return Moving average of the latency in microseconds, NaN if unknown.
+         */
+        public synchronized double getLatencyMicros() {
+            return ewmaMicros;
+        }
+
+        public LatencyHistogram getLatencyHistogram() {
+            return latencyMicros;
+        }
+
+        public synchronized boolean isHealthy() {
+            return isHealthy(System.currentTimeMillis());
+        }
+
+        public synchronized int getConsecutiveFailures() {
+            return consecutiveFailures;
+        }
+    }
+}
@@ -0,0 +1,61 @@
+/**
+ * Copyright (C) 2012 White Source Ltd.
+ * <p>
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * <p>
+ * http://www.apache.org/licenses/LICENSE-2.0
+ * <p>
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.whitesource.agent.client;
+
+import org.whitesource.agent.api.dispatch.CheckPolicyComplianceRequest;
+import org.whitesource.agent.api.dispatch.UpdateInventoryRequest;
+
+/**
+ * A single product of a {@link ProductBatchExecutor batch}: an inventory update, a policy compliance check, or both.
+ * When both are given, the policy compliance check is sent once the update succeeded.
+ */
+public class ProductBatchEntry {
+
+    /* --- Members --- */
+
+    private final String name;
+    private final UpdateInventoryRequest updateRequest;
+    private final CheckPolicyComplianceRequest policyComplianceRequest;
+
+    /* --- Constructors --- */
+
+    /**
+     * Constructor
+     *
+     * @param name                    Name identifying the entry in the results, usually the product name.
+     * @param updateRequest           Optional. Inventory update to send.
+     * @param policyComplianceRequest Optional. Policy compliance check to send.
+     */
+    public ProductBatchEntry(String name, UpdateInventoryRequest updateRequest, CheckPolicyComplianceRequest policyComplianceRequest) {
+        this.name = name;
+        this.updateRequest = updateRequest;
+        this.policyComplianceRequest = policyComplianceRequest;
+    }
+
+    /* --- Getters --- */
+
+    public String getName() {
+        return name;
+    }
+
+    public UpdateInventoryRequest getUpdateRequest() {
+        return updateRequest;
+    }
+
+    public CheckPolicyComplianceRequest getPolicyComplianceRequest() {
+        return policyComplianceRequest;
+    }
+}
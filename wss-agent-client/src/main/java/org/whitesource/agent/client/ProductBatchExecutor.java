@@ -0,0 +1,263 @@
+/**
+ * Copyright (C) 2012 White Source Ltd.
+ * <p>
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * <p>
+ * http://www.apache.org/licenses/LICENSE-2.0
+ * <p>
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.whitesource.agent.client;
+
+import org.apache.commons.logging.Log;
+import org.apache.commons.logging.LogFactory;
+import org.whitesource.agent.api.dispatch.*;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.List;
+import java.util.concurrent.*;
+
+/**
+ * Sends the requests of many products as a pipeline.
+ * <p>
+ * Requests are built and serialized on a pool of preparing threads while the ones prepared earlier are sent by a
+ * separate, bounded pool of sending threads, so the CPU bound work overlaps the network calls instead of waiting
+ * for them. At most {@code maxPrepared} entries are held prepared (in memory) but not yet sent.
+ * Each entry completes with its own {@link ProductBatchResult}; a failing entry does not affect the others.
+ * <p>
+ * Requests are serialized ahead only when the service uses a {@link WssServiceClientImpl} directly without an
+ * {@link AdmissionController}, as a prepared request holds its admission permit until it is sent. Any other
+ * client (caching, spooling, etc.) is called as is, still with the bounded number of requests in flight.
+ */
+public class ProductBatchExecutor {
+
+    /* --- Static members --- */
+
+    private static final Log logger = LogFactory.getLog(ProductBatchExecutor.class);
+
+    public static final int DEFAULT_MAX_IN_FLIGHT = 8;
+
+    private static final String THREAD_NAME_PREFIX = "wss-product-batch-";
+
+    /* --- Members --- */
+
+    private final WhitesourceService service;
+    private final ExecutorService preparers;
+    private final ExecutorService senders;
+    private final Semaphore prepared;
+
+    /* --- Constructors --- */
+
+    /**
+     * Constructor
+     *
+     * @param service WhiteSource service to send the requests through.
+     */
+    public ProductBatchExecutor(WhitesourceService service) {
+        this(service, Runtime.getRuntime().availableProcessors(), DEFAULT_MAX_IN_FLIGHT, 2 * DEFAULT_MAX_IN_FLIGHT);
+    }
+
+    /**
+     * Constructor
+     *
+     * @param service          WhiteSource service to send the requests through.
+     * @param preparingThreads Number of threads building and serializing requests.
+     * @param maxInFlight      Maximal number of requests sent concurrently.
+     * @param maxPrepared      Maximal number of entries prepared ahead of being sent.
+     */
+    public ProductBatchExecutor(WhitesourceService service, int preparingThreads, int maxInFlight, int maxPrepared) {
+        this.service = service;
+        this.preparers = Executors.newFixedThreadPool(Math.max(1, preparingThreads), new DaemonThreadFactory(THREAD_NAME_PREFIX + "prepare"));
+        this.senders = Executors.newFixedThreadPool(Math.max(1, maxInFlight), new DaemonThreadFactory(THREAD_NAME_PREFIX + "send"));
+        this.prepared = new Semaphore(Math.max(1, maxPrepared));
+    }
+
+    /* --- Public methods --- */
+
+    /**
+     * Sends all the entries and waits for them to complete.
+     *
+     * @param entries Entries to send.
+     * @return Results, in the order of the entries.
+     */
+    public List<ProductBatchResult> execute(Collection<ProductBatchEntry> entries) {
+        List<CompletableFuture<ProductBatchResult>> futures = new ArrayList<>(entries.size());
+        for (ProductBatchEntry entry : entries) {
+            futures.add(submit(entry));
+        }
+        List<ProductBatchResult> results = new ArrayList<>(futures.size());
+        for (CompletableFuture<ProductBatchResult> future : futures) {
+            results.add(future.join());
+        }
+        return results;
+    }
+
+    /**
+     * Queues the entry to be prepared and sent.
+     *
+     * @param entry Entry to send.
+     * @return Future completed with the entry's result, never exceptionally.
+     */
+    public CompletableFuture<ProductBatchResult> submit(ProductBatchEntry entry) {
+        CompletableFuture<ProductBatchResult> future = new CompletableFuture<>();
+        ProductBatchResult result = new ProductBatchResult(entry);
+        try {
+            preparers.execute(() -> prepare(result, future));
+        } catch (RejectedExecutionException e) {
+            fail(result, future, new WssServiceException("Batch executor was shut down", e));
+        }
+        return future;
+    }
+
+    /**
+     * Stops the threads; entries which were not sent yet complete with an error.
+     */
+    public void shutdown() {
+        for (Runnable pending : preparers.shutdownNow()) {
+            pending.run();
+        }
+        for (Runnable pending : senders.shutdownNow()) {
+            pending.run();
+        }
+    }
+
+    /* --- Private methods --- */
+
+    private void prepare(ProductBatchResult result, CompletableFuture<ProductBatchResult> future) {
+        if (preparers.isShutdown()) {
+            fail(result, future, new WssServiceException("Batch executor was shut down"));
+            return;
+        }
+        try {
+            prepared.acquire();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            fail(result, future, new WssServiceException("Interrupted while waiting to prepare " + result.getName(), e));
+            return;
+        }
+        Call<UpdateInventoryResult> update = null;
+        Call<CheckPolicyComplianceResult> policyCompliance;
+        try {
+            ProductBatchEntry entry = result.getEntry();
+            RequestFactory requestFactory = service.getRequestFactory();
+            WssServiceClient client = service.getClient();
+            update = entry.getUpdateRequest() == null ? null :
+                    prepare(requestFactory.newUpdateInventoryRequest(entry.getUpdateRequest()), client::updateInventory);
+            policyCompliance = entry.getPolicyComplianceRequest() == null ? null :
+                    prepare(requestFactory.newCheckPolicyComplianceRequest(entry.getPolicyComplianceRequest()), client::checkPolicyCompliance);
+        } catch (WssServiceException e) {
+            discard(update);
+            prepared.release();
+            fail(result, future, e);
+            return;
+        } catch (RuntimeException e) {
+            discard(update);
+            prepared.release();
+            fail(result, future, new WssServiceException("Failed to prepare " + result.getName() + ": " + e.getMessage(), e));
+            return;
+        }
+
+        Call<UpdateInventoryResult> updateCall = update;
+        try {
+            senders.execute(() -> send(result, updateCall, policyCompliance, future));
+        } catch (RejectedExecutionException e) {
+            discard(updateCall, policyCompliance);
+            prepared.release();
+            fail(result, future, new WssServiceException("Batch executor was shut down", e));
+        }
+    }
+
+    private void send(ProductBatchResult result, Call<UpdateInventoryResult> update,
+                      Call<CheckPolicyComplianceResult> policyCompliance, CompletableFuture<ProductBatchResult> future) {
+        try {
+            if (senders.isShutdown()) {
+                throw new WssServiceException("Batch executor was shut down");
+            }
+            if (update != null) {
+                Call<UpdateInventoryResult> call = update;
+                update = null;
+                result.setUpdateResult(call.call());
+            }
+            if (policyCompliance != null) {
+                Call<CheckPolicyComplianceResult> call = policyCompliance;
+                policyCompliance = null;
+                result.setPolicyComplianceResult(call.call());
+            }
+        } catch (WssServiceException e) {
+            result.setError(e);
+        } catch (RuntimeException e) {
+            result.setError(new WssServiceException("Failed to send " + result.getName() + ": " + e.getMessage(), e));
+        } finally {
+            // calls which were not made still hold their permits
+            discard(update, policyCompliance);
+            prepared.release();
+        }
+        if (!result.isSuccess()) {
+            logger.debug("Batch entry " + result.getName() + " failed: " + result.getError().getMessage());
+        }
+        future.complete(result);
+    }
+
+    /**
+     * @return The request, serialized now if the client supports it, to be sent by the returned call.
+     */
+    private <R, Q extends ServiceRequest<R>> Call<R> prepare(Q request, ServiceCall<Q, R> serviceCall) throws WssServiceException {
+        WssServiceClient client = service.getClient();
+        // a prepared request holds its admission permit until a sender runs it, so with admission control the
+        // queued requests could hold every permit while the senders wait for one
+        if (client instanceof WssServiceClientImpl && ((WssServiceClientImpl) client).getAdmissionController() == null) {
+            WssServiceClientImpl impl = (WssServiceClientImpl) client;
+            WssServiceClientImpl.PreparedRequest<R> preparedRequest = impl.prepare(request);
+            return new Call<R>() {
+                @Override
+                public R call() throws WssServiceException {
+                    return impl.execute(preparedRequest);
+                }
+
+                @Override
+                public void discard() {
+                    preparedRequest.discard();
+                }
+            };
+        }
+        return () -> serviceCall.call(request);
+    }
+
+    private static void discard(Call<?>... calls) {
+        for (Call<?> call : calls) {
+            if (call != null) {
+                call.discard();
+            }
+        }
+    }
+
+    private void fail(ProductBatchResult result, CompletableFuture<ProductBatchResult> future, WssServiceException error) {
+        result.setError(error);
+        future.complete(result);
+    }
+
+    /* --- Nested classes --- */
+
+    private interface Call<R> {
+
+        R call() throws WssServiceException;
+
+        /**
+         * Gives up the call, releasing what it holds.
+         */
+        default void discard() {
+        }
+    }
+
+    private interface ServiceCall<Q, R> {
+
+        R call(Q request) throws WssServiceException;
+    }
+}
@@ -0,0 +1,82 @@
+/**
+ * Copyright (C) 2012 White Source Ltd.
+ * <p>
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * <p>
+ * http://www.apache.org/licenses/LICENSE-2.0
+ * <p>
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.whitesource.agent.client;
+
+import org.whitesource.agent.api.dispatch.CheckPolicyComplianceResult;
+import org.whitesource.agent.api.dispatch.UpdateInventoryResult;
+
+/**
+ * The outcome of a single {@link ProductBatchEntry}. A failed entry holds its error and the results of the
+ * requests that were sent before it failed; it does not affect the other entries of the batch.
+ */
+public class ProductBatchResult {
+
+    /* --- Members --- */
+
+    private final ProductBatchEntry entry;
+    private UpdateInventoryResult updateResult;
+    private CheckPolicyComplianceResult policyComplianceResult;
+    private WssServiceException error;
+
+    /* --- Constructors --- */
+
+    ProductBatchResult(ProductBatchEntry entry) {
+        this.entry = entry;
+    }
+
+    /* --- Public methods --- */
+
+    /**
+     * @return True if all the requests of the entry were served.
+     */
+    public boolean isSuccess() {
+        return error == null;
+    }
+
+    /* --- Getters / Setters --- */
+
+    public ProductBatchEntry getEntry() {
+        return entry;
+    }
+
+    public String getName() {
+        return entry.getName();
+    }
+
+    public UpdateInventoryResult getUpdateResult() {
+        return updateResult;
+    }
+
+    void setUpdateResult(UpdateInventoryResult updateResult) {
+        this.updateResult = updateResult;
+    }
+
+    public CheckPolicyComplianceResult getPolicyComplianceResult() {
+        return policyComplianceResult;
+    }
+
+    void setPolicyComplianceResult(CheckPolicyComplianceResult policyComplianceResult) {
+        this.policyComplianceResult = policyComplianceResult;
+    }
+
+    public WssServiceException getError() {
+        return error;
+    }
+
+    void setError(WssServiceException error) {
+        this.error = error;
+    }
+}
@@ -0,0 +1,129 @@
+/**
+ * Copyright (C) 2012 White Source Ltd.
+ * <p>
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * <p>
+ * http://www.apache.org/licenses/LICENSE-2.0
+ * <p>
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.whitesource.agent.client;
+
+import org.whitesource.agent.api.dispatch.RequestType;
+
+/**
+ * The measurements taken while serving a single request.
+ * Durations are in nanoseconds, a phase which was not reached has a duration of 0.
+ */
+public class RequestMetrics {
+
+    /* --- Members --- */
+
+    private final RequestType requestType;
+    private final long[] phaseNanos = new long[RequestPhase.values().length];
+    private long totalNanos;
+    private long rawBytes;
+    private long compressedBytes;
+    private long requestBytes;
+    private int attempts;
+    private boolean success;
+
+    /* --- Constructors --- */
+
+    public RequestMetrics(RequestType requestType) {
+        this.requestType = requestType;
+    }
+
+    /* --- Public methods --- */
+
+    public void addPhaseNanos(RequestPhase phase, long nanos) {
+        phaseNanos[phase.ordinal()] += nanos;
+    }
+
+    public long getPhaseNanos(RequestPhase phase) {
+        return phaseNanos[phase.ordinal()];
+    }
+
+    /**
+     * @return Number of times the request body was re-sent, due to retries of the underlying http client.
+     */
+    public int getRetries() {
+        return Math.max(0, attempts - 1);
+    }
+
+    /**
+     * @return Size of the raw payload divided by its compressed size, 0 if there was no payload.
+     */
+    public double getCompressionRatio() {
+        return compressedBytes == 0 ? 0 : (double) rawBytes / compressedBytes;
+    }
+
+    /* --- Getters / Setters --- */
+
+    public RequestType getRequestType() {
+        return requestType;
+    }
+
+    public long getTotalNanos() {
+        return totalNanos;
+    }
+
+    public void setTotalNanos(long totalNanos) {
+        this.totalNanos = totalNanos;
+    }
+
+    /**
+     * @return UTF-8 size of the JSON payload before compression.
+     */
+    public long getRawBytes() {
+        return rawBytes;
+    }
+
+    public void setRawBytes(long rawBytes) {
+        this.rawBytes = rawBytes;
+    }
+
+    /**
+     * @return Size of the compressed and encoded payload.
+     */
+    public long getCompressedBytes() {
+        return compressedBytes;
+    }
+
+    public void setCompressedBytes(long compressedBytes) {
+        this.compressedBytes = compressedBytes;
+    }
+
+    /**
+     * @return Size of the whole request body, as written to the wire.
+     */
+    public long getRequestBytes() {
+        return requestBytes;
+    }
+
+    public void setRequestBytes(long requestBytes) {
+        this.requestBytes = requestBytes;
+    }
+
+    public int getAttempts() {
+        return attempts;
+    }
+
+    public void setAttempts(int attempts) {
+        this.attempts = attempts;
+    }
+
+    public boolean isSuccess() {
+        return success;
+    }
+
+    public void setSuccess(boolean success) {
+        this.success = success;
+    }
+}
@@ -0,0 +1,36 @@
+/**
+ * Copyright (C) 2012 White Source Ltd.
+ * <p>
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * <p>
+ * http://www.apache.org/licenses/LICENSE-2.0
+ * <p>
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.whitesource.agent.client;
+
+/**
+ * Enumeration of the timed phases of a single call to the WhiteSource service.
+ */
+public enum RequestPhase {
+    /** Converting the request projects to JSON. */
+    SERIALIZE,
+    /** Compressing and encoding the JSON payload. */
+    COMPRESS,
+    /** Waiting for a pooled connection, connecting and handshaking, up to the first body byte written. */
+    CONNECT,
+    /** Writing the request body. */
+    UPLOAD,
+    /** Waiting for the response headers after the body was written. */
+    SERVER,
+    /** Reading the response body. */
+    DOWNLOAD,
+    /** Parsing the response envelope and result. */
+    PARSE
+}
@@ -0,0 +1,52 @@
+/**
+ * Copyright (C) 2012 White Source Ltd.
+ * <p>
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * <p>
+ * http://www.apache.org/licenses/LICENSE-2.0
+ * <p>
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.whitesource.agent.client;
+
+import org.whitesource.agent.api.dispatch.RequestType;
+
+/**
+ * Enumeration of the priorities used by the {@link AdmissionController}, highest first.
+ */
+public enum RequestPriority {
+    /** Requests a build is waiting on, such as policy checks. */
+    BLOCKING,
+    /** Lookups of data the agent needs to continue. */
+    NORMAL,
+    /** Uploads whose result isn't waited on, such as inventory updates. */
+    BACKGROUND;
+
+    /**
+     * @return The default priority of the given request type.
+     */
+    public static RequestPriority of(RequestType requestType) {
+        switch (requestType) {
+            case CHECK_POLICIES:
+            case CHECK_POLICY_COMPLIANCE:
+            case ASYNC_CHECK_POLICY_COMPLIANCE:
+            case ASYNC_CHECK_POLICY_COMPLIANCE_STATUS:
+            case ASYNC_CHECK_POLICY_COMPLIANCE_RESPONSE:
+            case GET_CONFIGURATION:
+            case JWT_ACCESS_TOKEN:
+                return BLOCKING;
+            case UPDATE:
+            case UPLOAD_SCA_LOGS:
+            case SEND_METRICS:
+                return BACKGROUND;
+            default:
+                return NORMAL;
+        }
+    }
+}
@@ -0,0 +1,437 @@
+/**
+ * Copyright (C) 2012 White Source Ltd.
+ * <p>
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * <p>
+ * http://www.apache.org/licenses/LICENSE-2.0
+ * <p>
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.whitesource.agent.client;
+
+import com.google.gson.Gson;
+import com.google.gson.JsonParseException;
+import org.apache.commons.logging.Log;
+import org.apache.commons.logging.LogFactory;
+import org.whitesource.agent.api.dispatch.*;
+import org.whitesource.agent.utils.JsonCodecs;
+
+import java.io.*;
+import java.nio.channels.FileChannel;
+import java.nio.channels.FileLock;
+import java.nio.channels.OverlappingFileLockException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.StandardOpenOption;
+import java.util.*;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.zip.CRC32;
+import java.util.zip.GZIPInputStream;
+import java.util.zip.GZIPOutputStream;
+
+/**
+ * An append only, segmented journal of requests waiting to be sent to the service.
+ * <p>
+ * Requests are appended, gzip compressed, to the open segment of this process. Open segments are sealed by
+ * {@link #roll()}, after which they can be read by whichever process holds the spool lock (see {@link #tryLock()}).
+ * Sent records are acknowledged in a side file, and a segment is deleted once all its records are acknowledged.
+ * <p>
+ * Every record is written as its length, the record itself and its CRC32, so a record torn by a crash is detected
+ * and skipped along with anything after it in the same segment.
+ */
+public class RequestSpool implements Closeable {
+
+    /* --- Static members --- */
+
+    private static final Log logger = LogFactory.getLog(RequestSpool.class);
+
+    public static final long DEFAULT_MAX_SEGMENT_BYTES = 8 * 1024 * 1024;
+
+    /**
+     * Open segments untouched for this long belong to a process which died before sealing them.
+     */
+    static final long STALE_OPEN_SEGMENT_MILLIS = TimeUnit.MINUTES.toMillis(10);
+
+    private static final String SEGMENT_PREFIX = "spool-";
+    private static final String OPEN_SUFFIX = ".open";
+    private static final String SEALED_SUFFIX = ".spool";
+    private static final String ACK_SUFFIX = ".ack";
+    private static final String LOCK_FILE = "spool.lock";
+    private static final int MAX_RECORD_BYTES = 512 * 1024 * 1024;
+
+    private static final AtomicInteger segmentCounter = new AtomicInteger();
+
+    private static final Map<RequestType, Class<? extends BaseRequest<?>>> REQUEST_CLASSES = new EnumMap<>(RequestType.class);
+
+    static {
+        REQUEST_CLASSES.put(RequestType.UPDATE, UpdateInventoryRequest.class);
+        REQUEST_CLASSES.put(RequestType.SEND_METRICS, SendMetricsRequest.class);
+        REQUEST_CLASSES.put(RequestType.UPLOAD_SCA_LOGS, UploadScaLogsRequest.class);
+    }
+
+    /* --- Members --- */
+
+    private final File directory;
+    private final Gson gson = JsonCodecs.compact();
+    private final String processId = UUID.randomUUID().toString().substring(0, 8);
+
+    private long maxSegmentBytes = DEFAULT_MAX_SEGMENT_BYTES;
+    private File openSegment;
+    private FileOutputStream openFile;
+    private DataOutputStream openStream;
+    private long openBytes;
+    private FileChannel lockChannel;
+    private FileLock lock;
+
+    /* --- Constructors --- */
+
+    /**
+     * Constructor
+     *
+     * @param directory Directory to keep the segments in, shared by all the processes using the spool.
+     */
+    public RequestSpool(File directory) {
+        this.directory = directory;
+    }
+
+    /* --- Public methods --- */
+
+    /**
+     * @return True if requests of the given type can be spooled.
+     */
+    public static boolean isSupported(RequestType type) {
+        return REQUEST_CLASSES.containsKey(type);
+    }
+
+    /**
+     * Appends the request to the open segment of this process, sealing it if it grew beyond the maximal segment size.
+     * The record is handed to the operating system before returning, but not forced to the disk.
+     *
+     * @param request Request to spool.
+     * @throws IOException If the record could not be written.
+     */
+    public synchronized void append(BaseRequest<?> request) throws IOException {
+        if (!isSupported(request.type())) {
+            throw new IllegalArgumentException("Requests of type " + request.type() + " can't be spooled");
+        }
+        ByteArrayOutputStream record = new ByteArrayOutputStream();
+        DataOutputStream out = new DataOutputStream(record);
+        out.writeUTF(request.type().name());
+        out.writeLong(System.currentTimeMillis());
+        try (Writer writer = new OutputStreamWriter(new GZIPOutputStream(out), StandardCharsets.UTF_8)) {
+            gson.toJson(request, writer);
+        }
+        byte[] bytes = record.toByteArray();
+        CRC32 crc = new CRC32();
+        crc.update(bytes);
+
+        if (openStream == null) {
+            open();
+        }
+        openStream.writeInt(bytes.length);
+        openStream.write(bytes);
+        openStream.writeLong(crc.getValue());
+        openStream.flush();
+        openBytes += bytes.length + 12;
+        if (openBytes >= maxSegmentBytes) {
+            roll();
+        }
+    }
+
+    /**
+     * Seals the open segment of this process, if any, making its records available for sending.
+     */
+    public synchronized void roll() throws IOException {
+        if (openStream == null) {
+            return;
+        }
+        openStream.flush();
+        openFile.getFD().sync();
+        openStream.close();
+        openStream = null;
+        openFile = null;
+        File sealed = new File(directory, openSegment.getName().replace(OPEN_SUFFIX, SEALED_SUFFIX));
+        Files.move(openSegment.toPath(), sealed.toPath());
+        openSegment = null;
+    }
+
+    /**
+     * Takes the spool lock, which must be held for reading and acknowledging segments.
+     *
+     * @return True if the lock is now held by this spool, false if another spool or process holds it.
+     */
+    public synchronized boolean tryLock() throws IOException {
+        if (lock != null) {
+            return true;
+        }
+        mkdirs();
+        FileChannel channel = FileChannel.open(new File(directory, LOCK_FILE).toPath(),
+                StandardOpenOption.CREATE, StandardOpenOption.WRITE);
+        try {
+            lock = channel.tryLock();
+        } catch (OverlappingFileLockException e) {
+            lock = null;
+        }
+        if (lock == null) {
+            channel.close();
+            return false;
+        }
+        lockChannel = channel;
+        return true;
+    }
+
+    public synchronized void unlock() throws IOException {
+        if (lock != null) {
+            lock.release();
+            lockChannel.close();
+            lock = null;
+            lockChannel = null;
+        }
+    }
+
+    /**
+     * Lists the sealed segments, oldest first. Open segments of processes that died are sealed on the way.
+     * Requires the spool lock.
+     */
+    public synchronized List<Segment> segments() {
+        File[] files = directory.listFiles((dir, name) -> name.startsWith(SEGMENT_PREFIX));
+        List<Segment> segments = new ArrayList<>();
+        if (files == null) {
+            return segments;
+        }
+        long now = System.currentTimeMillis();
+        for (File file : files) {
+            String name = file.getName();
+            if (name.endsWith(OPEN_SUFFIX) && !file.equals(openSegment) && now - file.lastModified() > STALE_OPEN_SEGMENT_MILLIS) {
+                File sealed = new File(directory, name.replace(OPEN_SUFFIX, SEALED_SUFFIX));
+                if (file.renameTo(sealed)) {
+                    logger.info("Recovered spool segment " + sealed.getName() + " of a previous run");
+                    segments.add(new Segment(sealed));
+                }
+            } else if (name.endsWith(SEALED_SUFFIX)) {
+                segments.add(new Segment(file));
+            }
+        }
+        segments.sort(Comparator.comparing(segment -> segment.file.getName()));
+        return segments;
+    }
+
+    /**
+     * @return True if there are no segments, open or sealed, in the spool directory.
+     */
+    public boolean isEmpty() {
+        String[] names = directory.list((dir, name) -> name.startsWith(SEGMENT_PREFIX) && !name.endsWith(ACK_SUFFIX));
+        return names == null || names.length == 0;
+    }
+
+    /**
+     * Seals the open segment and releases the spool lock. Spooled records are kept for the next run.
+     */
+    @Override
+    public synchronized void close() throws IOException {
+        try {
+            roll();
+        } finally {
+            unlock();
+        }
+    }
+
+    /* --- Private methods --- */
+
+    private void open() throws IOException {
+        mkdirs();
+        String name = String.format("%s%016x-%s-%06d%s", SEGMENT_PREFIX, System.currentTimeMillis(), processId,
+                segmentCounter.incrementAndGet(), OPEN_SUFFIX);
+        openSegment = new File(directory, name);
+        openFile = new FileOutputStream(openSegment);
+        openStream = new DataOutputStream(new BufferedOutputStream(openFile));
+        openBytes = 0;
+    }
+
+    private void mkdirs() throws IOException {
+        if (!directory.isDirectory() && !directory.mkdirs()) {
+            throw new IOException("Unable to create directory " + directory);
+        }
+    }
+
+    /* --- Getters / Setters --- */
+
+    public File getDirectory() {
+        return directory;
+    }
+
+    public synchronized long getMaxSegmentBytes() {
+        return maxSegmentBytes;
+    }
+
+    public synchronized void setMaxSegmentBytes(long maxSegmentBytes) {
+        this.maxSegmentBytes = maxSegmentBytes;
+    }
+
+    /* --- Nested classes --- */
+
+    /**
+     * A sealed segment of the spool.
+     */
+    public class Segment {
+
+        private final File file;
+        private final File ackFile;
+
+        Segment(File file) {
+            this.file = file;
+            this.ackFile = new File(file.getPath() + ACK_SUFFIX);
+        }
+
+        /**
+         * @return The records of the segment which were not acknowledged yet. If there are none, the segment is deleted.
+         */
+        public List<SpooledRequest> read() throws IOException {
+            Set<Integer> acknowledged = acknowledged();
+            List<SpooledRequest> records = new ArrayList<>();
+            try (DataInputStream in = new DataInputStream(new BufferedInputStream(new FileInputStream(file)))) {
+                for (int index = 0; ; index++) {
+                    byte[] bytes = readRecord(in);
+                    if (bytes == null) {
+                        break;
+                    }
+                    if (!acknowledged.contains(index)) {
+                        SpooledRequest record = parse(index, bytes);
+                        if (record != null) {
+                            records.add(record);
+                        } else {
+                            acknowledge(index);
+                        }
+                    }
+                }
+            }
+            if (records.isEmpty()) {
+                delete();
+            }
+            return records;
+        }
+
+        /**
+         * Marks a record as done, so it is not read again.
+         */
+        public void acknowledge(int index) throws IOException {
+            try (Writer writer = new OutputStreamWriter(new FileOutputStream(ackFile, true), StandardCharsets.UTF_8)) {
+                writer.write(index + "\n");
+            }
+        }
+
+        public void delete() {
+            if (!file.delete() && file.exists()) {
+                logger.warn("Failed to delete spool segment " + file);
+            }
+            if (!ackFile.delete() && ackFile.exists()) {
+                logger.warn("Failed to delete spool acknowledgements " + ackFile);
+            }
+        }
+
+        public String getName() {
+            return file.getName();
+        }
+
+        private Set<Integer> acknowledged() throws IOException {
+            Set<Integer> indexes = new HashSet<>();
+            if (ackFile.isFile()) {
+                for (String line : Files.readAllLines(ackFile.toPath(), StandardCharsets.UTF_8)) {
+                    try {
+                        indexes.add(Integer.parseInt(line.trim()));
+                    } catch (NumberFormatException e) {
+                        // torn line
+                    }
+                }
+            }
+            return indexes;
+        }
+
+        /**
+         * @return The record, or null at the end of the segment or at a torn record.
+         */
+        private byte[] readRecord(DataInputStream in) throws IOException {
+            try {
+                int length = in.readInt();
+                if (length <= 0 || length > MAX_RECORD_BYTES) {
+                    logger.warn("Skipping the corrupt tail of spool segment " + file.getName());
+                    return null;
+                }
+                byte[] bytes = new byte[length];
+                in.readFully(bytes);
+                long expectedCrc = in.readLong();
+                CRC32 crc = new CRC32();
+                crc.update(bytes);
+                if (crc.getValue() != expectedCrc) {
+                    logger.warn("Skipping the corrupt tail of spool segment " + file.getName());
+                    return null;
+                }
+                return bytes;
+            } catch (EOFException e) {
+                return null;
+            }
+        }
+
+        private SpooledRequest parse(int index, byte[] bytes) {
+            try (DataInputStream in = new DataInputStream(new ByteArrayInputStream(bytes))) {
+                RequestType type = RequestType.valueOf(in.readUTF());
+                long timestamp = in.readLong();
+                Class<? extends BaseRequest<?>> requestClass = REQUEST_CLASSES.get(type);
+                if (requestClass == null) {
+                    throw new IllegalArgumentException("Unsupported request type " + type);
+                }
+                try (Reader reader = new InputStreamReader(new GZIPInputStream(in), StandardCharsets.UTF_8)) {
+                    return new SpooledRequest(this, index, timestamp, gson.fromJson(reader, requestClass));
+                }
+            } catch (IOException | JsonParseException | IllegalArgumentException e) {
+                logger.warn("Dropping unreadable record " + index + " of spool segment " + file.getName() + ": " + e.getMessage());
+                return null;
+            }
+        }
+    }
+
+    /**
+     * A request read back from the spool.
+     */
+    public static class SpooledRequest {
+
+        private final Segment segment;
+        private final int index;
+        private final long timestamp;
+        private final BaseRequest<?> request;
+
+        SpooledRequest(Segment segment, int index, long timestamp, BaseRequest<?> request) {
+            this.segment = segment;
+            this.index = index;
+            this.timestamp = timestamp;
+            this.request = request;
+        }
+
+        public void acknowledge() throws IOException {
+            segment.acknowledge(index);
+        }
+
+        public Segment getSegment() {
+            return segment;
+        }
+
+        public int getIndex() {
+            return index;
+        }
+
+        public long getTimestamp() {
+            return timestamp;
+        }
+
+        public BaseRequest<?> getRequest() {
+            return request;
+        }
+    }
+}
@@ -0,0 +1,106 @@
+/**
+ * Copyright (C) 2012 White Source Ltd.
+ * <p>
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * <p>
+ * http://www.apache.org/licenses/LICENSE-2.0
+ * <p>
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.whitesource.agent.client;
+
+import org.whitesource.agent.api.dispatch.BaseRequest;
+import org.whitesource.agent.api.model.AgentProjectInfo;
+import org.whitesource.agent.api.model.DependencyInfo;
+
+import java.util.*;
+
+/**
+ * Utility methods for deriving new requests from existing ones.
+ */
+final class RequestUtils {
+
+    /* --- Static methods --- */
+
+    /**
+     * Copies all the request properties except its type and projects.
+     *
+     * @param from Request to copy from.
+     * @param to   Request to copy to.
+     */
+    static void copyRequestFields(BaseRequest<?> from, BaseRequest<?> to) {
+        to.setAgent(from.agent());
+        to.setAgentVersion(from.agentVersion());
+        to.setPluginVersion(from.pluginVersion());
+        to.setOrgToken(from.orgToken());
+        to.setUserKey(from.userKey());
+        to.setRequesterEmail(from.requesterEmail());
+        to.setProduct(from.product());
+        to.setProductVersion(from.productVersion());
+        to.setProductToken(from.productToken());
+        to.setTimeStamp(from.timeStamp());
+        to.setAggregateModules(from.aggregateModules());
+        to.setPreserveModuleStructure(from.preserveModuleStructure());
+        to.setAggregateProjectName(from.aggregateProjectName());
+        to.setAggregateProjectToken(from.aggregateProjectToken());
+        to.setLogData(from.logData());
+        to.setScanComment(from.scanComment());
+        to.setExtraProperties(from.getExtraProperties());
+        to.setScanSummaryInfo(from.getScanSummaryInfo());
+        to.setContributions(from.getContributions());
+    }
+
+    /**
+     * @param project      Project to copy.
+     * @param dependencies Dependencies of the copy.
+     * @return Shallow copy of the project with the given dependencies.
+     */
+    static AgentProjectInfo copyProject(AgentProjectInfo project, List<DependencyInfo> dependencies) {
+        AgentProjectInfo copy = new AgentProjectInfo();
+        copy.setCoordinates(project.getCoordinates());
+        copy.setParentCoordinates(project.getParentCoordinates());
+        copy.setProjectToken(project.getProjectToken());
+        copy.setProjectSetupStatus(project.getProjectSetupStatus());
+        copy.setProjectSetupDescription(project.getProjectSetupDescription());
+        copy.getProjectTags().addAll(project.getProjectTags());
+        copy.setViaLanguageName(project.getViaLanguageName());
+        copy.setSecretFindings(project.getSecretFindings());
+        copy.setDependencies(dependencies);
+        return copy;
+    }
+
+    /**
+     * Collects the sha1 of the given dependencies and all their descendants.
+     *
+     * @param dependencies Dependencies to traverse.
+     * @param sha1s        Collection to add the non empty sha1s to.
+     */
+    static void collectSha1s(Collection<DependencyInfo> dependencies, Collection<String> sha1s) {
+        if (dependencies == null) {
+            return;
+        }
+        for (DependencyInfo dependency : dependencies) {
+            if (dependency.getSha1() != null && dependency.getSha1().length() > 0) {
+                sha1s.add(dependency.getSha1());
+            }
+            if (dependency.hasChildren()) {
+                collectSha1s(dependency.getChildren(), sha1s);
+            }
+        }
+    }
+
+    /* --- Constructors --- */
+
+    /**
+     * Private default constructor
+     */
+    private RequestUtils() {
+        // avoid instantiation
+    }
+}
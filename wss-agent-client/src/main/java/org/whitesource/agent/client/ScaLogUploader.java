@@ -0,0 +1,280 @@
+/**
+ * Copyright (C) 2012 White Source Ltd.
+ * <p>
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * <p>
+ * http://www.apache.org/licenses/LICENSE-2.0
+ * <p>
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.whitesource.agent.client;
+
+import com.google.gson.Gson;
+import com.google.gson.JsonParseException;
+import org.apache.commons.codec.digest.DigestUtils;
+import org.apache.commons.logging.Log;
+import org.apache.commons.logging.LogFactory;
+import org.whitesource.agent.api.dispatch.UploadScaLogsRequest;
+import org.whitesource.agent.api.dispatch.UploadScaLogsResult;
+import org.whitesource.agent.utils.JsonCodecs;
+
+import java.io.*;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.StandardOpenOption;
+import java.util.Map;
+import java.util.UUID;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Uploads agent log files to the service, one {@link UploadScaLogsRequest} per chunk.
+ * <p>
+ * The file is read through a single buffer of the chunk size, so files of any size are uploaded in bounded memory.
+ * Chunks end at line breaks where possible, and never in the middle of a character. Each chunk is compressed
+ * on its way out by the client transport. A failed chunk is retried a few times. If it still fails, the upload
+ * can be resumed from that chunk by uploading the same, unchanged file again with the same uploader, or with
+ * any uploader sharing its state directory.
+ */
+public class ScaLogUploader {
+
+    /* --- Static members --- */
+
+    private static final Log logger = LogFactory.getLog(ScaLogUploader.class);
+
+    public static final int DEFAULT_CHUNK_BYTES = 1024 * 1024;
+    public static final int DEFAULT_MAX_ATTEMPTS = 3;
+    public static final long DEFAULT_RETRY_DELAY_MILLIS = 1000;
+
+    private static final String STATE_PREFIX = "log-upload-";
+    private static final String STATE_SUFFIX = ".json";
+
+    /* --- Members --- */
+
+    private final WssServiceClient client;
+    private final File stateDirectory;
+    private final Map<String, UploadState> states = new ConcurrentHashMap<>();
+    private final Gson gson = JsonCodecs.compact();
+
+    private int chunkBytes = DEFAULT_CHUNK_BYTES;
+    private int maxAttempts = DEFAULT_MAX_ATTEMPTS;
+    private long retryDelayMillis = DEFAULT_RETRY_DELAY_MILLIS;
+
+    /* --- Constructors --- */
+
+    /**
+     * Constructor
+     *
+     * @param client Client to send the chunks with.
+     */
+    public ScaLogUploader(WssServiceClient client) {
+        this(client, null);
+    }
+
+    /**
+     * Constructor
+     *
+     * @param client         Client to send the chunks with.
+     * @param stateDirectory Optional. Directory to keep the progress of failed uploads in, so they can be resumed by another run.
+     */
+    public ScaLogUploader(WssServiceClient client, File stateDirectory) {
+        this.client = client;
+        this.stateDirectory = stateDirectory;
+    }
+
+    /* --- Public methods --- */
+
+    /**
+     * Uploads the log file, resuming a previous failed upload of the same file if possible.
+     *
+     * @param request Request holding the organization, user and agent details, which are copied to every chunk.
+     * @param logFile Log file to upload.
+     * @return Result of the last chunk.
+     * @throws IOException         If the log file could not be read.
+     * @throws WssServiceException If a chunk still failed after all the attempts.
+     */
+    public UploadScaLogsResult upload(UploadScaLogsRequest request, File logFile) throws IOException, WssServiceException {
+        String key = DigestUtils.sha1Hex(logFile.getAbsolutePath());
+        long length = logFile.length();
+        long lastModified = logFile.lastModified();
+        UploadState state = loadState(key);
+        if (state == null || state.length != length || state.lastModified != lastModified) {
+            state = new UploadState();
+            state.uploadId = UUID.randomUUID().toString();
+            state.length = length;
+            state.lastModified = lastModified;
+        } else {
+            logger.info("Resuming upload of " + logFile.getName() + " at chunk " + state.chunkIndex);
+        }
+
+        UploadScaLogsResult result = null;
+        ByteBuffer buffer = ByteBuffer.allocate(chunkBytes);
+        boolean last;
+        try (FileChannel channel = FileChannel.open(logFile.toPath(), StandardOpenOption.READ)) {
+            do {
+                buffer.clear();
+                if (length - state.offset < buffer.capacity()) {
+                    buffer.limit((int) (length - state.offset));
+                }
+                int read = 0;
+                while (buffer.hasRemaining() && read >= 0) {
+                    read = channel.read(buffer, state.offset + buffer.position());
+                }
+                // a buffer cut short means the file was truncated meanwhile
+                last = buffer.hasRemaining() || state.offset + buffer.position() >= length;
+                int size = last ? buffer.position() : chunkSize(buffer.array(), buffer.position());
+
+                UploadScaLogsRequest chunk = new UploadScaLogsRequest();
+                RequestUtils.copyRequestFields(request, chunk);
+                chunk.setUploadId(state.uploadId);
+                chunk.setFileName(logFile.getName());
+                chunk.setOffset(state.offset);
+                chunk.setTotalLength(length);
+                chunk.setChunkIndex(state.chunkIndex);
+                chunk.setLastChunk(last);
+                chunk.setLogChunk(new String(buffer.array(), 0, size, StandardCharsets.UTF_8));
+                try {
+                    result = send(chunk);
+                } catch (WssServiceException e) {
+                    saveState(key, state);
+                    throw e;
+                }
+                state.offset += size;
+                state.chunkIndex++;
+            } while (!last);
+        }
+        deleteState(key);
+        return result;
+    }
+
+    /* --- Private methods --- */
+
+    private UploadScaLogsResult send(UploadScaLogsRequest chunk) throws WssServiceException {
+        for (int attempt = 1; ; attempt++) {
+            try {
+                return client.uploadScaLogs(chunk);
+            } catch (WssServiceException e) {
+                if (attempt >= maxAttempts) {
+                    throw e;
+                }
+                logger.warn("Failed to upload log chunk " + chunk.getChunkIndex() + ", retrying: " + e.getMessage());
+                try {
+                    Thread.sleep(retryDelayMillis * attempt);
+                } catch (InterruptedException ie) {
+                    Thread.currentThread().interrupt();
+                    throw new WssServiceException("Interrupted while uploading logs", ie);
+                }
+            }
+        }
+    }
+
+    /**
+     * @return Number of bytes to send from the full buffer: up to the last line break, or else up to the last whole character.
+     */
+    static int chunkSize(byte[] bytes, int length) {
+        for (int i = length - 1; i >= 0; i--) {
+            if (bytes[i] == '\n') {
+                return i + 1;
+            }
+        }
+        int start = length - 1;
+        while (start > 0 && (bytes[start] & 0xC0) == 0x80) {
+            start--;
+        }
+        int lead = bytes[start] & 0xFF;
+        int charLength = lead < 0x80 ? 1 : lead < 0xE0 ? 2 : lead < 0xF0 ? 3 : 4;
+        return start + charLength > length && start > 0 ? start : length;
+    }
+
+    private UploadState loadState(String key) {
+        UploadState state = states.get(key);
+        if (state != null || stateDirectory == null) {
+            return state;
+        }
+        File file = stateFile(key);
+        if (!file.isFile()) {
+            return null;
+        }
+        try (Reader reader = new InputStreamReader(new FileInputStream(file), StandardCharsets.UTF_8)) {
+            return gson.fromJson(reader, UploadState.class);
+        } catch (IOException | JsonParseException e) {
+            logger.warn("Failed to read log upload state " + file + ": " + e.getMessage());
+            return null;
+        }
+    }
+
+    private void saveState(String key, UploadState state) {
+        states.put(key, state);
+        if (stateDirectory == null) {
+            return;
+        }
+        File file = stateFile(key);
+        try {
+            if (!stateDirectory.isDirectory() && !stateDirectory.mkdirs()) {
+                throw new IOException("Unable to create directory " + stateDirectory);
+            }
+            try (Writer writer = new OutputStreamWriter(new FileOutputStream(file), StandardCharsets.UTF_8)) {
+                gson.toJson(state, writer);
+            }
+        } catch (IOException e) {
+            logger.warn("Failed to write log upload state " + file + ": " + e.getMessage());
+        }
+    }
+
+    private void deleteState(String key) {
+        states.remove(key);
+        if (stateDirectory != null) {
+            File file = stateFile(key);
+            if (!file.delete() && file.exists()) {
+                logger.warn("Failed to delete log upload state " + file);
+            }
+        }
+    }
+
+    private File stateFile(String key) {
+        return new File(stateDirectory, STATE_PREFIX + key + STATE_SUFFIX);
+    }
+
+    /* --- Getters / Setters --- */
+
+    public int getChunkBytes() {
+        return chunkBytes;
+    }
+
+    public void setChunkBytes(int chunkBytes) {
+        this.chunkBytes = chunkBytes;
+    }
+
+    public int getMaxAttempts() {
+        return maxAttempts;
+    }
+
+    public void setMaxAttempts(int maxAttempts) {
+        this.maxAttempts = maxAttempts;
+    }
+
+    public long getRetryDelayMillis() {
+        return retryDelayMillis;
+    }
+
+    public void setRetryDelayMillis(long retryDelayMillis) {
+        this.retryDelayMillis = retryDelayMillis;
+    }
+
+    /* --- Nested classes --- */
+
+    static class UploadState {
+
+        private String uploadId;
+        private long length;
+        private long lastModified;
+        private long offset;
+        private int chunkIndex;
+    }
+}
@@ -0,0 +1,225 @@
+/**
+ * Copyright (C) 2012 White Source Ltd.
+ * <p>
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * <p>
+ * http://www.apache.org/licenses/LICENSE-2.0
+ * <p>
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.whitesource.agent.client;
+
+import com.google.gson.Gson;
+import com.google.gson.JsonParseException;
+import com.google.gson.reflect.TypeToken;
+import org.apache.commons.logging.Log;
+import org.apache.commons.logging.LogFactory;
+import org.whitesource.agent.utils.JsonCodecs;
+
+import java.io.*;
+import java.lang.reflect.Type;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * A size bounded, least recently used store of per sha1 lookup results which expire after a fixed time to live.
+ * <p>
+ * The store lives in memory and may optionally be backed by a file, which is read on {@link #load()}
+ * and written on {@link #save()}.
+ *
+ * @param <V> Type of the cached results.
+ */
+public class Sha1ResultCache<V> {
+
+    /* --- Static members --- */
+
+    private static final Log logger = LogFactory.getLog(Sha1ResultCache.class);
+
+    private static final String TMP_SUFFIX = ".tmp";
+
+    /* --- Members --- */
+
+    private final int maxEntries;
+    private final long ttlMillis;
+    private final File backingFile;
+    private final Type fileType;
+    private final Gson gson = JsonCodecs.compact();
+    private final LinkedHashMap<String, Entry<V>> entries;
+
+    private long hits;
+    private long misses;
+    private long evictions;
+
+    /* --- Constructors --- */
+
+    /**
+     * Constructor
+     *
+     * @param maxEntries  Maximal number of results to keep.
+     * @param ttlMillis   Time in milliseconds after which a result is considered stale.
+     * @param valueType   Type of the cached results, used for reading the backing file.
+     * @param backingFile Optional. File to persist the results to.
+     */
+    public Sha1ResultCache(int maxEntries, long ttlMillis, Type valueType, File backingFile) {
+        this.maxEntries = maxEntries;
+        this.ttlMillis = ttlMillis;
+        this.backingFile = backingFile;
+        this.fileType = TypeToken.getParameterized(Map.class, String.class,
+                TypeToken.getParameterized(Entry.class, valueType).getType()).getType();
+        this.entries = new LinkedHashMap<String, Entry<V>>(16, 0.75f, true) {
+            @Override
+            protected boolean removeEldestEntry(Map.Entry<String, Entry<V>> eldest) {
+                if (size() > Sha1ResultCache.this.maxEntries) {
+                    evictions++;
+                    return true;
+                }
+                return false;
+            }
+        };
+    }
+
+    /* --- Public methods --- */
+
+    /**
+     * @param key Cache key.
+     * @return The cached result, or null if it is missing or expired.
+     */
+    public synchronized V get(String key) {
+        Entry<V> entry = entries.get(key);
+        if (entry != null && entry.expiresAt <= System.currentTimeMillis()) {
+            entries.remove(key);
+            entry = null;
+        }
+        if (entry == null) {
+            misses++;
+            return null;
+        }
+        hits++;
+        return entry.value;
+    }
+
+    /**
+     * @param key Cache key.
+     * @return True if a fresh result is cached for the key. Does not affect the hit statistics.
+     */
+    public synchronized boolean contains(String key) {
+        Entry<V> entry = entries.get(key);
+        return entry != null && entry.expiresAt > System.currentTimeMillis();
+    }
+
+    public synchronized void put(String key, V value) {
+        entries.put(key, new Entry<>(value, System.currentTimeMillis() + ttlMillis));
+    }
+
+    public synchronized void clear() {
+        entries.clear();
+    }
+
+    public synchronized int size() {
+        return entries.size();
+    }
+
+    /**
+     * Reads the backing file, if any. Expired results are skipped.
+     */
+    public synchronized void load() {
+        if (backingFile == null || !backingFile.isFile()) {
+            return;
+        }
+        try (Reader reader = new InputStreamReader(new FileInputStream(backingFile), StandardCharsets.UTF_8)) {
+            Map<String, Entry<V>> persisted = gson.fromJson(reader, fileType);
+            if (persisted != null) {
+                long now = System.currentTimeMillis();
+                for (Map.Entry<String, Entry<V>> entry : persisted.entrySet()) {
+                    if (entry.getValue() != null && entry.getValue().expiresAt > now) {
+                        entries.put(entry.getKey(), entry.getValue());
+                    }
+                }
+            }
+        } catch (IOException | JsonParseException e) {
+            logger.warn("Failed to read cache file " + backingFile + ": " + e.getMessage());
+        }
+    }
+
+    /**
+     * Writes the fresh results to the backing file, if any.
+     */
+    public synchronized void save() {
+        if (backingFile == null) {
+            return;
+        }
+        long now = System.currentTimeMillis();
+        Iterator<Entry<V>> iterator = entries.values().iterator();
+        while (iterator.hasNext()) {
+            if (iterator.next().expiresAt <= now) {
+                iterator.remove();
+            }
+        }
+        File parent = backingFile.getAbsoluteFile().getParentFile();
+        File tempFile = new File(parent, backingFile.getName() + TMP_SUFFIX);
+        try {
+            if (!parent.isDirectory() && !parent.mkdirs()) {
+                throw new IOException("Unable to create directory " + parent);
+            }
+            try (Writer writer = new OutputStreamWriter(new FileOutputStream(tempFile), StandardCharsets.UTF_8)) {
+                gson.toJson(entries, fileType, writer);
+            }
+            Files.move(tempFile.toPath(), backingFile.toPath(), StandardCopyOption.REPLACE_EXISTING);
+        } catch (IOException e) {
+            logger.warn("Failed to write cache file " + backingFile + ": " + e.getMessage());
+        }
+    }
+
+    /* --- Getters --- */
+
+    public synchronized long getHits() {
+        return hits;
+    }
+
+    public synchronized long getMisses() {
+        return misses;
+    }
+
+    public synchronized long getEvictions() {
+        return evictions;
+    }
+
+    /**
+     * @return Fraction of lookups that were answered from the cache, 0 if there were no lookups.
+     */
+    public synchronized double getHitRatio() {
+        long lookups = hits + misses;
+        return lookups == 0 ? 0 : (double) hits / lookups;
+    }
+
+    public int getMaxEntries() {
+        return maxEntries;
+    }
+
+    public long getTtlMillis() {
+        return ttlMillis;
+    }
+
+    /* --- Nested classes --- */
+
+    static class Entry<V> {
+
+        private V value;
+        private long expiresAt;
+
+        Entry(V value, long expiresAt) {
+            this.value = value;
+            this.expiresAt = expiresAt;
+        }
+    }
+}
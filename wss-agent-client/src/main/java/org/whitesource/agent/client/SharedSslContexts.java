@@ -0,0 +1,104 @@
+/**
+ * Copyright (C) 2012 White Source Ltd.
+ * <p>
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * <p>
+ * http://www.apache.org/licenses/LICENSE-2.0
+ * <p>
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.whitesource.agent.client;
+
+import javax.net.ssl.SSLContext;
+import javax.net.ssl.TrustManager;
+import javax.net.ssl.X509TrustManager;
+import java.security.GeneralSecurityException;
+import java.security.cert.X509Certificate;
+
+/**
+ * Process wide TLS contexts shared by all the clients.
+ * <p>
+ * The JDK keeps the client side TLS session cache per {@link SSLContext}. Since the clients never reuse a
+ * connection, every request performs a handshake; sharing a single context lets those handshakes (and the ones
+ * of cloned services) resume a cached session instead of running a full key exchange and certificate validation.
+ */
+final class SharedSslContexts {
+
+    /* --- Static members --- */
+
+    private static final String TLS = "TLS";
+
+    private static SSLContext defaultContext;
+    private static SSLContext trustAllContext;
+
+    /* --- Static methods --- */
+
+    /**
+     * @return Context validating the server certificates against the default trust store.
+     */
+    static synchronized SSLContext getDefault() {
+        if (defaultContext == null) {
+            defaultContext = create(null);
+        }
+        return defaultContext;
+    }
+
+    /**
+     * @return Context trusting all server certificates, for clients that ignore the certificate check.
+     */
+    static synchronized SSLContext getTrustAll() {
+        if (trustAllContext == null) {
+            TrustManager trustAll = new X509TrustManager() {
+                @Override
+                public void checkClientTrusted(X509Certificate[] chain, String authType) {
+                }
+
+                @Override
+                public void checkServerTrusted(X509Certificate[] chain, String authType) {
+                }
+
+                @Override
+                public X509Certificate[] getAcceptedIssuers() {
+                    return null;
+                }
+            };
+            trustAllContext = create(new TrustManager[]{trustAll});
+        }
+        return trustAllContext;
+    }
+
+    /**
+     * @param ignoreCertificateCheck Whether all server certificates are trusted.
+     * @return The matching shared context.
+     */
+    static SSLContext get(boolean ignoreCertificateCheck) {
+        return ignoreCertificateCheck ? getTrustAll() : getDefault();
+    }
+
+    /* --- Private methods --- */
+
+    private static SSLContext create(TrustManager[] trustManagers) {
+        try {
+            SSLContext context = SSLContext.getInstance(TLS);
+            context.init(null, trustManagers, null);
+            return context;
+        } catch (GeneralSecurityException e) {
+            throw new IllegalStateException("Failed to initialize the TLS context", e);
+        }
+    }
+
+    /* --- Constructors --- */
+
+    /**
+     * Private default constructor
+     */
+    private SharedSslContexts() {
+        // avoid instantiation
+    }
+}
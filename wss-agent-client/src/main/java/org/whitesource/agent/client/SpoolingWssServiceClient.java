@@ -0,0 +1,494 @@
+/**
+ * Copyright (C) 2012 White Source Ltd.
+ * <p>
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * <p>
+ * http://www.apache.org/licenses/LICENSE-2.0
+ * <p>
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.whitesource.agent.client;
+
+import com.google.gson.Gson;
+import org.apache.commons.logging.Log;
+import org.apache.commons.logging.LogFactory;
+import org.whitesource.agent.api.dispatch.*;
+import org.whitesource.agent.api.model.AgentProjectInfo;
+import org.whitesource.agent.utils.JsonCodecs;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.*;
+import java.util.concurrent.*;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+/**
+ * A client which acknowledges fire and forget requests (inventory updates, metrics) as soon as they are written
+ * to a local {@link RequestSpool}, and sends them to the service on a background daemon thread. Log uploads are
+ * sent directly by default, as {@link ScaLogUploader} bounds their memory and resumes them itself; they may be
+ * spooled as well by passing the spooled request types.
+ * <p>
+ * Spooled requests are answered with empty results. The sender drains the spool in order, in passes:
+ * <ul>
+ *     <li>Projects of updates superseded by a later OVERRIDE update of the same project are dropped.</li>
+ *     <li>Consecutive updates which differ only in their projects are merged into a single request.</li>
+ *     <li>Connection errors and server errors stop the pass and are retried with exponential back off.
+ *     Other errors drop the failed request.</li>
+ * </ul>
+ * Requests which were not sent before {@link #shutdown()} stay in the spool and are sent by the next client
+ * using the same spool directory. Use {@link #flush(long, TimeUnit)} to wait for the spool to be drained.
+ */
+public class SpoolingWssServiceClient extends ForwardingWssServiceClient {
+
+    /* --- Static members --- */
+
+    private static final Log logger = LogFactory.getLog(SpoolingWssServiceClient.class);
+
+    public static final long DEFAULT_LINGER_MILLIS = 200;
+    public static final int DEFAULT_MAX_BATCH_PROJECTS = 100;
+    public static final long DEFAULT_INITIAL_RETRY_DELAY_MILLIS = TimeUnit.SECONDS.toMillis(1);
+    public static final long DEFAULT_MAX_RETRY_DELAY_MILLIS = TimeUnit.MINUTES.toMillis(5);
+
+    private static final int MAX_RECORDS_PER_PASS = 1000;
+    private static final long LOCKED_RETRY_DELAY_MILLIS = TimeUnit.SECONDS.toMillis(30);
+    private static final long FLUSH_POLL_MILLIS = 100;
+
+    /* --- Members --- */
+
+    private final RequestSpool spool;
+    private final Set<RequestType> spooledTypes;
+    private final ScheduledExecutorService sender;
+    private final AtomicBoolean drainScheduled = new AtomicBoolean();
+    private final Gson gson = JsonCodecs.compact();
+
+    private volatile long lingerMillis = DEFAULT_LINGER_MILLIS;
+    private volatile int maxBatchProjects = DEFAULT_MAX_BATCH_PROJECTS;
+    private volatile long initialRetryDelayMillis = DEFAULT_INITIAL_RETRY_DELAY_MILLIS;
+    private volatile long maxRetryDelayMillis = DEFAULT_MAX_RETRY_DELAY_MILLIS;
+
+    // accessed by the sender thread only
+    private int consecutiveFailures;
+
+    /* --- Constructors --- */
+
+    /**
+     * Constructor, spools inventory updates and metrics.
+     *
+     * @param delegate       Client to send the requests with.
+     * @param spoolDirectory Directory of the spool.
+     */
+    public SpoolingWssServiceClient(WssServiceClient delegate, File spoolDirectory) {
+        this(delegate, new RequestSpool(spoolDirectory), EnumSet.of(RequestType.UPDATE, RequestType.SEND_METRICS));
+    }
+
+    /**
+     * Constructor
+     *
+     * @param delegate     Client to send the requests with.
+     * @param spool        Spool to keep the requests in until they are sent.
+     * @param spooledTypes Types of the requests to spool, other requests are sent directly.
+     */
+    public SpoolingWssServiceClient(WssServiceClient delegate, RequestSpool spool, Set<RequestType> spooledTypes) {
+        super(delegate);
+        for (RequestType type : spooledTypes) {
+            if (!RequestSpool.isSupported(type)) {
+                throw new IllegalArgumentException("Requests of type " + type + " can't be spooled");
+            }
+        }
+        this.spool = spool;
+        this.spooledTypes = spooledTypes.isEmpty() ? EnumSet.noneOf(RequestType.class) : EnumSet.copyOf(spooledTypes);
+        sender = Executors.newSingleThreadScheduledExecutor(new DaemonThreadFactory("wss-spool-sender"));
+        // send what previous runs left behind, leaving the segment of this client open for batching
+        sender.execute(() -> runDrainPass(false));
+    }
+
+    /* --- Overridden methods --- */
+
+    @Override
+    public UpdateInventoryResult updateInventory(UpdateInventoryRequest request) throws WssServiceException {
+        return spool(request) ? new UpdateInventoryResult() : delegate.updateInventory(request);
+    }
+
+    @Override
+    public SendMetricsResult sendMetrics(SendMetricsRequest request) throws WssServiceException {
+        return spool(request) ? new SendMetricsResult() : delegate.sendMetrics(request);
+    }
+
+    @Override
+    public UploadScaLogsResult uploadScaLogs(UploadScaLogsRequest request) throws WssServiceException {
+        return spool(request) ? new UploadScaLogsResult() : delegate.uploadScaLogs(request);
+    }
+
+    /**
+     * Stops the sender and shuts down the underlying client. Requests which were not sent yet stay in the spool.
+     */
+    @Override
+    public void shutdown() {
+        sender.shutdownNow();
+        try {
+            if (!sender.awaitTermination(5, TimeUnit.SECONDS)) {
+                logger.warn("Spool sender did not stop in time");
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+        try {
+            spool.close();
+        } catch (IOException e) {
+            logger.warn("Failed to close request spool: " + e.getMessage());
+        }
+        super.shutdown();
+    }
+
+    /* --- Public methods --- */
+
+    /**
+     * Sends the spooled requests, waiting at most the given time.
+     *
+     * @return True if the spool was drained.
+     */
+    public boolean flush(long timeout, TimeUnit unit) throws InterruptedException {
+        long deadline = System.nanoTime() + unit.toNanos(timeout);
+        while (true) {
+            try {
+                sender.submit(() -> drainPass(true)).get(Math.max(0, deadline - System.nanoTime()), TimeUnit.NANOSECONDS);
+            } catch (ExecutionException e) {
+                logger.warn("Failed to drain request spool: " + e.getCause().getMessage());
+            } catch (TimeoutException | RejectedExecutionException e) {
+                return spool.isEmpty();
+            }
+            if (spool.isEmpty()) {
+                return true;
+            }
+            long remaining = deadline - System.nanoTime();
+            if (remaining <= 0) {
+                return false;
+            }
+            Thread.sleep(Math.min(FLUSH_POLL_MILLIS, TimeUnit.NANOSECONDS.toMillis(remaining) + 1));
+        }
+    }
+
+    /* --- Private methods --- */
+
+    /**
+     * @return True if the request was spooled, false if it should be sent directly.
+     */
+    private boolean spool(BaseRequest<?> request) {
+        if (!spooledTypes.contains(request.type())) {
+            return false;
+        }
+        try {
+            spool.append(request);
+        } catch (IOException e) {
+            logger.warn("Failed to spool " + request.type() + " request, sending it directly: " + e.getMessage());
+            return false;
+        }
+        scheduleDrain(lingerMillis);
+        return true;
+    }
+
+    private void scheduleDrain(long delayMillis) {
+        if (drainScheduled.compareAndSet(false, true)) {
+            try {
+                sender.schedule(this::drain, delayMillis, TimeUnit.MILLISECONDS);
+            } catch (RejectedExecutionException e) {
+                drainScheduled.set(false);
+            }
+        }
+    }
+
+    private void drain() {
+        drainScheduled.set(false);
+        runDrainPass(true);
+    }
+
+    private void runDrainPass(boolean roll) {
+        try {
+            drainPass(roll);
+        } catch (IOException | RuntimeException e) {
+            logger.warn("Failed to drain request spool: " + e.getMessage());
+            consecutiveFailures++;
+            scheduleDrain(retryDelay());
+        }
+    }
+
+    /**
+     * Reads the sealed segments and sends their requests, scheduling the next pass if needed.
+     *
+     * @param roll True to seal the open segment of this client first.
+     */
+    private Void drainPass(boolean roll) throws IOException {
+        if (roll) {
+            spool.roll();
+        }
+        if (!spool.tryLock()) {
+            // another process drains the spool, retry in case it exits
+            scheduleDrain(LOCKED_RETRY_DELAY_MILLIS);
+            return null;
+        }
+
+        List<RequestSpool.SpooledRequest> records = new ArrayList<>();
+        List<RequestSpool.Segment> segments = new ArrayList<>();
+        boolean more = false;
+        for (RequestSpool.Segment segment : spool.segments()) {
+            if (records.size() >= MAX_RECORDS_PER_PASS) {
+                more = true;
+                break;
+            }
+            List<RequestSpool.SpooledRequest> segmentRecords = segment.read();
+            if (!segmentRecords.isEmpty()) {
+                records.addAll(segmentRecords);
+                segments.add(segment);
+            }
+        }
+
+        for (Batch batch : plan(records)) {
+            if (!batch.superseded) {
+                try {
+                    send(batch);
+                } catch (WssServiceException e) {
+                    if (isRetryable(e)) {
+                        consecutiveFailures++;
+                        long delay = retryDelay();
+                        logger.warn("Failed to send spooled " + batch.type() + " request, retrying in " + delay + "ms: " + e.getMessage());
+                        scheduleDrain(delay);
+                        return null;
+                    }
+                    logger.error("Dropping spooled " + batch.type() + " request rejected by the service: " + e.getMessage());
+                }
+            }
+            for (RequestSpool.SpooledRequest record : batch.records) {
+                record.acknowledge();
+            }
+        }
+        for (RequestSpool.Segment segment : segments) {
+            segment.delete();
+        }
+        consecutiveFailures = 0;
+        if (more) {
+            scheduleDrain(0);
+        }
+        return null;
+    }
+
+    /**
+     * Drops superseded projects and groups the records into requests to send, keeping their order.
+     */
+    private List<Batch> plan(List<RequestSpool.SpooledRequest> records) {
+        // newest first, so each OVERRIDE update hides the earlier updates of its projects
+        Set<String> overridden = new HashSet<>();
+        Set<RequestSpool.SpooledRequest> superseded = new HashSet<>();
+        for (int i = records.size() - 1; i >= 0; i--) {
+            BaseRequest<?> request = records.get(i).getRequest();
+            if (request instanceof UpdateInventoryRequest && !request.aggregateModules() && request.getProjects() != null) {
+                List<AgentProjectInfo> kept = new ArrayList<>();
+                for (AgentProjectInfo project : request.getProjects()) {
+                    String key = projectKey(request, project);
+                    if (key == null || !overridden.contains(key)) {
+                        kept.add(project);
+                    }
+                }
+                if (((UpdateInventoryRequest) request).getUpdateType() == UpdateType.OVERRIDE) {
+                    for (AgentProjectInfo project : kept) {
+                        String key = projectKey(request, project);
+                        if (key != null) {
+                            overridden.add(key);
+                        }
+                    }
+                }
+                if (kept.isEmpty() && !request.getProjects().isEmpty()) {
+                    superseded.add(records.get(i));
+                } else if (kept.size() < request.getProjects().size()) {
+                    logger.debug("Dropping " + (request.getProjects().size() - kept.size()) + " superseded projects from a spooled update");
+                    request.setProjects(kept);
+                }
+            }
+        }
+
+        List<Batch> batches = new ArrayList<>();
+        Batch current = null;
+        for (RequestSpool.SpooledRequest record : records) {
+            if (superseded.contains(record)) {
+                Batch skipped = new Batch(null);
+                skipped.superseded = true;
+                skipped.add(record);
+                batches.add(skipped);
+                continue;
+            }
+            BaseRequest<?> request = record.getRequest();
+            String envelope = null;
+            if (request instanceof UpdateInventoryRequest && !request.aggregateModules() && request.getProjects() != null) {
+                envelope = envelope((UpdateInventoryRequest) request);
+            }
+            if (current == null || envelope == null || !current.accepts(envelope, request)) {
+                current = new Batch(envelope);
+                batches.add(current);
+            }
+            current.add(record);
+        }
+        return batches;
+    }
+
+    private void send(Batch batch) throws WssServiceException {
+        BaseRequest<?> first = batch.records.get(0).getRequest();
+        if (batch.records.size() == 1) {
+            dispatch(first);
+            return;
+        }
+        List<AgentProjectInfo> projects = new ArrayList<>();
+        for (RequestSpool.SpooledRequest record : batch.records) {
+            projects.addAll(record.getRequest().getProjects());
+        }
+        UpdateInventoryRequest merged = new UpdateInventoryRequest(projects, ((UpdateInventoryRequest) first).getUpdateType());
+        RequestUtils.copyRequestFields(first, merged);
+        dispatch(merged);
+    }
+
+    private void dispatch(BaseRequest<?> request) throws WssServiceException {
+        switch (request.type()) {
+            case UPDATE:
+                delegate.updateInventory((UpdateInventoryRequest) request);
+                break;
+            case SEND_METRICS:
+                delegate.sendMetrics((SendMetricsRequest) request);
+                break;
+            case UPLOAD_SCA_LOGS:
+                delegate.uploadScaLogs((UploadScaLogsRequest) request);
+                break;
+            default:
+                throw new IllegalStateException("Unsupported spooled request type " + request.type());
+        }
+    }
+
+    /**
+     * @return True for connection errors and errors the server may recover from.
+     */
+    private boolean isRetryable(WssServiceException e) {
+        int status = e.getStatusCode();
+        if (status >= 500 || status == 429 || status == 408) {
+            return true;
+        }
+        return status == 0 && (e.getCause() instanceof IOException || e.getCause() instanceof InterruptedException);
+    }
+
+    private long retryDelay() {
+        int exponent = Math.min(Math.max(consecutiveFailures - 1, 0), 20);
+        return Math.min(maxRetryDelayMillis, initialRetryDelayMillis << exponent);
+    }
+
+    /**
+     * @return The request properties except its projects and time stamp, which must be equal for updates to be merged.
+     */
+    private String envelope(UpdateInventoryRequest request) {
+        UpdateInventoryRequest copy = new UpdateInventoryRequest(new ArrayList<>(), request.getUpdateType());
+        RequestUtils.copyRequestFields(request, copy);
+        copy.setTimeStamp(0);
+        return gson.toJson(copy);
+    }
+
+    private static String projectKey(BaseRequest<?> request, AgentProjectInfo project) {
+        return InventorySnapshotStore.projectKey(request.orgToken(), request.product(), request.productVersion(), project);
+    }
+
+    /* --- Getters / Setters --- */
+
+    public RequestSpool getSpool() {
+        return spool;
+    }
+
+    public Set<RequestType> getSpooledTypes() {
+        return Collections.unmodifiableSet(spooledTypes);
+    }
+
+    public long getLingerMillis() {
+        return lingerMillis;
+    }
+
+    /**
+     * @param lingerMillis Time to wait after a request was spooled before sending it, so it may be merged with the following ones.
+     */
+    public void setLingerMillis(long lingerMillis) {
+        this.lingerMillis = lingerMillis;
+    }
+
+    public int getMaxBatchProjects() {
+        return maxBatchProjects;
+    }
+
+    public void setMaxBatchProjects(int maxBatchProjects) {
+        this.maxBatchProjects = maxBatchProjects;
+    }
+
+    public long getInitialRetryDelayMillis() {
+        return initialRetryDelayMillis;
+    }
+
+    public void setInitialRetryDelayMillis(long initialRetryDelayMillis) {
+        this.initialRetryDelayMillis = initialRetryDelayMillis;
+    }
+
+    public long getMaxRetryDelayMillis() {
+        return maxRetryDelayMillis;
+    }
+
+    public void setMaxRetryDelayMillis(long maxRetryDelayMillis) {
+        this.maxRetryDelayMillis = maxRetryDelayMillis;
+    }
+
+    /* --- Nested classes --- */
+
+    /**
+     * Consecutive spooled records sent as a single request.
+     */
+    private class Batch {
+
+        private final String envelope;
+        private final List<RequestSpool.SpooledRequest> records = new ArrayList<>();
+        private final Set<String> projectKeys = new HashSet<>();
+        private int projectCount;
+        // all the projects were superseded by later updates, nothing to send
+        private boolean superseded;
+
+        Batch(String envelope) {
+            this.envelope = envelope;
+        }
+
+        /**
+         * @return True if the request can be merged into this batch.
+         */
+        boolean accepts(String envelope, BaseRequest<?> request) {
+            if (this.envelope == null || !this.envelope.equals(envelope)
+                    || projectCount + request.getProjects().size() > maxBatchProjects) {
+                return false;
+            }
+            for (AgentProjectInfo project : request.getProjects()) {
+                String key = projectKey(request, project);
+                if (key == null || projectKeys.contains(key)) {
+                    return false;
+                }
+            }
+            return true;
+        }
+
+        void add(RequestSpool.SpooledRequest record) {
+            records.add(record);
+            BaseRequest<?> request = record.getRequest();
+            if (request.getProjects() != null) {
+                projectCount += request.getProjects().size();
+                for (AgentProjectInfo project : request.getProjects()) {
+                    projectKeys.add(projectKey(request, project));
+                }
+            }
+        }
+
+        RequestType type() {
+            return records.get(0).getRequest().type();
+        }
+    }
+}
@@ -0,0 +1,128 @@
+/**
+ * Copyright (C) 2012 White Source Ltd.
+ * <p>
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * <p>
+ * http://www.apache.org/licenses/LICENSE-2.0
+ * <p>
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.whitesource.agent.client;
+
+import com.github.markusbernhardt.proxy.ProxySearch;
+import org.apache.commons.logging.Log;
+import org.apache.commons.logging.LogFactory;
+
+import java.net.ProxySelector;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Process wide cache of the system proxy settings.
+ * <p>
+ * Searching for the system proxy (java properties, environment, OS and browser settings) may take seconds,
+ * so it is done at most once per time to live, on a background daemon thread. Clients trigger the search
+ * early with {@link #prefetch()} and only block on it when the first request is about to be sent.
+ * Once the time to live passes, the previous settings are still served while a new search runs.
+ */
+final class SystemProxyDiscovery {
+
+    /* --- Static members --- */
+
+    private static final Log logger = LogFactory.getLog(SystemProxyDiscovery.class);
+
+    static final long DEFAULT_TTL_MILLIS = TimeUnit.MINUTES.toMillis(10);
+
+    private static final ExecutorService executor = Executors.newSingleThreadExecutor(new DaemonThreadFactory("wss-proxy-discovery"));
+
+    private static long ttlMillis = DEFAULT_TTL_MILLIS;
+    private static ProxySelector proxySelector;
+    private static long discoveredAt;
+    private static CompletableFuture<ProxySelector> pending;
+
+    /* --- Static methods --- */
+
+    /**
+     * Starts searching for the system proxy in the background, unless fresh settings are cached or a search is running.
+     */
+    static synchronized void prefetch() {
+        boolean stale = discoveredAt == 0 || System.currentTimeMillis() - discoveredAt > ttlMillis;
+        if (stale && (pending == null || pending.isDone())) {
+            pending = CompletableFuture.supplyAsync(SystemProxyDiscovery::discover, executor);
+            pending.whenComplete((selector, e) -> {
+                synchronized (SystemProxyDiscovery.class) {
+                    proxySelector = selector;
+                    discoveredAt = System.currentTimeMillis();
+                }
+            });
+        }
+    }
+
+    /**
+     * @return The system proxy selector, or null if none was found. Blocks only if no search has completed yet.
+     */
+    static ProxySelector getProxySelector() {
+        CompletableFuture<ProxySelector> search;
+        synchronized (SystemProxyDiscovery.class) {
+            prefetch();
+            if (discoveredAt != 0) {
+                return proxySelector;
+            }
+            search = pending;
+        }
+        try {
+            return search.join();
+        } catch (CompletionException e) {
+            logger.warn("Failed to find the system proxy: " + e.getMessage());
+            return null;
+        }
+    }
+
+    static synchronized void setTtlMillis(long ttlMillis) {
+        SystemProxyDiscovery.ttlMillis = ttlMillis;
+    }
+
+    /**
+     * Drops the cached settings, so the next call searches again.
+     */
+    static synchronized void reset() {
+        proxySelector = null;
+        discoveredAt = 0;
+        pending = null;
+    }
+
+    /* --- Private methods --- */
+
+    private static ProxySelector discover() {
+        long start = System.currentTimeMillis();
+        ProxySearch proxySearch = new ProxySearch();
+        proxySearch.addStrategy(ProxySearch.Strategy.JAVA);
+        proxySearch.addStrategy(ProxySearch.Strategy.ENV_VAR);
+        proxySearch.addStrategy(ProxySearch.Strategy.OS_DEFAULT);
+        proxySearch.addStrategy(ProxySearch.Strategy.BROWSER);
+        ProxySelector selector = proxySearch.getProxySelector();
+        if (selector != null) {
+            ProxySelector.setDefault(selector);
+        }
+        logger.debug("System proxy search took " + (System.currentTimeMillis() - start) + " ms");
+        return selector;
+    }
+
+    /* --- Constructors --- */
+
+    /**
+     * Private default constructor
+     */
+    private SystemProxyDiscovery() {
+        // avoid instantiation
+    }
+}
@@ -0,0 +1,26 @@
+/**
+ * Copyright (C) 2012 White Source Ltd.
+ * <p>
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * <p>
+ * http://www.apache.org/licenses/LICENSE-2.0
+ * <p>
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.whitesource.agent.client;
+
+/**
+ * Enumeration of the ways a request payload can be sent to the WhiteSource service.
+ */
+public enum TransportMode {
+    /** Url encoded form, with the payload JSON gzipped and base64 encoded in a form parameter. */
+    FORM,
+    /** Raw JSON body with gzip content encoding, parameters in the {@link ClientConstants#PARAMS_HEADER} header. */
+    GZIP
+}
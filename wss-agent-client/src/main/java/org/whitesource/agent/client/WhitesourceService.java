@@ -18,8 +18,14 @@ package org.whitesource.agent.client;
 import org.whitesource.agent.api.dispatch.*;
 import org.whitesource.agent.api.model.AgentProjectInfo;
 
+import java.io.File;
+import java.io.IOException;
+import java.util.ArrayList;
 import java.util.Collection;
+import java.util.List;
 import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.Future;
 
 /**
  * A facade to the communication layer with the White Source service.
@@ -70,7 +76,16 @@ public class WhitesourceService {
                     String.valueOf(ClientConstants.DEFAULT_CONNECTION_TIMEOUT_MINUTES)));
         }
 
-        client = new WssServiceClientImpl(url, setProxy, connectionTimeoutMinutes, ignoreCertificateCheck);
+        List<String> urls = MultiEndpointWssServiceClient.parseServiceUrls(url);
+        if (urls.size() > 1) {
+            client = MultiEndpointWssServiceClient.forServiceUrls(urls, setProxy, connectionTimeoutMinutes, ignoreCertificateCheck);
+        } else {
+            client = new WssServiceClientImpl(url, setProxy, connectionTimeoutMinutes, ignoreCertificateCheck);
+        }
+
+        if (Boolean.getBoolean(ClientConstants.WARM_UP_KEYWORD)) {
+            warmUp();
+        }
     }
 
     // backward compatibility methods (plugin version is not a parameter)
@@ -96,10 +111,28 @@ public class WhitesourceService {
       whitesourceService.getClient()
           .setProxy(client.getProxyHost(), client.getProxyPort(), client.getProxyUsername(),
               client.getProxyPassword());
+      whitesourceService.getClient().setMetricsListener(client.getMetricsListener());
 
       return whitesourceService;
     }
 
+    /**
+     * Starts warming up the connections to the service endpoints in the background: their host names are resolved
+     * and the TLS session cache, which is shared by all the services including the cloned ones, is primed.
+     * Done automatically on creation when the {@link ClientConstants#WARM_UP_KEYWORD} system property is "true".
+     *
+     * @return Future completing with true if all the endpoints were warmed up.
+     */
+    public Future<Boolean> warmUp() {
+        List<String> urls = MultiEndpointWssServiceClient.parseServiceUrls(client.getServiceUrl());
+        List<CompletableFuture<Boolean>> warmUps = new ArrayList<>();
+        for (String url : urls) {
+            warmUps.add(ConnectionWarmer.warmUp(url, client.getIgnoreCertificateCheck(), client.isProxy()));
+        }
+        return CompletableFuture.allOf(warmUps.toArray(new CompletableFuture[0]))
+                .thenApply(done -> warmUps.stream().allMatch(CompletableFuture::join));
+    }
+
 
   /**
      * Updates the White Source organization account with the given OSS information.
@@ -624,6 +657,22 @@ public class WhitesourceService {
                 requestFactory.newCheckPolicyComplianceRequest(request));
     }
 
+    /**
+     * Updates and / or checks the policy compliance of many products, pipelining the preparation of their requests
+     * with the network calls. See {@link ProductBatchExecutor} for finer control over the concurrency.
+     *
+     * @param entries The products to send.
+     * @return A result per product, in the order of the entries. A failed product does not fail the others.
+     */
+    public List<ProductBatchResult> executeBatch(Collection<ProductBatchEntry> entries) {
+        ProductBatchExecutor executor = new ProductBatchExecutor(this);
+        try {
+            return executor.execute(entries);
+        } finally {
+            executor.shutdown();
+        }
+    }
+
     public AsyncCheckPolicyComplianceResult asyncCheckPolicyCompliance(AsyncCheckPolicyComplianceRequest request) throws WssServiceException {
         return client.asyncCheckPolicyCompliance(
                 requestFactory.newAsyncCheckPolicyComplianceRequest(request));
@@ -881,6 +930,27 @@ public class WhitesourceService {
         return client.sendMetrics(requestFactory.newSendMetricsRequest(request));
     }
 
+    public UploadScaLogsResult uploadScaLogs(UploadScaLogsRequest request) throws WssServiceException {
+        return client.uploadScaLogs(requestFactory.newUploadScaLogsRequest(request));
+    }
+
+    /**
+     * Uploads the log file in chunks, see {@link ScaLogUploader}.
+     *
+     * @param request Request holding the organization and user details.
+     * @param logFile Log file to upload.
+     * @return Result of the last chunk.
+     * @throws IOException         In case the log file could not be read.
+     * @throws WssServiceException In case of errors while uploading the chunks.
+     */
+    public UploadScaLogsResult uploadScaLogs(UploadScaLogsRequest request, File logFile) throws IOException, WssServiceException {
+        return new ScaLogUploader(client).upload(requestFactory.newUploadScaLogsRequest(request), logFile);
+    }
+
+    public JwtAccessTokenResult jwtAccessToken(String orgToken, String userKey) throws WssServiceException {
+        return client.jwtAccessToken(requestFactory.newJwtAccessTokenRequest(orgToken, userKey));
+    }
+
     /**
      * The method close the underlying client to the White Source service.
      *
@@ -918,4 +988,15 @@ public class WhitesourceService {
             client.setHeaders(headers);
         }
     }
+
+    /**
+     * This method registers a listener to be notified with the measurements of each HTTP request.
+     *
+     * @param metricsListener listener to notify, or null to stop reporting
+     */
+    public void setMetricsListener(ClientMetricsListener metricsListener) {
+        if (client != null) {
+            client.setMetricsListener(metricsListener);
+        }
+    }
 }
@@ -106,6 +106,19 @@ public interface WssServiceClient {
 
     SendMetricsResult sendMetrics(SendMetricsRequest request) throws WssServiceException;
 
+    /**
+     * The method uploads a single chunk of an agent log file to the server.
+     * Use {@link ScaLogUploader} to upload whole log files.
+     *
+     * @param request log chunk upload request.
+     * @return UploadScaLogsResult result of the upload.
+     * @throws WssServiceException In case an error occurred during the call to WhiteSource server,
+     *                             or the client doesn't support uploading logs.
+     */
+    default UploadScaLogsResult uploadScaLogs(UploadScaLogsRequest request) throws WssServiceException {
+        throw new WssServiceException("Uploading SCA logs is not supported by " + getClass().getName());
+    }
+
     /**
      * @return serviceUrl
      */
@@ -197,5 +210,21 @@ public interface WssServiceClient {
      */
     Map<String, String> getHeaders();
 
+    /**
+     * The method registers a listener to be notified with the measurements of every request.
+     * Clients which don't measure their requests ignore the listener.
+     *
+     * @param metricsListener the listener, or null to stop reporting
+     */
+    default void setMetricsListener(ClientMetricsListener metricsListener) {
+    }
+
+    /**
+     * @return the metrics listener configured for this client, or null if there is none
+     */
+    default ClientMetricsListener getMetricsListener() {
+        return null;
+    }
+
     JwtAccessTokenResult jwtAccessToken(JwtAccessTokenRequest request) throws WssServiceException;
 }
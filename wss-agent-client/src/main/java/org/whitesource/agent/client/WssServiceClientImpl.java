@@ -15,11 +15,14 @@
  */
 package org.whitesource.agent.client;
 
-import com.github.markusbernhardt.proxy.ProxySearch;
 import com.google.gson.*;
 import org.apache.commons.logging.Log;
 import org.apache.commons.logging.LogFactory;
+import org.apache.http.HttpEntity;
+import org.apache.http.HttpHeaders;
 import org.apache.http.HttpHost;
+import org.apache.http.HttpResponse;
+import org.apache.http.HttpStatus;
 import org.apache.http.HttpVersion;
 import org.apache.http.NameValuePair;
 import org.apache.http.auth.AuthScope;
@@ -29,13 +32,15 @@ import org.apache.http.auth.UsernamePasswordCredentials;
 import org.apache.http.client.CredentialsProvider;
 import org.apache.http.client.HttpClient;
 import org.apache.http.client.HttpResponseException;
+import org.apache.http.client.ResponseHandler;
 import org.apache.http.client.config.CookieSpecs;
 import org.apache.http.client.config.RequestConfig;
+import org.apache.http.client.entity.GzipDecompressingEntity;
 import org.apache.http.client.entity.UrlEncodedFormEntity;
 import org.apache.http.client.methods.HttpPost;
 import org.apache.http.client.methods.HttpRequestBase;
 import org.apache.http.client.params.HttpClientParams;
-import org.apache.http.conn.ClientConnectionManager;
+import org.apache.http.client.utils.URLEncodedUtils;
 import org.apache.http.conn.scheme.PlainSocketFactory;
 import org.apache.http.conn.scheme.Scheme;
 import org.apache.http.conn.scheme.SchemeRegistry;
@@ -43,6 +48,7 @@ import org.apache.http.conn.ssl.SSLSocketFactory;
 import org.apache.http.impl.NoConnectionReuseStrategy;
 import org.apache.http.impl.client.*;
 import org.apache.http.impl.conn.DefaultProxyRoutePlanner;
+import org.apache.http.impl.conn.PoolingClientConnectionManager;
 import org.apache.http.impl.conn.tsccm.ThreadSafeClientConnManager;
 import org.apache.http.message.BasicNameValuePair;
 import org.apache.http.params.BasicHttpParams;
@@ -52,10 +58,14 @@ import org.apache.http.params.HttpProtocolParams;
 import org.apache.http.protocol.HTTP;
 import org.whitesource.agent.api.APIConstants;
 import org.whitesource.agent.api.dispatch.*;
+import org.whitesource.agent.utils.GzipPayloadCodec;
+import org.whitesource.agent.utils.JsonCodecs;
+import org.whitesource.agent.utils.PayloadCodec;
+import org.whitesource.agent.utils.PayloadCodecs;
+import org.whitesource.agent.utils.StringPool;
 import org.whitesource.agent.utils.ZipUtils;
 
 import java.io.IOException;
-import java.lang.reflect.Type;
 import java.net.*;
 import java.security.KeyStore;
 import java.util.*;
@@ -83,6 +93,10 @@ public class WssServiceClientImpl implements WssServiceClient {
     private static final Log logger = LogFactory.getLog(WssServiceClientImpl.class);
     private static final String TLS = "TLS";
     public static final String SOME_PASSWORD = "some password";
+    private static final int MAX_PARAMS_HEADER_LENGTH = 6 * 1024;
+    private static final int MAX_CONNECTIONS = 20;
+    private static final Set<Integer> GZIP_UNSUPPORTED_STATUS_CODES = new HashSet<>(Arrays.asList(
+            HttpStatus.SC_BAD_REQUEST, HttpStatus.SC_NOT_FOUND, HttpStatus.SC_UNSUPPORTED_MEDIA_TYPE));
 
     /* --- Members --- */
 
@@ -97,6 +111,15 @@ public class WssServiceClientImpl implements WssServiceClient {
     private String proxyUsername;
     private String proxyPassword;
     private Map<String, String> headers;
+    private volatile ClientMetricsListener metricsListener;
+    private volatile boolean proxyResolved;
+    private TransportMode transportMode = TransportMode.FORM;
+    private String gzipServiceUrl;
+    private volatile Boolean gzipTransportSupported;
+    private AdmissionController admissionController;
+    private boolean parallelCompression = Boolean.getBoolean(ClientConstants.PARALLEL_COMPRESSION_KEYWORD);
+    private PayloadCodec payloadCodec = defaultPayloadCodec();
+    private StringPool stringPool;
 
     private final boolean proxyEnabled;
 
@@ -141,7 +164,7 @@ public class WssServiceClientImpl implements WssServiceClient {
      */
     public WssServiceClientImpl(String serviceUrl, boolean setProxy, int connectionTimeoutMinutes, boolean ignoreCertificateCheck) {
         this.proxyEnabled = setProxy;
-        gson = new Gson();
+        gson = JsonCodecs.compact();
 
         if (serviceUrl == null || serviceUrl.length() == 0) {
             this.serviceUrl = ClientConstants.DEFAULT_SERVICE_URL;
@@ -158,7 +181,16 @@ public class WssServiceClientImpl implements WssServiceClient {
         HttpParams params = new BasicHttpParams();
         HttpClientParams.setRedirecting(params, true);
 
-        httpClient = new DefaultHttpClient();
+        // a pooling manager, so a single client can serve concurrent requests.
+        // https uses the process wide TLS context, so handshakes resume the sessions of previous connections
+        SchemeRegistry schemeRegistry = new SchemeRegistry();
+        schemeRegistry.register(new Scheme("http", 80, PlainSocketFactory.getSocketFactory()));
+        schemeRegistry.register(new Scheme("https", 443, new SSLSocketFactory(SharedSslContexts.getDefault(),
+                SSLSocketFactory.BROWSER_COMPATIBLE_HOSTNAME_VERIFIER)));
+        PoolingClientConnectionManager connectionManager = new PoolingClientConnectionManager(schemeRegistry);
+        connectionManager.setMaxTotal(MAX_CONNECTIONS);
+        connectionManager.setDefaultMaxPerRoute(MAX_CONNECTIONS);
+        httpClient = new DefaultHttpClient(connectionManager);
 
         if (ignoreCertificateCheck) {
             try {
@@ -178,7 +210,9 @@ public class WssServiceClientImpl implements WssServiceClient {
                 registry.register(new Scheme("http", PlainSocketFactory.getSocketFactory(), 80));
                 registry.register(new Scheme("https", sf, 443));
 
-                ClientConnectionManager ccm = new ThreadSafeClientConnManager(params, registry);
+                ThreadSafeClientConnManager ccm = new ThreadSafeClientConnManager(params, registry);
+                ccm.setMaxTotal(MAX_CONNECTIONS);
+                ccm.setDefaultMaxPerRoute(MAX_CONNECTIONS);
 
                 httpClient = new DefaultHttpClient(ccm, params);
             } catch (Exception e) {
@@ -197,8 +231,15 @@ public class WssServiceClientImpl implements WssServiceClient {
         // connection setup per request, which is negligible for the agent's request volume.
         ((DefaultHttpClient) httpClient).setReuseStrategy(new NoConnectionReuseStrategy());
 
+        if (AdmissionController.isEnabledBySystemProperties()) {
+            admissionController = AdmissionController.forServiceUrl(this.serviceUrl);
+        }
+
+        // the system proxy is searched for in the background and applied on the first request
         if (this.proxyEnabled) {
-            findDefaultProxy();
+            SystemProxyDiscovery.prefetch();
+        } else {
+            proxyResolved = true;
         }
     }
 
@@ -264,6 +305,11 @@ public class WssServiceClientImpl implements WssServiceClient {
         return service(request);
     }
 
+    @Override
+    public UploadScaLogsResult uploadScaLogs(UploadScaLogsRequest request) throws WssServiceException {
+        return service(request);
+    }
+
     @Override
     public void shutdown() {
         httpClient.getConnectionManager().shutdown();
@@ -278,6 +324,8 @@ public class WssServiceClientImpl implements WssServiceClient {
         if (host == null || host.trim().length() == 0) {
             return;
         }
+        // an explicit proxy takes precedence over the system one
+        proxyResolved = true;
         if (port < 0 || port > 65535) {
             return;
         }
@@ -287,6 +335,8 @@ public class WssServiceClientImpl implements WssServiceClient {
         DefaultProxyRoutePlanner routePlanner = new DefaultProxyRoutePlanner(proxy);
         // see constructor: disable connection reuse to avoid reusing a stale/half-open connection
         httpClient = HttpClients.custom().setRoutePlanner(routePlanner)
+                .setSSLContext(SharedSslContexts.getDefault())
+                .setMaxConnTotal(MAX_CONNECTIONS).setMaxConnPerRoute(MAX_CONNECTIONS)
                 .setConnectionReuseStrategy(new NoConnectionReuseStrategy()).build();
         logger.info("Using proxy: " + proxy.toHostString());
 
@@ -305,6 +355,8 @@ public class WssServiceClientImpl implements WssServiceClient {
             credsProvider.setCredentials(AuthScope.ANY, credentials);
             // TODO check
             httpClient = HttpClientBuilder.create().setProxy(proxy)
+                    .setSSLContext(SharedSslContexts.getDefault())
+                    .setMaxConnTotal(MAX_CONNECTIONS).setMaxConnPerRoute(MAX_CONNECTIONS)
                     .setDefaultCredentialsProvider(credsProvider)
                     .setConnectionReuseStrategy(new NoConnectionReuseStrategy()).build();
 
@@ -320,15 +372,9 @@ public class WssServiceClientImpl implements WssServiceClient {
 
     public Map<String, String> findDefaultProxyDetails(String url) {
         Map<String, String> proxyDetails = new HashMap<>();
-        ProxySearch proxySearch = new ProxySearch();
-        proxySearch.addStrategy(ProxySearch.Strategy.JAVA);
-        proxySearch.addStrategy(ProxySearch.Strategy.ENV_VAR);
-        proxySearch.addStrategy(ProxySearch.Strategy.OS_DEFAULT);
-        proxySearch.addStrategy(ProxySearch.Strategy.BROWSER);
-        ProxySelector proxySelector = proxySearch.getProxySelector();
+        ProxySelector proxySelector = SystemProxyDiscovery.getProxySelector();
 
         if (proxySelector != null) {
-            ProxySelector.setDefault(proxySelector);
             try {
                 List<Proxy> proxyList = proxySelector.select(new URI(url));
                 if (proxyList != null && !proxyList.isEmpty()) {
@@ -353,27 +399,73 @@ public class WssServiceClientImpl implements WssServiceClient {
         return proxyDetails;
     }
 
-    /* --- Protected methods --- */
+    /**
+     * Serializes and compresses the given request, without sending it.
+     * <p>
+     * Separating the preparation from the {@link #execute(PreparedRequest) network call} lets callers prepare
+     * requests on other threads while earlier ones are being sent. With the {@link TransportMode#GZIP gzip transport}
+     * the payload is streamed while it is sent, so only the form transport is serialized up front.
+     * <p>
+     * If an {@link #setAdmissionController(AdmissionController) admission controller} is set, its permit is taken
+     * before the payload is built and held until the request is executed, so queued callers hold no payloads.
+     *
+     * @param request Request to prepare.
+     * @return The prepared request, to be executed once.
+     * @throws WssServiceException In case of errors while preparing the request.
+     */
+    public <R> PreparedRequest<R> prepare(ServiceRequest<R> request) throws WssServiceException {
+        return prepare(request, acquirePermit(request));
+    }
 
     /**
-     * The method service the given request.
+     * Sends a request returned by {@link #prepare(ServiceRequest)}.
      *
-     * @param request Request to serve.
+     * @param prepared Prepared request to send.
      * @return Result from WhiteSource service.
      * @throws WssServiceException In case of errors while serving the request.
      */
     @SuppressWarnings("unchecked")
-    protected <R> R service(ServiceRequest<R> request) throws WssServiceException {
+    public <R> R execute(PreparedRequest<R> prepared) throws WssServiceException {
         R result;
         String response = "";
+        ServiceRequest<R> request = prepared.request;
+        RequestMetrics metrics = prepared.metrics;
+        HttpRequestBase httpRequest = prepared.httpRequest;
+        long startNanos = System.nanoTime();
+        AdmissionController.Permit permit = prepared.permit;
         try {
-            HttpRequestBase httpRequest = createHttpRequest(request);
-            RequestConfig requestConfig = RequestConfig.custom().setCookieSpec(CookieSpecs.STANDARD).build();
-            httpRequest.setConfig(requestConfig);
+            resolveProxy();
+            boolean gzipTransport = httpRequest.containsHeader(ClientConstants.PARAMS_HEADER);
+            RequestConfig requestConfig = httpRequest.getConfig();
+            if (permit != null) {
+                // gzip bodies are streamed, only form payloads are held in memory
+                permit.reserveBytes(metrics.getCompressedBytes());
+            }
+            if (httpRequest instanceof HttpPost && ((HttpPost) httpRequest).getEntity() instanceof MeteredHttpEntity) {
+                // the request may have waited since it was prepared, which is not part of connecting
+                ((MeteredHttpEntity) ((HttpPost) httpRequest).getEntity()).setStartNanos(startNanos);
+            }
 
             logger.trace("Calling White Source service: " + request);
-            response = httpClient.execute(httpRequest, new BasicResponseHandler());
+            try {
+                response = httpClient.execute(httpRequest, new MeteredResponseHandler(httpRequest, metrics));
+            } catch (HttpResponseException e) {
+                if (!gzipTransport || !GZIP_UNSUPPORTED_STATUS_CODES.contains(e.getStatusCode())) {
+                    throw e;
+                }
+                // the service doesn't accept gzip encoded bodies, fall back to the form transport for good
+                logger.info("Gzip transport rejected with status " + e.getStatusCode() + ", falling back to form encoding");
+                gzipTransportSupported = Boolean.FALSE;
+                gzipTransport = false;
+                httpRequest = createHttpRequest(request, metrics);
+                httpRequest.setConfig(requestConfig);
+                response = httpClient.execute(httpRequest, new MeteredResponseHandler(httpRequest, metrics));
+            }
+            if (gzipTransport) {
+                gzipTransportSupported = Boolean.TRUE;
+            }
 
+            long parseStart = System.nanoTime();
             String data = extractResultData(response);
             logger.trace("Result data is: " + data);
 
@@ -417,20 +509,49 @@ public class WssServiceClientImpl implements WssServiceClient {
                 case SEND_METRICS:
                     result = (R) gson.fromJson(data, SendMetricsResult.class);
                     break;
+                case UPLOAD_SCA_LOGS:
+                    result = (R) gson.fromJson(data, UploadScaLogsResult.class);
+                    break;
                 default:
                     throw new IllegalStateException("Unsupported request type.");
             }
+            metrics.addPhaseNanos(RequestPhase.PARSE, System.nanoTime() - parseStart);
+            metrics.setSuccess(true);
         } catch (JsonSyntaxException e) {
             throw new WssServiceException("JsonSyntax exception. Response data is:  " + response + e.getMessage(), e);
         } catch (HttpResponseException e) {
             throw new WssServiceException("Unexpected error. Response data is: " + response + e.getMessage() + " Error code is " + e.getStatusCode(), e.getCause(), e.getStatusCode());
         } catch (IOException e) {
             throw new WssServiceException("Unexpected error. Response data is: " + response + e.getMessage(), e);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new WssServiceException("Interrupted while waiting to send the request", e);
+        } finally {
+            if (permit != null) {
+                permit.close();
+            }
+            metrics.setTotalNanos(prepared.prepareNanos + System.nanoTime() - startNanos);
+            notifyMetricsListener(metrics);
         }
 
         return result;
     }
 
+    /* --- Protected methods --- */
+
+    /**
+     * The method service the given request.
+     *
+     * @param request Request to serve.
+     * @return Result from WhiteSource service.
+     * @throws WssServiceException In case of errors while serving the request.
+     */
+    protected <R> R service(ServiceRequest<R> request) throws WssServiceException {
+        // the permit is taken before the payload is built, so queued requests hold no payloads
+        AdmissionController.Permit permit = acquirePermit(request);
+        return execute(prepare(request, permit));
+    }
+
     /**
      * The method create the HTTP post request to be sent to the remote service.
      *
@@ -439,9 +560,25 @@ public class WssServiceClientImpl implements WssServiceClient {
      * @throws IOException In case of error creating the request.
      */
     protected <R> HttpRequestBase createHttpRequest(ServiceRequest<R> request) throws IOException, WssServiceException {
-        HttpPost httpRequest = new HttpPost(serviceUrl);
-        httpRequest.setHeader("Accept", ClientConstants.APPLICATION_JSON);
+        return createHttpRequest(request, new RequestMetrics(request.type()));
+    }
 
+    /**
+     * The method create the HTTP post request to be sent to the remote service.
+     *
+     * @param request Request to service.
+     * @param metrics Measurements of the request, updated with the serialization and compression phases.
+     * @return Newly created HTTP post request.
+     * @throws IOException In case of error creating the request.
+     */
+    protected <R> HttpRequestBase createHttpRequest(ServiceRequest<R> request, RequestMetrics metrics) throws IOException, WssServiceException {
+        return createHttpRequest(request, metrics, false);
+    }
+
+    /**
+     * @param gzipTransport Whether to send the payload as a gzip encoded body, see {@link TransportMode#GZIP}.
+     */
+    private <R> HttpPost createHttpRequest(ServiceRequest<R> request, RequestMetrics metrics, boolean gzipTransport) throws IOException {
         RequestType requestType = request.type();
         List<NameValuePair> nvps = new ArrayList<>();
         nvps.add(new BasicNameValuePair(APIConstants.PARAM_REQUEST_TYPE, requestType.toString()));
@@ -469,61 +606,95 @@ public class WssServiceClientImpl implements WssServiceClient {
             nvps.add(new BasicNameValuePair(APIConstants.EXTRA_PROPERTIES, "{}"));
         }
 
-        String jsonDiff = null;
+        long serializeStart = System.nanoTime();
+        Object payload = null;
+        boolean hasPayload = true;
         switch (requestType) {
             case UPDATE:
                 UpdateInventoryRequest updateInventoryRequest = (UpdateInventoryRequest) request;
                 nvps.add(new BasicNameValuePair(APIConstants.SCAN_SUMMARY_INFO, gson.toJson(updateInventoryRequest.getScanSummaryInfo())));
                 nvps.add(new BasicNameValuePair(APIConstants.PARAM_UPDATE_TYPE, updateInventoryRequest.getUpdateType().toString()));
                 nvps.add(new BasicNameValuePair(APIConstants.CONTRIBUTIONS, gson.toJson(updateInventoryRequest.getContributions())));
-                jsonDiff = gson.toJson(updateInventoryRequest.getProjects());
+                payload = updateInventoryRequest.getProjects();
                 break;
             case CHECK_POLICIES:
-                jsonDiff = gson.toJson(((CheckPoliciesRequest) request).getProjects());
+                payload = ((CheckPoliciesRequest) request).getProjects();
                 break;
             case CHECK_POLICY_COMPLIANCE:
             case ASYNC_CHECK_POLICY_COMPLIANCE:
-                jsonDiff = handleCheckPolicyReq(nvps, request);
+                payload = handleCheckPolicyReq(nvps, request);
                 break;
             case ASYNC_CHECK_POLICY_COMPLIANCE_STATUS:
-                jsonDiff = gson.toJson(((AsyncCheckPolicyComplianceStatusRequest) request).getProjects());
+                payload = ((AsyncCheckPolicyComplianceStatusRequest) request).getProjects();
                 nvps.add(new BasicNameValuePair(APIConstants.IDENTIFIER, ((AsyncCheckPolicyComplianceStatusRequest) request).getIdentifier()));
                 break;
             case ASYNC_CHECK_POLICY_COMPLIANCE_RESPONSE:
-                jsonDiff = gson.toJson(((AsyncCheckPolicyComplianceResponseRequest) request).getProjects());
+                payload = ((AsyncCheckPolicyComplianceResponseRequest) request).getProjects();
                 nvps.add(new BasicNameValuePair(APIConstants.IDENTIFIER, ((AsyncCheckPolicyComplianceResponseRequest) request).getIdentifier()));
                 break;
             case CHECK_VULNERABILITIES:
-                jsonDiff = gson.toJson(((CheckVulnerabilitiesRequest) request).getProjects());
+                payload = ((CheckVulnerabilitiesRequest) request).getProjects();
                 break;
             case GET_CLOUD_NATIVE_VULNERABILITIES:
-                jsonDiff = gson.toJson(((GetCloudNativeVulnerabilitiesRequest) request).getProjects());
+                payload = ((GetCloudNativeVulnerabilitiesRequest) request).getProjects();
                 break;
             case GET_DEPENDENCY_DATA:
-                jsonDiff = gson.toJson(((GetDependencyDataRequest) request).getProjects());
+                payload = ((GetDependencyDataRequest) request).getProjects();
                 break;
             case SUMMARY_SCAN:
                 SummaryScanRequest summaryScanRequest = (SummaryScanRequest) request;
-                jsonDiff = gson.toJson(summaryScanRequest.getProjects());
+                payload = summaryScanRequest.getProjects();
                 break;
             case GET_CONFIGURATION:
-                jsonDiff = gson.toJson(((ConfigurationRequest) request).getProjects());
+                payload = ((ConfigurationRequest) request).getProjects();
                 break;
             case JWT_ACCESS_TOKEN:
-                jsonDiff = gson.toJson(((JwtAccessTokenRequest) request).getProjects());
+                payload = ((JwtAccessTokenRequest) request).getProjects();
                 break;
             case SEND_METRICS:
-                jsonDiff = gson.toJson(((SendMetricsRequest) request).getProjects());
+                payload = ((SendMetricsRequest) request).getProjects();
+                break;
+            case UPLOAD_SCA_LOGS:
+                UploadScaLogsRequest uploadScaLogsRequest = (UploadScaLogsRequest) request;
+                nvps.add(new BasicNameValuePair(APIConstants.LOG_UPLOAD_ID, uploadScaLogsRequest.getUploadId()));
+                nvps.add(new BasicNameValuePair(APIConstants.LOG_FILE_NAME, uploadScaLogsRequest.getFileName()));
+                nvps.add(new BasicNameValuePair(APIConstants.LOG_OFFSET, String.valueOf(uploadScaLogsRequest.getOffset())));
+                nvps.add(new BasicNameValuePair(APIConstants.LOG_TOTAL_LENGTH, String.valueOf(uploadScaLogsRequest.getTotalLength())));
+                nvps.add(new BasicNameValuePair(APIConstants.LOG_CHUNK_INDEX, String.valueOf(uploadScaLogsRequest.getChunkIndex())));
+                nvps.add(new BasicNameValuePair(APIConstants.LOG_LAST_CHUNK, String.valueOf(uploadScaLogsRequest.isLastChunk())));
+                payload = uploadScaLogsRequest.getLogChunk();
                 break;
             default:
+                hasPayload = false;
                 break;
         }
 
-        // compress json before sending
-        String compressedString = ZipUtils.compressString(jsonDiff);
-        nvps.add(new BasicNameValuePair(APIConstants.PARAM_DIFF, compressedString));
+        HttpPost httpRequest = null;
+        if (gzipTransport && hasPayload) {
+            String params = URLEncodedUtils.format(nvps, UTF_8);
+            if (params.length() <= MAX_PARAMS_HEADER_LENGTH) {
+                httpRequest = createGzipHttpRequest(params, payload, metrics);
+            } else {
+                logger.debug("Request parameters are too large for a header, using the form transport");
+            }
+        }
 
-        httpRequest.setEntity(new UrlEncodedFormEntity(nvps, UTF_8));
+        if (httpRequest == null) {
+            String jsonDiff = hasPayload ? gson.toJson(payload) : null;
+            long compressStart = System.nanoTime();
+            metrics.addPhaseNanos(RequestPhase.SERIALIZE, compressStart - serializeStart);
+
+            // compress json before sending
+            String compressedString = ZipUtils.compressString(jsonDiff, formCodec());
+            nvps.add(new BasicNameValuePair(APIConstants.PARAM_DIFF, compressedString));
+            metrics.addPhaseNanos(RequestPhase.COMPRESS, System.nanoTime() - compressStart);
+            metrics.setRawBytes(utf8Length(jsonDiff));
+            metrics.setCompressedBytes(compressedString == null ? 0 : compressedString.length());
+
+            httpRequest = new HttpPost(serviceUrl);
+            httpRequest.setHeader("Accept", ClientConstants.APPLICATION_JSON);
+            httpRequest.setEntity(new MeteredHttpEntity(new UrlEncodedFormEntity(nvps, UTF_8), metrics, System.nanoTime()));
+        }
 
         if (headers != null) {
             headers.forEach(httpRequest::setHeader);
@@ -532,7 +703,41 @@ public class WssServiceClientImpl implements WssServiceClient {
         return httpRequest;
     }
 
-    private <R> String handleCheckPolicyReq(List<NameValuePair> nvps, ServiceRequest<R> request) {
+    /**
+     * @return Codec of form encoded payloads, which the service only accepts as gzip.
+     */
+    private PayloadCodec formCodec() {
+        GzipPayloadCodec gzip = payloadCodec instanceof GzipPayloadCodec ? (GzipPayloadCodec) payloadCodec : PayloadCodecs.gzip();
+        return parallelCompression ? gzip.withParallel(true) : gzip;
+    }
+
+    private PayloadCodec bodyCodec() {
+        return parallelCompression && payloadCodec instanceof GzipPayloadCodec
+                ? ((GzipPayloadCodec) payloadCodec).withParallel(true) : payloadCodec;
+    }
+
+    private static PayloadCodec defaultPayloadCodec() {
+        try {
+            return PayloadCodecs.forName(System.getProperty(ClientConstants.PAYLOAD_CODEC_KEYWORD));
+        } catch (IllegalArgumentException e) {
+            logger.warn("Ignoring " + ClientConstants.PAYLOAD_CODEC_KEYWORD + ": " + e.getMessage());
+            return PayloadCodecs.gzip();
+        }
+    }
+
+    /**
+     * Creates a request which carries the parameters in a header and streams the payload JSON as a compressed body.
+     */
+    private HttpPost createGzipHttpRequest(String params, Object payload, RequestMetrics metrics) {
+        HttpPost httpRequest = new HttpPost(gzipServiceUrl == null ? serviceUrl : gzipServiceUrl);
+        httpRequest.setHeader("Accept", ClientConstants.APPLICATION_JSON);
+        httpRequest.setHeader(HttpHeaders.ACCEPT_ENCODING, GzipJsonEntity.GZIP);
+        httpRequest.setHeader(ClientConstants.PARAMS_HEADER, params);
+        httpRequest.setEntity(new MeteredHttpEntity(new GzipJsonEntity(gson, payload, metrics, bodyCodec()), metrics, System.nanoTime()));
+        return httpRequest;
+    }
+
+    private <R> Object handleCheckPolicyReq(List<NameValuePair> nvps, ServiceRequest<R> request) {
         BaseRequest<R> br = (BaseRequest<R>) request;
 
         nvps.add(new BasicNameValuePair(APIConstants.SCAN_SUMMARY_INFO, this.gson.toJson(br.getScanSummaryInfo())));
@@ -549,7 +754,7 @@ public class WssServiceClientImpl implements WssServiceClient {
                     String.valueOf(((AsyncCheckPolicyComplianceRequest)br).isPopulateVulnerabilities())));
         }
 
-        return gson.toJson(br.getProjects());
+        return br.getProjects();
     }
 
     /**
@@ -581,44 +786,96 @@ public class WssServiceClientImpl implements WssServiceClient {
 
     /* --- Private methods --- */
 
-    private void findDefaultProxy() {
-        Map<String, String> proxyDetails = findDefaultProxyDetails(serviceUrl);
-        if (proxyDetails.size() > 0) {
-            setProxy(proxyDetails.get(PROXY_HOST), Integer.parseInt(proxyDetails.get(PROXY_PORT)),
-                    proxyDetails.get(PROXY_USER), proxyDetails.get(PROXY_PASS));
+    /**
+     * @return A permit of the admission controller for the request, null if there is no admission controller.
+     */
+    private AdmissionController.Permit acquirePermit(ServiceRequest<?> request) throws WssServiceException {
+        if (admissionController == null) {
+            return null;
+        }
+        try {
+            return admissionController.acquire(RequestPriority.of(request.type()));
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new WssServiceException("Interrupted while waiting to send the request", e);
         }
     }
 
-    private ExclusionStrategy getExclusionStrategy() {
-        return new ExclusionStrategy() {
-            @Override
-            public boolean shouldSkipField(FieldAttributes fieldAttributes) {
-                String name = fieldAttributes.getName();
-                if (name.equals("optional") || name.equals("checksums") || name.equals("deduped")) {
-                    return true;
-                }
-                return false;
+    /**
+     * Serializes and compresses the request under the given permit, which is closed if preparing fails.
+     */
+    private <R> PreparedRequest<R> prepare(ServiceRequest<R> request, AdmissionController.Permit permit) throws WssServiceException {
+        RequestMetrics metrics = new RequestMetrics(request.type());
+        long startNanos = System.nanoTime();
+        boolean prepared = false;
+        try {
+            boolean gzipTransport = transportMode == TransportMode.GZIP && !Boolean.FALSE.equals(gzipTransportSupported);
+            HttpRequestBase httpRequest = gzipTransport ? createHttpRequest(request, metrics, true) : createHttpRequest(request, metrics);
+            httpRequest.setConfig(RequestConfig.custom().setCookieSpec(CookieSpecs.STANDARD).build());
+            prepared = true;
+            return new PreparedRequest<>(request, httpRequest, metrics, permit, System.nanoTime() - startNanos);
+        } catch (IOException e) {
+            metrics.setTotalNanos(System.nanoTime() - startNanos);
+            notifyMetricsListener(metrics);
+            throw new WssServiceException("Unexpected error. Response data is: " + e.getMessage(), e);
+        } finally {
+            if (!prepared && permit != null) {
+                permit.close();
             }
+        }
+    }
 
-            @Override
-            public boolean shouldSkipClass(Class<?> aClass) {
-                return false;
+    private void notifyMetricsListener(RequestMetrics metrics) {
+        ClientMetricsListener listener = metricsListener;
+        if (listener != null) {
+            try {
+                listener.requestCompleted(metrics);
+            } catch (RuntimeException e) {
+                logger.debug("Metrics listener failed: " + e.getMessage());
             }
-        };
+        }
     }
 
-    static class CollectionAdapter implements JsonSerializer<Collection<?>> {
-        @Override
-        public JsonElement serialize(Collection<?> src, Type typeOfSrc,
-                                     JsonSerializationContext context) {
-            if (src == null || src.isEmpty())
-                return null;
-            JsonArray array = new JsonArray();
-            for (Object child : src) {
-                JsonElement element = context.serialize(child);
-                array.add(element);
+    private static long utf8Length(String value) {
+        if (value == null) {
+            return 0;
+        }
+        long length = 0;
+        for (int i = 0; i < value.length(); i++) {
+            char c = value.charAt(i);
+            if (c < 0x80) {
+                length++;
+            } else if (c < 0x800) {
+                length += 2;
+            } else if (Character.isHighSurrogate(c)) {
+                length += 4;
+                i++;
+            } else {
+                length += 3;
+            }
+        }
+        return length;
+    }
+
+    /**
+     * Applies the system proxy, unless it was already applied or a proxy was set explicitly.
+     */
+    private void resolveProxy() {
+        if (!proxyResolved) {
+            synchronized (this) {
+                if (!proxyResolved) {
+                    findDefaultProxy();
+                    proxyResolved = true;
+                }
             }
-            return array;
+        }
+    }
+
+    private void findDefaultProxy() {
+        Map<String, String> proxyDetails = findDefaultProxyDetails(serviceUrl);
+        if (proxyDetails.size() > 0) {
+            setProxy(proxyDetails.get(PROXY_HOST), Integer.parseInt(proxyDetails.get(PROXY_PORT)),
+                    proxyDetails.get(PROXY_USER), proxyDetails.get(PROXY_PASS));
         }
     }
 
@@ -642,6 +899,9 @@ public class WssServiceClientImpl implements WssServiceClient {
         return connectionTimeout / TO_MILLISECONDS;
     }
 
+    /**
+     * @return The explicitly set proxy host, or the system one once the first request was served.
+     */
     public String getProxyHost() {
         return proxyHost;
     }
@@ -676,4 +936,171 @@ public class WssServiceClientImpl implements WssServiceClient {
     public void setHeaders(Map<String, String> headers) {
         this.headers = headers;
     }
+
+    public AdmissionController getAdmissionController() {
+        return admissionController;
+    }
+
+    /**
+     * @param admissionController Optional. Limits the concurrent requests and in flight bytes, usually
+     *                            {@link AdmissionController#forServiceUrl(String)} to share the limits process wide.
+     */
+    public void setAdmissionController(AdmissionController admissionController) {
+        this.admissionController = admissionController;
+    }
+
+    public TransportMode getTransportMode() {
+        return transportMode;
+    }
+
+    /**
+     * @param transportMode How to encode the request payload. {@link TransportMode#GZIP} falls back to
+     *                      {@link TransportMode#FORM} if the service rejects it.
+     */
+    public void setTransportMode(TransportMode transportMode) {
+        this.transportMode = transportMode == null ? TransportMode.FORM : transportMode;
+        this.gzipTransportSupported = null;
+    }
+
+    public String getGzipServiceUrl() {
+        return gzipServiceUrl;
+    }
+
+    /**
+     * @param gzipServiceUrl Optional. Endpoint accepting {@link TransportMode#GZIP} requests, defaults to the service URL.
+     */
+    public void setGzipServiceUrl(String gzipServiceUrl) {
+        this.gzipServiceUrl = gzipServiceUrl;
+        this.gzipTransportSupported = null;
+    }
+
+    public boolean isParallelCompression() {
+        return parallelCompression;
+    }
+
+    /**
+     * @param parallelCompression Whether to compress request payloads on multiple threads, for large payloads.
+     *                            Defaults to the {@link ClientConstants#PARALLEL_COMPRESSION_KEYWORD} system property.
+     */
+    public void setParallelCompression(boolean parallelCompression) {
+        this.parallelCompression = parallelCompression;
+    }
+
+    public PayloadCodec getPayloadCodec() {
+        return payloadCodec;
+    }
+
+    /**
+     * @param payloadCodec Compression format and level of {@link TransportMode#GZIP gzip transport} request bodies.
+     *                     Form encoded payloads are always gzip, at this codec's level if it is gzip.
+     *                     Defaults to the {@link ClientConstants#PAYLOAD_CODEC_KEYWORD} system property, or gzip.
+     */
+    public void setPayloadCodec(PayloadCodec payloadCodec) {
+        this.payloadCodec = payloadCodec == null ? PayloadCodecs.gzip() : payloadCodec;
+    }
+
+    public StringPool getStringPool() {
+        return stringPool;
+    }
+
+    /**
+     * @param stringPool Pool to share the repeating strings of the results through, such as license and policy
+     *                   names in large policy check results. Null, the default, for none.
+     */
+    public void setStringPool(StringPool stringPool) {
+        this.stringPool = stringPool;
+        this.gson = JsonCodecs.compact(stringPool);
+    }
+
+    @Override
+    public ClientMetricsListener getMetricsListener() {
+        return metricsListener;
+    }
+
+    @Override
+    public void setMetricsListener(ClientMetricsListener metricsListener) {
+        this.metricsListener = metricsListener;
+    }
+
+    /* --- Nested classes --- */
+
+    /**
+     * A serialized request, ready to be sent by {@link #execute(PreparedRequest)}, or given up with
+     * {@link #discard()}.
+     *
+     * @param <R> Type of the request's result.
+     */
+    public static final class PreparedRequest<R> {
+
+        private final ServiceRequest<R> request;
+        private final HttpRequestBase httpRequest;
+        private final RequestMetrics metrics;
+        private final AdmissionController.Permit permit;
+        private final long prepareNanos;
+
+        private PreparedRequest(ServiceRequest<R> request, HttpRequestBase httpRequest, RequestMetrics metrics,
+                                AdmissionController.Permit permit, long prepareNanos) {
+            this.request = request;
+            this.httpRequest = httpRequest;
+            this.metrics = metrics;
+            this.permit = permit;
+            this.prepareNanos = prepareNanos;
+        }
+
+        /**
+         * Gives up a request which will not be executed, returning its admission permit, if any.
+         */
+        public void discard() {
+            if (permit != null) {
+                permit.close();
+            }
+        }
+
+        public ServiceRequest<R> getRequest() {
+            return request;
+        }
+
+        /**
+         * @return Measurements of the request, holding the serialization and compression phases until it is sent.
+         */
+        public RequestMetrics getMetrics() {
+            return metrics;
+        }
+    }
+
+    /**
+     * Response handler which times the wait for the response and the read of its body.
+     */
+    private static class MeteredResponseHandler implements ResponseHandler<String> {
+
+        private final BasicResponseHandler delegate = new BasicResponseHandler();
+        private final HttpRequestBase httpRequest;
+        private final RequestMetrics metrics;
+
+        MeteredResponseHandler(HttpRequestBase httpRequest, RequestMetrics metrics) {
+            this.httpRequest = httpRequest;
+            this.metrics = metrics;
+        }
+
+        @Override
+        public String handleResponse(HttpResponse response) throws IOException {
+            long responseStart = System.nanoTime();
+            if (httpRequest instanceof HttpPost && ((HttpPost) httpRequest).getEntity() instanceof MeteredHttpEntity) {
+                long writeEnd = ((MeteredHttpEntity) ((HttpPost) httpRequest).getEntity()).getWriteEndNanos();
+                if (writeEnd > 0) {
+                    metrics.addPhaseNanos(RequestPhase.SERVER, responseStart - writeEnd);
+                }
+            }
+            HttpEntity entity = response.getEntity();
+            if (entity != null && entity.getContentEncoding() != null
+                    && GzipJsonEntity.GZIP.equalsIgnoreCase(entity.getContentEncoding().getValue())) {
+                response.setEntity(new GzipDecompressingEntity(entity));
+            }
+            try {
+                return delegate.handleResponse(response);
+            } finally {
+                metrics.addPhaseNanos(RequestPhase.DOWNLOAD, System.nanoTime() - responseStart);
+            }
+        }
+    }
 }
@@ -0,0 +1,127 @@
+/**
+ * Copyright (C) 2012 White Source Ltd.
+ * <p>
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * <p>
+ * http://www.apache.org/licenses/LICENSE-2.0
+ * <p>
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.whitesource.agent.client;
+
+import org.junit.Test;
+import org.whitesource.agent.api.dispatch.RequestType;
+
+import java.util.List;
+import java.util.concurrent.*;
+
+import static org.junit.Assert.*;
+
+public class AdmissionControllerTest {
+
+    /* --- Test methods --- */
+
+    @Test(timeout = 10000)
+    public void testLimitsConcurrentRequests() throws Exception {
+        AdmissionController controller = new AdmissionController(1, 1000);
+        AdmissionController.Permit first = controller.acquire(RequestPriority.NORMAL);
+        Future<AdmissionController.Permit> second = acquireAsync(controller, RequestPriority.NORMAL);
+
+        awaitQueueDepth(controller, 1);
+        assertFalse(second.isDone());
+        first.close();
+        second.get(5, TimeUnit.SECONDS).close();
+        assertEquals(0, controller.getActiveRequests());
+        assertEquals(2, controller.getWaitTimes(RequestPriority.NORMAL).getCount());
+    }
+
+    @Test(timeout = 10000)
+    public void testAdmitsByPriority() throws Exception {
+        AdmissionController controller = new AdmissionController(1, 1000);
+        AdmissionController.Permit first = controller.acquire(RequestPriority.NORMAL);
+        List<RequestPriority> order = new CopyOnWriteArrayList<>();
+        ExecutorService executor = Executors.newCachedThreadPool();
+        try {
+            executor.submit(admitAndRecord(controller, RequestPriority.BACKGROUND, order));
+            awaitQueueDepth(controller, 1);
+            executor.submit(admitAndRecord(controller, RequestPriority.BLOCKING, order));
+            awaitQueueDepth(controller, 2);
+
+            first.close();
+            while (order.size() < 2) {
+                Thread.sleep(5);
+            }
+            assertEquals(RequestPriority.BLOCKING, order.get(0));
+            assertEquals(RequestPriority.BACKGROUND, order.get(1));
+        } finally {
+            executor.shutdownNow();
+        }
+    }
+
+    @Test(timeout = 10000)
+    public void testLimitsInFlightBytes() throws Exception {
+        AdmissionController controller = new AdmissionController(4, 100);
+        AdmissionController.Permit first = controller.acquire(RequestPriority.NORMAL);
+        first.reserveBytes(80);
+        assertEquals(80, controller.getInFlightBytes());
+
+        AdmissionController.Permit second = controller.acquire(RequestPriority.NORMAL);
+        ExecutorService executor = Executors.newSingleThreadExecutor();
+        try {
+            Future<?> reserved = executor.submit(() -> {
+                second.reserveBytes(50);
+                return null;
+            });
+            awaitQueueDepth(controller, 1);
+            first.close();
+            reserved.get(5, TimeUnit.SECONDS);
+            assertEquals(50, controller.getInFlightBytes());
+        } finally {
+            executor.shutdownNow();
+        }
+
+        // a payload larger than the budget goes through alone
+        second.close();
+        AdmissionController.Permit oversized = controller.acquire(RequestPriority.NORMAL);
+        oversized.reserveBytes(500);
+        oversized.close();
+        assertEquals(0, controller.getInFlightBytes());
+    }
+
+    @Test
+    public void testDefaultPriorities() {
+        assertEquals(RequestPriority.BLOCKING, RequestPriority.of(RequestType.CHECK_POLICY_COMPLIANCE));
+        assertEquals(RequestPriority.NORMAL, RequestPriority.of(RequestType.GET_DEPENDENCY_DATA));
+        assertEquals(RequestPriority.BACKGROUND, RequestPriority.of(RequestType.UPDATE));
+    }
+
+    /* --- Private methods --- */
+
+    private Future<AdmissionController.Permit> acquireAsync(AdmissionController controller, RequestPriority priority) {
+        ExecutorService executor = Executors.newSingleThreadExecutor();
+        Future<AdmissionController.Permit> future = executor.submit(() -> controller.acquire(priority));
+        executor.shutdown();
+        return future;
+    }
+
+    private Callable<Void> admitAndRecord(AdmissionController controller, RequestPriority priority, List<RequestPriority> order) {
+        return () -> {
+            try (AdmissionController.Permit permit = controller.acquire(priority)) {
+                order.add(priority);
+            }
+            return null;
+        };
+    }
+
+    private void awaitQueueDepth(AdmissionController controller, int depth) throws InterruptedException {
+        while (controller.getQueueDepth() < depth) {
+            Thread.sleep(5);
+        }
+    }
+}
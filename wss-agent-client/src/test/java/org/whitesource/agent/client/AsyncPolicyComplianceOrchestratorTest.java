@@ -0,0 +1,176 @@
+/**
+ * Copyright (C) 2012 White Source Ltd.
+ * <p>
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * <p>
+ * http://www.apache.org/licenses/LICENSE-2.0
+ * <p>
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.whitesource.agent.client;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.whitesource.agent.api.dispatch.*;
+import org.whitesource.agent.api.model.ProjectEvents;
+
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CyclicBarrier;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.Assert.*;
+import static org.mockito.Matchers.any;
+import static org.mockito.Mockito.*;
+
+public class AsyncPolicyComplianceOrchestratorTest {
+
+    /* --- Members --- */
+
+    private WssServiceClient client;
+
+    private AsyncPolicyComplianceOrchestrator orchestrator;
+
+    /* --- Life cycle methods --- */
+
+    @Before
+    public void setUp() {
+        client = mock(WssServiceClient.class);
+        WhitesourceService service = new WhitesourceService("agent", "agentVersion", "pluginVersion", null, false);
+        service.setClient(client);
+        orchestrator = new AsyncPolicyComplianceOrchestrator(service);
+        orchestrator.setInitialPollDelayMillis(5);
+        orchestrator.setMaxPollDelayMillis(20);
+    }
+
+    @After
+    public void tearDown() {
+        orchestrator.shutdown();
+    }
+
+    /* --- Test methods --- */
+
+    @Test
+    public void testFetchesResponseWhenProjectEventsComplete() throws Exception {
+        AsyncCheckPolicyComplianceResult submitted = new AsyncCheckPolicyComplianceResult();
+        submitted.setIdentifier("id-1");
+        when(client.asyncCheckPolicyCompliance(any(AsyncCheckPolicyComplianceRequest.class))).thenReturn(submitted);
+
+        AsyncCheckPolicyComplianceStatusResult running = statusResult("IN_PROGRESS", "IN_PROGRESS", "IN_PROGRESS");
+        AsyncCheckPolicyComplianceStatusResult partial = statusResult("IN_PROGRESS", "COMPLETED", "IN_PROGRESS");
+        AsyncCheckPolicyComplianceStatusResult done = statusResult("IN_PROGRESS", "COMPLETED", "COMPLETED");
+        when(client.asyncCheckPolicyComplianceStatus(any(AsyncCheckPolicyComplianceStatusRequest.class)))
+                .thenReturn(running, partial, done);
+
+        AsyncCheckPolicyComplianceResponseResult response = new AsyncCheckPolicyComplianceResponseResult();
+        response.setOrganization("org");
+        when(client.asyncCheckPolicyComplianceResponse(any(AsyncCheckPolicyComplianceResponseRequest.class))).thenReturn(response);
+
+        AsyncCheckPolicyComplianceRequest request = new AsyncCheckPolicyComplianceRequest("orgToken", null, false);
+        AsyncCheckPolicyComplianceResponseResult result = orchestrator.checkPolicyCompliance(request, true).get(10, TimeUnit.SECONDS);
+
+        assertSame(response, result);
+        verify(client, times(3)).asyncCheckPolicyComplianceStatus(any(AsyncCheckPolicyComplianceStatusRequest.class));
+        verify(client, never()).checkPolicyCompliance(any(CheckPolicyComplianceRequest.class));
+        assertEquals(0, orchestrator.getPendingCount());
+    }
+
+    @Test
+    public void testFailedStatusCompletesExceptionally() throws Exception {
+        AsyncCheckPolicyComplianceResult submitted = new AsyncCheckPolicyComplianceResult();
+        submitted.setIdentifier("id-2");
+        when(client.asyncCheckPolicyCompliance(any(AsyncCheckPolicyComplianceRequest.class))).thenReturn(submitted);
+        when(client.asyncCheckPolicyComplianceStatus(any(AsyncCheckPolicyComplianceStatusRequest.class)))
+                .thenReturn(new AsyncCheckPolicyComplianceStatusResult("FAILED"));
+
+        try {
+            orchestrator.checkPolicyCompliance(new AsyncCheckPolicyComplianceRequest(), true).get(10, TimeUnit.SECONDS);
+            fail("Expected the check to fail");
+        } catch (ExecutionException e) {
+            assertTrue(e.getCause() instanceof WssServiceException);
+        }
+        verify(client, never()).asyncCheckPolicyComplianceResponse(any(AsyncCheckPolicyComplianceResponseRequest.class));
+    }
+
+    @Test
+    public void testUnrecognizedStatusIsTreatedAsRunning() throws Exception {
+        AsyncCheckPolicyComplianceResult submitted = new AsyncCheckPolicyComplianceResult();
+        submitted.setIdentifier("id-3");
+        when(client.asyncCheckPolicyCompliance(any(AsyncCheckPolicyComplianceRequest.class))).thenReturn(submitted);
+        when(client.asyncCheckPolicyComplianceStatus(any(AsyncCheckPolicyComplianceStatusRequest.class)))
+                .thenReturn(new AsyncCheckPolicyComplianceStatusResult("AWAITING_SCAN"), new AsyncCheckPolicyComplianceStatusResult("succeeded"));
+        AsyncCheckPolicyComplianceResponseResult response = new AsyncCheckPolicyComplianceResponseResult();
+        when(client.asyncCheckPolicyComplianceResponse(any(AsyncCheckPolicyComplianceResponseRequest.class))).thenReturn(response);
+
+        AsyncCheckPolicyComplianceResponseResult result = orchestrator.checkPolicyCompliance(
+                new AsyncCheckPolicyComplianceRequest(), true).get(10, TimeUnit.SECONDS);
+
+        assertSame(response, result);
+        verify(client, times(2)).asyncCheckPolicyComplianceStatus(any(AsyncCheckPolicyComplianceStatusRequest.class));
+    }
+
+    @Test
+    public void testPollsChecksConcurrently() throws Exception {
+        AsyncCheckPolicyComplianceResult first = new AsyncCheckPolicyComplianceResult();
+        first.setIdentifier("id-4");
+        AsyncCheckPolicyComplianceResult second = new AsyncCheckPolicyComplianceResult();
+        second.setIdentifier("id-5");
+        when(client.asyncCheckPolicyCompliance(any(AsyncCheckPolicyComplianceRequest.class))).thenReturn(first, second);
+
+        // each status call waits for the other one, which only returns if both polls are in flight at once
+        CyclicBarrier barrier = new CyclicBarrier(2);
+        when(client.asyncCheckPolicyComplianceStatus(any(AsyncCheckPolicyComplianceStatusRequest.class))).thenAnswer(invocation -> {
+            barrier.await(5, TimeUnit.SECONDS);
+            return new AsyncCheckPolicyComplianceStatusResult("COMPLETED");
+        });
+        when(client.asyncCheckPolicyComplianceResponse(any(AsyncCheckPolicyComplianceResponseRequest.class)))
+                .thenReturn(new AsyncCheckPolicyComplianceResponseResult());
+
+        CompletableFuture<AsyncCheckPolicyComplianceResponseResult> firstResult =
+                orchestrator.checkPolicyCompliance(new AsyncCheckPolicyComplianceRequest(), true);
+        CompletableFuture<AsyncCheckPolicyComplianceResponseResult> secondResult =
+                orchestrator.checkPolicyCompliance(new AsyncCheckPolicyComplianceRequest(), true);
+
+        assertNotNull(firstResult.get(10, TimeUnit.SECONDS));
+        assertNotNull(secondResult.get(10, TimeUnit.SECONDS));
+        verify(client, times(2)).asyncCheckPolicyComplianceStatus(any(AsyncCheckPolicyComplianceStatusRequest.class));
+    }
+
+    @Test
+    public void testFallsBackToSynchronousCheckWhenFlagIsOff() throws Exception {
+        CheckPolicyComplianceResult syncResult = new CheckPolicyComplianceResult("org");
+        when(client.checkPolicyCompliance(any(CheckPolicyComplianceRequest.class))).thenReturn(syncResult);
+
+        Map<AppFlags, Object> flags = new HashMap<>();
+        flags.put(AppFlags.ASYNC_CHECK_POLICIES_ENABLED, "false");
+        ConfigurationResult configuration = new ConfigurationResult(true, false, false, null, null, flags);
+
+        AsyncCheckPolicyComplianceResponseResult result = orchestrator.checkPolicyCompliance(
+                new AsyncCheckPolicyComplianceRequest("orgToken", null, true), configuration).get(10, TimeUnit.SECONDS);
+
+        assertEquals("org", result.getOrganization());
+        verify(client, never()).asyncCheckPolicyCompliance(any(AsyncCheckPolicyComplianceRequest.class));
+    }
+
+    /* --- Private methods --- */
+
+    private AsyncCheckPolicyComplianceStatusResult statusResult(String status, String... eventStatuses) {
+        AsyncCheckPolicyComplianceStatusResult result = new AsyncCheckPolicyComplianceStatusResult(status);
+        ProjectEvents[] events = new ProjectEvents[eventStatuses.length];
+        for (int i = 0; i < eventStatuses.length; i++) {
+            events[i] = new ProjectEvents("scan", "event-" + i, "project-" + i, "project " + i, eventStatuses[i]);
+        }
+        result.setProjectEvents(Arrays.asList(events));
+        return result;
+    }
+}
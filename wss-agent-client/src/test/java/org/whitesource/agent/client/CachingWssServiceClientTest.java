@@ -0,0 +1,176 @@
+/**
+ * Copyright (C) 2012 White Source Ltd.
+ * <p>
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * <p>
+ * http://www.apache.org/licenses/LICENSE-2.0
+ * <p>
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.whitesource.agent.client;
+
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+import org.mockito.ArgumentCaptor;
+import org.whitesource.agent.api.dispatch.*;
+import org.whitesource.agent.api.model.AgentProjectInfo;
+import org.whitesource.agent.api.model.DependencyInfo;
+import org.whitesource.agent.api.model.ResourceInfo;
+import org.whitesource.agent.api.model.VulnerabilityInfo;
+
+import java.io.File;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.*;
+
+import static org.junit.Assert.*;
+import static org.mockito.Matchers.any;
+import static org.mockito.Mockito.*;
+
+public class CachingWssServiceClientTest {
+
+    /* --- Members --- */
+
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    private WssServiceClient delegate;
+
+    /* --- Life cycle methods --- */
+
+    @Before
+    public void setUp() {
+        delegate = mock(WssServiceClient.class);
+    }
+
+    /* --- Test methods --- */
+
+    @Test
+    public void testDependencyDataSendsOnlyMisses() throws Exception {
+        CachingWssServiceClient client = new CachingWssServiceClient(delegate);
+        when(delegate.getDependencyData(any(GetDependencyDataRequest.class)))
+                .thenReturn(dependencyDataResult("a", "b"), dependencyDataResult("c"));
+
+        GetDependencyDataResult first = client.getDependencyData(new GetDependencyDataRequest("org", null, null, projects("a", "b")));
+        assertEquals(2, first.getResources().size());
+
+        GetDependencyDataResult second = client.getDependencyData(new GetDependencyDataRequest("org", null, null, projects("a", "b", "c")));
+        assertEquals(3, second.getResources().size());
+        assertEquals("organization", second.getOrganization());
+
+        ArgumentCaptor<GetDependencyDataRequest> captor = ArgumentCaptor.forClass(GetDependencyDataRequest.class);
+        verify(delegate, times(2)).getDependencyData(captor.capture());
+        GetDependencyDataRequest upstream = captor.getAllValues().get(1);
+        assertEquals("org", upstream.orgToken());
+        assertEquals(1, upstream.getProjects().iterator().next().getDependencies().size());
+        assertEquals("c", upstream.getProjects().iterator().next().getDependencies().iterator().next().getSha1());
+
+        client.getDependencyData(new GetDependencyDataRequest("org", null, null, projects("b", "c")));
+        verifyNoMoreInteractions(delegate);
+        assertTrue(client.getDependencyDataCache().getHitRatio() > 0);
+    }
+
+    @Test
+    public void testResultsAreScopedByOrganization() throws Exception {
+        CachingWssServiceClient client = new CachingWssServiceClient(delegate);
+        when(delegate.getDependencyData(any(GetDependencyDataRequest.class))).thenReturn(dependencyDataResult("a"));
+
+        client.getDependencyData(new GetDependencyDataRequest("org1", null, null, projects("a")));
+        client.getDependencyData(new GetDependencyDataRequest("org2", null, null, projects("a")));
+        verify(delegate, times(2)).getDependencyData(any(GetDependencyDataRequest.class));
+    }
+
+    @Test
+    public void testVulnerabilitiesCacheEmptyAnswers() throws Exception {
+        CachingWssServiceClient client = new CachingWssServiceClient(delegate);
+        Map<String, Collection<VulnerabilityInfo>> vulnerabilities = new HashMap<>();
+        vulnerabilities.put("a", Collections.singletonList(new VulnerabilityInfo()));
+        when(delegate.checkVulnerabilities(any(CheckVulnerabilitiesRequest.class)))
+                .thenReturn(new CheckVulnerabilitiesResult(vulnerabilities));
+
+        client.checkVulnerabilities(new CheckVulnerabilitiesRequest("org", projects("a", "b")));
+        CheckVulnerabilitiesResult cached = client.checkVulnerabilities(new CheckVulnerabilitiesRequest("org", projects("a", "b")));
+
+        verify(delegate, times(1)).checkVulnerabilities(any(CheckVulnerabilitiesRequest.class));
+        assertEquals(Collections.singleton("a"), cached.getSha1ToVulnerabilitiesMap().keySet());
+    }
+
+    @Test
+    public void testPersistsBetweenInstances() throws Exception {
+        CachingWssServiceClient client = new CachingWssServiceClient(delegate, 10, 60000, folder.getRoot());
+        when(delegate.getDependencyData(any(GetDependencyDataRequest.class))).thenReturn(dependencyDataResult("a"));
+        client.getDependencyData(new GetDependencyDataRequest("org", null, null, projects("a")));
+        client.shutdown();
+
+        CachingWssServiceClient reloaded = new CachingWssServiceClient(delegate, 10, 60000, folder.getRoot());
+        GetDependencyDataResult result = reloaded.getDependencyData(new GetDependencyDataRequest("org", null, null, projects("a")));
+        assertEquals("a", result.getResources().iterator().next().getSha1());
+        verify(delegate, times(1)).getDependencyData(any(GetDependencyDataRequest.class));
+        for (File file : folder.getRoot().listFiles()) {
+            // organization tokens are API keys, the files hold hashes of them only
+            assertFalse(new String(Files.readAllBytes(file.toPath()), StandardCharsets.UTF_8).contains("\"org:"));
+        }
+    }
+
+    @Test
+    public void testCachedResourcesAreCopiesWithoutPaths() throws Exception {
+        CachingWssServiceClient client = new CachingWssServiceClient(delegate);
+        GetDependencyDataResult fresh = dependencyDataResult("a");
+        ResourceInfo freshResource = fresh.getResources().iterator().next();
+        freshResource.setSystemPath("/first/project/a.jar");
+        freshResource.setManifestFileSystemPath("/first/project/pom.xml");
+        when(delegate.getDependencyData(any(GetDependencyDataRequest.class))).thenReturn(fresh);
+        client.getDependencyData(new GetDependencyDataRequest("org", null, null, projects("a")));
+        assertEquals("/first/project/a.jar", freshResource.getSystemPath());
+
+        ResourceInfo first = client.getDependencyData(new GetDependencyDataRequest("org", null, null, projects("a"))).getResources().iterator().next();
+        assertNull(first.getSystemPath());
+        assertNull(first.getManifestFileSystemPath());
+        first.setDescription("changed by a caller");
+        ResourceInfo second = client.getDependencyData(new GetDependencyDataRequest("org", null, null, projects("a"))).getResources().iterator().next();
+        assertNotSame(first, second);
+        assertNull(second.getDescription());
+    }
+
+    @Test
+    public void testEvictsLeastRecentlyUsed() {
+        Sha1ResultCache<String> cache = new Sha1ResultCache<>(2, 60000, String.class, null);
+        cache.put("a", "1");
+        cache.put("b", "2");
+        cache.get("a");
+        cache.put("c", "3");
+        assertNull(cache.get("b"));
+        assertEquals("1", cache.get("a"));
+        assertEquals(1, cache.getEvictions());
+    }
+
+    /* --- Private methods --- */
+
+    private Collection<AgentProjectInfo> projects(String... sha1s) {
+        AgentProjectInfo project = new AgentProjectInfo();
+        for (String sha1 : sha1s) {
+            project.getDependencies().add(new DependencyInfo(sha1));
+        }
+        return Collections.singletonList(project);
+    }
+
+    private GetDependencyDataResult dependencyDataResult(String... sha1s) {
+        GetDependencyDataResult result = new GetDependencyDataResult("organization");
+        List<ResourceInfo> resources = new ArrayList<>();
+        for (String sha1 : sha1s) {
+            ResourceInfo resource = new ResourceInfo(sha1);
+            resource.setSha1(sha1);
+            resources.add(resource);
+        }
+        result.setResources(resources);
+        return result;
+    }
+}
@@ -0,0 +1,288 @@
+/**
+ * Copyright (C) 2012 White Source Ltd.
+ * <p>
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * <p>
+ * http://www.apache.org/licenses/LICENSE-2.0
+ * <p>
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.whitesource.agent.client;
+
+import org.whitesource.agent.api.dispatch.*;
+import org.whitesource.agent.api.model.AgentProjectInfo;
+import org.whitesource.agent.api.model.DependencyInfo;
+
+import java.lang.management.ManagementFactory;
+import java.lang.management.MemoryPoolMXBean;
+import java.lang.management.MemoryType;
+import java.util.*;
+import java.util.concurrent.*;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Drives load through a {@link WssServiceClientImpl} against a {@link StubWhitesourceServer} and reports
+ * throughput, latency percentiles and peak heap use per request type and payload size.
+ * <p>
+ * Usage: {@code ClientLoadDriver [types=UPDATE,GET_DEPENDENCY_DATA] [sizes=10,1000,10000] [requests=200]
+ * [threads=4] [latency=0] [failureRate=0] [transport=FORM]}
+ */
+public class ClientLoadDriver {
+
+    /* --- Static members --- */
+
+    public static final EnumSet<RequestType> SUPPORTED_TYPES = EnumSet.of(RequestType.UPDATE, RequestType.CHECK_POLICY_COMPLIANCE,
+            RequestType.GET_DEPENDENCY_DATA, RequestType.CHECK_VULNERABILITIES, RequestType.SUMMARY_SCAN);
+
+    /* --- Members --- */
+
+    private List<RequestType> requestTypes = new ArrayList<>(SUPPORTED_TYPES);
+    private List<Integer> payloadSizes = Arrays.asList(10, 1000, 10000);
+    private int requests = 200;
+    private int threads = 4;
+    private long latencyMillis;
+    private double failureRate;
+    private TransportMode transportMode = TransportMode.FORM;
+
+    /* --- Main --- */
+
+    public static void main(String[] args) throws Exception {
+        ClientLoadDriver driver = new ClientLoadDriver();
+        for (String arg : args) {
+            String[] pair = arg.split("=", 2);
+            String value = pair.length > 1 ? pair[1] : "";
+            switch (pair[0]) {
+                case "types":
+                    driver.requestTypes = new ArrayList<>();
+                    for (String type : value.split(",")) {
+                        driver.requestTypes.add(RequestType.valueOf(type.trim()));
+                    }
+                    break;
+                case "sizes":
+                    driver.payloadSizes = new ArrayList<>();
+                    for (String size : value.split(",")) {
+                        driver.payloadSizes.add(Integer.parseInt(size.trim()));
+                    }
+                    break;
+                case "requests":
+                    driver.requests = Integer.parseInt(value);
+                    break;
+                case "threads":
+                    driver.threads = Integer.parseInt(value);
+                    break;
+                case "latency":
+                    driver.latencyMillis = Long.parseLong(value);
+                    break;
+                case "failureRate":
+                    driver.failureRate = Double.parseDouble(value);
+                    break;
+                case "transport":
+                    driver.transportMode = TransportMode.valueOf(value);
+                    break;
+                default:
+                    throw new IllegalArgumentException("Unknown argument: " + arg);
+            }
+        }
+        System.out.println(String.format("%-24s %8s %10s %10s %10s %10s %8s %10s",
+                "type", "deps", "req/s", "p50 ms", "p99 ms", "max ms", "errors", "heap MB"));
+        for (Result result : driver.run()) {
+            System.out.println(result);
+        }
+    }
+
+    /* --- Public methods --- */
+
+    /**
+     * Runs every request type with every payload size.
+     */
+    public List<Result> run() throws Exception {
+        List<Result> results = new ArrayList<>();
+        try (StubWhitesourceServer server = new StubWhitesourceServer(threads)) {
+            server.setRecordRequests(false);
+            server.setLatencyMillis(latencyMillis);
+            server.setFailureRate(failureRate);
+            WssServiceClientImpl client = new WssServiceClientImpl(server.getServiceUrl(), false);
+            client.setTransportMode(transportMode);
+            ExecutorService executor = Executors.newFixedThreadPool(threads, new DaemonThreadFactory("load-driver"));
+            try {
+                for (RequestType requestType : requestTypes) {
+                    for (int payloadSize : payloadSizes) {
+                        // warm up the code paths before measuring
+                        run(client, executor, requestType, payloadSize, Math.min(requests, threads * 2));
+                        results.add(run(client, executor, requestType, payloadSize, requests));
+                    }
+                }
+            } finally {
+                executor.shutdownNow();
+                client.shutdown();
+            }
+        }
+        return results;
+    }
+
+    /* --- Private methods --- */
+
+    private Result run(WssServiceClient client, ExecutorService executor, RequestType requestType, int payloadSize, int count) throws Exception {
+        Collection<AgentProjectInfo> projects = projects(payloadSize);
+        LatencyHistogram histogram = new LatencyHistogram();
+        AtomicLong errors = new AtomicLong();
+        List<MemoryPoolMXBean> heapPools = new ArrayList<>();
+        for (MemoryPoolMXBean pool : ManagementFactory.getMemoryPoolMXBeans()) {
+            if (pool.getType() == MemoryType.HEAP) {
+                heapPools.add(pool);
+            }
+        }
+        System.gc();
+        for (MemoryPoolMXBean pool : heapPools) {
+            pool.resetPeakUsage();
+        }
+
+        List<Callable<Void>> calls = new ArrayList<>();
+        for (int i = 0; i < count; i++) {
+            calls.add(() -> {
+                long start = System.nanoTime();
+                try {
+                    send(client, requestType, projects);
+                } catch (WssServiceException e) {
+                    errors.incrementAndGet();
+                }
+                histogram.record(TimeUnit.NANOSECONDS.toMicros(System.nanoTime() - start));
+                return null;
+            });
+        }
+        long start = System.nanoTime();
+        for (Future<Void> future : executor.invokeAll(calls)) {
+            future.get();
+        }
+        long elapsedNanos = System.nanoTime() - start;
+
+        long peakHeap = 0;
+        for (MemoryPoolMXBean pool : heapPools) {
+            peakHeap += pool.getPeakUsage().getUsed();
+        }
+        return new Result(requestType, payloadSize, count * (double) TimeUnit.SECONDS.toNanos(1) / elapsedNanos,
+                histogram, errors.get(), peakHeap);
+    }
+
+    private static void send(WssServiceClient client, RequestType requestType, Collection<AgentProjectInfo> projects) throws WssServiceException {
+        switch (requestType) {
+            case UPDATE:
+                client.updateInventory(new UpdateInventoryRequest("orgToken", projects));
+                break;
+            case CHECK_POLICY_COMPLIANCE:
+                client.checkPolicyCompliance(new CheckPolicyComplianceRequest("orgToken", projects, false));
+                break;
+            case GET_DEPENDENCY_DATA:
+                client.getDependencyData(new GetDependencyDataRequest("orgToken", null, null, projects));
+                break;
+            case CHECK_VULNERABILITIES:
+                client.checkVulnerabilities(new CheckVulnerabilitiesRequest("orgToken", projects));
+                break;
+            case SUMMARY_SCAN:
+                client.summaryScan(new SummaryScanRequest("orgToken", projects));
+                break;
+            default:
+                throw new IllegalArgumentException("Unsupported request type: " + requestType);
+        }
+    }
+
+    /**
+     * @return A single project with the given number of dependencies, with random sha1s.
+     */
+    static Collection<AgentProjectInfo> projects(int dependencies) {
+        Random random = new Random(dependencies);
+        AgentProjectInfo project = new AgentProjectInfo();
+        for (int i = 0; i < dependencies; i++) {
+            DependencyInfo dependency = new DependencyInfo("org.example.group" + (i % 50), "artifact-" + i, "1." + (i % 10) + ".0");
+            byte[] sha1 = new byte[20];
+            random.nextBytes(sha1);
+            StringBuilder hex = new StringBuilder();
+            for (byte b : sha1) {
+                hex.append(String.format("%02x", b));
+            }
+            dependency.setSha1(hex.toString());
+            dependency.setFilename("artifact-" + i + ".jar");
+            project.getDependencies().add(dependency);
+        }
+        return Collections.singletonList(project);
+    }
+
+    /* --- Getters / Setters --- */
+
+    public void setRequestTypes(List<RequestType> requestTypes) {
+        this.requestTypes = requestTypes;
+    }
+
+    public void setPayloadSizes(List<Integer> payloadSizes) {
+        this.payloadSizes = payloadSizes;
+    }
+
+    public void setRequests(int requests) {
+        this.requests = requests;
+    }
+
+    public void setThreads(int threads) {
+        this.threads = threads;
+    }
+
+    public void setTransportMode(TransportMode transportMode) {
+        this.transportMode = transportMode;
+    }
+
+    /* --- Nested classes --- */
+
+    /**
+     * The measurements of a single request type and payload size.
+     */
+    public static class Result {
+
+        private final RequestType requestType;
+        private final int payloadSize;
+        private final double requestsPerSecond;
+        private final LatencyHistogram latencyMicros;
+        private final long errors;
+        private final long peakHeapBytes;
+
+        Result(RequestType requestType, int payloadSize, double requestsPerSecond, LatencyHistogram latencyMicros, long errors, long peakHeapBytes) {
+            this.requestType = requestType;
+            this.payloadSize = payloadSize;
+            this.requestsPerSecond = requestsPerSecond;
+            this.latencyMicros = latencyMicros;
+            this.errors = errors;
+            this.peakHeapBytes = peakHeapBytes;
+        }
+
+        public RequestType getRequestType() {
+            return requestType;
+        }
+
+        public double getRequestsPerSecond() {
+            return requestsPerSecond;
+        }
+
+        public LatencyHistogram getLatencyMicros() {
+            return latencyMicros;
+        }
+
+        public long getErrors() {
+            return errors;
+        }
+
+        public long getPeakHeapBytes() {
+            return peakHeapBytes;
+        }
+
+        @Override
+        public String toString() {
+            return String.format("%-24s %8d %10.1f %10.2f %10.2f %10.2f %8d %10.1f", requestType, payloadSize, requestsPerSecond,
+                    latencyMicros.getValueAtPercentile(50) / 1000.0, latencyMicros.getValueAtPercentile(99) / 1000.0,
+                    latencyMicros.getMax() / 1000.0, errors, peakHeapBytes / (1024.0 * 1024));
+        }
+    }
+}
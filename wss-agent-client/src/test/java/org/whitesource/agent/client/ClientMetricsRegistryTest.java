@@ -0,0 +1,94 @@
+/**
+ * Copyright (C) 2012 White Source Ltd.
+ * <p>
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * <p>
+ * http://www.apache.org/licenses/LICENSE-2.0
+ * <p>
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.whitesource.agent.client;
+
+import org.junit.Test;
+import org.whitesource.agent.api.dispatch.RequestType;
+import org.whitesource.agent.api.dispatch.SendMetricsRequest;
+
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.Assert.*;
+
+public class ClientMetricsRegistryTest {
+
+    /* --- Test methods --- */
+
+    @Test
+    public void testHistogramPercentilesWithinBucketError() {
+        LatencyHistogram histogram = new LatencyHistogram();
+        for (int i = 1; i <= 1000; i++) {
+            histogram.record(i);
+        }
+        assertEquals(1000, histogram.getCount());
+        assertEquals(1000, histogram.getMax());
+        assertEquals(500.5, histogram.getMean(), 0.001);
+        assertWithin(500, histogram.getValueAtPercentile(50));
+        assertWithin(990, histogram.getValueAtPercentile(99));
+        assertEquals(1000, histogram.getValueAtPercentile(100));
+        assertEquals(0, new LatencyHistogram().getValueAtPercentile(50));
+    }
+
+    @Test
+    public void testBucketsCoverWholeRange() {
+        for (long value : new long[]{0, 7, 8, 15, 16, 1000, Integer.MAX_VALUE, Long.MAX_VALUE}) {
+            int index = LatencyHistogram.bucketIndex(value);
+            assertTrue(LatencyHistogram.bucketUpperBound(index) >= value);
+            assertTrue(index == 0 || LatencyHistogram.bucketUpperBound(index - 1) < value);
+        }
+    }
+
+    @Test
+    public void testRegistryAggregatesPerRequestType() {
+        ClientMetricsRegistry registry = new ClientMetricsRegistry();
+        registry.requestCompleted(metrics(RequestType.UPDATE, true, 2));
+        registry.requestCompleted(metrics(RequestType.UPDATE, false, 1));
+
+        ClientMetricsRegistry.TypeMetrics update = registry.get(RequestType.UPDATE);
+        assertEquals(2, update.getRequests());
+        assertEquals(1, update.getFailures());
+        assertEquals(1, update.getRetries());
+        assertEquals(4.0, update.getCompressionRatio(), 0.001);
+        assertEquals(2, update.getPhase(RequestPhase.UPLOAD).getCount());
+        assertEquals(0, registry.get(RequestType.CHECK_POLICIES).getRequests());
+
+        SendMetricsRequest request = registry.toSendMetricsRequest("orgToken", "userKey", "product");
+        Map<String, String> values = request.getExtraProperties();
+        assertEquals("2", values.get("UPDATE.requests"));
+        assertEquals("2000", values.get("UPDATE.upload.maxMicros"));
+        assertFalse(values.containsKey("CHECK_POLICIES.requests"));
+        assertFalse(values.containsKey("UPDATE.parse.maxMicros"));
+        assertEquals("orgToken", request.orgToken());
+    }
+
+    /* --- Private methods --- */
+
+    private RequestMetrics metrics(RequestType requestType, boolean success, int attempts) {
+        RequestMetrics metrics = new RequestMetrics(requestType);
+        metrics.addPhaseNanos(RequestPhase.UPLOAD, TimeUnit.MILLISECONDS.toNanos(2));
+        metrics.setTotalNanos(TimeUnit.MILLISECONDS.toNanos(5));
+        metrics.setRawBytes(4000);
+        metrics.setCompressedBytes(1000);
+        metrics.setAttempts(attempts);
+        metrics.setSuccess(success);
+        return metrics;
+    }
+
+    private void assertWithin(long expected, long actual) {
+        assertTrue("Expected about " + expected + " but was " + actual, Math.abs(actual - expected) <= expected / 8);
+    }
+}
@@ -0,0 +1,159 @@
+/**
+ * Copyright (C) 2012 White Source Ltd.
+ * <p>
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * <p>
+ * http://www.apache.org/licenses/LICENSE-2.0
+ * <p>
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.whitesource.agent.client;
+
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+import org.whitesource.agent.api.dispatch.ConfigurationRequest;
+import org.whitesource.agent.api.dispatch.ConfigurationResult;
+
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicReference;
+
+import static org.junit.Assert.*;
+import static org.mockito.Matchers.any;
+import static org.mockito.Mockito.*;
+
+public class ConfigurationCachingClientTest {
+
+    /* --- Members --- */
+
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    private WssServiceClient delegate;
+
+    /* --- Life cycle methods --- */
+
+    @Before
+    public void setUp() {
+        delegate = mock(WssServiceClient.class);
+    }
+
+    /* --- Test methods --- */
+
+    @Test
+    public void testFirstRunFetchesAndPersists() throws Exception {
+        when(delegate.getConfiguration(any(ConfigurationRequest.class))).thenReturn(configuration("*.jar"));
+        ConfigurationCachingClient client = new ConfigurationCachingClient(delegate, folder.getRoot());
+
+        assertEquals("*.jar", client.getConfiguration(request()).getIncludes());
+        assertEquals("*.jar", client.getConfiguration(request()).getIncludes());
+        verify(delegate, times(1)).getConfiguration(any(ConfigurationRequest.class));
+        assertEquals(1, folder.getRoot().listFiles().length);
+    }
+
+    @Test
+    public void testNextRunServesCachedAndRevalidatesInBackground() throws Exception {
+        when(delegate.getConfiguration(any(ConfigurationRequest.class))).thenReturn(configuration("*.jar"));
+        new ConfigurationCachingClient(delegate, folder.getRoot()).getConfiguration(request());
+
+        WssServiceClient slowDelegate = mock(WssServiceClient.class);
+        CountDownLatch release = new CountDownLatch(1);
+        when(slowDelegate.getConfiguration(any(ConfigurationRequest.class))).thenAnswer(invocation -> {
+            release.await(5, TimeUnit.SECONDS);
+            return configuration("*.war");
+        });
+        ConfigurationCachingClient client = new ConfigurationCachingClient(slowDelegate, folder.getRoot());
+        client.setRevalidateAfterMillis(0);
+        AtomicReference<ConfigurationResult> changed = new AtomicReference<>();
+        CountDownLatch notified = new CountDownLatch(1);
+        client.addListener((request, previous, current) -> {
+            assertEquals("*.jar", previous.getIncludes());
+            changed.set(current);
+            notified.countDown();
+        });
+
+        // answered from the file while the service is still blocked
+        assertEquals("*.jar", client.getConfiguration(request()).getIncludes());
+        release.countDown();
+        assertTrue(notified.await(5, TimeUnit.SECONDS));
+        assertEquals("*.war", changed.get().getIncludes());
+        assertEquals("*.war", client.getConfiguration(request()).getIncludes());
+        client.shutdown();
+    }
+
+    @Test
+    public void testUnchangedConfigurationDoesNotNotify() throws Exception {
+        when(delegate.getConfiguration(any(ConfigurationRequest.class))).thenReturn(configuration("*.jar"));
+        ConfigurationCachingClient client = new ConfigurationCachingClient(delegate, null);
+        client.setRevalidateAfterMillis(0);
+        ConfigurationChangeListener listener = mock(ConfigurationChangeListener.class);
+        client.addListener(listener);
+
+        client.getConfiguration(request());
+        Thread.sleep(5);
+        client.getConfiguration(request());
+        verify(delegate, timeout(5000).times(2)).getConfiguration(any(ConfigurationRequest.class));
+        Thread.sleep(100);
+        verifyZeroInteractions(listener);
+    }
+
+    @Test
+    public void testFailedRevalidationKeepsCachedConfiguration() throws Exception {
+        when(delegate.getConfiguration(any(ConfigurationRequest.class)))
+                .thenReturn(configuration("*.jar"))
+                .thenThrow(new WssServiceException("down"));
+        ConfigurationCachingClient client = new ConfigurationCachingClient(delegate, null);
+        client.setRevalidateAfterMillis(0);
+
+        client.getConfiguration(request());
+        Thread.sleep(5);
+        assertEquals("*.jar", client.getConfiguration(request()).getIncludes());
+        verify(delegate, timeout(5000).times(2)).getConfiguration(any(ConfigurationRequest.class));
+        assertEquals("*.jar", client.getConfiguration(request()).getIncludes());
+    }
+
+    @Test
+    public void testExpiredConfigurationIsFetchedSynchronously() throws Exception {
+        when(delegate.getConfiguration(any(ConfigurationRequest.class)))
+                .thenReturn(configuration("*.jar"), configuration("*.war"));
+        ConfigurationCachingClient client = new ConfigurationCachingClient(delegate, folder.getRoot());
+        client.setMaxAgeMillis(0);
+
+        client.getConfiguration(request());
+        Thread.sleep(5);
+        assertEquals("*.war", client.getConfiguration(request()).getIncludes());
+    }
+
+    @Test
+    public void testConfigurationsAreKeptPerProduct() throws Exception {
+        when(delegate.getConfiguration(any(ConfigurationRequest.class)))
+                .thenReturn(configuration("*.jar"), configuration("*.war"));
+        ConfigurationCachingClient client = new ConfigurationCachingClient(delegate, folder.getRoot());
+
+        assertEquals("*.jar", client.getConfiguration(request()).getIncludes());
+        ConfigurationRequest other = new ConfigurationRequest("org", "other", "1.0", null, null, null);
+        assertEquals("*.war", client.getConfiguration(other).getIncludes());
+        assertEquals("*.jar", client.getConfiguration(request()).getIncludes());
+
+        client.invalidate(other);
+        assertEquals(1, folder.getRoot().listFiles().length);
+    }
+
+    /* --- Private methods --- */
+
+    private static ConfigurationRequest request() {
+        return new ConfigurationRequest("org", "product", "1.0", "user", null, null);
+    }
+
+    private static ConfigurationResult configuration(String includes) {
+        return new ConfigurationResult(true, false, false, includes, "**/test/**");
+    }
+}
@@ -0,0 +1,141 @@
+/**
+ * Copyright (C) 2012 White Source Ltd.
+ * <p>
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * <p>
+ * http://www.apache.org/licenses/LICENSE-2.0
+ * <p>
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.whitesource.agent.client;
+
+import org.junit.After;
+import org.junit.Assume;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import javax.net.ssl.*;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.InputStream;
+import java.net.ServerSocket;
+import java.net.Socket;
+import java.security.KeyStore;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.Assert.*;
+
+public class ConnectionWarmerTest {
+
+    /* --- Static members --- */
+
+    private static final String PASSWORD = "changeit";
+
+    /* --- Members --- */
+
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    private ServerSocket server;
+
+    /* --- Life cycle methods --- */
+
+    @After
+    public void tearDown() throws Exception {
+        if (server != null) {
+            server.close();
+        }
+    }
+
+    /* --- Test methods --- */
+
+    @Test
+    public void testSharedContexts() throws Exception {
+        assertSame(SharedSslContexts.getDefault(), SharedSslContexts.getDefault());
+        assertSame(SharedSslContexts.getTrustAll(), SharedSslContexts.get(true));
+        assertNotSame(SharedSslContexts.getDefault(), SharedSslContexts.getTrustAll());
+
+        KeyStore keystore = KeyStore.getInstance(KeyStore.getDefaultType());
+        keystore.load(null, null);
+        assertSame(new WssSSLSocketFactory(keystore).sslContext, new WssSSLSocketFactory(keystore).sslContext);
+    }
+
+    @Test
+    public void testHandshakePrimesSessionCache() throws Exception {
+        startTlsServer();
+        String url = "https://localhost:" + server.getLocalPort() + "/agent";
+
+        assertTrue(ConnectionWarmer.warmUp(url, true, false).get(30, TimeUnit.SECONDS));
+        assertTrue(SharedSslContexts.getTrustAll().getClientSessionContext().getIds().hasMoreElements());
+    }
+
+    @Test
+    public void testUntrustedCertificateFails() throws Exception {
+        startTlsServer();
+        String url = "https://localhost:" + server.getLocalPort() + "/agent";
+
+        assertFalse(ConnectionWarmer.warmUp(url, false, false).get(30, TimeUnit.SECONDS));
+    }
+
+    @Test
+    public void testUnresolvableHostFails() throws Exception {
+        assertFalse(ConnectionWarmer.warmUp("https://unresolvable.invalid/agent", false, false).get(30, TimeUnit.SECONDS));
+        assertFalse(ConnectionWarmer.warmUp("not a url", false, false).get(30, TimeUnit.SECONDS));
+    }
+
+    @Test
+    public void testServiceWarmsUpAllEndpoints() throws Exception {
+        try (StubWhitesourceServer stub = new StubWhitesourceServer(1)) {
+            String url = stub.getServiceUrl() + "," + stub.getServiceUrl();
+            WhitesourceService service = new WhitesourceService("test", "1.0", "1.0", url, false);
+            assertTrue(service.warmUp().get(30, TimeUnit.SECONDS));
+            service.shutdown();
+        }
+    }
+
+    /* --- Private methods --- */
+
+    /**
+     * Starts a TLS server with a generated self signed certificate, which completes a handshake with every client.
+     */
+    private void startTlsServer() throws Exception {
+        File keytool = new File(System.getProperty("java.home"), "bin" + File.separator + "keytool");
+        Assume.assumeTrue(keytool.isFile());
+        File keystoreFile = new File(folder.getRoot(), "server.jks");
+        Process process = new ProcessBuilder(keytool.getPath(), "-genkeypair", "-alias", "server", "-keyalg", "RSA",
+                "-keysize", "2048", "-dname", "CN=localhost", "-validity", "1", "-storetype", "JKS",
+                "-keystore", keystoreFile.getPath(), "-storepass", PASSWORD, "-keypass", PASSWORD)
+                .redirectErrorStream(true).start();
+        Assume.assumeTrue(process.waitFor(60, TimeUnit.SECONDS) && process.exitValue() == 0);
+
+        KeyStore keystore = KeyStore.getInstance("JKS");
+        try (InputStream in = new FileInputStream(keystoreFile)) {
+            keystore.load(in, PASSWORD.toCharArray());
+        }
+        KeyManagerFactory keyManagers = KeyManagerFactory.getInstance(KeyManagerFactory.getDefaultAlgorithm());
+        keyManagers.init(keystore, PASSWORD.toCharArray());
+        SSLContext context = SSLContext.getInstance("TLS");
+        context.init(keyManagers.getKeyManagers(), null, null);
+
+        server = context.getServerSocketFactory().createServerSocket(0);
+        Thread acceptor = new Thread(() -> {
+            while (!server.isClosed()) {
+                try (Socket socket = server.accept()) {
+                    ((SSLSocket) socket).startHandshake();
+                    socket.getInputStream().read();
+                } catch (Exception e) {
+                    // closed by the client
+                }
+            }
+        });
+        acceptor.setDaemon(true);
+        acceptor.start();
+    }
+}
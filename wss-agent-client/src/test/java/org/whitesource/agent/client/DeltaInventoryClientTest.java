@@ -0,0 +1,179 @@
+/**
+ * Copyright (C) 2012 White Source Ltd.
+ * <p>
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * <p>
+ * http://www.apache.org/licenses/LICENSE-2.0
+ * <p>
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.whitesource.agent.client;
+
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+import org.mockito.ArgumentCaptor;
+import org.whitesource.agent.api.dispatch.UpdateInventoryRequest;
+import org.whitesource.agent.api.dispatch.UpdateInventoryResult;
+import org.whitesource.agent.api.dispatch.UpdateType;
+import org.whitesource.agent.api.model.AgentProjectInfo;
+import org.whitesource.agent.api.model.Coordinates;
+import org.whitesource.agent.api.model.DependencyInfo;
+
+import java.util.*;
+
+import static org.junit.Assert.*;
+import static org.mockito.Matchers.any;
+import static org.mockito.Mockito.*;
+
+public class DeltaInventoryClientTest {
+
+    /* --- Members --- */
+
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    private WssServiceClient delegate;
+
+    private DeltaInventoryClient client;
+
+    /* --- Life cycle methods --- */
+
+    @Before
+    public void setUp() throws Exception {
+        delegate = mock(WssServiceClient.class);
+        when(delegate.updateInventory(any(UpdateInventoryRequest.class))).thenReturn(new UpdateInventoryResult("org"));
+        client = new DeltaInventoryClient(delegate, folder.getRoot());
+    }
+
+    /* --- Test methods --- */
+
+    @Test
+    public void testFirstUpdateOverrides() throws Exception {
+        client.updateInventory(request(project("a", "b", "c")));
+
+        List<UpdateInventoryRequest> sent = sentRequests(1);
+        assertEquals(UpdateType.OVERRIDE, sent.get(0).getUpdateType());
+        assertEquals(3, sent.get(0).getProjects().iterator().next().getDependencies().size());
+    }
+
+    @Test
+    public void testSecondUpdateSendsDelta() throws Exception {
+        client.updateInventory(request(project("a", "b", "c", "d")));
+        client.updateInventory(request(project("a", "b", "c", "e")));
+
+        List<UpdateInventoryRequest> sent = sentRequests(3);
+        assertEquals(UpdateType.REMOVE, sent.get(1).getUpdateType());
+        assertEquals(Collections.singletonList("d"), sha1s(sent.get(1)));
+        assertEquals("orgToken", sent.get(1).orgToken());
+        assertEquals(UpdateType.APPEND, sent.get(2).getUpdateType());
+        assertEquals(Collections.singletonList("e"), sha1s(sent.get(2)));
+    }
+
+    @Test
+    public void testChangedChildrenResendDependency() throws Exception {
+        client.updateInventory(request(project("a", "b", "c", "d")));
+        AgentProjectInfo project = project("a", "b", "c", "d");
+        project.getDependencies().iterator().next().getChildren().add(new DependencyInfo("child"));
+        client.updateInventory(request(project));
+
+        List<UpdateInventoryRequest> sent = sentRequests(3);
+        assertEquals(Collections.singletonList("a"), sha1s(sent.get(1)));
+        assertEquals(Collections.singletonList("a"), sha1s(sent.get(2)));
+    }
+
+    @Test
+    public void testLocalFieldsDontChangeDependency() throws Exception {
+        client.updateInventory(request(project("a", "b", "c", "d")));
+        AgentProjectInfo project = project("a", "b", "c", "d");
+        DependencyInfo dependency = project.getDependencies().iterator().next();
+        dependency.setSystemPath("/other/checkout/a.jar");
+        dependency.setLastModified(new Date());
+        client.updateInventory(request(project));
+
+        List<UpdateInventoryRequest> sent = sentRequests(2);
+        assertEquals(UpdateType.APPEND, sent.get(1).getUpdateType());
+        assertTrue(sha1s(sent.get(1)).isEmpty());
+    }
+
+    @Test
+    public void testMetadataChangeOverrides() throws Exception {
+        client.updateInventory(request(project("a", "b", "c", "d")));
+        AgentProjectInfo project = project("a", "b", "c", "d");
+        project.setParentCoordinates(new Coordinates("group", "parent", "1.0"));
+        client.updateInventory(request(project));
+
+        assertEquals(UpdateType.OVERRIDE, sentRequests(2).get(1).getUpdateType());
+    }
+
+    @Test
+    public void testFailedAppendFallsBackToOverride() throws Exception {
+        client.updateInventory(request(project("a", "b", "c", "d")));
+        when(delegate.updateInventory(any(UpdateInventoryRequest.class))).thenAnswer(invocation -> {
+            UpdateInventoryRequest request = (UpdateInventoryRequest) invocation.getArguments()[0];
+            if (request.getUpdateType() == UpdateType.APPEND) {
+                throw new WssServiceException("failed");
+            }
+            return new UpdateInventoryResult("org");
+        });
+        client.updateInventory(request(project("a", "b", "c", "e")));
+
+        List<UpdateInventoryRequest> sent = sentRequests(4);
+        assertEquals(UpdateType.REMOVE, sent.get(1).getUpdateType());
+        assertEquals(UpdateType.APPEND, sent.get(2).getUpdateType());
+        assertEquals(UpdateType.OVERRIDE, sent.get(3).getUpdateType());
+        assertEquals(Arrays.asList("a", "b", "c", "e"), sha1s(sent.get(3)));
+        String key = InventorySnapshotStore.projectKey("orgToken", null, null, project());
+        assertNotNull(client.getStore().load(key));
+    }
+
+    @Test
+    public void testFailureDropsSnapshot() throws Exception {
+        client.updateInventory(request(project("a", "b", "c", "d")));
+        when(delegate.updateInventory(any(UpdateInventoryRequest.class))).thenThrow(new WssServiceException("failed"));
+        try {
+            client.updateInventory(request(project("a", "b", "c", "e")));
+            fail("Expected the update to fail");
+        } catch (WssServiceException e) {
+            // expected
+        }
+        String key = InventorySnapshotStore.projectKey("orgToken", null, null, project());
+        assertNull(client.getStore().load(key));
+    }
+
+    /* --- Private methods --- */
+
+    private UpdateInventoryRequest request(AgentProjectInfo project) {
+        return new UpdateInventoryRequest("orgToken", Collections.singletonList(project));
+    }
+
+    private AgentProjectInfo project(String... sha1s) {
+        AgentProjectInfo project = new AgentProjectInfo();
+        project.setCoordinates(new Coordinates("group", "project", "1.0"));
+        for (String sha1 : sha1s) {
+            project.getDependencies().add(new DependencyInfo(sha1));
+        }
+        return project;
+    }
+
+    private List<UpdateInventoryRequest> sentRequests(int count) throws WssServiceException {
+        ArgumentCaptor<UpdateInventoryRequest> captor = ArgumentCaptor.forClass(UpdateInventoryRequest.class);
+        verify(delegate, times(count)).updateInventory(captor.capture());
+        return captor.getAllValues();
+    }
+
+    private List<String> sha1s(UpdateInventoryRequest request) {
+        List<String> sha1s = new ArrayList<>();
+        for (DependencyInfo dependency : request.getProjects().iterator().next().getDependencies()) {
+            sha1s.add(dependency.getSha1());
+        }
+        return sha1s;
+    }
+}
@@ -0,0 +1,148 @@
+/**
+ * Copyright (C) 2012 White Source Ltd.
+ * <p>
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * <p>
+ * http://www.apache.org/licenses/LICENSE-2.0
+ * <p>
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.whitesource.agent.client;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.whitesource.agent.api.APIConstants;
+import org.whitesource.agent.api.dispatch.GetDependencyDataRequest;
+import org.whitesource.agent.api.dispatch.GetDependencyDataResult;
+import org.whitesource.agent.api.dispatch.RequestType;
+import org.whitesource.agent.api.model.ResourceInfo;
+import org.whitesource.agent.utils.DeflatePayloadCodec;
+import org.whitesource.agent.utils.GzipPayloadCodec;
+import org.whitesource.agent.utils.StringPool;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.junit.Assert.*;
+
+public class GzipTransportTest {
+
+    /* --- Members --- */
+
+    private StubWhitesourceServer server;
+
+    private WssServiceClientImpl client;
+
+    /* --- Life cycle methods --- */
+
+    @Before
+    public void setUp() throws Exception {
+        server = new StubWhitesourceServer(2);
+        server.setGzipResponses(true);
+        server.setResult(RequestType.GET_DEPENDENCY_DATA, new GetDependencyDataResult("organization"));
+        client = new WssServiceClientImpl(server.getServiceUrl(), false);
+        client.setTransportMode(TransportMode.GZIP);
+    }
+
+    @After
+    public void tearDown() {
+        client.shutdown();
+        server.close();
+    }
+
+    /* --- Test methods --- */
+
+    @Test
+    public void testSendsGzipBody() throws Exception {
+        GetDependencyDataResult result = client.getDependencyData(request());
+
+        assertEquals("organization", result.getOrganization());
+        StubWhitesourceServer.ReceivedRequest received = server.getRequests().get(0);
+        assertEquals("gzip", received.getTransport());
+        assertEquals("orgToken", received.getParams().get(APIConstants.PARAM_TOKEN));
+        assertTrue(received.getPayload().contains("artifact-0"));
+    }
+
+    @Test
+    public void testFallsBackToFormWhenRejected() throws Exception {
+        server.setAcceptGzip(false);
+        client.getDependencyData(request());
+        client.getDependencyData(request());
+
+        // the rejected gzip request isn't recorded
+        assertEquals(3, server.getRequestCount());
+        List<StubWhitesourceServer.ReceivedRequest> requests = server.getRequests();
+        assertEquals(2, requests.size());
+        assertEquals("form", requests.get(0).getTransport());
+        assertEquals("form", requests.get(1).getTransport());
+    }
+
+    @Test
+    public void testParallelCompression() throws Exception {
+        client.setParallelCompression(true);
+        GetDependencyDataRequest request = new GetDependencyDataRequest(ClientLoadDriver.projects(5000));
+        request.setOrgToken("orgToken");
+        client.getDependencyData(request);
+
+        client.setTransportMode(TransportMode.FORM);
+        client.getDependencyData(request);
+
+        List<StubWhitesourceServer.ReceivedRequest> requests = server.getRequests();
+        assertEquals("gzip", requests.get(0).getTransport());
+        assertEquals("form", requests.get(1).getTransport());
+        for (StubWhitesourceServer.ReceivedRequest received : requests) {
+            assertTrue(received.getPayload().contains("artifact-4999"));
+        }
+    }
+
+    @Test
+    public void testPayloadCodec() throws Exception {
+        client.setPayloadCodec(new DeflatePayloadCodec(1));
+        client.getDependencyData(request());
+        client.setPayloadCodec(new GzipPayloadCodec(9, false));
+        client.getDependencyData(request());
+        // the form transport only carries gzip
+        client.setPayloadCodec(new DeflatePayloadCodec(9));
+        client.setTransportMode(TransportMode.FORM);
+        client.getDependencyData(request());
+
+        List<StubWhitesourceServer.ReceivedRequest> requests = server.getRequests();
+        assertEquals("deflate", requests.get(0).getTransport());
+        assertEquals("gzip", requests.get(1).getTransport());
+        assertEquals("form", requests.get(2).getTransport());
+        for (StubWhitesourceServer.ReceivedRequest received : requests) {
+            assertTrue(received.getPayload().contains("artifact-0"));
+        }
+    }
+
+    @Test
+    public void testStringPool() throws Exception {
+        GetDependencyDataResult result = new GetDependencyDataResult("organization");
+        for (int i = 0; i < 2; i++) {
+            ResourceInfo resource = new ResourceInfo("library-" + i + ".jar");
+            resource.getLicenses().add("Apache 2.0");
+            result.getResources().add(resource);
+        }
+        server.setResult(RequestType.GET_DEPENDENCY_DATA, result);
+        client.setStringPool(new StringPool());
+
+        List<ResourceInfo> resources = new ArrayList<>(client.getDependencyData(request()).getResources());
+        assertEquals(2, resources.size());
+        assertSame(resources.get(0).getLicenses().iterator().next(), resources.get(1).getLicenses().iterator().next());
+    }
+
+    /* --- Private methods --- */
+
+    private GetDependencyDataRequest request() {
+        GetDependencyDataRequest request = new GetDependencyDataRequest(ClientLoadDriver.projects(1));
+        request.setOrgToken("orgToken");
+        return request;
+    }
+}
@@ -0,0 +1,180 @@
+/**
+ * Copyright (C) 2012 White Source Ltd.
+ * <p>
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * <p>
+ * http://www.apache.org/licenses/LICENSE-2.0
+ * <p>
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.whitesource.agent.client;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.mockito.ArgumentCaptor;
+import org.mockito.invocation.InvocationOnMock;
+import org.mockito.stubbing.Answer;
+import org.whitesource.agent.api.dispatch.JwtAccessTokenRequest;
+import org.whitesource.agent.api.dispatch.JwtAccessTokenResult;
+import org.whitesource.agent.api.dispatch.RequestFactory;
+
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Base64;
+import java.util.List;
+import java.util.concurrent.*;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.Assert.*;
+import static org.mockito.Matchers.any;
+import static org.mockito.Mockito.*;
+
+public class JwtTokenManagerTest {
+
+    /* --- Members --- */
+
+    private WssServiceClient client;
+    private JwtTokenManager manager;
+    private final AtomicInteger issued = new AtomicInteger();
+
+    /* --- Life cycle methods --- */
+
+    @Before
+    public void setUp() {
+        client = mock(WssServiceClient.class);
+        manager = new JwtTokenManager(client, new RequestFactory("agent", "1.0", "2.0"));
+    }
+
+    @After
+    public void tearDown() {
+        manager.shutdown();
+    }
+
+    /* --- Test methods --- */
+
+    @Test
+    public void testTokenIsCached() throws Exception {
+        issueTokens(TimeUnit.HOURS.toMillis(1), 0);
+
+        String first = manager.getToken("org", "user");
+        assertEquals(first, manager.getToken("org", "user"));
+        assertNotEquals(first, manager.getToken("org", "other"));
+
+        ArgumentCaptor<JwtAccessTokenRequest> captor = ArgumentCaptor.forClass(JwtAccessTokenRequest.class);
+        verify(client, times(2)).jwtAccessToken(captor.capture());
+        JwtAccessTokenRequest request = captor.getAllValues().get(0);
+        assertEquals("org", request.orgToken());
+        assertEquals("user", request.userKey());
+        assertEquals("agent", request.agent());
+    }
+
+    @Test
+    public void testExpiredTokenIsFetchedAgain() throws Exception {
+        issueTokens(-TimeUnit.MINUTES.toMillis(1), 0);
+
+        String first = manager.getToken("org", "user");
+        assertNotEquals(first, manager.getToken("org", "user"));
+        verify(client, times(2)).jwtAccessToken(any(JwtAccessTokenRequest.class));
+    }
+
+    @Test
+    public void testInvalidate() throws Exception {
+        issueTokens(TimeUnit.HOURS.toMillis(1), 0);
+
+        String first = manager.getToken("org", "user");
+        manager.invalidate("org", "user");
+        assertNotEquals(first, manager.getToken("org", "user"));
+    }
+
+    @Test
+    public void testConcurrentFetchesAreCollapsed() throws Exception {
+        issueTokens(TimeUnit.HOURS.toMillis(1), 200);
+
+        ExecutorService executor = Executors.newFixedThreadPool(8);
+        try {
+            List<Future<String>> futures = new ArrayList<>();
+            for (int i = 0; i < 8; i++) {
+                futures.add(executor.submit(() -> manager.getToken("org", "user")));
+            }
+            String token = futures.get(0).get();
+            for (Future<String> future : futures) {
+                assertEquals(token, future.get());
+            }
+        } finally {
+            executor.shutdownNow();
+        }
+        verify(client, times(1)).jwtAccessToken(any(JwtAccessTokenRequest.class));
+    }
+
+    @Test
+    public void testUsedTokenIsRefreshedAhead() throws Exception {
+        manager.setRefreshAheadMillis(TimeUnit.MINUTES.toMillis(10));
+        manager.setDefaultTtlMillis(3000);
+        when(client.jwtAccessToken(any(JwtAccessTokenRequest.class))).thenAnswer(new Answer<JwtAccessTokenResult>() {
+            @Override
+            public JwtAccessTokenResult answer(InvocationOnMock invocation) {
+                JwtAccessTokenResult result = new JwtAccessTokenResult();
+                result.setJwtAccessToken("opaque-" + issued.incrementAndGet());
+                return result;
+            }
+        });
+
+        String first = manager.getToken("org", "user");
+        Thread.sleep(100);
+        assertEquals(first, manager.getToken("org", "user"));
+
+        // the token is refreshed half way through its lifetime, before it expires
+        Thread.sleep(2000);
+        verify(client, times(2)).jwtAccessToken(any(JwtAccessTokenRequest.class));
+        assertNotEquals(first, manager.getToken("org", "user"));
+        verify(client, times(2)).jwtAccessToken(any(JwtAccessTokenRequest.class));
+    }
+
+    @Test
+    public void testFailureIsPropagated() throws Exception {
+        when(client.jwtAccessToken(any(JwtAccessTokenRequest.class))).thenThrow(new WssServiceException("down"));
+        try {
+            manager.getToken("org", "user");
+            fail("Expected failure");
+        } catch (WssServiceException e) {
+            assertEquals("down", e.getMessage());
+        }
+    }
+
+    @Test
+    public void testParseExpiry() {
+        assertEquals(1700000000000L, JwtTokenManager.parseExpiry(jwt("{\"sub\":\"user\",\"exp\":1700000000}")));
+        assertEquals(-1, JwtTokenManager.parseExpiry(jwt("{\"sub\":\"user\"}")));
+        assertEquals(-1, JwtTokenManager.parseExpiry(jwt("[1]")));
+        assertEquals(-1, JwtTokenManager.parseExpiry("header.!!!.signature"));
+        assertEquals(-1, JwtTokenManager.parseExpiry("opaque"));
+    }
+
+    /* --- Private methods --- */
+
+    private void issueTokens(long lifetimeMillis, long latencyMillis) throws WssServiceException {
+        when(client.jwtAccessToken(any(JwtAccessTokenRequest.class))).thenAnswer(new Answer<JwtAccessTokenResult>() {
+            @Override
+            public JwtAccessTokenResult answer(InvocationOnMock invocation) throws InterruptedException {
+                Thread.sleep(latencyMillis);
+                long exp = TimeUnit.MILLISECONDS.toSeconds(System.currentTimeMillis() + lifetimeMillis);
+                JwtAccessTokenResult result = new JwtAccessTokenResult();
+                result.setJwtAccessToken(jwt("{\"jti\":" + issued.incrementAndGet() + ",\"exp\":" + exp + "}"));
+                return result;
+            }
+        });
+    }
+
+    private static String jwt(String claims) {
+        Base64.Encoder encoder = Base64.getUrlEncoder().withoutPadding();
+        return encoder.encodeToString("{\"alg\":\"HS256\"}".getBytes(StandardCharsets.UTF_8)) + "."
+                + encoder.encodeToString(claims.getBytes(StandardCharsets.UTF_8)) + ".signature";
+    }
+}
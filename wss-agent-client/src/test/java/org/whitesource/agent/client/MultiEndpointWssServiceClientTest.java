@@ -0,0 +1,175 @@
+/**
+ * Copyright (C) 2012 White Source Ltd.
+ * <p>
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * <p>
+ * http://www.apache.org/licenses/LICENSE-2.0
+ * <p>
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.whitesource.agent.client;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.whitesource.agent.api.dispatch.*;
+
+import java.io.IOException;
+import java.net.ServerSocket;
+import java.util.Arrays;
+
+import static org.junit.Assert.*;
+import static org.mockito.Matchers.any;
+import static org.mockito.Mockito.*;
+
+public class MultiEndpointWssServiceClientTest {
+
+    /* --- Members --- */
+
+    private StubWhitesourceServer first;
+    private StubWhitesourceServer second;
+    private MultiEndpointWssServiceClient client;
+
+    /* --- Life cycle methods --- */
+
+    @Before
+    public void setUp() throws Exception {
+        first = new StubWhitesourceServer(4);
+        second = new StubWhitesourceServer(4);
+    }
+
+    @After
+    public void tearDown() {
+        if (client != null) {
+            client.shutdown();
+        }
+        first.close();
+        second.close();
+    }
+
+    /* --- Test methods --- */
+
+    @Test
+    public void testFailsOverOnConnectionErrors() throws Exception {
+        client = newClient(deadServiceUrl(), first.getServiceUrl());
+
+        assertNotNull(client.updateInventory(new UpdateInventoryRequest("orgToken", ClientLoadDriver.projects(1))));
+        assertEquals(1, first.getRequestCount());
+        assertEquals(1, client.getFailovers());
+        MultiEndpointWssServiceClient.Endpoint dead = client.getEndpoints().get(0);
+        assertFalse(dead.isHealthy());
+        assertEquals(1, dead.getConsecutiveFailures());
+
+        // the failed endpoint is skipped while it backs off
+        client.updateInventory(new UpdateInventoryRequest("orgToken", ClientLoadDriver.projects(1)));
+        assertEquals(2, first.getRequestCount());
+        assertEquals(1, client.getFailovers());
+    }
+
+    @Test
+    public void testUpdatesDoNotFailOverOnServerErrors() {
+        first.setFailureRate(1);
+        client = newClient(first.getServiceUrl(), second.getServiceUrl());
+
+        try {
+            client.updateInventory(new UpdateInventoryRequest("orgToken", ClientLoadDriver.projects(1)));
+            fail("Expected the update to fail");
+        } catch (WssServiceException e) {
+            assertEquals(500, e.getStatusCode());
+        }
+        assertEquals(0, second.getRequestCount());
+    }
+
+    @Test
+    public void testReadsFailOverOnServerErrors() throws Exception {
+        first.setFailureRate(1);
+        client = newClient(first.getServiceUrl(), second.getServiceUrl());
+
+        assertNotNull(client.getDependencyData(new GetDependencyDataRequest(ClientLoadDriver.projects(1))));
+        assertEquals(1, second.getRequestCount());
+    }
+
+    @Test
+    public void testRoutesToFasterEndpoint() throws Exception {
+        WssServiceClient slow = endpoint(30);
+        WssServiceClient fast = endpoint(0);
+        client = new MultiEndpointWssServiceClient(Arrays.asList(slow, fast));
+
+        for (int i = 0; i < 20; i++) {
+            client.getDependencyData(new GetDependencyDataRequest(ClientLoadDriver.projects(1)));
+        }
+        // the first request measures the slow endpoint, the second one the fast one, which keeps the rest
+        verify(slow, times(1)).getDependencyData(any(GetDependencyDataRequest.class));
+        verify(fast, times(19)).getDependencyData(any(GetDependencyDataRequest.class));
+        assertTrue(client.getEndpoints().get(0).getLatencyMicros() > client.getEndpoints().get(1).getLatencyMicros());
+    }
+
+    @Test
+    public void testProbesUnusedEndpoints() throws Exception {
+        WssServiceClient slow = endpoint(30);
+        WssServiceClient fast = endpoint(0);
+        client = new MultiEndpointWssServiceClient(Arrays.asList(slow, fast));
+        client.setProbeIntervalMillis(100);
+
+        client.getDependencyData(new GetDependencyDataRequest(ClientLoadDriver.projects(1)));
+        client.getDependencyData(new GetDependencyDataRequest(ClientLoadDriver.projects(1)));
+        Thread.sleep(150);
+        client.getDependencyData(new GetDependencyDataRequest(ClientLoadDriver.projects(1)));
+        verify(slow, times(2)).getDependencyData(any(GetDependencyDataRequest.class));
+    }
+
+    @Test
+    public void testHedgesSlowReads() throws Exception {
+        first.setLatencyMillis(3000);
+        client = newClient(first.getServiceUrl(), second.getServiceUrl());
+        client.setHedging(true);
+        client.setDefaultHedgeDelayMillis(100);
+
+        long start = System.currentTimeMillis();
+        assertNotNull(client.getConfiguration(new ConfigurationRequest("orgToken", "product", "1.0", null, null, null)));
+        assertTrue(System.currentTimeMillis() - start < 2000);
+        assertEquals(1, client.getHedgedRequests());
+        assertEquals(1, second.getRequestCount());
+    }
+
+    @Test
+    public void testServiceUrlList() {
+        client = newClient(first.getServiceUrl(), second.getServiceUrl());
+        assertEquals(first.getServiceUrl() + "," + second.getServiceUrl(), client.getServiceUrl());
+        assertEquals(Arrays.asList("a", "b"), MultiEndpointWssServiceClient.parseServiceUrls(" a, ,b "));
+
+        WhitesourceService service = new WhitesourceService("agent", "1.0", "1.0", client.getServiceUrl(), false);
+        assertTrue(service.getClient() instanceof MultiEndpointWssServiceClient);
+        assertEquals(client.getServiceUrl(), service.cloneWhitesourceService().getClient().getServiceUrl());
+        service.shutdown();
+    }
+
+    /* --- Private methods --- */
+
+    private MultiEndpointWssServiceClient newClient(String... serviceUrls) {
+        return MultiEndpointWssServiceClient.forServiceUrls(Arrays.asList(serviceUrls), false, 1, false);
+    }
+
+    private static WssServiceClient endpoint(long latencyMillis) throws WssServiceException {
+        WssServiceClient endpoint = mock(WssServiceClient.class);
+        when(endpoint.getDependencyData(any(GetDependencyDataRequest.class))).thenAnswer(invocation -> {
+            Thread.sleep(latencyMillis);
+            return new GetDependencyDataResult();
+        });
+        return endpoint;
+    }
+
+    private static String deadServiceUrl() throws IOException {
+        int port;
+        try (ServerSocket socket = new ServerSocket(0)) {
+            port = socket.getLocalPort();
+        }
+        return "http://localhost:" + port + StubWhitesourceServer.CONTEXT;
+    }
+}
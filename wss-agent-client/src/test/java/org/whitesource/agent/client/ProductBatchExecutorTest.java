@@ -0,0 +1,240 @@
+/**
+ * Copyright (C) 2012 White Source Ltd.
+ * <p>
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * <p>
+ * http://www.apache.org/licenses/LICENSE-2.0
+ * <p>
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.whitesource.agent.client;
+
+import org.apache.http.client.methods.HttpRequestBase;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.whitesource.agent.api.APIConstants;
+import org.whitesource.agent.api.dispatch.*;
+import org.whitesource.agent.api.model.AgentProjectInfo;
+import org.whitesource.agent.api.model.Coordinates;
+import org.whitesource.agent.api.model.DependencyInfo;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.*;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.Assert.*;
+import static org.mockito.Matchers.any;
+import static org.mockito.Mockito.*;
+
+public class ProductBatchExecutorTest {
+
+    /* --- Members --- */
+
+    private StubWhitesourceServer server;
+
+    private WhitesourceService service;
+
+    private ProductBatchExecutor executor;
+
+    /* --- Life cycle methods --- */
+
+    @Before
+    public void setUp() throws Exception {
+        server = new StubWhitesourceServer(4);
+        service = new WhitesourceService("test", "1.0", "1.0", server.getServiceUrl(), false);
+    }
+
+    @After
+    public void tearDown() {
+        if (executor != null) {
+            executor.shutdown();
+        }
+        service.shutdown();
+        server.close();
+    }
+
+    /* --- Test methods --- */
+
+    @Test
+    public void testSendsAllEntries() {
+        List<ProductBatchEntry> entries = new ArrayList<>();
+        for (int i = 0; i < 10; i++) {
+            entries.add(entry("product-" + i, true));
+        }
+
+        List<ProductBatchResult> results = service.executeBatch(entries);
+
+        assertEquals(10, results.size());
+        for (int i = 0; i < 10; i++) {
+            ProductBatchResult result = results.get(i);
+            assertEquals("product-" + i, result.getName());
+            assertTrue(result.isSuccess());
+            assertEquals("stub", result.getUpdateResult().getOrganization());
+            assertNotNull(result.getPolicyComplianceResult());
+        }
+        assertEquals(20, server.getRequestCount());
+        for (StubWhitesourceServer.ReceivedRequest request : server.getRequests()) {
+            // filled in by the request factory
+            assertEquals("test", request.getParams().get(APIConstants.PARAM_AGENT));
+        }
+    }
+
+    @Test
+    public void testFailureIsIsolated() throws Exception {
+        WssServiceClient client = mock(WssServiceClient.class);
+        when(client.updateInventory(any(UpdateInventoryRequest.class))).thenAnswer(invocation -> {
+            UpdateInventoryRequest request = (UpdateInventoryRequest) invocation.getArguments()[0];
+            if ("broken".equals(request.product())) {
+                throw new WssServiceException("failed", null, 500);
+            }
+            return new UpdateInventoryResult("org");
+        });
+        when(client.checkPolicyCompliance(any(CheckPolicyComplianceRequest.class))).thenReturn(new CheckPolicyComplianceResult());
+        service.setClient(client);
+        executor = new ProductBatchExecutor(service, 2, 2, 4);
+
+        List<ProductBatchResult> results = executor.execute(
+                Arrays.asList(entry("first", true), entry("broken", true), entry("last", true)));
+
+        assertTrue(results.get(0).isSuccess());
+        assertFalse(results.get(1).isSuccess());
+        assertEquals(500, results.get(1).getError().getStatusCode());
+        assertNull(results.get(1).getPolicyComplianceResult());
+        assertTrue(results.get(2).isSuccess());
+        // the failed update skips its policy check
+        verify(client, times(2)).checkPolicyCompliance(any(CheckPolicyComplianceRequest.class));
+    }
+
+    @Test
+    public void testBoundsRequestsInFlight() throws Exception {
+        AtomicInteger inFlight = new AtomicInteger();
+        AtomicInteger maxInFlight = new AtomicInteger();
+        WssServiceClient client = mock(WssServiceClient.class);
+        when(client.updateInventory(any(UpdateInventoryRequest.class))).thenAnswer(invocation -> {
+            int current = inFlight.incrementAndGet();
+            maxInFlight.accumulateAndGet(current, Math::max);
+            Thread.sleep(20);
+            inFlight.decrementAndGet();
+            return new UpdateInventoryResult("org");
+        });
+        service.setClient(client);
+        executor = new ProductBatchExecutor(service, 4, 3, 6);
+
+        List<ProductBatchEntry> entries = new ArrayList<>();
+        for (int i = 0; i < 20; i++) {
+            entries.add(entry("product-" + i, false));
+        }
+        List<ProductBatchResult> results = executor.execute(entries);
+
+        assertEquals(20, results.size());
+        assertTrue(maxInFlight.get() > 1);
+        assertTrue(maxInFlight.get() <= 3);
+    }
+
+    @Test(timeout = 10000)
+    public void testBuildsNoPayloadWhileQueued() throws Exception {
+        AtomicInteger payloads = new AtomicInteger();
+        WssServiceClientImpl client = new WssServiceClientImpl(server.getServiceUrl(), false) {
+            @Override
+            protected <R> HttpRequestBase createHttpRequest(ServiceRequest<R> request, RequestMetrics metrics) throws IOException, WssServiceException {
+                payloads.incrementAndGet();
+                return super.createHttpRequest(request, metrics);
+            }
+        };
+        AdmissionController controller = new AdmissionController(1, Long.MAX_VALUE);
+        client.setAdmissionController(controller);
+        service.setClient(client);
+        executor = new ProductBatchExecutor(service, 2, 2, 4);
+
+        AdmissionController.Permit held = controller.acquire(RequestPriority.NORMAL);
+        CompletableFuture<ProductBatchResult> batched = executor.submit(entry("batched", true));
+        ExecutorService caller = Executors.newSingleThreadExecutor();
+        try {
+            Future<UpdateInventoryResult> direct = caller.submit(() -> client.updateInventory(entry("direct", false).getUpdateRequest()));
+            while (controller.getQueueDepth() < 2) {
+                Thread.sleep(5);
+            }
+            // both the batch and the direct call are queued for a permit, without their payloads
+            assertEquals(0, payloads.get());
+
+            held.close();
+            assertTrue(batched.get(5, TimeUnit.SECONDS).isSuccess());
+            assertEquals("stub", direct.get(5, TimeUnit.SECONDS).getOrganization());
+            assertEquals(3, payloads.get());
+            assertEquals(0, controller.getActiveRequests());
+        } finally {
+            caller.shutdownNow();
+        }
+    }
+
+    @Test(timeout = 20000)
+    public void testMixedBatchWithAdmissionControl() throws Exception {
+        // slow answers let the policy only entries queue for permits while the updates are sent
+        server.setLatencyMillis(100);
+        for (int slots = 1; slots <= 2; slots++) {
+            WssServiceClientImpl client = new WssServiceClientImpl(server.getServiceUrl(), false);
+            AdmissionController controller = new AdmissionController(slots, Long.MAX_VALUE);
+            client.setAdmissionController(controller);
+            service.setClient(client);
+            // as many senders as slots, so the senders may all wait for the permits of their policy checks
+            ProductBatchExecutor batchExecutor = new ProductBatchExecutor(service, 4, slots, 16);
+            try {
+                List<ProductBatchEntry> entries = new ArrayList<>();
+                for (int i = 0; i < 12; i++) {
+                    ProductBatchEntry entry = entry("product-" + i, true);
+                    // updates with policy checks first, followed by policy checks only
+                    entries.add(i < slots ? entry : new ProductBatchEntry(entry.getName(), null, entry.getPolicyComplianceRequest()));
+                }
+
+                List<ProductBatchResult> results = batchExecutor.execute(entries);
+
+                assertEquals(12, results.size());
+                for (ProductBatchResult result : results) {
+                    assertTrue(result.getName(), result.isSuccess());
+                }
+                assertEquals(0, controller.getActiveRequests());
+            } finally {
+                batchExecutor.shutdown();
+            }
+        }
+    }
+
+    @Test
+    public void testShutdownFailsPendingEntries() {
+        executor = new ProductBatchExecutor(service);
+        executor.shutdown();
+
+        ProductBatchResult result = executor.submit(entry("product", false)).join();
+        assertFalse(result.isSuccess());
+    }
+
+    /* --- Private methods --- */
+
+    private ProductBatchEntry entry(String product, boolean checkPolicies) {
+        AgentProjectInfo project = new AgentProjectInfo();
+        project.setCoordinates(new Coordinates("group", product, "1.0"));
+        project.getDependencies().add(new DependencyInfo("group", "artifact", "1.0"));
+        List<AgentProjectInfo> projects = Collections.singletonList(project);
+
+        UpdateInventoryRequest update = new UpdateInventoryRequest("orgToken", projects);
+        update.setProduct(product);
+        CheckPolicyComplianceRequest policyCheck = null;
+        if (checkPolicies) {
+            policyCheck = new CheckPolicyComplianceRequest(projects, false);
+            policyCheck.setOrgToken("orgToken");
+            policyCheck.setProduct(product);
+        }
+        return new ProductBatchEntry(product, update, policyCheck);
+    }
+}
@@ -0,0 +1,163 @@
+/**
+ * Copyright (C) 2012 White Source Ltd.
+ * <p>
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * <p>
+ * http://www.apache.org/licenses/LICENSE-2.0
+ * <p>
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.whitesource.agent.client;
+
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+import org.mockito.ArgumentCaptor;
+import org.whitesource.agent.api.dispatch.UploadScaLogsRequest;
+import org.whitesource.agent.api.dispatch.UploadScaLogsResult;
+
+import java.io.File;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.StandardOpenOption;
+import java.util.List;
+
+import static org.junit.Assert.*;
+import static org.mockito.Matchers.any;
+import static org.mockito.Mockito.*;
+
+public class ScaLogUploaderTest {
+
+    /* --- Members --- */
+
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    private WssServiceClient client;
+    private File logFile;
+
+    /* --- Life cycle methods --- */
+
+    @Before
+    public void setUp() throws Exception {
+        client = mock(WssServiceClient.class);
+        when(client.uploadScaLogs(any(UploadScaLogsRequest.class))).thenReturn(new UploadScaLogsResult());
+        StringBuilder log = new StringBuilder();
+        for (int i = 0; i < 20; i++) {
+            log.append("line ").append(i).append(" é€\n");
+        }
+        logFile = folder.newFile("agent.log");
+        Files.write(logFile.toPath(), log.toString().getBytes(StandardCharsets.UTF_8));
+    }
+
+    /* --- Test methods --- */
+
+    @Test
+    public void testUploadsFileInLineAlignedChunks() throws Exception {
+        ScaLogUploader uploader = new ScaLogUploader(client);
+        uploader.setChunkBytes(64);
+        uploader.upload(new UploadScaLogsRequest("orgToken", "userKey", null), logFile);
+
+        List<UploadScaLogsRequest> chunks = sentChunks(client);
+        assertTrue(chunks.size() > 1);
+        StringBuilder uploaded = new StringBuilder();
+        long offset = 0;
+        for (int i = 0; i < chunks.size(); i++) {
+            UploadScaLogsRequest chunk = chunks.get(i);
+            assertEquals("orgToken", chunk.orgToken());
+            assertEquals(chunks.get(0).getUploadId(), chunk.getUploadId());
+            assertEquals("agent.log", chunk.getFileName());
+            assertEquals(i, chunk.getChunkIndex());
+            assertEquals(offset, chunk.getOffset());
+            assertEquals(logFile.length(), chunk.getTotalLength());
+            assertEquals(i == chunks.size() - 1, chunk.isLastChunk());
+            assertTrue(chunk.getLogChunk().endsWith("\n"));
+            uploaded.append(chunk.getLogChunk());
+            offset += chunk.getLogChunk().getBytes(StandardCharsets.UTF_8).length;
+        }
+        assertEquals(new String(Files.readAllBytes(logFile.toPath()), StandardCharsets.UTF_8), uploaded.toString());
+    }
+
+    @Test
+    public void testResumesFailedUpload() throws Exception {
+        File stateDirectory = folder.newFolder("state");
+        WssServiceClient failing = mock(WssServiceClient.class);
+        when(failing.uploadScaLogs(any(UploadScaLogsRequest.class)))
+                .thenReturn(new UploadScaLogsResult(), new UploadScaLogsResult())
+                .thenThrow(new WssServiceException("down"));
+        ScaLogUploader uploader = new ScaLogUploader(failing, stateDirectory);
+        uploader.setChunkBytes(64);
+        uploader.setRetryDelayMillis(1);
+        try {
+            uploader.upload(new UploadScaLogsRequest("orgToken", "userKey", null), logFile);
+            fail("Expected the upload to fail");
+        } catch (WssServiceException e) {
+            assertEquals("down", e.getMessage());
+        }
+        List<UploadScaLogsRequest> failed = sentChunks(failing);
+        assertEquals(2 + ScaLogUploader.DEFAULT_MAX_ATTEMPTS, failed.size());
+
+        ScaLogUploader resumed = new ScaLogUploader(client, stateDirectory);
+        resumed.setChunkBytes(64);
+        resumed.upload(new UploadScaLogsRequest("orgToken", "userKey", null), logFile);
+        UploadScaLogsRequest first = sentChunks(client).get(0);
+        assertEquals(2, first.getChunkIndex());
+        assertEquals(failed.get(2).getOffset(), first.getOffset());
+        assertEquals(failed.get(0).getUploadId(), first.getUploadId());
+        assertEquals(0, stateDirectory.listFiles().length);
+    }
+
+    @Test(timeout = 10000)
+    public void testFileTruncatedDuringUpload() throws Exception {
+        WssServiceClient truncating = mock(WssServiceClient.class);
+        when(truncating.uploadScaLogs(any(UploadScaLogsRequest.class))).thenAnswer(invocation -> {
+            // rotated away after the first chunk
+            try (FileChannel channel = FileChannel.open(logFile.toPath(), StandardOpenOption.WRITE)) {
+                channel.truncate(100);
+            }
+            return new UploadScaLogsResult();
+        });
+        ScaLogUploader uploader = new ScaLogUploader(truncating);
+        uploader.setChunkBytes(64);
+        uploader.upload(new UploadScaLogsRequest("orgToken", "userKey", null), logFile);
+
+        List<UploadScaLogsRequest> chunks = sentChunks(truncating);
+        assertEquals(2, chunks.size());
+        assertFalse(chunks.get(0).isLastChunk());
+        assertTrue(chunks.get(1).isLastChunk());
+        assertEquals(100, chunks.get(1).getOffset() + chunks.get(1).getLogChunk().getBytes(StandardCharsets.UTF_8).length);
+    }
+
+    @Test
+    public void testEmptyFile() throws Exception {
+        new ScaLogUploader(client).upload(new UploadScaLogsRequest(), folder.newFile("empty.log"));
+        UploadScaLogsRequest chunk = sentChunks(client).get(0);
+        assertTrue(chunk.isLastChunk());
+        assertEquals("", chunk.getLogChunk());
+    }
+
+    @Test
+    public void testChunkSizeKeepsCharactersWhole() {
+        byte[] bytes = "ab€".getBytes(StandardCharsets.UTF_8);
+        assertEquals(5, ScaLogUploader.chunkSize(bytes, 5));
+        assertEquals(2, ScaLogUploader.chunkSize(bytes, 4));
+        assertEquals(2, ScaLogUploader.chunkSize(bytes, 3));
+        assertEquals(2, ScaLogUploader.chunkSize("a\nb".getBytes(StandardCharsets.UTF_8), 3));
+    }
+
+    /* --- Private methods --- */
+
+    private static List<UploadScaLogsRequest> sentChunks(WssServiceClient client) throws WssServiceException {
+        ArgumentCaptor<UploadScaLogsRequest> captor = ArgumentCaptor.forClass(UploadScaLogsRequest.class);
+        verify(client, atLeastOnce()).uploadScaLogs(captor.capture());
+        return captor.getAllValues();
+    }
+}
@@ -0,0 +1,219 @@
+/**
+ * Copyright (C) 2012 White Source Ltd.
+ * <p>
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * <p>
+ * http://www.apache.org/licenses/LICENSE-2.0
+ * <p>
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.whitesource.agent.client;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+import org.mockito.ArgumentCaptor;
+import org.whitesource.agent.api.dispatch.*;
+import org.whitesource.agent.api.model.AgentProjectInfo;
+import org.whitesource.agent.api.model.Coordinates;
+import org.whitesource.agent.api.model.DependencyInfo;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.net.ConnectException;
+import java.util.*;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.Assert.*;
+import static org.mockito.Matchers.any;
+import static org.mockito.Mockito.*;
+
+public class SpoolingWssServiceClientTest {
+
+    /* --- Members --- */
+
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    private WssServiceClient delegate;
+    private SpoolingWssServiceClient client;
+
+    /* --- Life cycle methods --- */
+
+    @Before
+    public void setUp() {
+        delegate = mock(WssServiceClient.class);
+    }
+
+    @After
+    public void tearDown() {
+        if (client != null) {
+            client.shutdown();
+        }
+    }
+
+    /* --- Test methods --- */
+
+    @Test
+    public void testRequestsAreAcknowledgedAndSentInBackground() throws Exception {
+        client = newClient(delegate);
+
+        UpdateInventoryResult result = client.updateInventory(request(UpdateType.OVERRIDE, project("a", "sha1")));
+        assertNotNull(result);
+        client.sendMetrics(new SendMetricsRequest("orgToken", null, "product", Collections.singletonMap("metric", "1")));
+        verifyZeroInteractions(delegate);
+
+        assertTrue(client.flush(5, TimeUnit.SECONDS));
+        UpdateInventoryRequest sent = sentUpdates(1).get(0);
+        assertEquals("orgToken", sent.orgToken());
+        assertEquals("sha1", sent.getProjects().iterator().next().getDependencies().iterator().next().getSha1());
+        ArgumentCaptor<SendMetricsRequest> metrics = ArgumentCaptor.forClass(SendMetricsRequest.class);
+        verify(delegate).sendMetrics(metrics.capture());
+        assertEquals("1", metrics.getValue().getExtraProperties().get("metric"));
+    }
+
+    @Test
+    public void testSupersededUpdatesAreCoalescedAndMerged() throws Exception {
+        client = newClient(delegate);
+
+        client.updateInventory(request(UpdateType.OVERRIDE, project("a", "old")));
+        client.updateInventory(request(UpdateType.APPEND, project("a", "older")));
+        client.updateInventory(request(UpdateType.OVERRIDE, project("b", "sha1")));
+        client.updateInventory(request(UpdateType.OVERRIDE, project("a", "new")));
+        assertTrue(client.flush(5, TimeUnit.SECONDS));
+
+        // the APPEND is superseded as well, the remaining OVERRIDE updates are merged
+        UpdateInventoryRequest sent = sentUpdates(1).get(0);
+        Map<String, String> projects = new HashMap<>();
+        for (AgentProjectInfo project : sent.getProjects()) {
+            projects.put(project.getCoordinates().getArtifactId(), project.getDependencies().iterator().next().getSha1());
+        }
+        assertEquals(2, projects.size());
+        assertEquals("new", projects.get("a"));
+        assertEquals("sha1", projects.get("b"));
+        assertEquals(UpdateType.OVERRIDE, sent.getUpdateType());
+    }
+
+    @Test
+    public void testDifferentProductsAreNotMerged() throws Exception {
+        client = newClient(delegate);
+
+        client.updateInventory(request(UpdateType.OVERRIDE, project("a", "sha1")));
+        UpdateInventoryRequest other = request(UpdateType.OVERRIDE, project("b", "sha1"));
+        other.setProduct("other");
+        client.updateInventory(other);
+        assertTrue(client.flush(5, TimeUnit.SECONDS));
+
+        assertEquals(2, sentUpdates(2).size());
+    }
+
+    @Test
+    public void testConnectionErrorsAreRetried() throws Exception {
+        when(delegate.updateInventory(any(UpdateInventoryRequest.class)))
+                .thenThrow(new WssServiceException("refused", new ConnectException("refused")))
+                .thenReturn(new UpdateInventoryResult());
+        client = newClient(delegate);
+        client.setInitialRetryDelayMillis(10);
+
+        client.updateInventory(request(UpdateType.OVERRIDE, project("a", "sha1")));
+        assertTrue(client.flush(5, TimeUnit.SECONDS));
+        sentUpdates(2);
+    }
+
+    @Test
+    public void testRejectedRequestsAreDropped() throws Exception {
+        when(delegate.updateInventory(any(UpdateInventoryRequest.class))).thenThrow(new WssServiceException("rejected"));
+        client = newClient(delegate);
+
+        client.updateInventory(request(UpdateType.OVERRIDE, project("a", "sha1")));
+        assertTrue(client.flush(5, TimeUnit.SECONDS));
+        sentUpdates(1);
+    }
+
+    @Test
+    public void testUnsentRequestsSurviveRestart() throws Exception {
+        WssServiceClient down = mock(WssServiceClient.class);
+        when(down.updateInventory(any(UpdateInventoryRequest.class)))
+                .thenThrow(new WssServiceException("unavailable", null, 503));
+        SpoolingWssServiceClient first = newClient(down);
+        first.setInitialRetryDelayMillis(TimeUnit.MINUTES.toMillis(1));
+        first.updateInventory(request(UpdateType.OVERRIDE, project("a", "sha1")));
+        assertFalse(first.flush(500, TimeUnit.MILLISECONDS));
+        first.shutdown();
+
+        client = newClient(delegate);
+        assertTrue(client.flush(5, TimeUnit.SECONDS));
+        assertEquals("a", sentUpdates(1).get(0).getProjects().iterator().next().getCoordinates().getArtifactId());
+    }
+
+    @Test
+    public void testLogUploadsAreSentDirectly() throws Exception {
+        UploadScaLogsResult result = new UploadScaLogsResult();
+        when(delegate.uploadScaLogs(any(UploadScaLogsRequest.class))).thenReturn(result);
+        client = newClient(delegate);
+
+        assertFalse(client.getSpooledTypes().contains(RequestType.UPLOAD_SCA_LOGS));
+        assertSame(result, client.uploadScaLogs(new UploadScaLogsRequest("orgToken", "userKey", null)));
+        verify(delegate).uploadScaLogs(any(UploadScaLogsRequest.class));
+        assertTrue(client.flush(5, TimeUnit.SECONDS));
+    }
+
+    @Test
+    public void testTornRecordIsSkipped() throws Exception {
+        File directory = folder.newFolder("torn");
+        RequestSpool spool = new RequestSpool(directory);
+        spool.append(request(UpdateType.OVERRIDE, project("a", "sha1")));
+        spool.append(request(UpdateType.OVERRIDE, project("b", "sha1")));
+        spool.roll();
+        File segment = directory.listFiles((dir, name) -> name.endsWith(".spool"))[0];
+        try (RandomAccessFile file = new RandomAccessFile(segment, "rw")) {
+            file.setLength(file.length() - 3);
+        }
+
+        assertTrue(spool.tryLock());
+        List<RequestSpool.SpooledRequest> records = spool.segments().get(0).read();
+        assertEquals(1, records.size());
+        assertEquals("a", records.get(0).getRequest().getProjects().iterator().next().getCoordinates().getArtifactId());
+        records.get(0).acknowledge();
+        assertTrue(spool.segments().get(0).read().isEmpty());
+        assertTrue(spool.isEmpty());
+        spool.close();
+    }
+
+    /* --- Private methods --- */
+
+    private SpoolingWssServiceClient newClient(WssServiceClient delegate) throws IOException {
+        File directory = new File(folder.getRoot(), "spool");
+        SpoolingWssServiceClient spoolingClient = new SpoolingWssServiceClient(delegate, directory);
+        spoolingClient.setLingerMillis(TimeUnit.MINUTES.toMillis(1));
+        return spoolingClient;
+    }
+
+    private UpdateInventoryRequest request(UpdateType updateType, AgentProjectInfo project) {
+        UpdateInventoryRequest request = new UpdateInventoryRequest("orgToken", new ArrayList<>(Collections.singletonList(project)), updateType);
+        request.setProduct("product");
+        return request;
+    }
+
+    private AgentProjectInfo project(String name, String sha1) {
+        AgentProjectInfo project = new AgentProjectInfo();
+        project.setCoordinates(new Coordinates("group", name, "1.0"));
+        project.getDependencies().add(new DependencyInfo(sha1));
+        return project;
+    }
+
+    private List<UpdateInventoryRequest> sentUpdates(int count) throws WssServiceException {
+        ArgumentCaptor<UpdateInventoryRequest> captor = ArgumentCaptor.forClass(UpdateInventoryRequest.class);
+        verify(delegate, times(count)).updateInventory(captor.capture());
+        return captor.getAllValues();
+    }
+}
@@ -0,0 +1,296 @@
+/**
+ * Copyright (C) 2012 White Source Ltd.
+ * <p>
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * <p>
+ * http://www.apache.org/licenses/LICENSE-2.0
+ * <p>
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.whitesource.agent.client;
+
+import com.google.gson.Gson;
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpServer;
+import org.apache.http.NameValuePair;
+import org.apache.http.client.utils.URLEncodedUtils;
+import org.whitesource.agent.api.APIConstants;
+import org.whitesource.agent.api.dispatch.RequestType;
+import org.whitesource.agent.api.dispatch.ResultEnvelope;
+import org.whitesource.agent.utils.PayloadCodecs;
+import org.whitesource.agent.utils.ZipUtils;
+
+import java.io.*;
+import java.net.InetSocketAddress;
+import java.nio.charset.StandardCharsets;
+import java.util.*;
+import java.util.concurrent.*;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.zip.GZIPOutputStream;
+
+/**
+ * An in-process stand-in for the WhiteSource agent endpoint, for testing and load testing clients.
+ * <p>
+ * Decodes both the form transport (with the gzip/base64 {@link APIConstants#PARAM_DIFF} payload) and the
+ * compressed body transport (in any content encoding known to {@link PayloadCodecs}), and answers with a
+ * {@link ResultEnvelope}. Latency and failures can be injected.
+ */
+public class StubWhitesourceServer implements Closeable {
+
+    /* --- Static members --- */
+
+    public static final String CONTEXT = "/agent";
+    public static final String DEFAULT_RESULT = "{\"organization\":\"stub\"}";
+
+    private static final String GZIP = "gzip";
+
+    /* --- Members --- */
+
+    private final HttpServer server;
+    private final ExecutorService executor;
+    private final Gson gson = new Gson();
+    private final Map<RequestType, String> results = new ConcurrentHashMap<>();
+    private final List<ReceivedRequest> requests = new CopyOnWriteArrayList<>();
+    private final AtomicLong requestCount = new AtomicLong();
+    private final AtomicLong failureCount = new AtomicLong();
+
+    private volatile long latencyMillis;
+    private volatile double failureRate;
+    private volatile int failureStatusCode = 500;
+    private volatile boolean acceptGzip = true;
+    private volatile boolean gzipResponses;
+    private volatile boolean recordRequests = true;
+
+    /* --- Constructors --- */
+
+    /**
+     * Constructor, listens on an ephemeral local port.
+     *
+     * @param threads Number of threads serving requests.
+     */
+    public StubWhitesourceServer(int threads) throws IOException {
+        server = HttpServer.create(new InetSocketAddress("localhost", 0), 0);
+        executor = Executors.newFixedThreadPool(threads, new DaemonThreadFactory("stub-wss-server"));
+        server.setExecutor(executor);
+        server.createContext(CONTEXT, this::handle);
+        server.start();
+    }
+
+    /* --- Public methods --- */
+
+    public String getServiceUrl() {
+        return "http://localhost:" + server.getAddress().getPort() + CONTEXT;
+    }
+
+    /**
+     * @param requestType Request type to answer.
+     * @param result      Result object, serialized as the envelope data.
+     */
+    public void setResult(RequestType requestType, Object result) {
+        results.put(requestType, gson.toJson(result));
+    }
+
+    @Override
+    public void close() {
+        server.stop(0);
+        executor.shutdownNow();
+    }
+
+    /* --- Private methods --- */
+
+    private void handle(HttpExchange exchange) throws IOException {
+        try {
+            requestCount.incrementAndGet();
+            Map<String, String> params = new HashMap<>();
+            String payload;
+            String transport;
+            try (InputStream body = exchange.getRequestBody()) {
+                String contentEncoding = exchange.getRequestHeaders().getFirst("Content-Encoding");
+                if (contentEncoding != null) {
+                    transport = contentEncoding.toLowerCase(Locale.ROOT);
+                    if (!acceptGzip) {
+                        drain(body);
+                        exchange.sendResponseHeaders(415, -1);
+                        return;
+                    }
+                    parse(exchange.getRequestHeaders().getFirst(ClientConstants.PARAMS_HEADER), params);
+                    payload = read(PayloadCodecs.forName(transport).newInputStream(body));
+                } else {
+                    transport = "form";
+                    parse(read(body), params);
+                    String diff = params.remove(APIConstants.PARAM_DIFF);
+                    payload = diff == null ? null : ZipUtils.decompressString(diff);
+                }
+            }
+
+            if (latencyMillis > 0) {
+                Thread.sleep(latencyMillis);
+            }
+
+            RequestType requestType = RequestType.valueOf(params.get(APIConstants.PARAM_REQUEST_TYPE));
+            if (recordRequests) {
+                requests.add(new ReceivedRequest(requestType, transport, params, payload));
+            }
+
+            if (failureRate > 0 && ThreadLocalRandom.current().nextDouble() < failureRate) {
+                failureCount.incrementAndGet();
+                if (failureStatusCode == 200) {
+                    respond(exchange, new ResultEnvelope(ResultEnvelope.STATUS_SERVER_ERROR, "Injected failure", null));
+                } else {
+                    exchange.sendResponseHeaders(failureStatusCode, -1);
+                }
+                return;
+            }
+            respond(exchange, new ResultEnvelope(ResultEnvelope.STATUS_SUCCESS, "ok",
+                    results.getOrDefault(requestType, DEFAULT_RESULT), UUID.randomUUID().toString()));
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            exchange.sendResponseHeaders(503, -1);
+        } catch (RuntimeException e) {
+            exchange.sendResponseHeaders(400, -1);
+        } finally {
+            exchange.close();
+        }
+    }
+
+    private void respond(HttpExchange exchange, ResultEnvelope envelope) throws IOException {
+        byte[] response = gson.toJson(envelope).getBytes(StandardCharsets.UTF_8);
+        exchange.getResponseHeaders().set("Content-Type", ClientConstants.APPLICATION_JSON);
+        String acceptEncoding = exchange.getRequestHeaders().getFirst("Accept-Encoding");
+        if (gzipResponses && acceptEncoding != null && acceptEncoding.contains(GZIP)) {
+            exchange.getResponseHeaders().set("Content-Encoding", GZIP);
+            exchange.sendResponseHeaders(200, 0);
+            try (OutputStream out = new GZIPOutputStream(exchange.getResponseBody())) {
+                out.write(response);
+            }
+        } else {
+            exchange.sendResponseHeaders(200, response.length);
+            try (OutputStream out = exchange.getResponseBody()) {
+                out.write(response);
+            }
+        }
+    }
+
+    private static void parse(String form, Map<String, String> params) {
+        if (form != null) {
+            for (NameValuePair pair : URLEncodedUtils.parse(form, StandardCharsets.UTF_8)) {
+                params.put(pair.getName(), pair.getValue());
+            }
+        }
+    }
+
+    private static String read(InputStream in) throws IOException {
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        byte[] buffer = new byte[8192];
+        int read;
+        while ((read = in.read(buffer)) != -1) {
+            out.write(buffer, 0, read);
+        }
+        return new String(out.toByteArray(), StandardCharsets.UTF_8);
+    }
+
+    private static void drain(InputStream in) throws IOException {
+        byte[] buffer = new byte[8192];
+        while (in.read(buffer) != -1) {
+            // discard
+        }
+    }
+
+    /* --- Getters / Setters --- */
+
+    /**
+     * @return Requests received so far, when recording is on.
+     */
+    public List<ReceivedRequest> getRequests() {
+        return requests;
+    }
+
+    public long getRequestCount() {
+        return requestCount.get();
+    }
+
+    public long getFailureCount() {
+        return failureCount.get();
+    }
+
+    public void setLatencyMillis(long latencyMillis) {
+        this.latencyMillis = latencyMillis;
+    }
+
+    /**
+     * @param failureRate Share of requests, between 0 and 1, to fail with the failure status code.
+     */
+    public void setFailureRate(double failureRate) {
+        this.failureRate = failureRate;
+    }
+
+    /**
+     * @param failureStatusCode Http status of injected failures, 200 answers with a failed {@link ResultEnvelope}.
+     */
+    public void setFailureStatusCode(int failureStatusCode) {
+        this.failureStatusCode = failureStatusCode;
+    }
+
+    public void setAcceptGzip(boolean acceptGzip) {
+        this.acceptGzip = acceptGzip;
+    }
+
+    public void setGzipResponses(boolean gzipResponses) {
+        this.gzipResponses = gzipResponses;
+    }
+
+    /**
+     * @param recordRequests Whether to keep the received requests, turn off for load tests.
+     */
+    public void setRecordRequests(boolean recordRequests) {
+        this.recordRequests = recordRequests;
+    }
+
+    /* --- Nested classes --- */
+
+    /**
+     * A decoded request, as received by the server.
+     */
+    public static class ReceivedRequest {
+
+        private final RequestType requestType;
+        private final String transport;
+        private final Map<String, String> params;
+        private final String payload;
+
+        ReceivedRequest(RequestType requestType, String transport, Map<String, String> params, String payload) {
+            this.requestType = requestType;
+            this.transport = transport;
+            this.params = params;
+            this.payload = payload;
+        }
+
+        public RequestType getRequestType() {
+            return requestType;
+        }
+
+        /**
+         * @return "form", or the content encoding of the body, such as "gzip".
+         */
+        public String getTransport() {
+            return transport;
+        }
+
+        public Map<String, String> getParams() {
+            return params;
+        }
+
+        /**
+         * @return The decoded payload JSON.
+         */
+        public String getPayload() {
+            return payload;
+        }
+    }
+}
@@ -0,0 +1,118 @@
+/**
+ * Copyright (C) 2012 White Source Ltd.
+ * <p>
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * <p>
+ * http://www.apache.org/licenses/LICENSE-2.0
+ * <p>
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.whitesource.agent.client;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.whitesource.agent.api.APIConstants;
+import org.whitesource.agent.api.dispatch.*;
+
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+
+import static org.junit.Assert.*;
+
+public class StubWhitesourceServerTest {
+
+    /* --- Members --- */
+
+    private StubWhitesourceServer server;
+
+    private WssServiceClientImpl client;
+
+    /* --- Life cycle methods --- */
+
+    @Before
+    public void setUp() throws Exception {
+        server = new StubWhitesourceServer(2);
+        client = new WssServiceClientImpl(server.getServiceUrl(), false);
+    }
+
+    @After
+    public void tearDown() {
+        client.shutdown();
+        server.close();
+    }
+
+    /* --- Test methods --- */
+
+    @Test
+    public void testDecodesFormRequests() throws Exception {
+        server.setResult(RequestType.UPDATE, new UpdateInventoryResult("organization"));
+        UpdateInventoryResult result = client.updateInventory(new UpdateInventoryRequest("orgToken", ClientLoadDriver.projects(3)));
+
+        assertEquals("organization", result.getOrganization());
+        StubWhitesourceServer.ReceivedRequest received = server.getRequests().get(0);
+        assertEquals(RequestType.UPDATE, received.getRequestType());
+        assertEquals("form", received.getTransport());
+        assertEquals("orgToken", received.getParams().get(APIConstants.PARAM_TOKEN));
+        assertTrue(received.getPayload().contains("artifact-2"));
+    }
+
+    @Test
+    public void testSendsLogChunks() throws Exception {
+        UploadScaLogsRequest request = new UploadScaLogsRequest("orgToken", "userKey", null);
+        request.setUploadId("upload");
+        request.setChunkIndex(3);
+        request.setLogChunk("log line");
+        assertNotNull(client.uploadScaLogs(request));
+
+        StubWhitesourceServer.ReceivedRequest received = server.getRequests().get(0);
+        assertEquals(RequestType.UPLOAD_SCA_LOGS, received.getRequestType());
+        assertEquals("upload", received.getParams().get(APIConstants.LOG_UPLOAD_ID));
+        assertEquals("3", received.getParams().get(APIConstants.LOG_CHUNK_INDEX));
+        assertEquals("\"log line\"", received.getPayload());
+    }
+
+    @Test
+    public void testInjectedFailures() {
+        server.setFailureRate(1);
+        try {
+            client.getDependencyData(new GetDependencyDataRequest(ClientLoadDriver.projects(1)));
+            fail("Expected the request to fail");
+        } catch (WssServiceException e) {
+            assertEquals(500, e.getStatusCode());
+        }
+
+        server.setFailureStatusCode(200);
+        try {
+            client.getDependencyData(new GetDependencyDataRequest(ClientLoadDriver.projects(1)));
+            fail("Expected the request to fail");
+        } catch (WssServiceException e) {
+            assertTrue(e.getMessage().contains("Injected failure"));
+        }
+        assertEquals(2, server.getFailureCount());
+    }
+
+    @Test
+    public void testLoadDriverReportsEveryType() throws Exception {
+        ClientLoadDriver driver = new ClientLoadDriver();
+        driver.setRequestTypes(Arrays.asList(RequestType.UPDATE, RequestType.CHECK_VULNERABILITIES));
+        driver.setPayloadSizes(Collections.singletonList(20));
+        driver.setRequests(10);
+        driver.setThreads(2);
+        List<ClientLoadDriver.Result> results = driver.run();
+
+        assertEquals(2, results.size());
+        for (ClientLoadDriver.Result result : results) {
+            assertEquals(0, result.getErrors());
+            assertEquals(10, result.getLatencyMicros().getCount());
+            assertTrue(result.getRequestsPerSecond() > 0);
+        }
+    }
+}
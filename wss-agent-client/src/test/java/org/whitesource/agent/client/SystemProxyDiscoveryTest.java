@@ -0,0 +1,55 @@
+/**
+ * Copyright (C) 2012 White Source Ltd.
+ * <p>
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * <p>
+ * http://www.apache.org/licenses/LICENSE-2.0
+ * <p>
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.whitesource.agent.client;
+
+import org.junit.After;
+import org.junit.Test;
+
+import java.net.ProxySelector;
+
+import static org.junit.Assert.*;
+
+public class SystemProxyDiscoveryTest {
+
+    /* --- Life cycle methods --- */
+
+    @After
+    public void tearDown() {
+        SystemProxyDiscovery.setTtlMillis(SystemProxyDiscovery.DEFAULT_TTL_MILLIS);
+    }
+
+    /* --- Test methods --- */
+
+    @Test
+    public void testDiscoveryIsCached() {
+        SystemProxyDiscovery.reset();
+        SystemProxyDiscovery.prefetch();
+        ProxySelector first = SystemProxyDiscovery.getProxySelector();
+        ProxySelector second = SystemProxyDiscovery.getProxySelector();
+        assertSame(first, second);
+    }
+
+    @Test
+    public void testClientConstructionDoesNotWaitForDiscovery() {
+        SystemProxyDiscovery.reset();
+        WssServiceClientImpl client = new WssServiceClientImpl("http://localhost:1/agent", true);
+        assertNull(client.getProxyHost());
+
+        client.setProxy("proxy.example.com", 8080, null, null);
+        assertEquals("proxy.example.com", client.getProxyHost());
+        client.shutdown();
+    }
+}
@@ -23,13 +23,15 @@ import org.whitesource.agent.api.dispatch.UpdateType;
 import org.whitesource.agent.api.model.*;
 import org.whitesource.agent.api.model.contribution.ContributionInfo;
 import org.whitesource.agent.api.model.contribution.ContributionInfoCollection;
+import org.whitesource.agent.utils.JsonCodecs;
+import org.whitesource.agent.utils.PayloadCodec;
+import org.whitesource.agent.utils.PayloadCodecs;
 import org.whitesource.agent.utils.ZipUtils;
 
 import java.io.ByteArrayOutputStream;
 import java.io.File;
 import java.io.IOException;
 import java.io.OutputStreamWriter;
-import java.lang.reflect.Type;
 import java.util.Collection;
 import java.util.Map;
 
@@ -73,6 +75,22 @@ public class OfflineUpdateRequest {
      * @throws java.io.IOException In case of errors during file generation process.
      */
     public File generate(File outputDir, boolean zip, boolean prettyJson, String filePath) throws IOException {
+        return generate(outputDir, zip ? PayloadCodecs.gzip() : null, prettyJson, filePath);
+    }
+
+    /**
+     * The method generates the update request file.
+     *
+     * @param outputDir Directory where request file will be created.
+     * @param codec Codec to compress the request with, the result is base64 encoded. Null to not compress it.
+     *              Gzip is the format accepted when uploading offline requests.
+     * @param prettyJson Whether or not to parse the json before writing to file (only if codec is null).
+     * @param filePath path to the output file; null by default
+     *
+     * @return File reference to the resulting request.
+     * @throws java.io.IOException In case of errors during file generation process.
+     */
+    public File generate(File outputDir, PayloadCodec codec, boolean prettyJson, String filePath) throws IOException {
         if (request == null) {
             throw new IllegalStateException("Update inventory request is null");
         }
@@ -99,18 +117,14 @@ public class OfflineUpdateRequest {
         }
 
         String json;
-        if (zip) {
-            json = new Gson().toJson(request);
-            json = ZipUtils.compressString(json);
+        if (codec != null) {
+            json = JsonCodecs.compact().toJson(request);
+            json = ZipUtils.compressString(json, codec);
         } else if (prettyJson) {
-            Gson gson = new GsonBuilder().setPrettyPrinting().create();
-            /*Gson gson = new GsonBuilder().setPrettyPrinting()
-                    .addSerializationExclusionStrategy(getExclusionStrategy())
-                    .registerTypeHierarchyAdapter(Collection.class, new CollectionAdapter()).create();*/
-            json = gson.toJson(request);
-            //json = turnRequestToJson(gson);
+            json = JsonCodecs.pretty().toJson(request);
+            //json = turnRequestToJson(JsonCodecs.omitEmpties());
         } else {
-            json = new Gson().toJson(request);
+            json = JsonCodecs.compact().toJson(request);
         }
 
 
@@ -129,41 +143,6 @@ public class OfflineUpdateRequest {
         return requestFile;
     }
 
-    // excluding attributes 'optional', 'checksums' & 'deduped' from the json
-    private ExclusionStrategy getExclusionStrategy(){
-        return new ExclusionStrategy() {
-            @Override
-            public boolean shouldSkipField(FieldAttributes fieldAttributes) {
-                String name = fieldAttributes.getName();
-                if (name.equals("optional") || name.equals("checksums") || name.equals("deduped")) {
-                    return true;
-                }
-                return false;
-            }
-
-            @Override
-            public boolean shouldSkipClass(Class<?> aClass) {
-                return false;
-            }
-        };
-    }
-
-    // excluding empty collections from the json
-    static class CollectionAdapter implements JsonSerializer<Collection<?>> {
-        @Override
-        public JsonElement serialize(Collection<?> src, Type typeOfSrc,
-                                     JsonSerializationContext context) {
-            if (src == null || src.isEmpty())
-                return null;
-            JsonArray array = new JsonArray();
-            for (Object child : src) {
-                JsonElement element = context.serialize(child);
-                array.add(element);
-            }
-            return array;
-        }
-    }
-
     private String turnRequestToJson(Gson gson) throws IOException {
         ByteArrayOutputStream out = new ByteArrayOutputStream();
         JsonWriter writer = new JsonWriter(new OutputStreamWriter(out, "UTF-8"));
@@ -17,8 +17,6 @@ package org.whitesource.agent.report;
 
 import com.fasterxml.jackson.annotation.JsonInclude;
 import com.fasterxml.jackson.databind.ObjectMapper;
-import com.google.gson.Gson;
-import com.google.gson.GsonBuilder;
 import freemarker.log.Logger;
 import freemarker.template.Configuration;
 import freemarker.template.Template;
@@ -165,7 +163,6 @@ public class PolicyCheckReport {
             throw new IOException("Unable to make output directory: " + workDir);
         }
 
-        Gson gson = new GsonBuilder().setPrettyPrinting().create();
         ObjectMapper objectMapper = new ObjectMapper();
         objectMapper.setSerializationInclusion(JsonInclude.Include.NON_NULL);
         String json = objectMapper.writerWithDefaultPrettyPrinter().writeValueAsString(result);
@@ -0,0 +1,46 @@
+/**
+ * Copyright (C) 2014 WhiteSource Ltd.
+ * <p>
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * <p>
+ * http://www.apache.org/licenses/LICENSE-2.0
+ * <p>
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.whitesource.agent.utils;
+
+import org.apache.commons.codec.binary.Base64InputStream;
+
+import java.io.IOException;
+import java.io.InputStream;
+
+/**
+ * Input stream which reads base64 encoded gzip data from the underlying stream and returns it decompressed,
+ * the reverse of {@link Base64GzipOutputStream}.
+ * <p>
+ * Decoding and decompression run on the caller's thread as the bytes are read, through a pooled inflater and
+ * pooled buffers (see {@link PooledGzipInputStream}). Like
+ * {@link org.apache.commons.codec.binary.Base64#decodeBase64(String)}, decoding is lenient: both the standard and
+ * the URL safe alphabets are accepted, characters outside them (such as line breaks) are skipped, and the data
+ * ends at the first padding character or at the end of the stream.
+ */
+public class Base64GunzipInputStream extends PooledGzipInputStream {
+
+    /* --- Constructors --- */
+
+    /**
+     * Constructor
+     *
+     * @param in Stream to read the base64 encoded gzip data from.
+     * @throws IOException In case of errors reading the gzip header, or if the data is not gzip.
+     */
+    public Base64GunzipInputStream(InputStream in) throws IOException {
+        super(new Base64InputStream(in));
+    }
+}
@@ -0,0 +1,67 @@
+/**
+ * Copyright (C) 2014 WhiteSource Ltd.
+ * <p>
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * <p>
+ * http://www.apache.org/licenses/LICENSE-2.0
+ * <p>
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.whitesource.agent.utils;
+
+import org.apache.commons.codec.binary.Base64OutputStream;
+
+import java.io.IOException;
+import java.io.OutputStream;
+
+/**
+ * Output stream which gzips the bytes written to it and writes them to the underlying stream base64 encoded,
+ * the format of {@link ZipUtils#compressString(String)}.
+ * <p>
+ * Compression and encoding run on the caller's thread as the bytes are written, through a pooled deflater and
+ * pooled buffers (see {@link PooledGzipOutputStream}). The output is a single line using the standard base64
+ * alphabet with padding. {@link #finish()} completes the output without closing the underlying stream,
+ * {@link #close()} also closes it.
+ */
+public class Base64GzipOutputStream extends PooledGzipOutputStream {
+
+    /* --- Constructors --- */
+
+    /**
+     * Constructor
+     *
+     * @param out Stream to write the base64 encoded gzip data to.
+     * @throws IOException In case of errors writing the gzip header.
+     */
+    public Base64GzipOutputStream(OutputStream out) throws IOException {
+        super(newEncodingStream(out));
+    }
+
+    /* --- Static methods --- */
+
+    /**
+     * @return Stream encoding the bytes written to it as a single line of base64, completed by
+     * {@link Base64OutputStream#eof()} or by closing it.
+     */
+    static Base64OutputStream newEncodingStream(OutputStream out) {
+        return new Base64OutputStream(out, true, 0, null);
+    }
+
+    /* --- Overridden methods --- */
+
+    /**
+     * Writes the gzip trailer and the final base64 padding, without closing the underlying stream.
+     */
+    @Override
+    public void finish() throws IOException {
+        super.finish();
+        ((Base64OutputStream) out).eof();
+        out.flush();
+    }
+}
@@ -0,0 +1,145 @@
+/**
+ * Copyright (C) 2014 WhiteSource Ltd.
+ * <p>
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * <p>
+ * http://www.apache.org/licenses/LICENSE-2.0
+ * <p>
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.whitesource.agent.utils;
+
+import org.whitesource.agent.api.dispatch.UpdateInventoryRequest;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.util.Arrays;
+
+/**
+ * A compact, versioned binary encoding of update inventory requests, written by {@link BinaryInventoryWriter} and
+ * read by {@link BinaryInventoryReader}.
+ * <p>
+ * The stream starts with the magic bytes {@code WSBI} and the format version, followed by the request fields and a
+ * sequence of project records, each holding the project fields and its dependencies. Integers are varints, strings
+ * are UTF-8 and repeated strings are written once and then referred to by their index in a string table, checksums
+ * in hex are stored as raw bytes, and the flags of a dependency share a single bit mask with the presence of its
+ * fields. The request and project fields, as well as the rarely used nested types of dependencies, are embedded as
+ * JSON. The encoding is lossless: a request read back serializes to the same JSON as the one written.
+ */
+public final class BinaryInventoryFormat {
+
+    /* --- Static members --- */
+
+    public static final int VERSION = 1;
+
+    static final byte[] MAGIC = {'W', 'S', 'B', 'I'};
+
+    // record tags
+    static final int END = 0;
+    static final int PROJECT = 1;
+    static final int DEPENDENCY = 2;
+    static final int PROJECT_END = 3;
+
+    // string references, followed by the index of a known string
+    static final int STRING_NULL = 0;
+    static final int STRING_NEW = 1;
+    static final int STRING_LITERAL = 2;
+    static final int STRING_INDEX = 3;
+    // strings beyond this number are written as literals, so the table stays bounded on both sides
+    static final int MAX_STRINGS = 64 * 1024;
+
+    // hash values
+    static final int HASH_NULL = 0;
+    static final int HASH_STRING = 1;
+    static final int HASH_BYTES = 2;
+
+    // project and request flags
+    static final int FLAG_COLLECTION = 1;
+
+    // dependency fields, in order of encoding
+    static final int GROUP_ID = 0;
+    static final int ARTIFACT_ID = 1;
+    static final int VERSION_FIELD = 2;
+    static final int TYPE = 3;
+    static final int CLASSIFIER = 4;
+    static final int SCOPE = 5;
+    static final int SHA1 = 6;
+    static final int FULL_HASH = 7;
+    static final int COMMENTLESS_SHA1 = 8;
+    static final int NO_NEW_LINES_SHA1 = 9;
+    static final int OTHER_PLATFORM_SHA1 = 10;
+    static final int SYSTEM_PATH = 11;
+    static final int IS_MODULE = 12;
+    static final int OPTIONAL = 13;
+    static final int CHILDREN = 14;
+    static final int LAST_MODIFIED = 15;
+    static final int FILENAME = 16;
+    static final int DEPENDENCY_TYPE = 17;
+    static final int HINTS = 18;
+    static final int CHECKSUMS = 19;
+    static final int VULNERABILITY_ANALYSIS_RESULT = 20;
+    static final int COMMIT = 21;
+    static final int DEPENDENCY_FILE = 22;
+    static final int ADDITIONAL_SHA1 = 23;
+    static final int ARCHITECTURE = 24;
+    static final int LANGUAGE_VERSION = 25;
+    static final int DEDUPED = 26;
+    static final int OS_INFO = 27;
+    static final int ANALYSIS_INPUTS = 28;
+    static final int SOURCE_PACKAGE_NAME = 29;
+    static final int RELEASE = 30;
+    static final int PURL = 31;
+
+    /* --- Constructors --- */
+
+    private BinaryInventoryFormat() {
+    }
+
+    /* --- Static methods --- */
+
+    /**
+     * @param head The first bytes of a stream, at least 4.
+     * @return True if the bytes start a binary inventory.
+     */
+    public static boolean isBinaryInventory(byte[] head) {
+        return head != null && head.length >= MAGIC.length && Arrays.equals(Arrays.copyOf(head, MAGIC.length), MAGIC);
+    }
+
+    /**
+     * Converts an update inventory request from JSON to the binary format. The request is read whole.
+     *
+     * @param json   JSON to read, not closed.
+     * @param binary Stream to write the binary inventory to, closed when done.
+     * @throws IOException In case of errors reading or writing.
+     */
+    public static void fromJson(InputStream json, OutputStream binary) throws IOException {
+        UpdateInventoryRequest request = JsonUtils.readUpdateInventoryRequest(json);
+        if (request == null) {
+            throw new IOException("No update inventory request to convert");
+        }
+        new BinaryInventoryWriter(binary, request).close();
+    }
+
+    /**
+     * Converts a binary inventory to update inventory request JSON, one project at a time.
+     *
+     * @param binary Binary inventory to read, closed when done.
+     * @param json   Stream to write the JSON to, closed when done.
+     * @throws IOException In case of errors reading or writing.
+     */
+    public static void toJson(InputStream binary, OutputStream json) throws IOException {
+        try (BinaryInventoryReader reader = new BinaryInventoryReader(binary);
+             InventoryWriter writer = new InventoryWriter(json, reader.getRequest())) {
+            while (reader.hasNext()) {
+                writer.writeProject(reader.next());
+            }
+        }
+    }
+}
@@ -0,0 +1,354 @@
+/**
+ * Copyright (C) 2014 WhiteSource Ltd.
+ * <p>
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * <p>
+ * http://www.apache.org/licenses/LICENSE-2.0
+ * <p>
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.whitesource.agent.utils;
+
+import com.google.gson.Gson;
+import com.google.gson.JsonParseException;
+import org.whitesource.agent.api.dispatch.UpdateInventoryRequest;
+import org.whitesource.agent.api.model.*;
+import org.whitesource.agent.via.api.VulnerabilityAnalysisResult;
+
+import java.io.BufferedInputStream;
+import java.io.EOFException;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.UncheckedIOException;
+import java.nio.charset.StandardCharsets;
+import java.util.*;
+
+import static org.whitesource.agent.utils.BinaryInventoryFormat.*;
+
+/**
+ * Reads an update inventory request in the {@link BinaryInventoryFormat binary inventory format}, as written by
+ * {@link BinaryInventoryWriter}.
+ * <p>
+ * The request fields are read on construction and are available from {@link #getRequest()}. The projects are then
+ * either iterated one at a time, each with its dependencies, or all read with {@link #readRequest()}. This class is
+ * not thread safe.
+ */
+public class BinaryInventoryReader implements CloseableIterator<AgentProjectInfo> {
+
+    /* --- Static members --- */
+
+    private static final int BUFFER_SIZE = 32 * 1024;
+    private static final char[] HEX = "0123456789abcdef".toCharArray();
+
+    private static final Gson gson = JsonCodecs.compact();
+
+    /* --- Members --- */
+
+    private final InputStream in;
+    private final UpdateInventoryRequest request;
+    private final boolean hasProjects;
+    private final List<String> strings = new ArrayList<>();
+    private AgentProjectInfo next;
+    private boolean done;
+
+    /* --- Constructors --- */
+
+    /**
+     * Constructor, reads an uncompressed inventory.
+     *
+     * @param in Stream to read from, closed by {@link #close()}.
+     * @throws IOException In case of errors reading the request fields, or if the stream is not a binary inventory.
+     */
+    public BinaryInventoryReader(InputStream in) throws IOException {
+        this(in, null);
+    }
+
+    /**
+     * Constructor
+     *
+     * @param in    Stream to read from, closed by {@link #close()}.
+     * @param codec Optional. Codec the inventory was compressed with.
+     * @throws IOException In case of errors reading the request fields, or if the stream is not a binary inventory.
+     */
+    public BinaryInventoryReader(InputStream in, PayloadCodec codec) throws IOException {
+        this.in = new BufferedInputStream(codec == null ? in : codec.newInputStream(in), BUFFER_SIZE);
+        try {
+            byte[] magic = new byte[MAGIC.length];
+            readFully(magic);
+            if (!isBinaryInventory(magic)) {
+                throw new IOException("Not a binary inventory");
+            }
+            long version = readVarint();
+            if (version != VERSION) {
+                throw new IOException("Unsupported binary inventory version " + version);
+            }
+            hasProjects = (readVarint() & FLAG_COLLECTION) != 0;
+            request = fromJson(readString(), UpdateInventoryRequest.class);
+            request.setProjects(null);
+        } catch (IOException | RuntimeException e) {
+            this.in.close();
+            throw e;
+        }
+    }
+
+    /* --- Public methods --- */
+
+    /**
+     * Reads the remaining projects into the request.
+     *
+     * @return The request, with its projects.
+     * @throws IOException In case of errors reading the projects.
+     */
+    public UpdateInventoryRequest readRequest() throws IOException {
+        List<AgentProjectInfo> projects = new ArrayList<>();
+        try {
+            while (hasNext()) {
+                projects.add(next());
+            }
+        } catch (UncheckedIOException e) {
+            throw e.getCause();
+        }
+        request.setProjects(hasProjects || !projects.isEmpty() ? projects : null);
+        return request;
+    }
+
+    @Override
+    public boolean hasNext() {
+        if (next == null && !done) {
+            try {
+                next = readProject();
+            } catch (IOException e) {
+                throw new UncheckedIOException(e);
+            }
+            done = next == null;
+        }
+        return next != null;
+    }
+
+    @Override
+    public AgentProjectInfo next() {
+        if (!hasNext()) {
+            throw new NoSuchElementException();
+        }
+        AgentProjectInfo project = next;
+        next = null;
+        return project;
+    }
+
+    @Override
+    public void close() throws IOException {
+        done = true;
+        in.close();
+    }
+
+    /* --- Private methods --- */
+
+    private AgentProjectInfo readProject() throws IOException {
+        int tag = (int) readVarint();
+        if (tag == END) {
+            return null;
+        }
+        if (tag != PROJECT) {
+            throw corrupt("unexpected record " + tag);
+        }
+        boolean hasDependencies = (readVarint() & FLAG_COLLECTION) != 0;
+        AgentProjectInfo project = fromJson(readString(), AgentProjectInfo.class);
+        List<DependencyInfo> dependencies = hasDependencies ? new ArrayList<>() : null;
+        while ((tag = (int) readVarint()) == DEPENDENCY) {
+            if (dependencies == null) {
+                dependencies = new ArrayList<>();
+            }
+            dependencies.add(readDependency());
+        }
+        if (tag != PROJECT_END) {
+            throw corrupt("unexpected record " + tag);
+        }
+        project.setDependencies(dependencies);
+        return project;
+    }
+
+    private DependencyInfo readDependency() throws IOException {
+        long mask = readVarint();
+        if (mask == 0) {
+            return null;
+        }
+        // shifted by one, so zero stands for a null dependency
+        mask--;
+        DependencyInfo dependency = new DependencyInfo();
+        if (has(mask, GROUP_ID)) dependency.setGroupId(readString());
+        if (has(mask, ARTIFACT_ID)) dependency.setArtifactId(readString());
+        if (has(mask, VERSION_FIELD)) dependency.setVersion(readString());
+        if (has(mask, TYPE)) dependency.setType(readString());
+        if (has(mask, CLASSIFIER)) dependency.setClassifier(readString());
+        if (has(mask, SCOPE)) dependency.setScope(readString());
+        if (has(mask, SHA1)) dependency.setSha1(readHash());
+        if (has(mask, FULL_HASH)) dependency.setFullHash(readHash());
+        if (has(mask, COMMENTLESS_SHA1)) dependency.setCommentlessSha1(readHash());
+        if (has(mask, NO_NEW_LINES_SHA1)) dependency.setNoNewLinesSha1(readHash());
+        if (has(mask, OTHER_PLATFORM_SHA1)) dependency.setOtherPlatformSha1(readHash());
+        if (has(mask, SYSTEM_PATH)) dependency.setSystemPath(readString());
+        dependency.setIsModule(has(mask, IS_MODULE));
+        dependency.setOptional(has(mask, OPTIONAL));
+        if (has(mask, CHILDREN)) {
+            int count = readCount();
+            List<DependencyInfo> children = new ArrayList<>(count);
+            for (int i = 0; i < count; i++) {
+                children.add(readDependency());
+            }
+            dependency.setChildren(children);
+        }
+        if (has(mask, LAST_MODIFIED)) dependency.setLastModified(new Date(unzigzag(readVarint())));
+        if (has(mask, FILENAME)) dependency.setFilename(readString());
+        if (has(mask, DEPENDENCY_TYPE)) dependency.setDependencyType(toEnum(DependencyType.class, readString()));
+        if (has(mask, HINTS)) dependency.setHints(fromJson(readString(), DependencyHintsInfo.class));
+        Map<ChecksumType, String> checksums = null;
+        if (has(mask, CHECKSUMS)) {
+            int count = readCount();
+            checksums = new LinkedHashMap<>();
+            for (int i = 0; i < count; i++) {
+                String type = readString();
+                checksums.put(type == null ? null : toEnum(ChecksumType.class, type), readHash());
+            }
+        }
+        if (has(mask, VULNERABILITY_ANALYSIS_RESULT)) {
+            dependency.setVulnerabilityAnalysisResult(fromJson(readString(), VulnerabilityAnalysisResult.class));
+        }
+        if (has(mask, COMMIT)) dependency.setCommit(readString());
+        if (has(mask, DEPENDENCY_FILE)) dependency.setDependencyFile(readString());
+        if (has(mask, ADDITIONAL_SHA1)) dependency.setAdditionalSha1(readHash());
+        if (has(mask, ARCHITECTURE)) dependency.setArchitecture(readString());
+        if (has(mask, LANGUAGE_VERSION)) dependency.setLanguageVersion(readString());
+        dependency.setDeduped(has(mask, DEDUPED));
+        if (has(mask, OS_INFO)) dependency.setOsInfo(fromJson(readString(), OSInfo.class));
+        if (has(mask, ANALYSIS_INPUTS)) dependency.setAnalysisInputs(fromJson(readString(), AnalysisInputs.class));
+        if (has(mask, SOURCE_PACKAGE_NAME)) dependency.setSourcePackageName(readString());
+        if (has(mask, RELEASE)) dependency.setRelease(readString());
+        if (has(mask, PURL)) dependency.setPurl(readString());
+        // the hash setters add checksums as well, the written ones replace them
+        dependency.setChecksums(checksums);
+        return dependency;
+    }
+
+    private static boolean has(long mask, int field) {
+        return (mask & (1L << field)) != 0;
+    }
+
+    private String readString() throws IOException {
+        long reference = readVarint();
+        if (reference == STRING_NULL) {
+            return null;
+        }
+        if (reference == STRING_NEW || reference == STRING_LITERAL) {
+            byte[] bytes = new byte[readCount()];
+            readFully(bytes);
+            String value = new String(bytes, StandardCharsets.UTF_8);
+            if (reference == STRING_NEW) {
+                strings.add(value);
+            }
+            return value;
+        }
+        long index = reference - STRING_INDEX;
+        if (index >= strings.size()) {
+            throw corrupt("unknown string " + index);
+        }
+        return strings.get((int) index);
+    }
+
+    private String readHash() throws IOException {
+        int kind = (int) readVarint();
+        switch (kind) {
+            case HASH_NULL:
+                return null;
+            case HASH_STRING:
+                return readString();
+            case HASH_BYTES:
+                byte[] bytes = new byte[readCount()];
+                readFully(bytes);
+                char[] chars = new char[bytes.length * 2];
+                for (int i = 0; i < bytes.length; i++) {
+                    chars[i * 2] = HEX[(bytes[i] >> 4) & 0xF];
+                    chars[i * 2 + 1] = HEX[bytes[i] & 0xF];
+                }
+                return new String(chars);
+            default:
+                throw corrupt("unknown hash kind " + kind);
+        }
+    }
+
+    private static <E extends Enum<E>> E toEnum(Class<E> type, String name) throws IOException {
+        try {
+            return Enum.valueOf(type, name);
+        } catch (IllegalArgumentException | NullPointerException e) {
+            throw corrupt("unknown " + type.getSimpleName() + " " + name);
+        }
+    }
+
+    private <T> T fromJson(String json, Class<T> type) throws IOException {
+        try {
+            T value = gson.fromJson(json, type);
+            if (value == null) {
+                throw corrupt("missing " + type.getSimpleName());
+            }
+            return value;
+        } catch (JsonParseException e) {
+            throw new IOException("Corrupt binary inventory: " + e.getMessage(), e);
+        }
+    }
+
+    private int readCount() throws IOException {
+        long count = readVarint();
+        if (count > Integer.MAX_VALUE) {
+            throw corrupt("count " + count);
+        }
+        return (int) count;
+    }
+
+    private static long unzigzag(long value) {
+        return (value >>> 1) ^ -(value & 1);
+    }
+
+    private long readVarint() throws IOException {
+        long value = 0;
+        for (int shift = 0; shift < 64; shift += 7) {
+            int b = in.read();
+            if (b < 0) {
+                throw new EOFException("Unexpected end of binary inventory");
+            }
+            value |= (long) (b & 0x7F) << shift;
+            if ((b & 0x80) == 0) {
+                return value;
+            }
+        }
+        throw corrupt("malformed varint");
+    }
+
+    private void readFully(byte[] bytes) throws IOException {
+        int offset = 0;
+        while (offset < bytes.length) {
+            int read = in.read(bytes, offset, bytes.length - offset);
+            if (read < 0) {
+                throw new EOFException("Unexpected end of binary inventory");
+            }
+            offset += read;
+        }
+    }
+
+    private static IOException corrupt(String message) {
+        return new IOException("Corrupt binary inventory: " + message);
+    }
+
+    /* --- Getters --- */
+
+    /**
+     * @return The request fields, without projects.
+     */
+    public UpdateInventoryRequest getRequest() {
+        return request;
+    }
+}
@@ -0,0 +1,401 @@
+/**
+ * Copyright (C) 2014 WhiteSource Ltd.
+ * <p>
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * <p>
+ * http://www.apache.org/licenses/LICENSE-2.0
+ * <p>
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.whitesource.agent.utils;
+
+import com.google.gson.Gson;
+import org.whitesource.agent.api.dispatch.UpdateInventoryRequest;
+import org.whitesource.agent.api.model.AgentProjectInfo;
+import org.whitesource.agent.api.model.ChecksumType;
+import org.whitesource.agent.api.model.DependencyInfo;
+
+import java.io.BufferedOutputStream;
+import java.io.Closeable;
+import java.io.Flushable;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.Map;
+
+import static org.whitesource.agent.utils.BinaryInventoryFormat.*;
+
+/**
+ * Writes an update inventory request in the {@link BinaryInventoryFormat binary inventory format} incrementally,
+ * like {@link InventoryWriter} does for JSON.
+ * <p>
+ * The request fields are written first, followed by the projects. A project is either added whole with
+ * {@link #writeProject(AgentProjectInfo)}, or opened with {@link #beginProject(AgentProjectInfo)}, given its
+ * dependencies one at a time with {@link #writeDependency(DependencyInfo)} and completed with {@link #endProject()}.
+ * {@link #close()} completes the inventory, which is read with {@link BinaryInventoryReader}. This class is not
+ * thread safe.
+ */
+public class BinaryInventoryWriter implements Closeable, Flushable {
+
+    /* --- Static members --- */
+
+    private static final int BUFFER_SIZE = 32 * 1024;
+
+    private static final Gson gson = JsonCodecs.compact();
+    private static final Gson headerGson = JsonCodecs.headers();
+
+    /* --- Members --- */
+
+    private final OutputStream out;
+    private final Map<String, Integer> strings = new HashMap<>();
+    private final byte[] varintBuffer = new byte[10];
+    private boolean projectOpen;
+    private boolean closed;
+    private int projectCount;
+    private long dependencyCount;
+
+    /* --- Constructors --- */
+
+    /**
+     * Constructor, writes uncompressed.
+     *
+     * @param out     Stream to write to, closed by {@link #close()}.
+     * @param request Fields of the request. Its projects, if any, are written first.
+     * @throws IOException In case of errors writing the request fields.
+     */
+    public BinaryInventoryWriter(OutputStream out, UpdateInventoryRequest request) throws IOException {
+        this(out, request, null);
+    }
+
+    /**
+     * Constructor
+     *
+     * @param out     Stream to write to, closed by {@link #close()}.
+     * @param request Fields of the request. Its projects, if any, are written first.
+     * @param codec   Optional. Codec to compress the inventory with.
+     * @throws IOException In case of errors writing the request fields.
+     */
+    public BinaryInventoryWriter(OutputStream out, UpdateInventoryRequest request, PayloadCodec codec) throws IOException {
+        OutputStream stream = codec == null ? out : codec.newOutputStream(out);
+        this.out = new BufferedOutputStream(stream, BUFFER_SIZE);
+        this.out.write(MAGIC);
+        writeVarint(VERSION);
+        writeVarint(request.getProjects() == null ? 0 : FLAG_COLLECTION);
+        writeString(headerGson.toJson(request, UpdateInventoryRequest.class), false);
+        if (request.getProjects() != null) {
+            for (AgentProjectInfo project : request.getProjects()) {
+                writeProject(project);
+            }
+        }
+    }
+
+    /* --- Public methods --- */
+
+    /**
+     * Writes a complete project, including its dependencies.
+     *
+     * @param project Project to write.
+     * @throws IOException In case of errors writing the project.
+     */
+    public void writeProject(AgentProjectInfo project) throws IOException {
+        beginProject(project);
+        endProject();
+    }
+
+    /**
+     * Starts a project. Its dependencies, if any, are written first, more can be added with
+     * {@link #writeDependency(DependencyInfo)} until {@link #endProject()}.
+     *
+     * @param project Fields of the project.
+     * @throws IOException In case of errors writing the project.
+     */
+    public void beginProject(AgentProjectInfo project) throws IOException {
+        ensureOpen();
+        if (projectOpen) {
+            throw new IllegalStateException("A project is already open");
+        }
+        writeVarint(PROJECT);
+        writeVarint(project.getDependencies() == null ? 0 : FLAG_COLLECTION);
+        writeString(headerGson.toJson(project, AgentProjectInfo.class), false);
+        projectOpen = true;
+        projectCount++;
+        if (project.getDependencies() != null) {
+            for (DependencyInfo dependency : project.getDependencies()) {
+                writeDependency(dependency);
+            }
+        }
+    }
+
+    /**
+     * Adds a top level dependency, with its children, to the open project.
+     *
+     * @param dependency Dependency to write.
+     * @throws IOException In case of errors writing the dependency.
+     */
+    public void writeDependency(DependencyInfo dependency) throws IOException {
+        ensureOpen();
+        if (!projectOpen) {
+            throw new IllegalStateException("No project is open");
+        }
+        writeVarint(DEPENDENCY);
+        writeDependencyFields(dependency);
+        dependencyCount++;
+    }
+
+    /**
+     * Completes the open project.
+     *
+     * @throws IOException In case of errors writing.
+     */
+    public void endProject() throws IOException {
+        ensureOpen();
+        if (!projectOpen) {
+            throw new IllegalStateException("No project is open");
+        }
+        writeVarint(PROJECT_END);
+        projectOpen = false;
+    }
+
+    /**
+     * Flushes the inventory written so far to the underlying stream.
+     */
+    @Override
+    public void flush() throws IOException {
+        if (!closed) {
+            out.flush();
+        }
+    }
+
+    /**
+     * Completes the open project, if any, and the inventory, and closes the underlying stream.
+     */
+    @Override
+    public void close() throws IOException {
+        if (closed) {
+            return;
+        }
+        try {
+            if (projectOpen) {
+                endProject();
+            }
+            writeVarint(END);
+        } finally {
+            closed = true;
+            out.close();
+        }
+    }
+
+    /* --- Private methods --- */
+
+    private void writeDependencyFields(DependencyInfo dependency) throws IOException {
+        if (dependency == null) {
+            writeVarint(0);
+            return;
+        }
+        Collection<DependencyInfo> children = ModelTypeAdapterFactory.children(dependency);
+        Map<ChecksumType, String> checksums = ModelTypeAdapterFactory.checksums(dependency);
+        long mask = bit(GROUP_ID, dependency.getGroupId())
+                | bit(ARTIFACT_ID, dependency.getArtifactId())
+                | bit(VERSION_FIELD, dependency.getVersion())
+                | bit(TYPE, dependency.getType())
+                | bit(CLASSIFIER, dependency.getClassifier())
+                | bit(SCOPE, dependency.getScope())
+                | bit(SHA1, dependency.getSha1())
+                | bit(FULL_HASH, dependency.getFullHash())
+                | bit(COMMENTLESS_SHA1, dependency.getCommentlessSha1())
+                | bit(NO_NEW_LINES_SHA1, dependency.getNoNewLinesSha1())
+                | bit(OTHER_PLATFORM_SHA1, dependency.getOtherPlatformSha1())
+                | bit(SYSTEM_PATH, dependency.getSystemPath())
+                | bit(IS_MODULE, dependency.getIsModule())
+                | bit(OPTIONAL, dependency.getOptional())
+                | bit(CHILDREN, children)
+                | bit(LAST_MODIFIED, dependency.getLastModified())
+                | bit(FILENAME, dependency.getFilename())
+                | bit(DEPENDENCY_TYPE, dependency.getDependencyType())
+                | bit(HINTS, dependency.getHints())
+                | bit(CHECKSUMS, checksums)
+                | bit(VULNERABILITY_ANALYSIS_RESULT, dependency.getVulnerabilityAnalysisResult())
+                | bit(COMMIT, dependency.getCommit())
+                | bit(DEPENDENCY_FILE, dependency.getDependencyFile())
+                | bit(ADDITIONAL_SHA1, dependency.getAdditionalSha1())
+                | bit(ARCHITECTURE, dependency.getArchitecture())
+                | bit(LANGUAGE_VERSION, dependency.getLanguageVersion())
+                | bit(DEDUPED, dependency.isDeduped())
+                | bit(OS_INFO, dependency.getOsInfo())
+                | bit(ANALYSIS_INPUTS, dependency.getAnalysisInputs())
+                | bit(SOURCE_PACKAGE_NAME, dependency.getSourcePackageName())
+                | bit(RELEASE, dependency.getRelease())
+                | bit(PURL, dependency.getPurl());
+        // shifted by one, so zero stands for a null dependency
+        writeVarint(mask + 1);
+
+        writeString(dependency.getGroupId(), true);
+        writeString(dependency.getArtifactId(), true);
+        writeString(dependency.getVersion(), true);
+        writeString(dependency.getType(), true);
+        writeString(dependency.getClassifier(), true);
+        writeString(dependency.getScope(), true);
+        writeHash(dependency.getSha1());
+        writeHash(dependency.getFullHash());
+        writeHash(dependency.getCommentlessSha1());
+        writeHash(dependency.getNoNewLinesSha1());
+        writeHash(dependency.getOtherPlatformSha1());
+        writeString(dependency.getSystemPath(), true);
+        if (children != null) {
+            writeVarint(children.size());
+            for (DependencyInfo child : children) {
+                writeDependencyFields(child);
+            }
+        }
+        if (dependency.getLastModified() != null) {
+            writeVarint(zigzag(dependency.getLastModified().getTime()));
+        }
+        writeString(dependency.getFilename(), true);
+        if (dependency.getDependencyType() != null) {
+            writeString(dependency.getDependencyType().name(), true);
+        }
+        writeJson(dependency.getHints());
+        if (checksums != null) {
+            writeVarint(checksums.size());
+            for (Map.Entry<ChecksumType, String> checksum : checksums.entrySet()) {
+                // entries are always present, so their nulls are written explicitly
+                if (checksum.getKey() == null) {
+                    writeVarint(STRING_NULL);
+                } else {
+                    writeString(checksum.getKey().name(), true);
+                }
+                if (checksum.getValue() == null) {
+                    writeVarint(HASH_NULL);
+                } else {
+                    writeHash(checksum.getValue());
+                }
+            }
+        }
+        writeJson(dependency.getVulnerabilityAnalysisResult());
+        writeString(dependency.getCommit(), true);
+        writeString(dependency.getDependencyFile(), true);
+        writeHash(dependency.getAdditionalSha1());
+        writeString(dependency.getArchitecture(), true);
+        writeString(dependency.getLanguageVersion(), true);
+        writeJson(dependency.getOsInfo());
+        writeJson(dependency.getAnalysisInputs());
+        writeString(dependency.getSourcePackageName(), true);
+        writeString(dependency.getRelease(), true);
+        writeString(dependency.getPurl(), true);
+    }
+
+    private static long bit(int field, Object value) {
+        return value == null ? 0 : 1L << field;
+    }
+
+    private static long bit(int field, boolean value) {
+        return value ? 1L << field : 0;
+    }
+
+    /**
+     * Writes a present string, as a reference to the string table when the string is pooled and already known.
+     */
+    private void writeString(String value, boolean pooled) throws IOException {
+        if (value == null) {
+            return;
+        }
+        if (pooled) {
+            Integer index = strings.get(value);
+            if (index != null) {
+                writeVarint(STRING_INDEX + index);
+                return;
+            }
+            if (strings.size() < MAX_STRINGS) {
+                strings.put(value, strings.size());
+                writeVarint(STRING_NEW);
+                writeLiteral(value);
+                return;
+            }
+        }
+        writeVarint(STRING_LITERAL);
+        writeLiteral(value);
+    }
+
+    private void writeLiteral(String value) throws IOException {
+        byte[] bytes = value.getBytes(StandardCharsets.UTF_8);
+        writeVarint(bytes.length);
+        out.write(bytes);
+    }
+
+    /**
+     * Writes a present hash, as raw bytes if it is lower case hex and so converts back to the same string.
+     */
+    private void writeHash(String value) throws IOException {
+        if (value == null) {
+            return;
+        }
+        if (isHex(value)) {
+            writeVarint(HASH_BYTES);
+            writeVarint(value.length() / 2);
+            for (int i = 0; i < value.length(); i += 2) {
+                out.write((Character.digit(value.charAt(i), 16) << 4) | Character.digit(value.charAt(i + 1), 16));
+            }
+        } else {
+            writeVarint(HASH_STRING);
+            writeString(value, true);
+        }
+    }
+
+    private static boolean isHex(String value) {
+        int length = value.length();
+        if (length == 0 || length % 2 != 0) {
+            return false;
+        }
+        for (int i = 0; i < length; i++) {
+            char c = value.charAt(i);
+            if ((c < '0' || c > '9') && (c < 'a' || c > 'f')) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    private void writeJson(Object value) throws IOException {
+        if (value != null) {
+            writeString(gson.toJson(value), false);
+        }
+    }
+
+    private static long zigzag(long value) {
+        return (value << 1) ^ (value >> 63);
+    }
+
+    private void writeVarint(long value) throws IOException {
+        int length = 0;
+        while ((value & ~0x7FL) != 0) {
+            varintBuffer[length++] = (byte) ((value & 0x7F) | 0x80);
+            value >>>= 7;
+        }
+        varintBuffer[length++] = (byte) value;
+        out.write(varintBuffer, 0, length);
+    }
+
+    private void ensureOpen() throws IOException {
+        if (closed) {
+            throw new IOException("Writer is closed");
+        }
+    }
+
+    /* --- Getters --- */
+
+    public int getProjectCount() {
+        return projectCount;
+    }
+
+    public long getDependencyCount() {
+        return dependencyCount;
+    }
+}
@@ -0,0 +1,30 @@
+/**
+ * Copyright (C) 2014 WhiteSource Ltd.
+ * <p>
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * <p>
+ * http://www.apache.org/licenses/LICENSE-2.0
+ * <p>
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.whitesource.agent.utils;
+
+import java.io.Closeable;
+import java.util.Iterator;
+
+/**
+ * An iterator over a resource, such as a file, which must be closed when the iteration ends early.
+ * <p>
+ * Errors reading the resource are thrown by {@link #hasNext()} and {@link #next()} as
+ * {@link java.io.UncheckedIOException}.
+ *
+ * @param <T> Type of the elements.
+ */
+public interface CloseableIterator<T> extends Iterator<T>, Closeable {
+}
@@ -0,0 +1,143 @@
+/**
+ * Copyright (C) 2014 WhiteSource Ltd.
+ * <p>
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * <p>
+ * http://www.apache.org/licenses/LICENSE-2.0
+ * <p>
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.whitesource.agent.utils;
+
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.zip.Deflater;
+import java.util.zip.Inflater;
+
+/**
+ * Process wide pools of {@link Deflater}s and {@link Inflater}s, raw (no zlib header) or zlib wrapped, and of
+ * byte buffers, shared by the compression streams of this package.
+ * <p>
+ * Every deflater and inflater holds native zlib memory until it is ended, and creating them per stream makes that
+ * memory (and the garbage of the buffers) grow with the number of concurrent streams. Borrowed objects are reset
+ * and returned when a stream finishes; each pool keeps at most a bounded number of idle objects and ends or drops
+ * the rest.
+ */
+final class CompressionPool {
+
+    /* --- Static members --- */
+
+    static final int BUFFER_SIZE = 32 * 1024;
+
+    private static final int MAX_IDLE = Math.max(4, 2 * Runtime.getRuntime().availableProcessors());
+    private static final int MIN_LEVEL = Deflater.DEFAULT_COMPRESSION;
+    private static final int MAX_LEVEL = Deflater.BEST_COMPRESSION;
+
+    // indexed by the nowrap flag, and for deflaters by the level
+    @SuppressWarnings("unchecked")
+    private static final BlockingQueue<Deflater>[][] deflaters = new BlockingQueue[2][MAX_LEVEL - MIN_LEVEL + 1];
+    @SuppressWarnings("unchecked")
+    private static final BlockingQueue<Inflater>[] inflaters = new BlockingQueue[2];
+    private static final BlockingQueue<byte[]> buffers = new ArrayBlockingQueue<>(MAX_IDLE * 2);
+
+    static {
+        for (int i = 0; i < 2; i++) {
+            for (int j = 0; j < deflaters[i].length; j++) {
+                deflaters[i][j] = new ArrayBlockingQueue<>(MAX_IDLE);
+            }
+            inflaters[i] = new ArrayBlockingQueue<>(MAX_IDLE);
+        }
+    }
+
+    /* --- Static methods --- */
+
+    /**
+     * @param level Compression level, see {@link Deflater}.
+     * @return A raw deflater, to be returned with {@link #release(Deflater, int)}.
+     */
+    static Deflater borrowDeflater(int level) {
+        return borrowDeflater(level, true);
+    }
+
+    /**
+     * @param level  Compression level, see {@link Deflater}.
+     * @param nowrap Whether the deflater writes raw deflate data rather than the zlib format.
+     * @return A deflater, to be returned with {@link #release(Deflater, int, boolean)}.
+     */
+    static Deflater borrowDeflater(int level, boolean nowrap) {
+        Deflater deflater = isPooledLevel(level) ? deflaters[nowrap ? 1 : 0][level - MIN_LEVEL].poll() : null;
+        // deflaters are pooled per level, as changing the level of a used deflater may affect its output
+        return deflater == null ? new Deflater(level, nowrap) : deflater;
+    }
+
+    static void release(Deflater deflater, int level) {
+        release(deflater, level, true);
+    }
+
+    static void release(Deflater deflater, int level, boolean nowrap) {
+        deflater.reset();
+        if (!isPooledLevel(level) || !deflaters[nowrap ? 1 : 0][level - MIN_LEVEL].offer(deflater)) {
+            deflater.end();
+        }
+    }
+
+    /**
+     * @return A raw inflater, to be returned with {@link #release(Inflater)}.
+     */
+    static Inflater borrowInflater() {
+        return borrowInflater(true);
+    }
+
+    /**
+     * @param nowrap Whether the inflater reads raw deflate data rather than the zlib format.
+     * @return An inflater, to be returned with {@link #release(Inflater, boolean)}.
+     */
+    static Inflater borrowInflater(boolean nowrap) {
+        Inflater inflater = inflaters[nowrap ? 1 : 0].poll();
+        return inflater == null ? new Inflater(nowrap) : inflater;
+    }
+
+    static void release(Inflater inflater) {
+        release(inflater, true);
+    }
+
+    static void release(Inflater inflater, boolean nowrap) {
+        inflater.reset();
+        if (!inflaters[nowrap ? 1 : 0].offer(inflater)) {
+            inflater.end();
+        }
+    }
+
+    /**
+     * @return A buffer of {@link #BUFFER_SIZE} bytes, to be returned with {@link #release(byte[])}.
+     */
+    static byte[] borrowBuffer() {
+        byte[] buffer = buffers.poll();
+        return buffer == null ? new byte[BUFFER_SIZE] : buffer;
+    }
+
+    static void release(byte[] buffer) {
+        if (buffer.length == BUFFER_SIZE) {
+            buffers.offer(buffer);
+        }
+    }
+
+    private static boolean isPooledLevel(int level) {
+        return level >= MIN_LEVEL && level <= MAX_LEVEL;
+    }
+
+    /* --- Constructors --- */
+
+    /**
+     * Private default constructor
+     */
+    private CompressionPool() {
+        // avoid instantiation
+    }
+}
@@ -0,0 +1,136 @@
+/**
+ * Copyright (C) 2014 WhiteSource Ltd.
+ * <p>
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * <p>
+ * http://www.apache.org/licenses/LICENSE-2.0
+ * <p>
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.whitesource.agent.utils;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.util.zip.Deflater;
+import java.util.zip.DeflaterOutputStream;
+import java.util.zip.Inflater;
+import java.util.zip.InflaterInputStream;
+
+/**
+ * The deflate format as used by HTTP, deflate data in the zlib wrapper (RFC 1950). It is gzip without the
+ * file header and with an Adler-32 rather than a CRC-32 checksum, which makes it slightly smaller and faster.
+ * Levels range from 0 (no compression) to 9 (best compression), -1 is the zlib default.
+ */
+public class DeflatePayloadCodec implements PayloadCodec {
+
+    /* --- Static members --- */
+
+    public static final String NAME = "deflate";
+
+    /* --- Members --- */
+
+    private final int level;
+
+    /* --- Constructors --- */
+
+    /**
+     * Constructor, with the default compression level.
+     */
+    public DeflatePayloadCodec() {
+        this(Deflater.DEFAULT_COMPRESSION);
+    }
+
+    /**
+     * Constructor
+     *
+     * @param level Compression level, see {@link Deflater}.
+     */
+    public DeflatePayloadCodec(int level) {
+        this.level = checkLevel(level);
+    }
+
+    /* --- Interface implementation methods --- */
+
+    @Override
+    public String getName() {
+        return NAME;
+    }
+
+    @Override
+    public String getContentEncoding() {
+        return NAME;
+    }
+
+    @Override
+    public int getLevel() {
+        return level;
+    }
+
+    @Override
+    public DeflatePayloadCodec withLevel(int level) {
+        return new DeflatePayloadCodec(level);
+    }
+
+    @Override
+    public OutputStream newOutputStream(OutputStream out) {
+        Deflater deflater = CompressionPool.borrowDeflater(level, false);
+        return new DeflaterOutputStream(out, deflater, CompressionPool.BUFFER_SIZE) {
+            private boolean released;
+
+            @Override
+            public void close() throws IOException {
+                try {
+                    super.close();
+                } finally {
+                    if (!released) {
+                        released = true;
+                        CompressionPool.release(deflater, level, false);
+                    }
+                }
+            }
+        };
+    }
+
+    @Override
+    public InputStream newInputStream(InputStream in) {
+        Inflater inflater = CompressionPool.borrowInflater(false);
+        return new InflaterInputStream(in, inflater, CompressionPool.BUFFER_SIZE) {
+            private boolean released;
+
+            @Override
+            public void close() throws IOException {
+                try {
+                    super.close();
+                } finally {
+                    if (!released) {
+                        released = true;
+                        CompressionPool.release(inflater, false);
+                    }
+                }
+            }
+        };
+    }
+
+    /* --- Overridden methods --- */
+
+    @Override
+    public String toString() {
+        return NAME + PayloadCodecs.LEVEL_SEPARATOR + level;
+    }
+
+    /* --- Package methods --- */
+
+    static int checkLevel(int level) {
+        if (level < Deflater.DEFAULT_COMPRESSION || level > Deflater.BEST_COMPRESSION) {
+            throw new IllegalArgumentException("Invalid compression level " + level + ", expected -1 to 9");
+        }
+        return level;
+    }
+}
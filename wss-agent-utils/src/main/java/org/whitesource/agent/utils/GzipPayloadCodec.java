@@ -0,0 +1,110 @@
+/**
+ * Copyright (C) 2014 WhiteSource Ltd.
+ * <p>
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * <p>
+ * http://www.apache.org/licenses/LICENSE-2.0
+ * <p>
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.whitesource.agent.utils;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.util.zip.Deflater;
+
+/**
+ * The gzip format, the default codec and the only one the service accepts for form encoded payloads.
+ * Levels range from 0 (no compression) to 9 (best compression), -1 is the zlib default.
+ */
+public class GzipPayloadCodec implements PayloadCodec {
+
+    /* --- Static members --- */
+
+    public static final String NAME = "gzip";
+
+    /* --- Members --- */
+
+    private final int level;
+    private final boolean parallel;
+
+    /* --- Constructors --- */
+
+    /**
+     * Constructor, with the default compression level.
+     */
+    public GzipPayloadCodec() {
+        this(Deflater.DEFAULT_COMPRESSION, false);
+    }
+
+    /**
+     * Constructor
+     *
+     * @param level    Compression level, see {@link Deflater}.
+     * @param parallel Whether to compress on multiple threads, see {@link ParallelGzipOutputStream}.
+     */
+    public GzipPayloadCodec(int level, boolean parallel) {
+        this.level = DeflatePayloadCodec.checkLevel(level);
+        this.parallel = parallel;
+    }
+
+    /* --- Interface implementation methods --- */
+
+    @Override
+    public String getName() {
+        return NAME;
+    }
+
+    @Override
+    public String getContentEncoding() {
+        return NAME;
+    }
+
+    @Override
+    public int getLevel() {
+        return level;
+    }
+
+    @Override
+    public GzipPayloadCodec withLevel(int level) {
+        return new GzipPayloadCodec(level, parallel);
+    }
+
+    @Override
+    public OutputStream newOutputStream(OutputStream out) throws IOException {
+        return parallel ? new ParallelGzipOutputStream(out, level) : new PooledGzipOutputStream(out, level);
+    }
+
+    @Override
+    public InputStream newInputStream(InputStream in) throws IOException {
+        return new PooledGzipInputStream(in);
+    }
+
+    /* --- Public methods --- */
+
+    /**
+     * @param parallel Whether to compress on multiple threads, see {@link ParallelGzipOutputStream}.
+     * @return A codec with the same level compressing as given.
+     */
+    public GzipPayloadCodec withParallel(boolean parallel) {
+        return parallel == this.parallel ? this : new GzipPayloadCodec(level, parallel);
+    }
+
+    public boolean isParallel() {
+        return parallel;
+    }
+
+    /* --- Overridden methods --- */
+
+    @Override
+    public String toString() {
+        return NAME + PayloadCodecs.LEVEL_SEPARATOR + level;
+    }
+}
@@ -0,0 +1,234 @@
+/**
+ * Copyright (C) 2014 WhiteSource Ltd.
+ * <p>
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * <p>
+ * http://www.apache.org/licenses/LICENSE-2.0
+ * <p>
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.whitesource.agent.utils;
+
+import com.google.gson.Gson;
+import com.google.gson.JsonElement;
+import com.google.gson.stream.JsonWriter;
+import org.whitesource.agent.api.dispatch.UpdateInventoryRequest;
+import org.whitesource.agent.api.model.AgentProjectInfo;
+import org.whitesource.agent.api.model.DependencyInfo;
+
+import java.io.BufferedWriter;
+import java.io.Closeable;
+import java.io.Flushable;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+import java.util.Map;
+
+/**
+ * Writes an update inventory request as JSON incrementally, so a scan can emit projects and dependencies as it
+ * finds them without holding the inventory in memory.
+ * <p>
+ * The request fields are written first, followed by the projects. A project is either added whole with
+ * {@link #writeProject(AgentProjectInfo)}, or opened with {@link #beginProject(AgentProjectInfo)}, given its
+ * dependencies one at a time with {@link #writeDependency(DependencyInfo)} and completed with {@link #endProject()}.
+ * {@link #close()} completes the document. The result is read like any update inventory request, e.g. with
+ * {@link JsonUtils#readUpdateInventoryRequest(java.io.InputStream)} or one project at a time with
+ * {@link JsonUtils#iterateProjects(java.io.InputStream)}.
+ * <p>
+ * The output may be compressed with a {@link PayloadCodec}. For the zipped offline request format, write to a
+ * {@link Base64GzipOutputStream} instead. This class is not thread safe.
+ */
+public class InventoryWriter implements Closeable, Flushable {
+
+    /* --- Static members --- */
+
+    private static final String PROJECTS = "projects";
+    private static final String DEPENDENCIES = "dependencies";
+    private static final int BUFFER_SIZE = 32 * 1024;
+
+    private static final Gson gson = JsonCodecs.compact();
+    private static final Gson headerGson = JsonCodecs.headers();
+
+    /* --- Members --- */
+
+    private final Writer out;
+    private final JsonWriter writer;
+    private boolean projectOpen;
+    private boolean closed;
+    private int projectCount;
+    private long dependencyCount;
+
+    /* --- Constructors --- */
+
+    /**
+     * Constructor, writes plain JSON.
+     *
+     * @param out     Stream to write to, closed by {@link #close()}.
+     * @param request Fields of the request. Its projects, if any, are written first.
+     * @throws IOException In case of errors writing the request fields.
+     */
+    public InventoryWriter(OutputStream out, UpdateInventoryRequest request) throws IOException {
+        this(out, request, null);
+    }
+
+    /**
+     * Constructor
+     *
+     * @param out     Stream to write to, closed by {@link #close()}.
+     * @param request Fields of the request. Its projects, if any, are written first.
+     * @param codec   Optional. Codec to compress the JSON with.
+     * @throws IOException In case of errors writing the request fields.
+     */
+    public InventoryWriter(OutputStream out, UpdateInventoryRequest request, PayloadCodec codec) throws IOException {
+        OutputStream stream = codec == null ? out : codec.newOutputStream(out);
+        this.out = new BufferedWriter(new OutputStreamWriter(stream, StandardCharsets.UTF_8), BUFFER_SIZE);
+        this.writer = new JsonWriter(this.out);
+        writer.beginObject();
+        writeFields(headerGson.toJsonTree(request, UpdateInventoryRequest.class));
+        writer.name(PROJECTS);
+        writer.beginArray();
+        if (request.getProjects() != null) {
+            for (AgentProjectInfo project : request.getProjects()) {
+                writeProject(project);
+            }
+        }
+    }
+
+    /* --- Public methods --- */
+
+    /**
+     * Writes a complete project, including its dependencies.
+     *
+     * @param project Project to write.
+     * @throws IOException In case of errors writing the project.
+     */
+    public void writeProject(AgentProjectInfo project) throws IOException {
+        beginProject(project);
+        endProject();
+    }
+
+    /**
+     * Starts a project. Its dependencies, if any, are written first, more can be added with
+     * {@link #writeDependency(DependencyInfo)} until {@link #endProject()}.
+     *
+     * @param project Fields of the project.
+     * @throws IOException In case of errors writing the project.
+     */
+    public void beginProject(AgentProjectInfo project) throws IOException {
+        ensureOpen();
+        if (projectOpen) {
+            throw new IllegalStateException("A project is already open");
+        }
+        writer.beginObject();
+        writeFields(headerGson.toJsonTree(project, AgentProjectInfo.class));
+        writer.name(DEPENDENCIES);
+        writer.beginArray();
+        projectOpen = true;
+        projectCount++;
+        if (project.getDependencies() != null) {
+            for (DependencyInfo dependency : project.getDependencies()) {
+                writeDependency(dependency);
+            }
+        }
+    }
+
+    /**
+     * Adds a top level dependency, with its children, to the open project.
+     *
+     * @param dependency Dependency to write.
+     * @throws IOException In case of errors writing the dependency.
+     */
+    public void writeDependency(DependencyInfo dependency) throws IOException {
+        ensureOpen();
+        if (!projectOpen) {
+            throw new IllegalStateException("No project is open");
+        }
+        gson.toJson(dependency, DependencyInfo.class, writer);
+        dependencyCount++;
+    }
+
+    /**
+     * Completes the open project.
+     *
+     * @throws IOException In case of errors writing.
+     */
+    public void endProject() throws IOException {
+        ensureOpen();
+        if (!projectOpen) {
+            throw new IllegalStateException("No project is open");
+        }
+        writer.endArray();
+        writer.endObject();
+        projectOpen = false;
+    }
+
+    /**
+     * Flushes the JSON written so far to the underlying stream.
+     */
+    @Override
+    public void flush() throws IOException {
+        if (!closed) {
+            writer.flush();
+        }
+    }
+
+    /**
+     * Completes the open project, if any, and the document, and closes the underlying stream.
+     */
+    @Override
+    public void close() throws IOException {
+        if (closed) {
+            return;
+        }
+        boolean completed = false;
+        try {
+            if (projectOpen) {
+                endProject();
+            }
+            writer.endArray();
+            writer.endObject();
+            completed = true;
+        } finally {
+            closed = true;
+            // the JSON writer refuses to close an incomplete document
+            if (completed) {
+                writer.close();
+            } else {
+                out.close();
+            }
+        }
+    }
+
+    /* --- Private methods --- */
+
+    private void writeFields(JsonElement element) throws IOException {
+        for (Map.Entry<String, JsonElement> field : element.getAsJsonObject().entrySet()) {
+            writer.name(field.getKey());
+            gson.toJson(field.getValue(), writer);
+        }
+    }
+
+    private void ensureOpen() throws IOException {
+        if (closed) {
+            throw new IOException("Writer is closed");
+        }
+    }
+
+    /* --- Getters --- */
+
+    public int getProjectCount() {
+        return projectCount;
+    }
+
+    public long getDependencyCount() {
+        return dependencyCount;
+    }
+}
@@ -0,0 +1,139 @@
+/**
+ * Copyright (C) 2014 WhiteSource Ltd.
+ * <p>
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * <p>
+ * http://www.apache.org/licenses/LICENSE-2.0
+ * <p>
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.whitesource.agent.utils;
+
+import com.google.gson.*;
+import org.whitesource.agent.api.dispatch.BaseRequest;
+import org.whitesource.agent.api.model.AgentProjectInfo;
+
+import java.lang.reflect.Type;
+import java.util.Collection;
+
+/**
+ * Shared, preconfigured {@link Gson} instances.
+ * <p>
+ * A Gson caches the adapters it creates for each type, so building one per call pays for the reflection over the
+ * model on every call. The instances here are immutable and thread safe, use them instead of {@code new Gson()}.
+ */
+public final class JsonCodecs {
+
+    /* --- Static members --- */
+
+    private static final String PROJECTS = "projects";
+    private static final String DEPENDENCIES = "dependencies";
+
+    private static final Gson COMPACT = ModelTypeAdapterFactory.newGsonBuilder().create();
+    private static final Gson PRETTY = ModelTypeAdapterFactory.newGsonBuilder().setPrettyPrinting().create();
+    // the model adapters ignore exclusion strategies, so these use the reflective adapters
+    private static final Gson HEADERS = new GsonBuilder().addSerializationExclusionStrategy(new NestedArraysStrategy()).create();
+    private static final Gson OMIT_EMPTIES = new GsonBuilder().setPrettyPrinting()
+            .addSerializationExclusionStrategy(new OmittedFieldsStrategy())
+            .registerTypeHierarchyAdapter(Collection.class, new CollectionAdapter()).create();
+
+    /* --- Constructors --- */
+
+    private JsonCodecs() {
+    }
+
+    /* --- Static methods --- */
+
+    /**
+     * @return Gson writing compact JSON, for requests and files read by the agents.
+     */
+    public static Gson compact() {
+        return COMPACT;
+    }
+
+    /**
+     * @param stringPool Pool to share the repeating strings read through, see {@link StringPool}. Null for none.
+     * @return Gson writing compact JSON and reading strings through the pool. Unless the pool is null this is a new
+     * instance, create it once per pool and reuse it.
+     */
+    public static Gson compact(StringPool stringPool) {
+        return stringPool == null ? COMPACT : ModelTypeAdapterFactory.newGsonBuilder(stringPool).create();
+    }
+
+    /**
+     * @return Gson writing indented JSON, for files read by people.
+     */
+    public static Gson pretty() {
+        return PRETTY;
+    }
+
+    /**
+     * @return Gson writing indented JSON without empty collections and without the 'optional', 'checksums' and
+     * 'deduped' fields, for smaller human readable inventories. Serialization only, the JSON doesn't read back
+     * into the same objects.
+     */
+    public static Gson omitEmpties() {
+        return OMIT_EMPTIES;
+    }
+
+    /**
+     * @return Gson writing requests without their projects and projects without their dependencies, for writers
+     * which stream those themselves.
+     */
+    static Gson headers() {
+        return HEADERS;
+    }
+
+    /* --- Nested classes --- */
+
+    private static class NestedArraysStrategy implements ExclusionStrategy {
+
+        @Override
+        public boolean shouldSkipField(FieldAttributes field) {
+            return (field.getDeclaringClass() == BaseRequest.class && PROJECTS.equals(field.getName()))
+                    || (field.getDeclaringClass() == AgentProjectInfo.class && DEPENDENCIES.equals(field.getName()));
+        }
+
+        @Override
+        public boolean shouldSkipClass(Class<?> clazz) {
+            return false;
+        }
+    }
+
+    // excluding attributes 'optional', 'checksums' & 'deduped' from the json
+    private static class OmittedFieldsStrategy implements ExclusionStrategy {
+
+        @Override
+        public boolean shouldSkipField(FieldAttributes fieldAttributes) {
+            String name = fieldAttributes.getName();
+            return name.equals("optional") || name.equals("checksums") || name.equals("deduped");
+        }
+
+        @Override
+        public boolean shouldSkipClass(Class<?> aClass) {
+            return false;
+        }
+    }
+
+    // excluding empty collections from the json
+    private static class CollectionAdapter implements JsonSerializer<Collection<?>> {
+
+        @Override
+        public JsonElement serialize(Collection<?> src, Type typeOfSrc, JsonSerializationContext context) {
+            if (src == null || src.isEmpty()) {
+                return null;
+            }
+            JsonArray array = new JsonArray();
+            for (Object child : src) {
+                array.add(context.serialize(child));
+            }
+            return array;
+        }
+    }
+}
@@ -1,8 +1,8 @@
 package org.whitesource.agent.utils;
 
 import com.google.gson.Gson;
-import com.google.gson.GsonBuilder;
 import com.google.gson.stream.JsonReader;
+import com.google.gson.stream.JsonToken;
 import com.google.gson.stream.JsonWriter;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
@@ -13,6 +13,11 @@ import org.whitesource.agent.api.model.DependencyInfo;
 import java.io.*;
 import java.util.ArrayList;
 import java.util.List;
+import java.util.NoSuchElementException;
+import java.util.Spliterator;
+import java.util.Spliterators;
+import java.util.stream.Stream;
+import java.util.stream.StreamSupport;
 
 /**
  * Utility class for various json operations.
@@ -27,6 +32,11 @@ public class JsonUtils {
 
     private static final Logger logger = LoggerFactory.getLogger(JsonUtils.class);
 
+    private static final String PROJECTS = "projects";
+
+    private static final Gson gson = JsonCodecs.compact();
+    private static final Gson prettyGson = JsonCodecs.pretty();
+
     /* --- Static methods --- */
 
     public static List<DependencyInfo> readDependencies(InputStream in) throws IOException {
@@ -55,14 +65,12 @@ public class JsonUtils {
         try (InputStreamReader inputStreamReader = new InputStreamReader(in, UTF_8);
              BufferedReader br = new BufferedReader(inputStreamReader);
              JsonReader reader = new JsonReader(br)) {
-            Gson gson = new Gson();
             UpdateInventoryRequest message = gson.fromJson(reader, UpdateInventoryRequest.class);
             return message;
         }
     }
 
     public static void writeUpdateInventoryRequest(OutputStream out, UpdateInventoryRequest message) throws IOException {
-        Gson gson = new Gson();
         try (OutputStreamWriter outputStreamWriter = new OutputStreamWriter(out, UTF_8);
              BufferedWriter bw = new BufferedWriter(outputStreamWriter);
              JsonWriter writer = new JsonWriter(bw);) {
@@ -77,7 +85,6 @@ public class JsonUtils {
     }
 
     public static void writeProjects(OutputStream out, List<AgentProjectInfo> projects) throws IOException {
-        Gson gson = new Gson();
         try (OutputStreamWriter outputStreamWriter = new OutputStreamWriter(out, UTF_8);
              BufferedWriter bw = new BufferedWriter(outputStreamWriter);
              JsonWriter writer = new JsonWriter(bw)) {
@@ -93,19 +100,14 @@ public class JsonUtils {
     }
 
     public static<T> String save(T object, boolean pretty){
-        Gson gson;
-        if(pretty) {
-            gson = (new GsonBuilder()).setPrettyPrinting().create();
-        }
-        else{
-            gson = (new GsonBuilder()).create();
+        if (pretty) {
+            return prettyGson.toJson(object);
         }
         return gson.toJson(object);
     }
 
     public static <T> T load(final InputStream inputStream, final Class<T> clazz) throws IOException {
         if (inputStream != null) {
-            final Gson gson = new Gson();
             try (InputStreamReader inputStreamReader = new InputStreamReader(inputStream, UTF_8);
                  BufferedReader br = new BufferedReader(inputStreamReader);
                  JsonReader reader = new JsonReader(br)) {
@@ -129,10 +131,146 @@ public class JsonUtils {
         return null;
     }
 
+    /**
+     * Reads the projects one at a time, so only the project being processed is held in memory.
+     * <p>
+     * The stream may hold either a JSON array of projects, or an update inventory request (such as an offline
+     * request file that is not zipped) whose projects are read. Zipped offline request files can be read through a
+     * {@link Base64GunzipInputStream}.
+     *
+     * @param in Stream to read, closed when the iterator is closed.
+     * @return Iterator over the projects, to be closed by the caller.
+     * @throws IOException In case of errors reading the start of the stream.
+     */
+    public static CloseableIterator<AgentProjectInfo> iterateProjects(InputStream in) throws IOException {
+        return iterateProjects(in, null);
+    }
+
+    /**
+     * Reads the projects one at a time, see {@link #iterateProjects(InputStream)}, sharing the repeating strings
+     * of all the projects read through the pool.
+     *
+     * @param in         Stream to read, closed when the iterator is closed.
+     * @param stringPool Pool to share the strings through, see {@link StringPool}. Null for none.
+     * @return Iterator over the projects, to be closed by the caller.
+     * @throws IOException In case of errors reading the start of the stream.
+     */
+    public static CloseableIterator<AgentProjectInfo> iterateProjects(InputStream in, StringPool stringPool) throws IOException {
+        JsonReader reader = newReader(in);
+        try {
+            boolean found = true;
+            if (reader.peek() == JsonToken.BEGIN_OBJECT) {
+                found = false;
+                reader.beginObject();
+                while (!found && reader.hasNext()) {
+                    if (PROJECTS.equals(reader.nextName())) {
+                        found = true;
+                    } else {
+                        reader.skipValue();
+                    }
+                }
+            }
+            return new JsonArrayIterator<>(reader, JsonCodecs.compact(stringPool), AgentProjectInfo.class, found);
+        } catch (IOException | RuntimeException e) {
+            reader.close();
+            throw e;
+        }
+    }
+
+    /**
+     * Reads the projects one at a time, see {@link #iterateProjects(InputStream)}.
+     *
+     * @param in Stream to read, closed when the returned stream is closed.
+     * @return Sequential stream of the projects, to be closed by the caller.
+     * @throws IOException In case of errors reading the start of the stream.
+     */
+    public static Stream<AgentProjectInfo> streamProjects(InputStream in) throws IOException {
+        return stream(iterateProjects(in));
+    }
+
+    /**
+     * Reads the projects one at a time, see {@link #iterateProjects(InputStream, StringPool)}.
+     *
+     * @param in         Stream to read, closed when the returned stream is closed.
+     * @param stringPool Pool to share the strings through, see {@link StringPool}. Null for none.
+     * @return Sequential stream of the projects, to be closed by the caller.
+     * @throws IOException In case of errors reading the start of the stream.
+     */
+    public static Stream<AgentProjectInfo> streamProjects(InputStream in, StringPool stringPool) throws IOException {
+        return stream(iterateProjects(in, stringPool));
+    }
+
+    /**
+     * Reads a JSON array of dependencies one at a time, so only the dependency being processed is held in memory.
+     *
+     * @param in Stream to read, closed when the iterator is closed.
+     * @return Iterator over the dependencies, to be closed by the caller.
+     * @throws IOException In case of errors reading the start of the stream.
+     */
+    public static CloseableIterator<DependencyInfo> iterateDependencies(InputStream in) throws IOException {
+        return iterateDependencies(in, null);
+    }
+
+    /**
+     * Reads a JSON array of dependencies one at a time, see {@link #iterateDependencies(InputStream)}, sharing the
+     * repeating strings of all the dependencies read through the pool.
+     *
+     * @param in         Stream to read, closed when the iterator is closed.
+     * @param stringPool Pool to share the strings through, see {@link StringPool}. Null for none.
+     * @return Iterator over the dependencies, to be closed by the caller.
+     * @throws IOException In case of errors reading the start of the stream.
+     */
+    public static CloseableIterator<DependencyInfo> iterateDependencies(InputStream in, StringPool stringPool) throws IOException {
+        JsonReader reader = newReader(in);
+        try {
+            return new JsonArrayIterator<>(reader, JsonCodecs.compact(stringPool), DependencyInfo.class, true);
+        } catch (IOException | RuntimeException e) {
+            reader.close();
+            throw e;
+        }
+    }
+
+    /**
+     * Reads a JSON array of dependencies one at a time, see {@link #iterateDependencies(InputStream)}.
+     *
+     * @param in Stream to read, closed when the returned stream is closed.
+     * @return Sequential stream of the dependencies, to be closed by the caller.
+     * @throws IOException In case of errors reading the start of the stream.
+     */
+    public static Stream<DependencyInfo> streamDependencies(InputStream in) throws IOException {
+        return stream(iterateDependencies(in));
+    }
+
+    /**
+     * Reads a JSON array of dependencies one at a time, see {@link #iterateDependencies(InputStream, StringPool)}.
+     *
+     * @param in         Stream to read, closed when the returned stream is closed.
+     * @param stringPool Pool to share the strings through, see {@link StringPool}. Null for none.
+     * @return Sequential stream of the dependencies, to be closed by the caller.
+     * @throws IOException In case of errors reading the start of the stream.
+     */
+    public static Stream<DependencyInfo> streamDependencies(InputStream in, StringPool stringPool) throws IOException {
+        return stream(iterateDependencies(in, stringPool));
+    }
+
     /* --- Private methods --- */
 
+    private static JsonReader newReader(InputStream in) throws IOException {
+        return new JsonReader(new BufferedReader(new InputStreamReader(in, UTF_8)));
+    }
+
+    private static <T> Stream<T> stream(CloseableIterator<T> iterator) {
+        Spliterator<T> spliterator = Spliterators.spliteratorUnknownSize(iterator, Spliterator.ORDERED | Spliterator.NONNULL);
+        return StreamSupport.stream(spliterator, false).onClose(() -> {
+            try {
+                iterator.close();
+            } catch (IOException e) {
+                throw new UncheckedIOException(e);
+            }
+        });
+    }
+
     private static List<DependencyInfo> getDependencies(JsonReader reader) throws IOException {
-        Gson gson = new Gson();
         List<DependencyInfo> dependencies = new ArrayList<>();
         reader.beginArray();
         while (reader.hasNext()) {
@@ -144,7 +282,6 @@ public class JsonUtils {
     }
 
     private static List<AgentProjectInfo> getProjectsFromReader(JsonReader reader) throws IOException {
-        Gson gson = new Gson();
         List<AgentProjectInfo> projects = new ArrayList<>();
         reader.beginArray();
         while (reader.hasNext()) {
@@ -154,4 +291,69 @@ public class JsonUtils {
         reader.endArray();
         return projects;
     }
-}
\ No newline at end of file
+
+    /* --- Nested classes --- */
+
+    /**
+     * Reads the elements of a JSON array as they are requested.
+     */
+    private static class JsonArrayIterator<T> implements CloseableIterator<T> {
+
+        private final JsonReader reader;
+        private final Gson gson;
+        private final Class<T> type;
+        private boolean done;
+        private boolean closed;
+
+        /**
+         * @param found Whether the reader is at the array, otherwise the iteration is empty.
+         */
+        JsonArrayIterator(JsonReader reader, Gson gson, Class<T> type, boolean found) throws IOException {
+            this.reader = reader;
+            this.gson = gson;
+            this.type = type;
+            if (!found) {
+                done = true;
+            } else if (reader.peek() == JsonToken.NULL) {
+                reader.nextNull();
+                done = true;
+            } else {
+                reader.beginArray();
+            }
+        }
+
+        @Override
+        public boolean hasNext() {
+            if (done) {
+                return false;
+            }
+            try {
+                if (reader.hasNext()) {
+                    return true;
+                }
+                reader.endArray();
+                done = true;
+                return false;
+            } catch (IOException e) {
+                throw new UncheckedIOException(e);
+            }
+        }
+
+        @Override
+        public T next() {
+            if (!hasNext()) {
+                throw new NoSuchElementException();
+            }
+            return gson.fromJson(reader, type);
+        }
+
+        @Override
+        public void close() throws IOException {
+            if (!closed) {
+                closed = true;
+                done = true;
+                reader.close();
+            }
+        }
+    }
+}
@@ -0,0 +1,816 @@
+/**
+ * Copyright (C) 2014 WhiteSource Ltd.
+ * <p>
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * <p>
+ * http://www.apache.org/licenses/LICENSE-2.0
+ * <p>
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.whitesource.agent.utils;
+
+import com.google.gson.Gson;
+import com.google.gson.GsonBuilder;
+import com.google.gson.TypeAdapter;
+import com.google.gson.TypeAdapterFactory;
+import com.google.gson.reflect.TypeToken;
+import com.google.gson.stream.JsonReader;
+import com.google.gson.stream.JsonToken;
+import com.google.gson.stream.JsonWriter;
+import org.whitesource.agent.api.model.*;
+import org.whitesource.agent.via.api.VulnerabilityAnalysisResult;
+
+import java.io.IOException;
+import java.lang.invoke.MethodHandle;
+import java.lang.invoke.MethodHandles;
+import java.lang.reflect.Field;
+import java.util.*;
+
+/**
+ * Hand written {@link TypeAdapter}s for the model classes which appear in large numbers in inventories and
+ * dependency data: {@link DependencyInfo}, {@link AgentProjectInfo}, {@link Coordinates}, {@link ResourceInfo} and
+ * {@link VulnerabilityInfo}.
+ * <p>
+ * The adapters produce exactly the JSON of Gson's reflective adapters (same field order, nulls omitted unless the
+ * Gson serializes nulls) and read it back into the same object state, without reflective field access or boxing.
+ * Less common nested types, such as hints or the vulnerability analysis result, are delegated to the Gson the
+ * factory is registered with.
+ * <p>
+ * The adapters ignore field naming policies, exclusion strategies and versioning; don't register the factory with
+ * a Gson configured with any of these.
+ * <p>
+ * Gsons built {@link #newGsonBuilder(StringPool) with a string pool} share the repeating values they read: the
+ * low cardinality fields of the model, such as group ids, versions and scopes, and all the strings read by other
+ * adapters, such as license and policy names.
+ */
+public final class ModelTypeAdapterFactory implements TypeAdapterFactory {
+
+    /* --- Static members --- */
+
+    private static final ModelTypeAdapterFactory INSTANCE = new ModelTypeAdapterFactory(null);
+
+    private static final TypeToken<Collection<DependencyInfo>> DEPENDENCIES_TYPE = new TypeToken<Collection<DependencyInfo>>() {};
+    private static final TypeToken<Map<ChecksumType, String>> CHECKSUMS_TYPE = new TypeToken<Map<ChecksumType, String>>() {};
+    private static final TypeToken<Collection<String>> STRINGS_TYPE = new TypeToken<Collection<String>>() {};
+    private static final TypeToken<Collection<VulnerabilityInfo>> VULNERABILITIES_TYPE = new TypeToken<Collection<VulnerabilityInfo>>() {};
+    private static final TypeToken<Collection<VulnerableEntity>> VULNERABLE_ENTITIES_TYPE = new TypeToken<Collection<VulnerableEntity>>() {};
+    private static final TypeToken<Collection<SecretFinding>> SECRET_FINDINGS_TYPE = new TypeToken<Collection<SecretFinding>>() {};
+    private static final TypeToken<Collection<ProjectTag>> PROJECT_TAGS_TYPE = new TypeToken<Collection<ProjectTag>>() {};
+
+    // the few fields without plain accessors are accessed through handles resolved once:
+    // the getters of these create them on demand, which would change both the object and its JSON
+    private static final MethodHandle CHILDREN = handle(DependencyInfo.class, "children", false);
+    private static final MethodHandle CHECKSUMS = handle(DependencyInfo.class, "checksums", false);
+    // the setters of these add checksums, which the reflective adapter doesn't
+    private static final MethodHandle SHA1 = handle(DependencyInfo.class, "sha1", true);
+    private static final MethodHandle FULL_HASH = handle(DependencyInfo.class, "fullHash", true);
+    private static final MethodHandle COMMENTLESS_SHA1 = handle(DependencyInfo.class, "commentlessSha1", true);
+    private static final MethodHandle OTHER_PLATFORM_SHA1 = handle(DependencyInfo.class, "otherPlatformSha1", true);
+    private static final MethodHandle ADDITIONAL_SHA1 = handle(DependencyInfo.class, "additionalSha1", true);
+    // the setters of these take a list or a set, while the reflective adapter reads any collection as a list
+    private static final MethodHandle DEPENDENCIES = handle(AgentProjectInfo.class, "dependencies", true);
+    private static final MethodHandle PROJECT_TAGS = handle(AgentProjectInfo.class, "projectTags", true);
+
+    /* --- Members --- */
+
+    private final StringPool stringPool;
+
+    /* --- Constructors --- */
+
+    private ModelTypeAdapterFactory(StringPool stringPool) {
+        this.stringPool = stringPool;
+    }
+
+    /* --- Static methods --- */
+
+    /**
+     * @return The shared factory instance.
+     */
+    public static ModelTypeAdapterFactory getInstance() {
+        return INSTANCE;
+    }
+
+    /**
+     * @return A builder with the factory registered, to create Gson instances for the agent model.
+     */
+    public static GsonBuilder newGsonBuilder() {
+        return new GsonBuilder().registerTypeAdapterFactory(INSTANCE);
+    }
+
+    /**
+     * @param stringPool Pool to share the strings read through. Null for none.
+     * @return A builder with a factory reading through the pool registered, as well as an adapter reading all
+     * other strings through the pool.
+     */
+    public static GsonBuilder newGsonBuilder(StringPool stringPool) {
+        if (stringPool == null) {
+            return newGsonBuilder();
+        }
+        return new GsonBuilder()
+                .registerTypeAdapter(String.class, new PooledStringAdapter(stringPool))
+                .registerTypeAdapterFactory(new ModelTypeAdapterFactory(stringPool));
+    }
+
+    /* --- Overridden methods --- */
+
+    @Override
+    @SuppressWarnings("unchecked")
+    public <T> TypeAdapter<T> create(Gson gson, TypeToken<T> type) {
+        // exact classes only, subclasses are left to the reflective adapters so their own fields are written
+        Class<? super T> rawType = type.getRawType();
+        if (rawType == DependencyInfo.class) {
+            return (TypeAdapter<T>) new DependencyInfoAdapter(gson, stringPool);
+        } else if (rawType == AgentProjectInfo.class) {
+            return (TypeAdapter<T>) new AgentProjectInfoAdapter(gson, stringPool);
+        } else if (rawType == Coordinates.class) {
+            return (TypeAdapter<T>) new CoordinatesAdapter(gson, stringPool);
+        } else if (rawType == ResourceInfo.class) {
+            return (TypeAdapter<T>) new ResourceInfoAdapter(gson, stringPool);
+        } else if (rawType == VulnerabilityInfo.class) {
+            return (TypeAdapter<T>) new VulnerabilityInfoAdapter(gson, stringPool);
+        }
+        return null;
+    }
+
+    /* --- Private methods --- */
+
+    private static MethodHandle handle(Class<?> clazz, String name, boolean setter) {
+        try {
+            Field field = clazz.getDeclaredField(name);
+            field.setAccessible(true);
+            return setter ? MethodHandles.lookup().unreflectSetter(field) : MethodHandles.lookup().unreflectGetter(field);
+        } catch (NoSuchFieldException | IllegalAccessException e) {
+            throw new ExceptionInInitializerError(e);
+        }
+    }
+
+    /**
+     * @return The children of the dependency, null if there are none, unlike its getter which creates them.
+     */
+    @SuppressWarnings("unchecked")
+    static Collection<DependencyInfo> children(DependencyInfo dependency) {
+        try {
+            return (Collection<DependencyInfo>) CHILDREN.invokeExact(dependency);
+        } catch (RuntimeException | Error e) {
+            throw e;
+        } catch (Throwable e) {
+            throw new IllegalStateException(e);
+        }
+    }
+
+    /**
+     * @return The checksums of the dependency, null if there are none, unlike its getter which creates them.
+     */
+    @SuppressWarnings("unchecked")
+    static Map<ChecksumType, String> checksums(DependencyInfo dependency) {
+        try {
+            return (Map<ChecksumType, String>) CHECKSUMS.invokeExact(dependency);
+        } catch (RuntimeException | Error e) {
+            throw e;
+        } catch (Throwable e) {
+            throw new IllegalStateException(e);
+        }
+    }
+
+    private static void set(MethodHandle setter, DependencyInfo dependency, String value) {
+        try {
+            setter.invokeExact(dependency, value);
+        } catch (RuntimeException | Error e) {
+            throw e;
+        } catch (Throwable e) {
+            throw new IllegalStateException(e);
+        }
+    }
+
+    private static void set(MethodHandle setter, AgentProjectInfo project, Collection<?> value) {
+        try {
+            setter.invokeExact(project, value);
+        } catch (RuntimeException | Error e) {
+            throw e;
+        } catch (Throwable e) {
+            throw new IllegalStateException(e);
+        }
+    }
+
+    /* --- Nested classes --- */
+
+    /**
+     * Base class of the adapters, with helpers which follow the conversions of Gson's built in adapters.
+     */
+    private abstract static class ModelAdapter<T> extends TypeAdapter<T> {
+
+        final Gson gson;
+        final StringPool stringPool;
+
+        ModelAdapter(Gson gson, StringPool stringPool) {
+            this.gson = gson;
+            this.stringPool = stringPool;
+        }
+
+        @Override
+        public final void write(JsonWriter out, T value) throws IOException {
+            if (value == null) {
+                out.nullValue();
+                return;
+            }
+            out.beginObject();
+            writeFields(out, value);
+            out.endObject();
+        }
+
+        @Override
+        public final T read(JsonReader in) throws IOException {
+            if (in.peek() == JsonToken.NULL) {
+                in.nextNull();
+                return null;
+            }
+            T value = newInstance();
+            in.beginObject();
+            while (in.hasNext()) {
+                if (!readField(in, in.nextName(), value)) {
+                    in.skipValue();
+                }
+            }
+            in.endObject();
+            return value;
+        }
+
+        abstract T newInstance();
+
+        abstract void writeFields(JsonWriter out, T value) throws IOException;
+
+        /**
+         * @return False if the field is unknown and its value was not consumed.
+         */
+        abstract boolean readField(JsonReader in, String name, T value) throws IOException;
+
+        /**
+         * Writes a value of a delegated type the way a reflective adapter would, using the runtime type.
+         */
+        @SuppressWarnings("unchecked")
+        <V> void writeValue(JsonWriter out, V value, Class<V> declaredClass, TypeAdapter<V> declaredAdapter) throws IOException {
+            if (value == null) {
+                out.nullValue();
+            } else if (value.getClass() == declaredClass) {
+                declaredAdapter.write(out, value);
+            } else {
+                ((TypeAdapter<V>) gson.getAdapter(value.getClass())).write(out, value);
+            }
+        }
+
+        /**
+         * Writes a collection of a delegated type, whose runtime type never matches the declared interface.
+         */
+        @SuppressWarnings("unchecked")
+        void writeValue(JsonWriter out, Collection<?> value) throws IOException {
+            if (value == null) {
+                out.nullValue();
+            } else {
+                ((TypeAdapter<Collection<?>>) gson.getAdapter(value.getClass())).write(out, value);
+            }
+        }
+
+        void writeStrings(JsonWriter out, Collection<String> values) throws IOException {
+            if (values == null) {
+                out.nullValue();
+                return;
+            }
+            out.beginArray();
+            for (String value : values) {
+                out.value(value);
+            }
+            out.endArray();
+        }
+
+        /**
+         * Reads a string of a low cardinality field, through the pool if there is one.
+         */
+        String readPooledString(JsonReader in) throws IOException {
+            String value = readString(in);
+            return stringPool == null ? value : stringPool.intern(value);
+        }
+
+        static String readString(JsonReader in) throws IOException {
+            JsonToken token = in.peek();
+            if (token == JsonToken.NULL) {
+                in.nextNull();
+                return null;
+            } else if (token == JsonToken.BOOLEAN) {
+                return Boolean.toString(in.nextBoolean());
+            }
+            return in.nextString();
+        }
+
+        static boolean readBoolean(JsonReader in, boolean defaultValue) throws IOException {
+            JsonToken token = in.peek();
+            if (token == JsonToken.NULL) {
+                in.nextNull();
+                return defaultValue;
+            } else if (token == JsonToken.STRING) {
+                return Boolean.parseBoolean(in.nextString());
+            }
+            return in.nextBoolean();
+        }
+    }
+
+    /**
+     * Reads all the strings the other adapters read through the pool, and writes them like the default adapter.
+     */
+    private static final class PooledStringAdapter extends TypeAdapter<String> {
+
+        private final StringPool stringPool;
+
+        PooledStringAdapter(StringPool stringPool) {
+            this.stringPool = stringPool;
+        }
+
+        @Override
+        public void write(JsonWriter out, String value) throws IOException {
+            out.value(value);
+        }
+
+        @Override
+        public String read(JsonReader in) throws IOException {
+            return stringPool.intern(ModelAdapter.readString(in));
+        }
+    }
+
+    private static final class DependencyInfoAdapter extends ModelAdapter<DependencyInfo> {
+
+        private final TypeAdapter<Collection<DependencyInfo>> childrenAdapter;
+        private final TypeAdapter<Date> dateAdapter;
+        private final TypeAdapter<DependencyType> dependencyTypeAdapter;
+        private final TypeAdapter<DependencyHintsInfo> hintsAdapter;
+        private final TypeAdapter<Map<ChecksumType, String>> checksumsAdapter;
+        private final TypeAdapter<VulnerabilityAnalysisResult> analysisResultAdapter;
+        private final TypeAdapter<OSInfo> osInfoAdapter;
+        private final TypeAdapter<AnalysisInputs> analysisInputsAdapter;
+
+        DependencyInfoAdapter(Gson gson, StringPool stringPool) {
+            super(gson, stringPool);
+            childrenAdapter = gson.getAdapter(DEPENDENCIES_TYPE);
+            dateAdapter = gson.getAdapter(Date.class);
+            dependencyTypeAdapter = gson.getAdapter(DependencyType.class);
+            hintsAdapter = gson.getAdapter(DependencyHintsInfo.class);
+            checksumsAdapter = gson.getAdapter(CHECKSUMS_TYPE);
+            analysisResultAdapter = gson.getAdapter(VulnerabilityAnalysisResult.class);
+            osInfoAdapter = gson.getAdapter(OSInfo.class);
+            analysisInputsAdapter = gson.getAdapter(AnalysisInputs.class);
+        }
+
+        @Override
+        DependencyInfo newInstance() {
+            return new DependencyInfo();
+        }
+
+        @Override
+        void writeFields(JsonWriter out, DependencyInfo value) throws IOException {
+            out.name("groupId").value(value.getGroupId());
+            out.name("artifactId").value(value.getArtifactId());
+            out.name("version").value(value.getVersion());
+            out.name("type").value(value.getType());
+            out.name("classifier").value(value.getClassifier());
+            out.name("scope").value(value.getScope());
+            out.name("sha1").value(value.getSha1());
+            out.name("fullHash").value(value.getFullHash());
+            out.name("commentlessSha1").value(value.getCommentlessSha1());
+            out.name("noNewLinesSha1").value(value.getNoNewLinesSha1());
+            out.name("otherPlatformSha1").value(value.getOtherPlatformSha1());
+            out.name("systemPath").value(value.getSystemPath());
+            out.name("isModule").value(value.getIsModule());
+            out.name("optional").value(value.getOptional());
+            out.name("children");
+            writeChildren(out, children(value));
+            out.name("lastModified");
+            writeValue(out, value.getLastModified(), Date.class, dateAdapter);
+            out.name("filename").value(value.getFilename());
+            out.name("dependencyType");
+            writeValue(out, value.getDependencyType(), DependencyType.class, dependencyTypeAdapter);
+            out.name("hints");
+            writeValue(out, value.getHints(), DependencyHintsInfo.class, hintsAdapter);
+            out.name("checksums");
+            writeChecksums(out, checksums(value));
+            out.name("vulnerabilityAnalysisResult");
+            writeValue(out, value.getVulnerabilityAnalysisResult(), VulnerabilityAnalysisResult.class, analysisResultAdapter);
+            out.name("commit").value(value.getCommit());
+            out.name("dependencyFile").value(value.getDependencyFile());
+            out.name("additionalSha1").value(value.getAdditionalSha1());
+            out.name("architecture").value(value.getArchitecture());
+            out.name("languageVersion").value(value.getLanguageVersion());
+            out.name("deduped").value(value.isDeduped());
+            out.name("osInfo");
+            writeValue(out, value.getOsInfo(), OSInfo.class, osInfoAdapter);
+            out.name("analysisInputs");
+            writeValue(out, value.getAnalysisInputs(), AnalysisInputs.class, analysisInputsAdapter);
+            out.name("sourcePackageName").value(value.getSourcePackageName());
+            out.name("release").value(value.getRelease());
+            out.name("purl").value(value.getPurl());
+        }
+
+        @Override
+        boolean readField(JsonReader in, String name, DependencyInfo value) throws IOException {
+            switch (name) {
+                case "groupId":
+                    value.setGroupId(readPooledString(in));
+                    break;
+                case "artifactId":
+                    value.setArtifactId(readPooledString(in));
+                    break;
+                case "version":
+                    value.setVersion(readPooledString(in));
+                    break;
+                case "type":
+                    value.setType(readPooledString(in));
+                    break;
+                case "classifier":
+                    value.setClassifier(readPooledString(in));
+                    break;
+                case "scope":
+                    value.setScope(readPooledString(in));
+                    break;
+                case "sha1":
+                    set(SHA1, value, readString(in));
+                    break;
+                case "fullHash":
+                    set(FULL_HASH, value, readString(in));
+                    break;
+                case "commentlessSha1":
+                    set(COMMENTLESS_SHA1, value, readString(in));
+                    break;
+                case "noNewLinesSha1":
+                    value.setNoNewLinesSha1(readString(in));
+                    break;
+                case "otherPlatformSha1":
+                    set(OTHER_PLATFORM_SHA1, value, readString(in));
+                    break;
+                case "systemPath":
+                    value.setSystemPath(readString(in));
+                    break;
+                case "isModule":
+                    value.setIsModule(readBoolean(in, value.getIsModule()));
+                    break;
+                case "optional":
+                    value.setOptional(readBoolean(in, value.getOptional()));
+                    break;
+                case "children":
+                    value.setChildren(childrenAdapter.read(in));
+                    break;
+                case "lastModified":
+                    value.setLastModified(dateAdapter.read(in));
+                    break;
+                case "filename":
+                    value.setFilename(readString(in));
+                    break;
+                case "dependencyType":
+                    value.setDependencyType(dependencyTypeAdapter.read(in));
+                    break;
+                case "hints":
+                    value.setHints(hintsAdapter.read(in));
+                    break;
+                case "checksums":
+                    value.setChecksums(checksumsAdapter.read(in));
+                    break;
+                case "vulnerabilityAnalysisResult":
+                    value.setVulnerabilityAnalysisResult(analysisResultAdapter.read(in));
+                    break;
+                case "commit":
+                    value.setCommit(readString(in));
+                    break;
+                case "dependencyFile":
+                    value.setDependencyFile(readString(in));
+                    break;
+                case "additionalSha1":
+                    set(ADDITIONAL_SHA1, value, readString(in));
+                    break;
+                case "architecture":
+                    value.setArchitecture(readPooledString(in));
+                    break;
+                case "languageVersion":
+                    value.setLanguageVersion(readPooledString(in));
+                    break;
+                case "deduped":
+                    value.setDeduped(readBoolean(in, value.isDeduped()));
+                    break;
+                case "osInfo":
+                    value.setOsInfo(osInfoAdapter.read(in));
+                    break;
+                case "analysisInputs":
+                    value.setAnalysisInputs(analysisInputsAdapter.read(in));
+                    break;
+                case "sourcePackageName":
+                    value.setSourcePackageName(readString(in));
+                    break;
+                case "release":
+                    value.setRelease(readPooledString(in));
+                    break;
+                case "purl":
+                    value.setPurl(readString(in));
+                    break;
+                default:
+                    return false;
+            }
+            return true;
+        }
+
+        private void writeChildren(JsonWriter out, Collection<DependencyInfo> children) throws IOException {
+            if (children == null) {
+                out.nullValue();
+                return;
+            }
+            out.beginArray();
+            for (DependencyInfo child : children) {
+                writeValue(out, child, DependencyInfo.class, this);
+            }
+            out.endArray();
+        }
+
+        private void writeChecksums(JsonWriter out, Map<ChecksumType, String> checksums) throws IOException {
+            if (checksums == null) {
+                out.nullValue();
+                return;
+            }
+            out.beginObject();
+            for (Map.Entry<ChecksumType, String> entry : checksums.entrySet()) {
+                out.name(String.valueOf(entry.getKey())).value(entry.getValue());
+            }
+            out.endObject();
+        }
+    }
+
+    private static final class AgentProjectInfoAdapter extends ModelAdapter<AgentProjectInfo> {
+
+        private final TypeAdapter<Coordinates> coordinatesAdapter;
+        private final TypeAdapter<DependencyInfo> dependencyAdapter;
+        private final TypeAdapter<Collection<DependencyInfo>> dependenciesAdapter;
+        private final TypeAdapter<Collection<SecretFinding>> secretFindingsAdapter;
+        private final TypeAdapter<ProjectSetupStatus> setupStatusAdapter;
+        private final TypeAdapter<Collection<ProjectTag>> projectTagsAdapter;
+
+        AgentProjectInfoAdapter(Gson gson, StringPool stringPool) {
+            super(gson, stringPool);
+            coordinatesAdapter = gson.getAdapter(Coordinates.class);
+            dependencyAdapter = gson.getAdapter(DependencyInfo.class);
+            dependenciesAdapter = gson.getAdapter(DEPENDENCIES_TYPE);
+            secretFindingsAdapter = gson.getAdapter(SECRET_FINDINGS_TYPE);
+            setupStatusAdapter = gson.getAdapter(ProjectSetupStatus.class);
+            projectTagsAdapter = gson.getAdapter(PROJECT_TAGS_TYPE);
+        }
+
+        @Override
+        AgentProjectInfo newInstance() {
+            return new AgentProjectInfo();
+        }
+
+        @Override
+        void writeFields(JsonWriter out, AgentProjectInfo value) throws IOException {
+            out.name("coordinates");
+            writeValue(out, value.getCoordinates(), Coordinates.class, coordinatesAdapter);
+            out.name("parentCoordinates");
+            writeValue(out, value.getParentCoordinates(), Coordinates.class, coordinatesAdapter);
+            out.name("dependencies");
+            Collection<DependencyInfo> dependencies = value.getDependencies();
+            if (dependencies == null) {
+                out.nullValue();
+            } else {
+                out.beginArray();
+                for (DependencyInfo dependency : dependencies) {
+                    writeValue(out, dependency, DependencyInfo.class, dependencyAdapter);
+                }
+                out.endArray();
+            }
+            out.name("secretFindings");
+            writeValue(out, value.getSecretFindings());
+            out.name("projectToken").value(value.getProjectToken());
+            out.name("projectSetupStatus");
+            writeValue(out, value.getProjectSetupStatus(), ProjectSetupStatus.class, setupStatusAdapter);
+            out.name("projectSetupDescription").value(value.getProjectSetupDescription());
+            out.name("projectTags");
+            writeValue(out, value.getProjectTags());
+            out.name("viaLanguageName").value(value.getViaLanguageName());
+        }
+
+        @Override
+        boolean readField(JsonReader in, String name, AgentProjectInfo value) throws IOException {
+            switch (name) {
+                case "coordinates":
+                    value.setCoordinates(coordinatesAdapter.read(in));
+                    break;
+                case "parentCoordinates":
+                    value.setParentCoordinates(coordinatesAdapter.read(in));
+                    break;
+                case "dependencies":
+                    set(DEPENDENCIES, value, dependenciesAdapter.read(in));
+                    break;
+                case "secretFindings":
+                    value.setSecretFindings(secretFindingsAdapter.read(in));
+                    break;
+                case "projectToken":
+                    value.setProjectToken(readString(in));
+                    break;
+                case "projectSetupStatus":
+                    value.setProjectSetupStatus(setupStatusAdapter.read(in));
+                    break;
+                case "projectSetupDescription":
+                    value.setProjectSetupDescription(readString(in));
+                    break;
+                case "projectTags":
+                    set(PROJECT_TAGS, value, projectTagsAdapter.read(in));
+                    break;
+                case "viaLanguageName":
+                    value.setViaLanguageName(readPooledString(in));
+                    break;
+                default:
+                    return false;
+            }
+            return true;
+        }
+    }
+
+    private static final class CoordinatesAdapter extends ModelAdapter<Coordinates> {
+
+        CoordinatesAdapter(Gson gson, StringPool stringPool) {
+            super(gson, stringPool);
+        }
+
+        @Override
+        Coordinates newInstance() {
+            return new Coordinates();
+        }
+
+        @Override
+        void writeFields(JsonWriter out, Coordinates value) throws IOException {
+            out.name("groupId").value(value.getGroupId());
+            out.name("artifactId").value(value.getArtifactId());
+            out.name("version").value(value.getVersion());
+        }
+
+        @Override
+        boolean readField(JsonReader in, String name, Coordinates value) throws IOException {
+            switch (name) {
+                case "groupId":
+                    value.setGroupId(readPooledString(in));
+                    break;
+                case "artifactId":
+                    value.setArtifactId(readPooledString(in));
+                    break;
+                case "version":
+                    value.setVersion(readPooledString(in));
+                    break;
+                default:
+                    return false;
+            }
+            return true;
+        }
+    }
+
+    private static final class ResourceInfoAdapter extends ModelAdapter<ResourceInfo> {
+
+        private final TypeAdapter<Collection<String>> stringsAdapter;
+        private final TypeAdapter<VulnerabilityInfo> vulnerabilityAdapter;
+        private final TypeAdapter<Collection<VulnerabilityInfo>> vulnerabilitiesAdapter;
+
+        ResourceInfoAdapter(Gson gson, StringPool stringPool) {
+            super(gson, stringPool);
+            stringsAdapter = gson.getAdapter(STRINGS_TYPE);
+            vulnerabilityAdapter = gson.getAdapter(VulnerabilityInfo.class);
+            vulnerabilitiesAdapter = gson.getAdapter(VULNERABILITIES_TYPE);
+        }
+
+        @Override
+        ResourceInfo newInstance() {
+            return new ResourceInfo();
+        }
+
+        @Override
+        void writeFields(JsonWriter out, ResourceInfo value) throws IOException {
+            out.name("displayName").value(value.getDisplayName());
+            out.name("link").value(value.getLink());
+            out.name("licenses");
+            writeStrings(out, value.getLicenses());
+            out.name("sha1").value(value.getSha1());
+            out.name("vulnerabilities");
+            Collection<VulnerabilityInfo> vulnerabilities = value.getVulnerabilities();
+            if (vulnerabilities == null) {
+                out.nullValue();
+            } else {
+                out.beginArray();
+                for (VulnerabilityInfo vulnerability : vulnerabilities) {
+                    writeValue(out, vulnerability, VulnerabilityInfo.class, vulnerabilityAdapter);
+                }
+                out.endArray();
+            }
+            out.name("ignoredVulnerabilities");
+            writeStrings(out, value.getIgnoredVulnerabilities());
+            out.name("homepageUrl").value(value.getHomepageUrl());
+            out.name("description").value(value.getDescription());
+            out.name("keyUuid").value(value.getKeyUuid());
+            out.name("systemPath").value(value.getSystemPath());
+            out.name("manifestFileSystemPath").value(value.getManifestFileSystemPath());
+        }
+
+        @Override
+        boolean readField(JsonReader in, String name, ResourceInfo value) throws IOException {
+            switch (name) {
+                case "displayName":
+                    value.setDisplayName(readString(in));
+                    break;
+                case "link":
+                    value.setLink(readString(in));
+                    break;
+                case "licenses":
+                    value.setLicenses(stringsAdapter.read(in));
+                    break;
+                case "sha1":
+                    value.setSha1(readString(in));
+                    break;
+                case "vulnerabilities":
+                    value.setVulnerabilities(vulnerabilitiesAdapter.read(in));
+                    break;
+                case "ignoredVulnerabilities":
+                    value.setIgnoredVulnerabilities(stringsAdapter.read(in));
+                    break;
+                case "homepageUrl":
+                    value.setHomepageUrl(readString(in));
+                    break;
+                case "description":
+                    value.setDescription(readString(in));
+                    break;
+                case "keyUuid":
+                    value.setKeyUuid(readString(in));
+                    break;
+                case "systemPath":
+                    value.setSystemPath(readString(in));
+                    break;
+                case "manifestFileSystemPath":
+                    value.setManifestFileSystemPath(readString(in));
+                    break;
+                default:
+                    return false;
+            }
+            return true;
+        }
+    }
+
+    private static final class VulnerabilityInfoAdapter extends ModelAdapter<VulnerabilityInfo> {
+
+        private final TypeAdapter<Collection<String>> stringsAdapter;
+        private final TypeAdapter<Collection<VulnerableEntity>> vulnerableEntitiesAdapter;
+
+        VulnerabilityInfoAdapter(Gson gson, StringPool stringPool) {
+            super(gson, stringPool);
+            stringsAdapter = gson.getAdapter(STRINGS_TYPE);
+            vulnerableEntitiesAdapter = gson.getAdapter(VULNERABLE_ENTITIES_TYPE);
+        }
+
+        @Override
+        VulnerabilityInfo newInstance() {
+            return new VulnerabilityInfo();
+        }
+
+        @Override
+        void writeFields(JsonWriter out, VulnerabilityInfo value) throws IOException {
+            out.name("name").value(value.getName());
+            out.name("severity").value(value.getSeverity());
+            // boxed like the reflective adapter does, so the number is formatted as a float
+            out.name("score").value(Float.valueOf(value.getScore()));
+            out.name("elements");
+            writeStrings(out, value.getElements());
+            out.name("vulnerableEntities");
+            writeValue(out, value.getVulnerableEntities());
+        }
+
+        @Override
+        boolean readField(JsonReader in, String name, VulnerabilityInfo value) throws IOException {
+            switch (name) {
+                case "name":
+                    value.setName(readPooledString(in));
+                    break;
+                case "severity":
+                    value.setSeverity(readPooledString(in));
+                    break;
+                case "score":
+                    if (in.peek() == JsonToken.NULL) {
+                        in.nextNull();
+                    } else {
+                        value.setScore((float) in.nextDouble());
+                    }
+                    break;
+                case "elements":
+                    value.setElements(stringsAdapter.read(in));
+                    break;
+                case "vulnerableEntities":
+                    value.setVulnerableEntities(vulnerableEntitiesAdapter.read(in));
+                    break;
+                default:
+                    return false;
+            }
+            return true;
+        }
+    }
+}
@@ -0,0 +1,300 @@
+/**
+ * Copyright (C) 2014 WhiteSource Ltd.
+ * <p>
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * <p>
+ * http://www.apache.org/licenses/LICENSE-2.0
+ * <p>
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.whitesource.agent.utils;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.io.OutputStream;
+import java.util.ArrayDeque;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.Future;
+import java.util.zip.CRC32;
+import java.util.zip.Deflater;
+
+/**
+ * Output stream which gzip compresses the bytes written to it on a pool of threads, in the manner of pigz.
+ * <p>
+ * The input is split into blocks which are deflated independently, each primed with the last 32K of the previous
+ * block as its dictionary so matches across blocks are not lost. Every block but the last ends with a sync flush,
+ * so the compressed blocks are byte aligned and their concatenation is one valid deflate stream. The CRC32 of the
+ * whole input is computed as the bytes are written. The result is a single gzip member which any gzip reader,
+ * including {@link java.util.zip.GZIPInputStream}, can read. It differs from the output of
+ * {@link java.util.zip.GZIPOutputStream} by the empty stored block ending each block, a few bytes per block.
+ * <p>
+ * Blocks are written to the underlying stream in order as their compression completes. At most
+ * {@code maxPendingBlocks} blocks are compressed or waiting to be written at any time, which bounds the memory used.
+ * The deflaters and buffers of the compression tasks are borrowed from the pool shared with
+ * {@link PooledGzipOutputStream}.
+ * This stream is not thread safe.
+ */
+public class ParallelGzipOutputStream extends OutputStream {
+
+    /* --- Static members --- */
+
+    public static final int DEFAULT_BLOCK_SIZE = 128 * 1024;
+
+    private static final int DICTIONARY_SIZE = 32 * 1024;
+    private static final int TRAILER_SIZE = 8;
+
+    /* --- Members --- */
+
+    private final OutputStream out;
+    private final ExecutorService executor;
+    private final int blockSize;
+    private final int level;
+    private final int maxPendingBlocks;
+    private final CRC32 crc = new CRC32();
+    private final ArrayDeque<Future<byte[]>> pending = new ArrayDeque<>();
+
+    private byte[] block;
+    private int blockLength;
+    private byte[] previousBlock;
+    private int previousBlockLength;
+    private long totalLength;
+    private boolean finished;
+    private boolean closed;
+
+    /* --- Constructors --- */
+
+    /**
+     * Constructor, compresses on the common fork join pool with the default compression level.
+     *
+     * @param out Stream to write the gzip data to.
+     * @throws IOException In case of errors writing the gzip header.
+     */
+    public ParallelGzipOutputStream(OutputStream out) throws IOException {
+        this(out, Deflater.DEFAULT_COMPRESSION);
+    }
+
+    /**
+     * Constructor, compresses on the common fork join pool.
+     *
+     * @param out   Stream to write the gzip data to.
+     * @param level Compression level, see {@link Deflater}.
+     * @throws IOException In case of errors writing the gzip header.
+     */
+    public ParallelGzipOutputStream(OutputStream out, int level) throws IOException {
+        this(out, ForkJoinPool.commonPool(), DEFAULT_BLOCK_SIZE, level, 2 * ForkJoinPool.getCommonPoolParallelism());
+    }
+
+    /**
+     * Constructor
+     *
+     * @param out              Stream to write the gzip data to.
+     * @param executor         Pool compressing the blocks.
+     * @param blockSize        Number of input bytes per block.
+     * @param level            Compression level, see {@link Deflater}.
+     * @param maxPendingBlocks Maximal number of blocks being compressed or waiting to be written.
+     * @throws IOException In case of errors writing the gzip header.
+     */
+    public ParallelGzipOutputStream(OutputStream out, ExecutorService executor, int blockSize, int level, int maxPendingBlocks)
+            throws IOException {
+        this.out = out;
+        this.executor = executor;
+        this.blockSize = Math.max(1, blockSize);
+        this.level = level;
+        this.maxPendingBlocks = Math.max(1, maxPendingBlocks);
+        this.block = new byte[this.blockSize];
+        PooledGzipOutputStream.writeHeader(out);
+    }
+
+    /* --- Overridden methods --- */
+
+    @Override
+    public void write(int b) throws IOException {
+        ensureOpen();
+        block[blockLength++] = (byte) b;
+        crc.update(b);
+        totalLength++;
+        if (blockLength == blockSize) {
+            submitBlock(false);
+        }
+    }
+
+    @Override
+    public void write(byte[] bytes, int offset, int length) throws IOException {
+        ensureOpen();
+        crc.update(bytes, offset, length);
+        totalLength += length;
+        while (length > 0) {
+            int count = Math.min(length, blockSize - blockLength);
+            System.arraycopy(bytes, offset, block, blockLength, count);
+            blockLength += count;
+            offset += count;
+            length -= count;
+            if (blockLength == blockSize) {
+                submitBlock(false);
+            }
+        }
+    }
+
+    /**
+     * Writes the blocks whose compression completed and flushes the underlying stream.
+     * Bytes of a block which is not full yet are not written.
+     */
+    @Override
+    public void flush() throws IOException {
+        writeCompletedBlocks(false);
+        out.flush();
+    }
+
+    @Override
+    public void close() throws IOException {
+        if (closed) {
+            return;
+        }
+        try {
+            finish();
+        } finally {
+            closed = true;
+            out.close();
+        }
+    }
+
+    /* --- Public methods --- */
+
+    /**
+     * Compresses the last block, writes all the blocks and the gzip trailer, without closing the underlying stream.
+     *
+     * @throws IOException In case of errors compressing or writing.
+     */
+    public void finish() throws IOException {
+        if (finished) {
+            return;
+        }
+        ensureOpen();
+        finished = true;
+        if (pending.isEmpty()) {
+            // nothing to overlap with, avoid the hand off
+            out.write(deflate(block, blockLength, previousBlock, previousBlockLength, level, true));
+        } else {
+            submitBlock(true);
+            writeCompletedBlocks(true);
+        }
+        block = null;
+        previousBlock = null;
+
+        byte[] trailer = new byte[TRAILER_SIZE];
+        writeInt((int) crc.getValue(), trailer, 0);
+        writeInt((int) totalLength, trailer, 4);
+        out.write(trailer);
+        out.flush();
+    }
+
+    /* --- Private methods --- */
+
+    private void submitBlock(boolean last) throws IOException {
+        byte[] data = block;
+        int length = blockLength;
+        byte[] dictionary = previousBlock;
+        int dictionaryLength = previousBlockLength;
+        try {
+            pending.add(executor.submit(() -> deflate(data, length, dictionary, dictionaryLength, level, last)));
+        } catch (RuntimeException e) {
+            cancelPending();
+            throw new IOException("Failed to submit a block for compression", e);
+        }
+        if (!last) {
+            previousBlock = data;
+            previousBlockLength = length;
+            block = new byte[blockSize];
+            blockLength = 0;
+        }
+        writeCompletedBlocks(false);
+        while (pending.size() > maxPendingBlocks) {
+            writeBlock(pending.poll());
+        }
+    }
+
+    /**
+     * @param all Whether to wait for all the pending blocks, or write only those already compressed.
+     */
+    private void writeCompletedBlocks(boolean all) throws IOException {
+        while (!pending.isEmpty() && (all || pending.peek().isDone())) {
+            writeBlock(pending.poll());
+        }
+    }
+
+    private void writeBlock(Future<byte[]> future) throws IOException {
+        try {
+            out.write(future.get());
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            cancelPending();
+            throw new InterruptedIOException("Interrupted while compressing");
+        } catch (ExecutionException e) {
+            cancelPending();
+            throw new IOException("Failed to compress a block", e.getCause());
+        }
+    }
+
+    private void cancelPending() {
+        for (Future<byte[]> future : pending) {
+            future.cancel(true);
+        }
+        pending.clear();
+    }
+
+    private void ensureOpen() throws IOException {
+        if (closed || finished) {
+            throw new IOException("Stream is " + (closed ? "closed" : "finished"));
+        }
+    }
+
+    /**
+     * Deflates a single block as a part of a raw deflate stream.
+     *
+     * @param dictionary Previous block, whose last 32K prime the compressor. Null for the first block.
+     * @param last       Whether the block ends the stream. Other blocks end with a sync flush.
+     */
+    private static byte[] deflate(byte[] data, int length, byte[] dictionary, int dictionaryLength, int level, boolean last) {
+        Deflater deflater = CompressionPool.borrowDeflater(level);
+        byte[] buffer = CompressionPool.borrowBuffer();
+        try {
+            if (dictionary != null && dictionaryLength > 0) {
+                int size = Math.min(DICTIONARY_SIZE, dictionaryLength);
+                deflater.setDictionary(dictionary, dictionaryLength - size, size);
+            }
+            deflater.setInput(data, 0, length);
+            if (last) {
+                deflater.finish();
+            }
+            ByteArrayOutputStream compressed = new ByteArrayOutputStream(Math.max(64, length / 2));
+            while (true) {
+                int count = deflater.deflate(buffer, 0, buffer.length, last ? Deflater.NO_FLUSH : Deflater.SYNC_FLUSH);
+                compressed.write(buffer, 0, count);
+                // a flush is complete once it leaves room in the buffer
+                if (last ? deflater.finished() : count < buffer.length) {
+                    break;
+                }
+            }
+            return compressed.toByteArray();
+        } finally {
+            CompressionPool.release(deflater, level);
+            CompressionPool.release(buffer);
+        }
+    }
+
+    private static void writeInt(int value, byte[] bytes, int offset) {
+        bytes[offset] = (byte) value;
+        bytes[offset + 1] = (byte) (value >> 8);
+        bytes[offset + 2] = (byte) (value >> 16);
+        bytes[offset + 3] = (byte) (value >> 24);
+    }
+}
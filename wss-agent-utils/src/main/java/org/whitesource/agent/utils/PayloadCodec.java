@@ -0,0 +1,66 @@
+/**
+ * Copyright (C) 2014 WhiteSource Ltd.
+ * <p>
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * <p>
+ * http://www.apache.org/licenses/LICENSE-2.0
+ * <p>
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.whitesource.agent.utils;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+
+/**
+ * A compression format for request payloads and offline request files.
+ * <p>
+ * Codecs are immutable and thread safe; a codec with another compression level is obtained with
+ * {@link #withLevel(int)}. The built in codecs are listed in {@link PayloadCodecs}, additional ones may be
+ * registered as a {@link java.util.ServiceLoader service} of this interface.
+ */
+public interface PayloadCodec {
+
+    /**
+     * @return Name of the codec, as accepted by {@link PayloadCodecs#forName(String)}.
+     */
+    String getName();
+
+    /**
+     * @return Value of the HTTP {@code Content-Encoding} header for payloads compressed with this codec.
+     */
+    String getContentEncoding();
+
+    /**
+     * @return Compression level of this codec, the meaning and range of which depend on the format.
+     */
+    int getLevel();
+
+    /**
+     * @param level Compression level, the meaning and range of which depend on the format.
+     * @return A codec of the same format with the given compression level.
+     * @throws IllegalArgumentException If the level is out of the range of the format.
+     */
+    PayloadCodec withLevel(int level);
+
+    /**
+     * @param out Stream to write the compressed data to.
+     * @return Stream compressing the bytes written to it. Closing it completes the data and closes the given stream.
+     * @throws IOException In case of errors writing the header of the format.
+     */
+    OutputStream newOutputStream(OutputStream out) throws IOException;
+
+    /**
+     * @param in Stream to read the compressed data from.
+     * @return Stream returning the decompressed data. Closing it closes the given stream.
+     * @throws IOException In case of errors reading the header of the format, or if the data is not in the format.
+     */
+    InputStream newInputStream(InputStream in) throws IOException;
+}
@@ -0,0 +1,119 @@
+/**
+ * Copyright (C) 2014 WhiteSource Ltd.
+ * <p>
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * <p>
+ * http://www.apache.org/licenses/LICENSE-2.0
+ * <p>
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.whitesource.agent.utils;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.ServiceLoader;
+
+/**
+ * Lookup of {@link PayloadCodec}s by name.
+ * <p>
+ * A codec is specified as {@code name} or {@code name:level}, for example {@code gzip:1} for fast compression on
+ * CPU bound machines or {@code gzip:9} for the best ratio over slow links. The built in codecs are
+ * {@value GzipPayloadCodec#NAME}, {@value DeflatePayloadCodec#NAME} and, if a Zstandard library is present,
+ * {@value ZstdPayloadCodec#NAME}. Other codecs are looked up as {@link ServiceLoader services}.
+ */
+public final class PayloadCodecs {
+
+    /* --- Static members --- */
+
+    static final String LEVEL_SEPARATOR = ":";
+
+    private static final GzipPayloadCodec GZIP = new GzipPayloadCodec();
+
+    /* --- Static methods --- */
+
+    /**
+     * @return The default codec, gzip with the default compression level.
+     */
+    public static GzipPayloadCodec gzip() {
+        return GZIP;
+    }
+
+    /**
+     * @param spec Codec name, optionally followed by a colon and a compression level. Null or empty for the default.
+     * @return The codec.
+     * @throws IllegalArgumentException If the codec is unknown or unavailable, or the level is invalid.
+     */
+    public static PayloadCodec forName(String spec) {
+        if (spec == null || spec.trim().isEmpty()) {
+            return GZIP;
+        }
+        String name = spec.trim();
+        Integer level = null;
+        int separator = name.indexOf(LEVEL_SEPARATOR);
+        if (separator >= 0) {
+            try {
+                level = Integer.valueOf(name.substring(separator + 1).trim());
+            } catch (NumberFormatException e) {
+                throw new IllegalArgumentException("Invalid compression level in codec " + spec);
+            }
+            name = name.substring(0, separator).trim();
+        }
+
+        PayloadCodec codec = lookup(name);
+        if (codec == null) {
+            throw new IllegalArgumentException("Unknown or unavailable codec " + name + ", available codecs are " + getAvailableNames());
+        }
+        return level == null ? codec : codec.withLevel(level);
+    }
+
+    /**
+     * @return Names of the codecs which can be used.
+     */
+    public static List<String> getAvailableNames() {
+        List<String> names = new ArrayList<>();
+        names.add(GzipPayloadCodec.NAME);
+        names.add(DeflatePayloadCodec.NAME);
+        if (ZstdPayloadCodec.isAvailable()) {
+            names.add(ZstdPayloadCodec.NAME);
+        }
+        for (PayloadCodec codec : ServiceLoader.load(PayloadCodec.class, PayloadCodecs.class.getClassLoader())) {
+            if (!names.contains(codec.getName())) {
+                names.add(codec.getName());
+            }
+        }
+        return names;
+    }
+
+    /* --- Private methods --- */
+
+    private static PayloadCodec lookup(String name) {
+        if (GzipPayloadCodec.NAME.equalsIgnoreCase(name)) {
+            return GZIP;
+        } else if (DeflatePayloadCodec.NAME.equalsIgnoreCase(name)) {
+            return new DeflatePayloadCodec();
+        } else if (ZstdPayloadCodec.NAME.equalsIgnoreCase(name)) {
+            return ZstdPayloadCodec.isAvailable() ? new ZstdPayloadCodec() : null;
+        }
+        for (PayloadCodec codec : ServiceLoader.load(PayloadCodec.class, PayloadCodecs.class.getClassLoader())) {
+            if (codec.getName().equalsIgnoreCase(name)) {
+                return codec;
+            }
+        }
+        return null;
+    }
+
+    /* --- Constructors --- */
+
+    /**
+     * Private default constructor
+     */
+    private PayloadCodecs() {
+        // avoid instantiation
+    }
+}
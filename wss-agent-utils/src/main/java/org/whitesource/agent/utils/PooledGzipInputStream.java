@@ -0,0 +1,256 @@
+/**
+ * Copyright (C) 2014 WhiteSource Ltd.
+ * <p>
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * <p>
+ * http://www.apache.org/licenses/LICENSE-2.0
+ * <p>
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.whitesource.agent.utils;
+
+import java.io.EOFException;
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.zip.CRC32;
+import java.util.zip.DataFormatException;
+import java.util.zip.GZIPInputStream;
+import java.util.zip.Inflater;
+import java.util.zip.ZipException;
+
+/**
+ * Input stream which reads gzip data from the underlying stream and returns it decompressed, like
+ * {@link GZIPInputStream}, including concatenated gzip members.
+ * <p>
+ * Unlike {@link GZIPInputStream}, the inflater and the input buffer are borrowed from a process wide pool and are
+ * returned to it when the stream is closed, so native zlib memory and allocations stay flat when many streams are
+ * created concurrently.
+ */
+public class PooledGzipInputStream extends InputStream {
+
+    /* --- Static members --- */
+
+    private static final int GZIP_MAGIC = 0x8b1f;
+    private static final int FHCRC = 2;
+    private static final int FEXTRA = 4;
+    private static final int FNAME = 8;
+    private static final int FCOMMENT = 16;
+
+    /* --- Members --- */
+
+    protected final InputStream in;
+    private final CRC32 crc = new CRC32();
+    private final byte[] single = new byte[1];
+    private Inflater inflater;
+    private byte[] buffer;
+    private int position;
+    private int limit;
+    private boolean eof;
+    private boolean closed;
+
+    /* --- Constructors --- */
+
+    /**
+     * Constructor
+     *
+     * @param in Stream to read the gzip data from.
+     * @throws IOException In case of errors reading the gzip header, or if the data is not gzip.
+     */
+    public PooledGzipInputStream(InputStream in) throws IOException {
+        this.in = in;
+        inflater = CompressionPool.borrowInflater();
+        buffer = CompressionPool.borrowBuffer();
+        try {
+            readHeader(readUByte(), readUByte());
+        } catch (IOException | RuntimeException e) {
+            release();
+            throw e;
+        }
+    }
+
+    /* --- Overridden methods --- */
+
+    @Override
+    public int read() throws IOException {
+        return read(single, 0, 1) < 0 ? -1 : single[0] & 0xff;
+    }
+
+    @Override
+    public int read(byte[] bytes, int offset, int length) throws IOException {
+        if (closed) {
+            throw new IOException("Stream closed");
+        }
+        if (length == 0) {
+            return 0;
+        }
+        while (!eof) {
+            int count;
+            try {
+                count = inflater.inflate(bytes, offset, length);
+            } catch (DataFormatException e) {
+                String message = e.getMessage();
+                throw new ZipException(message == null ? "Invalid ZLIB data format" : message);
+            }
+            if (count > 0) {
+                crc.update(bytes, offset, count);
+                return count;
+            }
+            if (inflater.finished()) {
+                endMember();
+            } else if (inflater.needsDictionary()) {
+                throw new ZipException("Unexpected preset dictionary");
+            } else if (inflater.needsInput()) {
+                fill();
+            }
+        }
+        return -1;
+    }
+
+    @Override
+    public int available() throws IOException {
+        if (closed) {
+            throw new IOException("Stream closed");
+        }
+        return eof ? 0 : 1;
+    }
+
+    /**
+     * Closes the underlying stream and returns the inflater to the pool.
+     */
+    @Override
+    public void close() throws IOException {
+        if (closed) {
+            return;
+        }
+        closed = true;
+        eof = true;
+        release();
+        in.close();
+    }
+
+    /* --- Private methods --- */
+
+    /**
+     * Hands the buffered input, or the next chunk of the underlying stream, to the inflater.
+     */
+    private void fill() throws IOException {
+        if (position == limit) {
+            limit = in.read(buffer, 0, buffer.length);
+            position = 0;
+            if (limit < 0) {
+                limit = 0;
+                throw new EOFException("Unexpected end of ZLIB input stream");
+            }
+        }
+        inflater.setInput(buffer, position, limit - position);
+        position = limit;
+    }
+
+    /**
+     * Verifies the trailer of the finished member and moves on to the next member, if one follows.
+     */
+    private void endMember() throws IOException {
+        // give back the input the inflater did not consume
+        position = limit - inflater.getRemaining();
+        long expectedCrc = readUInt();
+        long expectedSize = readUInt();
+        if (expectedCrc != crc.getValue() || expectedSize != (inflater.getBytesWritten() & 0xffffffffL)) {
+            throw new ZipException("Corrupt GZIP trailer");
+        }
+        // like GZIPInputStream, look for another member only if more input is already at hand,
+        // and treat anything other than a gzip header as the end of the data
+        if (position == limit && in.available() <= 0) {
+            eof = true;
+            return;
+        }
+        int first = readUByte();
+        int second = first < 0 ? -1 : readUByte();
+        if (first < 0 || second < 0 || (second << 8 | first) != GZIP_MAGIC) {
+            eof = true;
+            return;
+        }
+        readHeader(first, second);
+        inflater.reset();
+        crc.reset();
+    }
+
+    private void readHeader(int first, int second) throws IOException {
+        if (first < 0 || second < 0) {
+            throw new EOFException();
+        }
+        if ((second << 8 | first) != GZIP_MAGIC) {
+            throw new ZipException("Not in GZIP format");
+        }
+        if (readRequiredUByte() != 8) {
+            throw new ZipException("Unsupported compression method");
+        }
+        int flags = readRequiredUByte();
+        // modification time, extra flags and operating system
+        skip(6);
+        if ((flags & FEXTRA) == FEXTRA) {
+            skip(readRequiredUByte() | readRequiredUByte() << 8);
+        }
+        if ((flags & FNAME) == FNAME) {
+            while (readRequiredUByte() != 0) {
+                // skip the file name
+            }
+        }
+        if ((flags & FCOMMENT) == FCOMMENT) {
+            while (readRequiredUByte() != 0) {
+                // skip the comment
+            }
+        }
+        if ((flags & FHCRC) == FHCRC) {
+            skip(2);
+        }
+    }
+
+    private long readUInt() throws IOException {
+        long value = 0;
+        for (int i = 0; i < 4; i++) {
+            value |= (long) readRequiredUByte() << (8 * i);
+        }
+        return value;
+    }
+
+    private void skip(int count) throws IOException {
+        for (int i = 0; i < count; i++) {
+            readRequiredUByte();
+        }
+    }
+
+    private int readRequiredUByte() throws IOException {
+        int b = readUByte();
+        if (b < 0) {
+            throw new EOFException();
+        }
+        return b;
+    }
+
+    private int readUByte() throws IOException {
+        while (position == limit) {
+            limit = in.read(buffer, 0, buffer.length);
+            position = 0;
+            if (limit < 0) {
+                limit = 0;
+                return -1;
+            }
+        }
+        return buffer[position++] & 0xff;
+    }
+
+    private void release() {
+        if (inflater != null) {
+            CompressionPool.release(inflater);
+            CompressionPool.release(buffer);
+            inflater = null;
+            buffer = null;
+        }
+    }
+}
@@ -0,0 +1,184 @@
+/**
+ * Copyright (C) 2014 WhiteSource Ltd.
+ * <p>
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * <p>
+ * http://www.apache.org/licenses/LICENSE-2.0
+ * <p>
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.whitesource.agent.utils;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.util.Arrays;
+import java.util.zip.CRC32;
+import java.util.zip.Deflater;
+import java.util.zip.GZIPOutputStream;
+
+/**
+ * Output stream which gzips the bytes written to it, producing the same bytes as {@link GZIPOutputStream}.
+ * <p>
+ * Unlike {@link GZIPOutputStream}, the deflater and the compression buffer are borrowed from a process wide pool
+ * and are returned to it once the stream is finished, so native zlib memory and allocations stay flat when many
+ * streams are created concurrently. {@link #finish()} completes the output without closing the underlying stream,
+ * {@link #close()} also closes it.
+ */
+public class PooledGzipOutputStream extends OutputStream {
+
+    /* --- Static members --- */
+
+    private static final int HEADER_SIZE = 10;
+    private static final int TRAILER_SIZE = 8;
+    // taken from GZIPOutputStream, as its OS field differs between JDK versions
+    private static final byte[] HEADER = jdkHeader();
+
+    /* --- Members --- */
+
+    protected final OutputStream out;
+    private final int level;
+    private final CRC32 crc = new CRC32();
+    private final byte[] single = new byte[1];
+    private Deflater deflater;
+    private byte[] buffer;
+    private boolean closed;
+
+    /* --- Constructors --- */
+
+    /**
+     * Constructor
+     *
+     * @param out Stream to write the gzip data to.
+     * @throws IOException In case of errors writing the gzip header.
+     */
+    public PooledGzipOutputStream(OutputStream out) throws IOException {
+        this(out, Deflater.DEFAULT_COMPRESSION);
+    }
+
+    /**
+     * Constructor
+     *
+     * @param out   Stream to write the gzip data to.
+     * @param level Compression level, see {@link Deflater}.
+     * @throws IOException In case of errors writing the gzip header.
+     */
+    public PooledGzipOutputStream(OutputStream out, int level) throws IOException {
+        this.out = out;
+        this.level = level;
+        writeHeader(out);
+        deflater = CompressionPool.borrowDeflater(level);
+        buffer = CompressionPool.borrowBuffer();
+    }
+
+    /* --- Overridden methods --- */
+
+    @Override
+    public void write(int b) throws IOException {
+        single[0] = (byte) b;
+        write(single, 0, 1);
+    }
+
+    @Override
+    public void write(byte[] bytes, int offset, int length) throws IOException {
+        if (deflater == null) {
+            throw new IOException("write beyond end of stream");
+        }
+        if (length == 0) {
+            return;
+        }
+        crc.update(bytes, offset, length);
+        deflater.setInput(bytes, offset, length);
+        while (!deflater.needsInput()) {
+            deflate();
+        }
+    }
+
+    @Override
+    public void flush() throws IOException {
+        out.flush();
+    }
+
+    /**
+     * Writes the gzip trailer without closing the underlying stream, and returns the deflater to the pool.
+     * Nothing may be written afterwards.
+     */
+    public void finish() throws IOException {
+        if (deflater == null) {
+            return;
+        }
+        try {
+            deflater.finish();
+            while (!deflater.finished()) {
+                deflate();
+            }
+            byte[] trailer = new byte[TRAILER_SIZE];
+            writeInt((int) crc.getValue(), trailer, 0);
+            writeInt(deflater.getTotalIn(), trailer, 4);
+            out.write(trailer);
+        } finally {
+            release();
+        }
+    }
+
+    @Override
+    public void close() throws IOException {
+        if (closed) {
+            return;
+        }
+        closed = true;
+        try {
+            finish();
+        } finally {
+            out.close();
+        }
+    }
+
+    /* --- Package methods --- */
+
+    /**
+     * Writes the gzip header, the same as {@link GZIPOutputStream} writes on this runtime.
+     */
+    static void writeHeader(OutputStream out) throws IOException {
+        out.write(HEADER);
+    }
+
+    /* --- Private methods --- */
+
+    private void deflate() throws IOException {
+        int count = deflater.deflate(buffer, 0, buffer.length);
+        if (count > 0) {
+            out.write(buffer, 0, count);
+        }
+    }
+
+    private void release() {
+        CompressionPool.release(deflater, level);
+        CompressionPool.release(buffer);
+        deflater = null;
+        buffer = null;
+    }
+
+    private static byte[] jdkHeader() {
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        try (GZIPOutputStream gzip = new GZIPOutputStream(out)) {
+            gzip.finish();
+        } catch (IOException e) {
+            throw new IllegalStateException(e);
+        }
+        return Arrays.copyOf(out.toByteArray(), HEADER_SIZE);
+    }
+
+    private static void writeInt(int value, byte[] bytes, int offset) {
+        bytes[offset] = (byte) value;
+        bytes[offset + 1] = (byte) (value >> 8);
+        bytes[offset + 2] = (byte) (value >> 16);
+        bytes[offset + 3] = (byte) (value >> 24);
+    }
+}
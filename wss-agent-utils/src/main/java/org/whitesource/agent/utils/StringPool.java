@@ -0,0 +1,103 @@
+/**
+ * Copyright (C) 2014 WhiteSource Ltd.
+ * <p>
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * <p>
+ * http://www.apache.org/licenses/LICENSE-2.0
+ * <p>
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.whitesource.agent.utils;
+
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * A bounded pool of strings, to share one instance of each of the strings which repeat throughout large inventories
+ * and results, such as group ids, versions, scopes, license and policy names.
+ * <p>
+ * Only strings up to a maximal length are pooled, as longer ones such as checksums, paths and descriptions rarely
+ * repeat. When the pool is full it starts over, so its memory stays bounded however many distinct strings it sees;
+ * strings which really repeat are pooled again on their next occurrence. The pool is thread safe, and it is
+ * released with its owner, such as a reader or a client.
+ */
+public class StringPool {
+
+    /* --- Static members --- */
+
+    public static final int DEFAULT_MAX_SIZE = 16 * 1024;
+    public static final int DEFAULT_MAX_LENGTH = 32;
+
+    /* --- Members --- */
+
+    private final int maxSize;
+    private final int maxLength;
+    private final ConcurrentHashMap<String, String> strings = new ConcurrentHashMap<>();
+
+    /* --- Constructors --- */
+
+    /**
+     * Default constructor
+     */
+    public StringPool() {
+        this(DEFAULT_MAX_SIZE, DEFAULT_MAX_LENGTH);
+    }
+
+    /**
+     * Constructor
+     *
+     * @param maxSize   Maximal number of pooled strings.
+     * @param maxLength Maximal length of the pooled strings, longer ones are returned as is.
+     */
+    public StringPool(int maxSize, int maxLength) {
+        if (maxSize <= 0) {
+            throw new IllegalArgumentException("Invalid maximal size " + maxSize);
+        }
+        this.maxSize = maxSize;
+        this.maxLength = maxLength;
+    }
+
+    /* --- Public methods --- */
+
+    /**
+     * @param value String to pool, may be null.
+     * @return The pooled instance equal to the value, or the value itself.
+     */
+    public String intern(String value) {
+        if (value == null || value.length() > maxLength) {
+            return value;
+        }
+        String pooled = strings.get(value);
+        if (pooled != null) {
+            return pooled;
+        }
+        if (strings.size() >= maxSize) {
+            strings.clear();
+        }
+        pooled = strings.putIfAbsent(value, value);
+        return pooled == null ? value : pooled;
+    }
+
+    public int size() {
+        return strings.size();
+    }
+
+    public void clear() {
+        strings.clear();
+    }
+
+    /* --- Getters --- */
+
+    public int getMaxSize() {
+        return maxSize;
+    }
+
+    public int getMaxLength() {
+        return maxLength;
+    }
+}
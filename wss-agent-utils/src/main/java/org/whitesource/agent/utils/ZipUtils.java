@@ -17,15 +17,12 @@ package org.whitesource.agent.utils;
  */
 
 import org.apache.commons.codec.binary.Base64;
+import org.apache.commons.codec.binary.Base64InputStream;
 
 import java.io.*;
 import java.nio.charset.StandardCharsets;
 import java.nio.file.Files;
 import java.nio.file.Path;
-import java.nio.file.Paths;
-import java.util.concurrent.ExecutionException;
-import java.util.concurrent.ExecutorService;
-import java.util.concurrent.Executors;
 import java.util.zip.GZIPInputStream;
 import java.util.zip.GZIPOutputStream;
 
@@ -45,15 +42,12 @@ public class ZipUtils {
     //private static final Logger logger = LoggerFactory.getLogger(ZipUtils.class);
 
     private static final String JAVA_TEMP_DIR = System.getProperty("java.io.tmpdir");
-    private static final String ZIP_UTILS = System.getProperty("WSZipUtils");
     private static final String UTF_8 = "UTF-8";
-    private static final int BYTES_BUFFER_SIZE = 32 * 1024;
-    private static final int STRING_MAX_SIZE = BYTES_BUFFER_SIZE;
-    private static final String TMP_IN_ = "tmp_in_";
     private static final String TMP_OUT_ = "tmp_out_";
     private static final String ZIP_UTILS_SUFFIX = ".json";
 
-    private static final int N_THREADS = 2;
+    private static final int CHARS_BUFFER_SIZE = 8 * 1024;
+    private static final String US_ASCII = "US-ASCII";
 
     /* --- Static methods --- */
 
@@ -119,333 +113,207 @@ public class ZipUtils {
     }
 
     /**
-     * The method decompresses the big strings using gzip - low memory via the File system
+     * The method decompresses the big strings using gzip into a temp file.
      *
      * @param text The string to decompress.
-     * @return The decompressed temp file path that should be deleted on a later stage.
-     * @throws java.io.IOException
+     * @return The decompressed temp file path that should be deleted on a later stage, null if the string is null or empty.
+     * @throws java.io.IOException In case of errors decompressing the string or writing the file.
+     * @deprecated use {@link #decompressChunks(String, OutputStream)} instead, which doesn't need the file system.
      */
+    @Deprecated
     public static Path decompressChunks(String text) throws IOException {
-        File tempFileOut = File.createTempFile(TMP_OUT_, ZIP_UTILS_SUFFIX, new File(JAVA_TEMP_DIR));
         if (text == null || text.length() == 0) {
             return null;
         }
-
-        // todo make it in chunks
-
-        byte[] bytes = Base64.decodeBase64(text);
-        try (InputStream inputStream = new ByteArrayInputStream(bytes)) {
-            decompressChunks(inputStream, tempFileOut.toPath());
-            return tempFileOut.toPath();
+        Path tempFileOut = File.createTempFile(TMP_OUT_, ZIP_UTILS_SUFFIX, new File(JAVA_TEMP_DIR)).toPath();
+        try {
+            decompressChunks(text, Files.newOutputStream(tempFileOut));
+        } catch (IOException | RuntimeException e) {
+            Files.deleteIfExists(tempFileOut);
+            throw e;
         }
+        return tempFileOut;
     }
 
     /**
-     * The method decompresses the big strings using gzip - low memory via the File system
+     * The method decompresses the big strings using gzip - low memory via Streams
+     * <p>
+     * The string is decoded and decompressed a buffer at a time, so neither the decoded nor the decompressed data
+     * is ever held in memory as a whole.
      *
-     * @param inputStream
-     * @param tempFileOut
-     * @throws IOException
+     * @param text         Base64 encoded gzip data to decompress.
+     * @param outputStream Stream to write the decompressed data to, closed when done.
+     * @throws IOException In case of errors decompressing the string, or if it is not base64 encoded gzip data.
      */
-    public static void decompressChunks(InputStream inputStream, Path tempFileOut) throws IOException {
-        try (BufferedWriter writer = Files.newBufferedWriter(tempFileOut)) {
-            try (GZIPInputStream chunkZipper = new GZIPInputStream(inputStream);
-                 InputStream in = new BufferedInputStream(chunkZipper);) {
-                byte[] buffer = new byte[BYTES_BUFFER_SIZE];
-                int len;
-                while ((len = in.read(buffer)) > 0) {
-                    byte[] writtenBytes = new byte[len];
-                    getBytes(buffer, 0, len, writtenBytes, 0);
-                    String val = new String(writtenBytes, StandardCharsets.UTF_8);
-                    writer.write(val);
-                }
-            }
-        }
-    }
-
-    public static String compressString(String text) throws IOException {
-        try (ByteArrayOutputStream exportByteArrayOutputStream = new ByteArrayOutputStream()) {
-            fillExportStreamCompress(text, exportByteArrayOutputStream);
-            return getStringFromEncode(exportByteArrayOutputStream.toByteArray());
+    public static void decompressChunks(String text, OutputStream outputStream) throws IOException {
+        if (text == null || text.length() == 0) {
+            outputStream.close();
+            return;
         }
+        decompressString(new CharSequenceInputStream(text), outputStream);
     }
 
     /**
-     * The method compresses the big strings using gzip - low memory via Streams
+     * The method decompresses the big strings using gzip - low memory via the File system
      *
-     * @param inputStream
-     * @param outputStream
-     * @throws IOException
+     * @param inputStream Gzip data (not base64 encoded) to decompress, closed when done.
+     * @param tempFileOut File to write the decompressed data to.
+     * @throws IOException In case of errors reading, decompressing or writing.
      */
-    public static void compressString(InputStream inputStream, OutputStream outputStream) throws IOException {
-        try (ByteArrayOutputStream byteArrayOutputStream = new ByteArrayOutputStream()) {
-            fillExportStreamCompress(inputStream, byteArrayOutputStream);
-            // to do -> make it in chunks
-            String result = getStringFromEncode(byteArrayOutputStream.toByteArray());
-            try (PrintWriter printWriter = new PrintWriter(outputStream)) {
-                printWriter.write(result);
-            }
-        }
-    }
-
-
-    public static String decompressString(String text) throws IOException {
-        StringBuilder stringBuilder = new StringBuilder();
-        fillExportStreamDecompress(text, stringBuilder);
-        return stringBuilder.toString();
+    public static void decompressChunks(InputStream inputStream, Path tempFileOut) throws IOException {
+        decompressChunks(inputStream, Files.newOutputStream(tempFileOut));
     }
 
     /**
      * The method decompresses the big strings using gzip - low memory via Streams
      *
-     * @param inputStream
-     * @param outputStream
-     * @throws IOException
+     * @param inputStream  Gzip data (not base64 encoded) to decompress, closed when done.
+     * @param outputStream Stream to write the decompressed data to, closed when done.
+     * @throws IOException In case of errors reading, decompressing or writing.
      */
-    public static void decompressString(InputStream inputStream, OutputStream outputStream) throws IOException {
-        try (InputStream bufferedInputStream = new BufferedInputStream(inputStream);
-             PrintWriter printWriter = new PrintWriter(outputStream);) {
-            byte[] buffer = new byte[BYTES_BUFFER_SIZE];
-            int len;
-            while ((len = bufferedInputStream.read(buffer)) > 0) {
-                String val = new String(buffer, StandardCharsets.UTF_8);
-                String str = decompressString(val);
-                printWriter.write(str);
-            }
+    public static void decompressChunks(InputStream inputStream, OutputStream outputStream) throws IOException {
+        try (OutputStream out = outputStream;
+             InputStream in = new PooledGzipInputStream(inputStream)) {
+            copy(in, out);
         }
     }
 
     /**
-     * The method compresses the big strings using gzip - low memory via the File system
+     * The method compresses the string using gzip and encodes the result as base64.
      *
      * @param text The string to compress.
-     * @return The compressed string.
-     * @throws java.io.IOException
+     * @return The compressed string, null if the string is null.
+     * @throws IOException In case of errors compressing the string.
      */
-    public static String compressChunks(String text) throws IOException {
-        Path tempFolder = Paths.get(JAVA_TEMP_DIR, ZIP_UTILS);
-        File tempFileIn = File.createTempFile(TMP_IN_, ZIP_UTILS_SUFFIX, tempFolder.toFile());
-        File tempFileOut = File.createTempFile(TMP_OUT_, ZIP_UTILS_SUFFIX, tempFolder.toFile());
-
-        writeChunkBytes(text, tempFileIn);
-        String result;
-        if (text != null && text.length() > 0) {
-            try (InputStream in = new FileInputStream(tempFileIn);
-                 FileOutputStream fileOutputStream = new FileOutputStream(tempFileOut);
-                 BufferedOutputStream bufferedOutputStream = new BufferedOutputStream(fileOutputStream);
-                 OutputStream out = new GZIPOutputStream(bufferedOutputStream);) {
-
-                byte[] bytes = new byte[BYTES_BUFFER_SIZE];
-                int len;
-                while ((len = in.read(bytes)) > 0) {
-                    out.write(bytes, 0, len);
-                }
-
-                in.close();
-                out.flush();
-                out.close();
-
-                // result = new BASE64Encoder().encode(Files.readAllBytes(tempFileOut.toPath()));
-                result = Base64.encodeBase64String(Files.readAllBytes(tempFileOut.toPath()));
-            }
-        } else {
-            result = text;
-        }
-
-        Files.deleteIfExists(tempFileIn.toPath());
-        Files.deleteIfExists(tempFileOut.toPath());
-
-        return result;
-    }
-
-    /* --- Compress Helpers --- */
-
-    private static String getStringFromEncode(byte[] bytes) {
-        // return new BASE64Encoder().encode(bytes);
-        return Base64.encodeBase64String(bytes);
+    public static String compressString(String text) throws IOException {
+        return compressString(text, false);
     }
 
-    private static void fillExportStreamCompress(InputStream inputStream, OutputStream outputStream) {
-        try {
-            try (PipedInputStream pipedInputStream = new PipedInputStream()) {
-                try (PipedOutputStream pipedOutputStream = new PipedOutputStream()) {
-                    pipedInputStream.connect(pipedOutputStream);
-
-                    Runnable producer = new Runnable() {
-                        @Override
-                        public void run() {
-                            produceCompressDataFromStream(inputStream, pipedOutputStream);
-                        }
-                    };
-                    Runnable consumer = new Runnable() {
-                        @Override
-                        public void run() {
-                            consumeCompressData(pipedInputStream, outputStream);
-                        }
-                    };
-
-                    transferData(producer, consumer);
-                }
-            }
-        } catch (IOException e) {
-            // logger.error("Failed to produce data :", e);
-        }
+    /**
+     * The method compresses the string using gzip and encodes the result as base64.
+     *
+     * @param text     The string to compress.
+     * @param parallel Whether to compress blocks of the string on multiple threads, see {@link ParallelGzipOutputStream}.
+     *                 The result is valid gzip either way, but differs from the single threaded one.
+     * @return The compressed string, null if the string is null.
+     * @throws IOException In case of errors compressing the string.
+     */
+    public static String compressString(String text, boolean parallel) throws IOException {
+        return compressString(text, PayloadCodecs.gzip().withParallel(parallel));
     }
 
-    private static void fillExportStreamCompress(String text, OutputStream exportByteArrayOutputStream) {
-        try {
-            try (PipedInputStream pipedInputStream = new PipedInputStream()) {
-                try (PipedOutputStream pipedOutputStream = new PipedOutputStream()) {
-                    pipedInputStream.connect(pipedOutputStream);
-
-                    Runnable producer = new Runnable() {
-                        @Override
-                        public void run() {
-                            produceCompressDataFromText(text, pipedOutputStream);
-                        }
-                    };
-                    Runnable consumer = new Runnable() {
-                        @Override
-                        public void run() {
-                            consumeCompressData(pipedInputStream, exportByteArrayOutputStream);
-                        }
-                    };
-
-                    transferData(producer, consumer);
-                }
-            }
-        } catch (IOException e) {
-            // logger.error("Failed to produce data :", e);
+    /**
+     * The method compresses the string using the given codec and encodes the result as base64.
+     *
+     * @param text  The string to compress.
+     * @param codec Compression format and level. Gzip is the format of {@link #compressString(String)}.
+     * @return The compressed string, null if the string is null.
+     * @throws IOException In case of errors compressing the string.
+     */
+    public static String compressString(String text, PayloadCodec codec) throws IOException {
+        if (text == null) {
+            return null;
         }
-    }
-
-    private static void transferData(Runnable producer, Runnable consumer) {
-        ExecutorService threadPool = Executors.newFixedThreadPool(N_THREADS);
-        try {
-            threadPool.submit(producer);
-            threadPool.submit(consumer).get();
-        } catch (InterruptedException e) {
-            // logger.error("Task failed : ", e);
-        } catch (ExecutionException e) {
-            // logger.error("Task failed : ", e);
-        } finally {
-            threadPool.shutdown();
+        ByteArrayOutputStream byteArrayOutputStream = new ByteArrayOutputStream(Math.max(32, text.length() / 4));
+        OutputStream compressed = codec.newOutputStream(Base64GzipOutputStream.newEncodingStream(byteArrayOutputStream));
+        try (Writer writer = new OutputStreamWriter(compressed, StandardCharsets.UTF_8)) {
+            writer.write(text);
         }
+        return byteArrayOutputStream.toString(US_ASCII);
     }
 
-    private static void consumeCompressData(PipedInputStream pipedInputStream, OutputStream exportByteArrayOutputStream) {
-        try (OutputStream out = new GZIPOutputStream(new BufferedOutputStream(exportByteArrayOutputStream))) {
-            try {
-                byte[] bytes = new byte[BYTES_BUFFER_SIZE];
-                int len;
-                while ((len = pipedInputStream.read(bytes)) > 0) {
-                    out.write(bytes, 0, len);
-                }
-                out.flush();
-            } catch (IOException e) {
-                // logger.error("Failed to consume data to compress:", e);
-            }
-        } catch (IOException e) {
-            // logger.error("Failed to consume data to compress:", e);
+    /**
+     * The method compresses the big strings using gzip - low memory via Streams
+     *
+     * @param inputStream  Stream to compress, closed when done.
+     * @param outputStream Stream to write the base64 encoded result to, closed when done.
+     * @throws IOException In case of errors reading, compressing or writing.
+     */
+    public static void compressString(InputStream inputStream, OutputStream outputStream) throws IOException {
+        try (InputStream in = inputStream;
+             OutputStream out = new Base64GzipOutputStream(outputStream)) {
+            copy(in, out);
         }
     }
 
-    private static void produceCompressDataFromStream(InputStream inputStream, PipedOutputStream pipedOutputStream) {
-        try (BufferedInputStream in = new BufferedInputStream(inputStream)) {
-            byte[] buffer = new byte[BYTES_BUFFER_SIZE];
-            int len;
-            while ((len = in.read(buffer)) > 0) {
-                pipedOutputStream.write(buffer, 0, len);
-            }
-            pipedOutputStream.close();
-        } catch (IOException e) {
-            // logger.error("Failed to produce data to compress : ", e);
-        }
+    /**
+     * The method decodes the base64 string and decompresses the result using gzip.
+     *
+     * @param text The string to decompress.
+     * @return The decompressed string, the given string if it is null or empty.
+     * @throws IOException In case of errors decompressing the string, or if it is not base64 encoded gzip data.
+     */
+    public static String decompressString(String text) throws IOException {
+        return decompressString(text, PayloadCodecs.gzip());
     }
 
-    private static void produceCompressDataFromText(String text, PipedOutputStream pipedOutputStream) {
-        int start_String = 0;
-        int chunk = text.length();
-        if (text.length() > STRING_MAX_SIZE) {
-            chunk = text.length() / STRING_MAX_SIZE;
+    /**
+     * The method decodes the base64 string and decompresses the result using the given codec.
+     *
+     * @param text  The string to decompress.
+     * @param codec Compression format the string was compressed with, see {@link #compressString(String, PayloadCodec)}.
+     * @return The decompressed string, the given string if it is null or empty.
+     * @throws IOException In case of errors decompressing the string, or if it is not base64 encoded data of the codec.
+     */
+    public static String decompressString(String text, PayloadCodec codec) throws IOException {
+        if (text == null || text.length() == 0) {
+            return text;
         }
-        try {
-            while (start_String < text.length()) {
-                int end = start_String + chunk;
-                if (end > text.length()) {
-                    end = text.length();
-                }
-                byte[] bytes = text.substring(start_String, end).getBytes(StandardCharsets.UTF_8);
-
-                pipedOutputStream.write(bytes);
-                start_String = end;
+        StringBuilder stringBuilder = new StringBuilder(text.length() * 2);
+        InputStream decoded = new Base64InputStream(new CharSequenceInputStream(text));
+        try (Reader reader = new InputStreamReader(codec.newInputStream(decoded), StandardCharsets.UTF_8)) {
+            char[] buffer = new char[CHARS_BUFFER_SIZE];
+            int len;
+            while ((len = reader.read(buffer)) > 0) {
+                stringBuilder.append(buffer, 0, len);
             }
-            pipedOutputStream.close();
-        } catch (IOException e) {
-            // logger.error("Failed to produce data to compress : ", e);
         }
+        return stringBuilder.toString();
     }
 
-    private static void fillExportStreamDecompress(String text, StringBuilder stringBuilder) {
-        try {
-            try (PipedInputStream pipedInputStream = new PipedInputStream()) {
-                try (PipedOutputStream pipedOutputStream = new PipedOutputStream()) {
-                    pipedInputStream.connect(pipedOutputStream);
-
-                    Runnable producer = new Runnable() {
-                        @Override
-                        public void run() {
-                            produceDecompressData(text, pipedOutputStream);
-                        }
-                    };
-                    Runnable consumer = new Runnable() {
-                        @Override
-                        public void run() {
-                            consumeDecompressData(pipedInputStream, stringBuilder);
-                        }
-                    };
-
-                    transferData(producer, consumer);
-                }
-            }
-        } catch (IOException e) {
-            // logger.error("Failed to decompress : ", e);
+    /**
+     * The method decompresses the big strings using gzip - low memory via Streams
+     *
+     * @param inputStream  Base64 encoded gzip data to decompress, closed when done.
+     * @param outputStream Stream to write the decompressed data to, closed when done.
+     * @throws IOException In case of errors reading, decompressing or writing.
+     */
+    public static void decompressString(InputStream inputStream, OutputStream outputStream) throws IOException {
+        try (OutputStream out = outputStream;
+             InputStream in = new Base64GunzipInputStream(inputStream)) {
+            copy(in, out);
         }
     }
 
-    private static void consumeDataDecompressStream(PipedInputStream pipedInputStream, OutputStream outputStream) {
-        try (GZIPInputStream chunkZipper = new GZIPInputStream(pipedInputStream);
-             InputStream in = new BufferedInputStream(chunkZipper);) {
-
-            byte[] buffer = new byte[BYTES_BUFFER_SIZE];
-            int len;
-            while ((len = in.read(buffer)) > 0) {
-                outputStream.write(buffer, 0, len);
-            }
-            pipedInputStream.close();
-        } catch (IOException e) {
-            // logger.error("Failed to decompress : ", e);
+    /**
+     * The method compresses the big strings using gzip - low memory via Streams
+     * <p>
+     * The string is encoded, compressed and base64 encoded a buffer at a time, through the pooled deflaters and
+     * buffers of {@link PooledGzipOutputStream}; only the result is held in memory. The result is the same as
+     * {@link #compressString(String)}.
+     *
+     * @param text The string to compress.
+     * @return The compressed string, the given string if it is null or empty.
+     * @throws java.io.IOException In case of errors compressing the string.
+     */
+    public static String compressChunks(String text) throws IOException {
+        if (text == null || text.length() == 0) {
+            return text;
         }
+        return compressString(text);
     }
 
-    private static void consumeDecompressData(PipedInputStream pipedInputStream, StringBuilder stringBuilder) {
-        try (GZIPInputStream chunkZipper = new GZIPInputStream(pipedInputStream);
-             InputStream in = new BufferedInputStream(chunkZipper);) {
+    /* --- Private methods --- */
 
-            byte[] buffer = new byte[BYTES_BUFFER_SIZE];
+    private static void copy(InputStream in, OutputStream out) throws IOException {
+        byte[] buffer = CompressionPool.borrowBuffer();
+        try {
             int len;
-            while ((len = in.read(buffer)) > 0) {
-                if (len < buffer.length) {
-                    byte[] writtenBytes = new byte[len];
-                    getBytes(buffer, 0, len, writtenBytes, 0);
-                    stringBuilder.append(new String(writtenBytes, StandardCharsets.UTF_8));
-                } else {
-                    stringBuilder.append(new String(buffer, StandardCharsets.UTF_8));
-                }
+            while ((len = in.read(buffer)) >= 0) {
+                out.write(buffer, 0, len);
             }
-            pipedInputStream.close();
-        } catch (IOException e) {
-            // logger.error("Failed to decompress : ", e);
+        } finally {
+            CompressionPool.release(buffer);
         }
     }
 
@@ -454,52 +322,57 @@ public class ZipUtils {
         System.arraycopy(source, srcBegin, destination, dstBegin, srcEnd - srcBegin);
     }
 
-    private static void produceDecompressData(String text, PipedOutputStream pipedOutputStream) {
-        try {
-            byte[] bytes = getStringFromDecode(text);
-            pipedOutputStream.write(bytes);
-        } catch (IOException e) {
-            e.printStackTrace();
-        }
-    }
+    /* --- Constructors --- */
 
-    private static byte[] getStringFromDecode(String text) throws IOException {
-        return Base64.decodeBase64(text);
+    /**
+     * Private default constructor
+     */
+    private ZipUtils() {
+        // avoid instantiation
     }
 
+    /* --- Nested classes --- */
+
     /**
-     * Writes a string piece by piece to file
-     *
-     * @param text       to input
-     * @param tempFileIn input
-     * @throws IOException exception when writing
+     * Reads the characters of a string as ISO-8859-1 bytes, without copying the string.
      */
-    private static void writeChunkBytes(String text, File tempFileIn) throws IOException {
-        try (FileOutputStream writer = new FileOutputStream(tempFileIn)) {
-            int chunk = text.length();
-            if (text.length() > STRING_MAX_SIZE) {
-                chunk = text.length() / STRING_MAX_SIZE;
-            }
+    private static class CharSequenceInputStream extends InputStream {
 
-            int startString = 0;
-            while (startString < text.length()) {
-                int endString = startString + chunk;
-                if (endString > text.length()) {
-                    endString = text.length();
-                }
-                byte[] bytes = text.substring(startString, endString).getBytes(StandardCharsets.UTF_8);
-                writer.write(bytes);
-                startString = endString;
+        private final CharSequence text;
+        private int position;
+
+        CharSequenceInputStream(CharSequence text) {
+            this.text = text;
+        }
+
+        @Override
+        public int read() {
+            return position < text.length() ? toByte(text.charAt(position++)) & 0xff : -1;
+        }
+
+        @Override
+        public int read(byte[] bytes, int offset, int length) {
+            if (length == 0) {
+                return 0;
+            }
+            int count = Math.min(length, text.length() - position);
+            if (count <= 0) {
+                return -1;
             }
+            for (int i = 0; i < count; i++) {
+                bytes[offset + i] = toByte(text.charAt(position++));
+            }
+            return count;
         }
-    }
 
-    /* --- Constructors --- */
+        @Override
+        public int available() {
+            return text.length() - position;
+        }
 
-    /**
-     * Private default constructor
-     */
-    private ZipUtils() {
-        // avoid instantiation
+        private static byte toByte(char c) {
+            // like String.getBytes, unmappable characters become '?'
+            return (byte) (c <= 0xff ? c : '?');
+        }
     }
-}
\ No newline at end of file
+}
@@ -0,0 +1,80 @@
+package org.whitesource.agent.utils;
+
+import org.whitesource.agent.api.dispatch.UpdateInventoryRequest;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+
+/**
+ * Compares the size of an update inventory request in JSON and in the {@link BinaryInventoryFormat binary inventory
+ * format}, with and without gzip, and the time to read each back.
+ * <p>
+ * Usage: {@code BinaryInventoryBenchmark [megabytes=64] [iterations=5] [warmup=3]}
+ */
+public class BinaryInventoryBenchmark {
+
+    /* --- Main --- */
+
+    public static void main(String[] args) throws IOException {
+        int megabytes = 64;
+        int iterations = 5;
+        int warmup = 3;
+        for (String arg : args) {
+            String[] pair = arg.split("=", 2);
+            switch (pair[0]) {
+                case "megabytes":
+                    megabytes = Integer.parseInt(pair[1]);
+                    break;
+                case "iterations":
+                    iterations = Integer.parseInt(pair[1]);
+                    break;
+                case "warmup":
+                    warmup = Integer.parseInt(pair[1]);
+                    break;
+                default:
+                    throw new IllegalArgumentException("Unknown argument " + arg);
+            }
+        }
+
+        byte[] json = PayloadCodecBenchmark.inventoryJson(megabytes * 1024 * 1024);
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        BinaryInventoryFormat.fromJson(new ByteArrayInputStream(json), out);
+        byte[] binary = out.toByteArray();
+
+        System.out.println(String.format("%-12s %14s %14s", "format", "bytes", "gzip bytes"));
+        System.out.println(String.format("%-12s %14d %14d", "json", json.length, gzipSize(json)));
+        System.out.println(String.format("%-12s %14d %14d", "binary", binary.length, gzipSize(binary)));
+
+        long bestJsonNanos = Long.MAX_VALUE;
+        long bestBinaryNanos = Long.MAX_VALUE;
+        for (int i = 0; i < warmup + iterations; i++) {
+            long start = System.nanoTime();
+            UpdateInventoryRequest fromJson = JsonUtils.readUpdateInventoryRequest(new ByteArrayInputStream(json));
+            long jsonNanos = System.nanoTime() - start;
+            start = System.nanoTime();
+            UpdateInventoryRequest fromBinary = new BinaryInventoryReader(new ByteArrayInputStream(binary)).readRequest();
+            long binaryNanos = System.nanoTime() - start;
+            if (fromJson.getProjects().size() != fromBinary.getProjects().size()) {
+                throw new IllegalStateException("The formats hold different requests");
+            }
+            if (i >= warmup) {
+                bestJsonNanos = Math.min(bestJsonNanos, jsonNanos);
+                bestBinaryNanos = Math.min(bestBinaryNanos, binaryNanos);
+            }
+        }
+        System.out.println(String.format("read, best of %d: json %.1f ms, binary %.1f ms", iterations,
+                bestJsonNanos / 1e6, bestBinaryNanos / 1e6));
+    }
+
+    /* --- Private methods --- */
+
+    private static long gzipSize(byte[] bytes) throws IOException {
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        try (OutputStream gzip = PayloadCodecs.gzip().newOutputStream(out)) {
+            gzip.write(bytes);
+        }
+        return out.size();
+    }
+}
@@ -0,0 +1,127 @@
+package org.whitesource.agent.utils;
+
+import com.google.gson.Gson;
+import com.google.gson.JsonParser;
+import org.junit.Assert;
+import org.junit.Test;
+import org.whitesource.agent.api.dispatch.UpdateInventoryRequest;
+import org.whitesource.agent.api.model.AgentProjectInfo;
+import org.whitesource.agent.api.model.ChecksumType;
+import org.whitesource.agent.api.model.Coordinates;
+import org.whitesource.agent.api.model.DependencyInfo;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+
+public class BinaryInventoryTest {
+
+    private static final String SHA1 = "0123456789abcdef0123456789abcdef01234567";
+
+    @Test
+    public void shouldReadWhatWasWritten() throws IOException {
+        Gson gson = new Gson();
+        UpdateInventoryRequest request = ModelTypeAdapterFactoryTest.request();
+        AgentProjectInfo withoutDependencies = new AgentProjectInfo();
+        withoutDependencies.setDependencies(null);
+        request.getProjects().add(withoutDependencies);
+        DependencyInfo hashed = new DependencyInfo(SHA1);
+        hashed.setFullHash(SHA1.toUpperCase());
+        hashed.setAdditionalSha1("abc");
+        hashed.getChecksums().put(ChecksumType.MD5, "0a1b");
+        request.getProjects().iterator().next().getDependencies().add(hashed);
+
+        UpdateInventoryRequest read = new BinaryInventoryReader(new ByteArrayInputStream(write(request, null))).readRequest();
+        Assert.assertEquals(gson.toJson(request), gson.toJson(read));
+        DependencyInfo readHashed = new ArrayList<>(read.getProjects().iterator().next().getDependencies()).get(2);
+        Assert.assertEquals(SHA1, readHashed.getSha1());
+        Assert.assertEquals(SHA1.toUpperCase(), readHashed.getFullHash());
+        Assert.assertEquals(hashed.getChecksums(), readHashed.getChecksums());
+
+        UpdateInventoryRequest empty = new UpdateInventoryRequest("orgToken", null);
+        Assert.assertEquals(gson.toJson(empty),
+                gson.toJson(new BinaryInventoryReader(new ByteArrayInputStream(write(empty, null))).readRequest()));
+    }
+
+    @Test
+    public void shouldStreamProjects() throws IOException {
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        try (BinaryInventoryWriter writer = new BinaryInventoryWriter(out,
+                new UpdateInventoryRequest("orgToken", new ArrayList<>()), PayloadCodecs.gzip())) {
+            writer.writeProject(project("first", 3));
+            writer.beginProject(project("second", 0));
+            writer.writeDependency(new DependencyInfo(SHA1));
+            Assert.assertEquals(2, writer.getProjectCount());
+            Assert.assertEquals(4, writer.getDependencyCount());
+            // the open project is ended by close
+        }
+
+        try (BinaryInventoryReader reader = new BinaryInventoryReader(new ByteArrayInputStream(out.toByteArray()), PayloadCodecs.gzip())) {
+            Assert.assertEquals("orgToken", reader.getRequest().orgToken());
+            Assert.assertNull(reader.getRequest().getProjects());
+            AgentProjectInfo first = reader.next();
+            Assert.assertEquals("first", first.getCoordinates().getArtifactId());
+            Assert.assertEquals(3, first.getDependencies().size());
+            Assert.assertEquals(SHA1, reader.next().getDependencies().iterator().next().getSha1());
+            Assert.assertFalse(reader.hasNext());
+        }
+    }
+
+    @Test
+    public void shouldConvertToAndFromJson() throws IOException {
+        String json = new Gson().toJson(ModelTypeAdapterFactoryTest.request());
+        ByteArrayOutputStream binary = new ByteArrayOutputStream();
+        BinaryInventoryFormat.fromJson(new ByteArrayInputStream(json.getBytes(StandardCharsets.UTF_8)), binary);
+        Assert.assertTrue(BinaryInventoryFormat.isBinaryInventory(binary.toByteArray()));
+
+        ByteArrayOutputStream converted = new ByteArrayOutputStream();
+        BinaryInventoryFormat.toJson(new ByteArrayInputStream(binary.toByteArray()), converted);
+        Assert.assertEquals(JsonParser.parseString(json),
+                JsonParser.parseString(new String(converted.toByteArray(), StandardCharsets.UTF_8)));
+    }
+
+    @Test
+    public void shouldBeSmallerThanJson() throws IOException {
+        byte[] json = PayloadCodecBenchmark.inventoryJson(1024 * 1024);
+        ByteArrayOutputStream binary = new ByteArrayOutputStream();
+        BinaryInventoryFormat.fromJson(new ByteArrayInputStream(json), binary);
+        Assert.assertTrue(binary.size() < json.length / 2);
+    }
+
+    @Test
+    public void shouldRejectOtherData() throws IOException {
+        byte[] json = "{\"projects\":[]}".getBytes(StandardCharsets.UTF_8);
+        Assert.assertFalse(BinaryInventoryFormat.isBinaryInventory(json));
+        try {
+            new BinaryInventoryReader(new ByteArrayInputStream(json));
+            Assert.fail("Expected JSON to be rejected");
+        } catch (IOException e) {
+            // expected
+        }
+
+        byte[] binary = write(ModelTypeAdapterFactoryTest.request(), null);
+        try {
+            new BinaryInventoryReader(new ByteArrayInputStream(binary, 0, binary.length - 10)).readRequest();
+            Assert.fail("Expected a truncated inventory to be rejected");
+        } catch (IOException e) {
+            // expected
+        }
+    }
+
+    private static byte[] write(UpdateInventoryRequest request, PayloadCodec codec) throws IOException {
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        new BinaryInventoryWriter(out, request, codec).close();
+        return out.toByteArray();
+    }
+
+    private static AgentProjectInfo project(String artifactId, int dependencies) {
+        AgentProjectInfo project = new AgentProjectInfo();
+        project.setCoordinates(new Coordinates("group", artifactId, "1.0"));
+        for (int i = 0; i < dependencies; i++) {
+            project.getDependencies().add(new DependencyInfo("sha1-" + i));
+        }
+        return project;
+    }
+}
@@ -0,0 +1,93 @@
+package org.whitesource.agent.utils;
+
+import com.google.gson.Gson;
+import com.google.gson.JsonParser;
+import org.junit.Assert;
+import org.junit.Test;
+import org.whitesource.agent.api.dispatch.UpdateInventoryRequest;
+import org.whitesource.agent.api.dispatch.UpdateType;
+import org.whitesource.agent.api.model.AgentProjectInfo;
+import org.whitesource.agent.api.model.Coordinates;
+import org.whitesource.agent.api.model.DependencyInfo;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+public class InventoryWriterTest {
+
+    @Test
+    public void shouldWriteRequestIncrementally() throws IOException {
+        List<AgentProjectInfo> projects = new ArrayList<>();
+        projects.add(project("first", 3));
+        projects.add(project("second", 5));
+        UpdateInventoryRequest expected = request(projects);
+
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        try (InventoryWriter writer = new InventoryWriter(out, request(Collections.singletonList(projects.get(0))), PayloadCodecs.gzip())) {
+            AgentProjectInfo header = project("second", 0);
+            writer.beginProject(header);
+            for (DependencyInfo dependency : projects.get(1).getDependencies()) {
+                writer.writeDependency(dependency);
+            }
+            Assert.assertEquals(2, writer.getProjectCount());
+            Assert.assertEquals(8, writer.getDependencyCount());
+            // the open project is ended by close
+        }
+
+        byte[] json = PayloadCodecsTest.decompress(PayloadCodecs.gzip(), out.toByteArray());
+        Assert.assertEquals(JsonParser.parseString(new Gson().toJson(expected)),
+                JsonParser.parseString(new String(json, StandardCharsets.UTF_8)));
+        UpdateInventoryRequest read = JsonUtils.readUpdateInventoryRequest(new ByteArrayInputStream(json));
+        Assert.assertEquals(UpdateType.APPEND, read.getUpdateType());
+        Assert.assertEquals(2, read.getProjects().size());
+    }
+
+    @Test
+    public void shouldWriteOfflineFormat() throws IOException {
+        UpdateInventoryRequest request = request(new ArrayList<>());
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        try (InventoryWriter writer = new InventoryWriter(new Base64GzipOutputStream(out), request)) {
+            writer.writeProject(project("only", 2));
+        }
+        String json = ZipUtils.decompressString(out.toString("US-ASCII"));
+        try (CloseableIterator<AgentProjectInfo> iterator = JsonUtils.iterateProjects(new ByteArrayInputStream(json.getBytes(StandardCharsets.UTF_8)))) {
+            Assert.assertEquals("only", iterator.next().getCoordinates().getArtifactId());
+            Assert.assertFalse(iterator.hasNext());
+        }
+    }
+
+    @Test
+    public void shouldRejectDependencyOutsideProject() throws IOException {
+        try (InventoryWriter writer = new InventoryWriter(new ByteArrayOutputStream(), request(null))) {
+            writer.writeDependency(new DependencyInfo("sha1"));
+            Assert.fail("Expected the dependency to be rejected");
+        } catch (IllegalStateException e) {
+            // expected
+        }
+    }
+
+    private static UpdateInventoryRequest request(List<AgentProjectInfo> projects) {
+        UpdateInventoryRequest request = new UpdateInventoryRequest("orgToken", projects);
+        request.setUpdateType(UpdateType.APPEND);
+        request.setProduct("product");
+        request.setTimeStamp(1234L);
+        return request;
+    }
+
+    private static AgentProjectInfo project(String name, int dependencies) {
+        AgentProjectInfo project = new AgentProjectInfo();
+        project.setCoordinates(new Coordinates("group", name, "1.0"));
+        for (int i = 0; i < dependencies; i++) {
+            DependencyInfo dependency = new DependencyInfo("group", "library-" + i, "2.0");
+            dependency.setSha1(name + "-" + i);
+            dependency.getChildren().add(new DependencyInfo(name + "-child-" + i));
+            project.getDependencies().add(dependency);
+        }
+        return project;
+    }
+}
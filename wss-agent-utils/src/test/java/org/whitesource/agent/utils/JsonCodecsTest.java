@@ -0,0 +1,47 @@
+package org.whitesource.agent.utils;
+
+import com.google.gson.Gson;
+import com.google.gson.GsonBuilder;
+import org.junit.Assert;
+import org.junit.Test;
+import org.whitesource.agent.api.model.AgentProjectInfo;
+import org.whitesource.agent.api.model.Coordinates;
+import org.whitesource.agent.api.model.DependencyInfo;
+
+public class JsonCodecsTest {
+
+    @Test
+    public void shouldShareInstances() {
+        Assert.assertSame(JsonCodecs.compact(), JsonCodecs.compact());
+        Assert.assertSame(JsonCodecs.pretty(), JsonCodecs.pretty());
+        Assert.assertSame(JsonCodecs.omitEmpties(), JsonCodecs.omitEmpties());
+    }
+
+    @Test
+    public void shouldWriteLikeDefaultGson() {
+        AgentProjectInfo project = project();
+        Assert.assertEquals(new Gson().toJson(project), JsonCodecs.compact().toJson(project));
+        Assert.assertEquals(new GsonBuilder().setPrettyPrinting().create().toJson(project), JsonCodecs.pretty().toJson(project));
+    }
+
+    @Test
+    public void shouldOmitEmptiesAndExcludedFields() {
+        String json = JsonCodecs.omitEmpties().toJson(project());
+        Assert.assertTrue(json.contains("\"dependencies\""));
+        Assert.assertTrue(json.contains("\"sha1\": \"sha1\""));
+        Assert.assertFalse(json.contains("\"projectTags\""));
+        Assert.assertFalse(json.contains("\"children\""));
+        Assert.assertFalse(json.contains("\"checksums\""));
+        Assert.assertFalse(json.contains("\"optional\""));
+        Assert.assertFalse(json.contains("\"deduped\""));
+    }
+
+    private static AgentProjectInfo project() {
+        AgentProjectInfo project = new AgentProjectInfo();
+        project.setCoordinates(new Coordinates("group", "project", "1.0"));
+        DependencyInfo dependency = new DependencyInfo("sha1");
+        dependency.getChildren();
+        project.getDependencies().add(dependency);
+        return project;
+    }
+}
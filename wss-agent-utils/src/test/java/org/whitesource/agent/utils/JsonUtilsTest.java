@@ -3,12 +3,20 @@ package org.whitesource.agent.utils;
 import org.junit.Assert;
 import org.junit.Ignore;
 import org.junit.Test;
+import com.google.gson.Gson;
 import org.whitesource.agent.api.dispatch.UpdateInventoryRequest;
+import org.whitesource.agent.api.model.AgentProjectInfo;
+import org.whitesource.agent.api.model.Coordinates;
+import org.whitesource.agent.api.model.DependencyInfo;
 
-import java.io.File;
-import java.io.FileInputStream;
-import java.io.IOException;
+import java.io.*;
+import java.nio.charset.StandardCharsets;
 import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.NoSuchElementException;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
 
 public class JsonUtilsTest {
 
@@ -26,4 +34,119 @@ public class JsonUtilsTest {
             Assert.assertNull(e);
         }
     }
+
+    @Test
+    public void shouldIterateProjectsOfArrayAndRequest() throws IOException {
+        List<AgentProjectInfo> projects = projects(3, 2);
+        byte[] array = new Gson().toJson(projects).getBytes(StandardCharsets.UTF_8);
+        UpdateInventoryRequest request = new UpdateInventoryRequest("orgToken", projects);
+        request.setProduct("product");
+        byte[] requestJson = new Gson().toJson(request).getBytes(StandardCharsets.UTF_8);
+
+        for (byte[] json : new byte[][]{array, requestJson}) {
+            List<String> names = new ArrayList<>();
+            try (CloseableIterator<AgentProjectInfo> iterator = JsonUtils.iterateProjects(new ByteArrayInputStream(json))) {
+                while (iterator.hasNext()) {
+                    AgentProjectInfo project = iterator.next();
+                    Assert.assertEquals(2, project.getDependencies().size());
+                    names.add(project.getCoordinates().getArtifactId());
+                }
+                try {
+                    iterator.next();
+                    Assert.fail("Expected the iteration to end");
+                } catch (NoSuchElementException e) {
+                    // expected
+                }
+            }
+            Assert.assertEquals(3, names.size());
+            Assert.assertEquals("project-2", names.get(2));
+        }
+    }
+
+    @Test
+    public void shouldIterateRequestWithoutProjects() throws IOException {
+        byte[] json = "{\"orgToken\":\"token\",\"projects\":null}".getBytes(StandardCharsets.UTF_8);
+        try (CloseableIterator<AgentProjectInfo> iterator = JsonUtils.iterateProjects(new ByteArrayInputStream(json))) {
+            Assert.assertFalse(iterator.hasNext());
+        }
+        json = "{\"orgToken\":\"token\"}".getBytes(StandardCharsets.UTF_8);
+        try (CloseableIterator<AgentProjectInfo> iterator = JsonUtils.iterateProjects(new ByteArrayInputStream(json))) {
+            Assert.assertFalse(iterator.hasNext());
+        }
+    }
+
+    @Test
+    public void shouldReadLazily() throws IOException {
+        byte[] json = new Gson().toJson(projects(1, 20000).get(0).getDependencies()).getBytes(StandardCharsets.UTF_8);
+        CountingInputStream in = new CountingInputStream(new ByteArrayInputStream(json));
+        try (CloseableIterator<DependencyInfo> iterator = JsonUtils.iterateDependencies(in)) {
+            Assert.assertEquals("sha1-0", iterator.next().getSha1());
+            Assert.assertTrue(in.count < json.length / 10);
+        }
+        Assert.assertTrue(in.closed);
+    }
+
+    @Test
+    public void shouldStreamDependencies() throws IOException {
+        byte[] json = new Gson().toJson(projects(1, 100).get(0).getDependencies()).getBytes(StandardCharsets.UTF_8);
+        CountingInputStream in = new CountingInputStream(new ByteArrayInputStream(json));
+        try (Stream<DependencyInfo> dependencies = JsonUtils.streamDependencies(in)) {
+            List<String> sha1s = dependencies.filter(dependency -> dependency.getSha1().endsWith("7"))
+                    .map(DependencyInfo::getSha1).collect(Collectors.toList());
+            Assert.assertEquals(10, sha1s.size());
+        }
+        Assert.assertTrue(in.closed);
+    }
+
+    @Test
+    public void shouldShareStringsThroughPool() throws IOException {
+        byte[] json = new Gson().toJson(projects(3, 2)).getBytes(StandardCharsets.UTF_8);
+        List<AgentProjectInfo> projects = new ArrayList<>();
+        try (CloseableIterator<AgentProjectInfo> iterator = JsonUtils.iterateProjects(new ByteArrayInputStream(json), new StringPool())) {
+            iterator.forEachRemaining(projects::add);
+        }
+        Assert.assertEquals(3, projects.size());
+        Assert.assertSame(projects.get(0).getCoordinates().getGroupId(), projects.get(2).getCoordinates().getGroupId());
+        Assert.assertSame(projects.get(0).getCoordinates().getVersion(), projects.get(1).getCoordinates().getVersion());
+
+        try (CloseableIterator<AgentProjectInfo> iterator = JsonUtils.iterateProjects(new ByteArrayInputStream(json))) {
+            Assert.assertNotSame(iterator.next().getCoordinates().getGroupId(), iterator.next().getCoordinates().getGroupId());
+        }
+    }
+
+    private static List<AgentProjectInfo> projects(int count, int dependencies) {
+        List<AgentProjectInfo> projects = new ArrayList<>();
+        for (int i = 0; i < count; i++) {
+            AgentProjectInfo project = new AgentProjectInfo();
+            project.setCoordinates(new Coordinates("group", "project-" + i, "1.0"));
+            for (int j = 0; j < dependencies; j++) {
+                project.getDependencies().add(new DependencyInfo("sha1-" + j));
+            }
+            projects.add(project);
+        }
+        return projects;
+    }
+
+    private static class CountingInputStream extends FilterInputStream {
+
+        private long count;
+        private boolean closed;
+
+        CountingInputStream(InputStream in) {
+            super(in);
+        }
+
+        @Override
+        public int read(byte[] bytes, int offset, int length) throws IOException {
+            int read = super.read(bytes, offset, length);
+            count += Math.max(0, read);
+            return read;
+        }
+
+        @Override
+        public void close() throws IOException {
+            closed = true;
+            super.close();
+        }
+    }
 }
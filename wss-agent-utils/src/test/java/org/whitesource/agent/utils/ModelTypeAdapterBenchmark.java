@@ -0,0 +1,114 @@
+package org.whitesource.agent.utils;
+
+import com.google.gson.Gson;
+import com.google.gson.JsonParser;
+import org.whitesource.agent.api.dispatch.UpdateInventoryRequest;
+
+import java.io.*;
+import java.nio.charset.StandardCharsets;
+
+/**
+ * Compares the serialization and deserialization throughput of update inventory requests with Gson's reflective
+ * adapters and with the {@link ModelTypeAdapterFactory} adapters.
+ * <p>
+ * Usage: {@code ModelTypeAdapterBenchmark [megabytes=64] [iterations=5] [warmup=3]}
+ */
+public class ModelTypeAdapterBenchmark {
+
+    /* --- Main --- */
+
+    public static void main(String[] args) throws IOException {
+        int megabytes = 64;
+        int iterations = 5;
+        int warmup = 3;
+        for (String arg : args) {
+            String[] pair = arg.split("=", 2);
+            switch (pair[0]) {
+                case "megabytes":
+                    megabytes = Integer.parseInt(pair[1]);
+                    break;
+                case "iterations":
+                    iterations = Integer.parseInt(pair[1]);
+                    break;
+                case "warmup":
+                    warmup = Integer.parseInt(pair[1]);
+                    break;
+                default:
+                    throw new IllegalArgumentException("Unknown argument " + arg);
+            }
+        }
+
+        byte[] json = PayloadCodecBenchmark.inventoryJson(megabytes * 1024 * 1024);
+        Gson reflective = new Gson();
+        Gson model = ModelTypeAdapterFactory.newGsonBuilder().create();
+        UpdateInventoryRequest request = read(reflective, json);
+        // compared as trees, the adapters may write the fields in a different order
+        if (!JsonParser.parseString(reflective.toJson(request)).equals(JsonParser.parseString(model.toJson(request)))) {
+            throw new IllegalStateException("The adapters produce different JSON");
+        }
+
+        System.out.println(String.format("%d bytes of inventory JSON, best of %d", json.length, iterations));
+        System.out.println(String.format("%-12s %12s %12s", "adapters", "write MB/s", "read MB/s"));
+        for (Gson gson : new Gson[]{reflective, model}) {
+            for (int i = 0; i < warmup; i++) {
+                write(gson, request);
+                read(gson, json);
+            }
+            long bestWriteNanos = Long.MAX_VALUE;
+            long bestReadNanos = Long.MAX_VALUE;
+            for (int i = 0; i < iterations; i++) {
+                long start = System.nanoTime();
+                write(gson, request);
+                bestWriteNanos = Math.min(bestWriteNanos, System.nanoTime() - start);
+                start = System.nanoTime();
+                read(gson, json);
+                bestReadNanos = Math.min(bestReadNanos, System.nanoTime() - start);
+            }
+            System.out.println(String.format("%-12s %12.1f %12.1f", gson == model ? "model" : "reflective",
+                    megabytesPerSecond(json.length, bestWriteNanos), megabytesPerSecond(json.length, bestReadNanos)));
+        }
+    }
+
+    /* --- Private methods --- */
+
+    private static long write(Gson gson, UpdateInventoryRequest request) {
+        CountingWriter writer = new CountingWriter();
+        gson.toJson(request, writer);
+        return writer.count;
+    }
+
+    private static UpdateInventoryRequest read(Gson gson, byte[] json) throws IOException {
+        try (Reader reader = new InputStreamReader(new ByteArrayInputStream(json), StandardCharsets.UTF_8)) {
+            return gson.fromJson(reader, UpdateInventoryRequest.class);
+        }
+    }
+
+    private static double megabytesPerSecond(long bytes, long nanos) {
+        return bytes / (1024.0 * 1024.0) / (nanos / 1e9);
+    }
+
+    /* --- Nested classes --- */
+
+    private static class CountingWriter extends Writer {
+
+        private long count;
+
+        @Override
+        public void write(char[] chars, int offset, int length) {
+            count += length;
+        }
+
+        @Override
+        public void write(String string, int offset, int length) {
+            count += length;
+        }
+
+        @Override
+        public void flush() {
+        }
+
+        @Override
+        public void close() {
+        }
+    }
+}
@@ -0,0 +1,164 @@
+package org.whitesource.agent.utils;
+
+import com.google.gson.Gson;
+import com.google.gson.GsonBuilder;
+import com.google.gson.reflect.TypeToken;
+import org.junit.Assert;
+import org.junit.Test;
+import org.whitesource.agent.api.dispatch.UpdateInventoryRequest;
+import org.whitesource.agent.api.model.*;
+
+import java.lang.reflect.Type;
+import java.util.*;
+
+public class ModelTypeAdapterFactoryTest {
+
+    private static final Type RESOURCES_TYPE = new TypeToken<List<ResourceInfo>>() {}.getType();
+
+    @Test
+    public void shouldWriteSameJsonAsReflectiveAdapters() {
+        UpdateInventoryRequest request = request();
+        List<ResourceInfo> resources = resources();
+        for (GsonBuilder[] builders : builders()) {
+            Gson reflective = builders[0].create();
+            Gson model = builders[1].create();
+            Assert.assertSame(ModelTypeAdapterFactory.class, model.getAdapter(DependencyInfo.class).getClass().getEnclosingClass());
+            Assert.assertEquals(reflective.toJson(request), model.toJson(request));
+            Assert.assertEquals(reflective.toJson(resources, RESOURCES_TYPE), model.toJson(resources, RESOURCES_TYPE));
+        }
+    }
+
+    @Test
+    public void shouldReadSameObjectsAsReflectiveAdapters() {
+        Gson reflective = new Gson();
+        Gson model = ModelTypeAdapterFactory.newGsonBuilder().create();
+        String json = reflective.toJson(request());
+        Assert.assertEquals(json, reflective.toJson(model.fromJson(json, UpdateInventoryRequest.class)));
+
+        String resources = reflective.toJson(resources(), RESOURCES_TYPE);
+        Assert.assertEquals(resources, reflective.toJson(model.fromJson(resources, RESOURCES_TYPE), RESOURCES_TYPE));
+    }
+
+    @Test
+    public void shouldReadLikeReflectiveAdapters() {
+        // out of order fields, unknown fields, nulls and values of other JSON types
+        String json = "{\"unknown\":{\"a\":[1,2]},\"checksums\":{\"MD5\":\"md5\"},\"sha1\":\"sha1\",\"fullHash\":\"hash\"," +
+                "\"version\":1.5,\"optional\":\"true\",\"isModule\":null,\"deduped\":true,\"children\":null," +
+                "\"groupId\":true,\"dependencyType\":\"NOT_A_TYPE\"}";
+        Gson reflective = new Gson();
+        Gson model = ModelTypeAdapterFactory.newGsonBuilder().create();
+        DependencyInfo expected = reflective.fromJson(json, DependencyInfo.class);
+        DependencyInfo actual = model.fromJson(json, DependencyInfo.class);
+        Assert.assertEquals(reflective.toJson(expected), reflective.toJson(actual));
+        Assert.assertEquals(Collections.singletonMap(ChecksumType.MD5, "md5"), actual.getChecksums());
+
+        // setters which add checksums must not add any the JSON doesn't have
+        DependencyInfo withoutChecksums = model.fromJson("{\"sha1\":\"sha1\",\"additionalSha1\":\"other\"}", DependencyInfo.class);
+        Assert.assertFalse(withoutChecksums.hasChecksum());
+        Assert.assertNull(model.fromJson("null", DependencyInfo.class));
+    }
+
+    @Test
+    public void shouldLeaveSubclassesToReflectiveAdapters() {
+        Gson model = ModelTypeAdapterFactory.newGsonBuilder().create();
+        AgentProjectInfo project = new AgentProjectInfo();
+        project.getDependencies().add(new TaggedDependencyInfo("sha1", "tag"));
+        Assert.assertEquals(new Gson().toJson(project), model.toJson(project));
+        Assert.assertTrue(model.toJson(project).contains("\"tag\":\"tag\""));
+    }
+
+    private static List<GsonBuilder[]> builders() {
+        List<GsonBuilder[]> builders = new ArrayList<>();
+        builders.add(new GsonBuilder[]{new GsonBuilder(), ModelTypeAdapterFactory.newGsonBuilder()});
+        builders.add(new GsonBuilder[]{new GsonBuilder().setPrettyPrinting(), ModelTypeAdapterFactory.newGsonBuilder().setPrettyPrinting()});
+        builders.add(new GsonBuilder[]{new GsonBuilder().serializeNulls(), ModelTypeAdapterFactory.newGsonBuilder().serializeNulls()});
+        builders.add(new GsonBuilder[]{new GsonBuilder().disableHtmlEscaping(), ModelTypeAdapterFactory.newGsonBuilder().disableHtmlEscaping()});
+        return builders;
+    }
+
+    static UpdateInventoryRequest request() {
+        AgentProjectInfo project = new AgentProjectInfo();
+        project.setCoordinates(new Coordinates("group", "project", "1.0"));
+        project.setParentCoordinates(new Coordinates(null, "parent", null));
+        project.setProjectToken("token");
+        project.setProjectSetupStatus(ProjectSetupStatus.values()[0]);
+        project.setProjectSetupDescription("<setup> & \"description\"");
+        project.setProjectTags(new LinkedHashSet<>(Arrays.asList(new ProjectTag("key", "value"), new ProjectTag("other", null))));
+        project.setViaLanguageName("java");
+
+        DependencyInfo dependency = new DependencyInfo("group", "artifact", "1.0");
+        dependency.setType("jar");
+        dependency.setClassifier("sources");
+        dependency.setScope("compile");
+        dependency.setSha1("sha1");
+        dependency.setFullHash("fullHash");
+        dependency.setCommentlessSha1("commentless");
+        dependency.setNoNewLinesSha1("noNewLines");
+        dependency.setOtherPlatformSha1("otherPlatform");
+        dependency.setSystemPath("C:\\path\\artifact-1.0.jar");
+        dependency.setIsModule(true);
+        dependency.setOptional(true);
+        dependency.setLastModified(new Date(1500000000000L));
+        dependency.setFilename("artifact-1.0.jar");
+        dependency.setDependencyType(DependencyType.MAVEN);
+        DependencyHintsInfo hints = new DependencyHintsInfo();
+        hints.setCompanyName("company");
+        dependency.setHints(hints);
+        dependency.setCommit("commit");
+        dependency.setDependencyFile("pom.xml");
+        dependency.setAdditionalSha1("additional");
+        dependency.setArchitecture("x86_64");
+        dependency.setLanguageVersion("1.8");
+        dependency.setDeduped(true);
+        OSInfo osInfo = new OSInfo();
+        osInfo.setId("alpine");
+        dependency.setOsInfo(osInfo);
+        dependency.initAnalysisInputs();
+        dependency.setSourcePackageName("source");
+        dependency.setRelease("r1");
+        dependency.setPurl("pkg:maven/group/artifact@1.0");
+
+        DependencyInfo child = new DependencyInfo("child");
+        child.getChildren().add(new DependencyInfo("grandchild"));
+        child.getChildren().add(null);
+        dependency.getChildren().add(child);
+        dependency.getChildren().add(new DependencyInfo());
+
+        project.getDependencies().add(dependency);
+        project.getDependencies().add(new DependencyInfo("\u00e9t\u00e9 \u2028 \"quoted\""));
+        return new UpdateInventoryRequest("orgToken", new ArrayList<>(Collections.singletonList(project)));
+    }
+
+    private static List<ResourceInfo> resources() {
+        ResourceInfo resource = new ResourceInfo("artifact-1.0.jar");
+        resource.setLink("https://example.com/artifact?a=1&b=2");
+        resource.getLicenses().add("Apache 2.0");
+        resource.getLicenses().add(null);
+        resource.setSha1("sha1");
+        VulnerabilityInfo vulnerability = new VulnerabilityInfo();
+        vulnerability.setName("CVE-2020-0001");
+        vulnerability.setSeverity("high");
+        vulnerability.setScore(7.1f);
+        vulnerability.getElements().add("element");
+        vulnerability.getVulnerableEntities().add(new VulnerableEntity("element", 1, 2));
+        resource.getVulnerabilities().add(vulnerability);
+        resource.getVulnerabilities().add(new VulnerabilityInfo());
+        resource.getIgnoredVulnerabilities().add("CVE-2019-0001");
+        resource.setHomepageUrl("https://example.com");
+        resource.setDescription("description");
+        resource.setKeyUuid("uuid");
+        resource.setSystemPath("/path");
+        resource.setManifestFileSystemPath("/path/pom.xml");
+        return Arrays.asList(resource, new ResourceInfo(), null);
+    }
+
+    private static class TaggedDependencyInfo extends DependencyInfo {
+
+        private final String tag;
+
+        TaggedDependencyInfo(String sha1, String tag) {
+            super(sha1);
+            this.tag = tag;
+        }
+    }
+}
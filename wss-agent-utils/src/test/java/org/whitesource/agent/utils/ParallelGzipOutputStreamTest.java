@@ -0,0 +1,129 @@
+package org.whitesource.agent.utils;
+
+import org.junit.AfterClass;
+import org.junit.Assert;
+import org.junit.BeforeClass;
+import org.junit.Test;
+
+import java.io.*;
+import java.util.Random;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.zip.Deflater;
+import java.util.zip.GZIPInputStream;
+import java.util.zip.GZIPOutputStream;
+
+public class ParallelGzipOutputStreamTest {
+
+    /* --- Static members --- */
+
+    private static final int BLOCK_SIZE = 4096;
+
+    private static ExecutorService executor;
+
+    /* --- Life cycle methods --- */
+
+    @BeforeClass
+    public static void setUpClass() {
+        executor = Executors.newFixedThreadPool(4);
+    }
+
+    @AfterClass
+    public static void tearDownClass() {
+        executor.shutdownNow();
+    }
+
+    /* --- Test methods --- */
+
+    @Test
+    public void shouldBeReadableByGzipInputStream() throws IOException {
+        int[] sizes = {0, 1, BLOCK_SIZE - 1, BLOCK_SIZE, BLOCK_SIZE + 1, 7 * BLOCK_SIZE / 2, 100 * BLOCK_SIZE};
+        for (int size : sizes) {
+            byte[] input = text(size);
+            Assert.assertArrayEquals("size " + size, input, gunzip(parallelGzip(input, 2)));
+        }
+        byte[] random = new byte[20 * BLOCK_SIZE];
+        new Random(3).nextBytes(random);
+        Assert.assertArrayEquals(random, gunzip(parallelGzip(random, 2)));
+    }
+
+    @Test
+    public void shouldKeepDictionaryAcrossBlocks() throws IOException {
+        byte[] input = text(100 * BLOCK_SIZE);
+        ByteArrayOutputStream serial = new ByteArrayOutputStream();
+        try (OutputStream out = new GZIPOutputStream(serial)) {
+            out.write(input);
+        }
+        // without the previous block as dictionary every block would start compressing from scratch
+        Assert.assertTrue(parallelGzip(input, 2).length < serial.size() * 1.1);
+    }
+
+    @Test
+    public void shouldBoundPendingBlocks() throws IOException {
+        byte[] input = text(50 * BLOCK_SIZE);
+        ByteArrayOutputStream compressed = new ByteArrayOutputStream();
+        try (OutputStream out = new ParallelGzipOutputStream(compressed, executor, BLOCK_SIZE, Deflater.BEST_SPEED, 1)) {
+            // single bytes go through the same path as arrays
+            for (int i = 0; i < BLOCK_SIZE; i++) {
+                out.write(input[i]);
+            }
+            out.write(input, BLOCK_SIZE, input.length - BLOCK_SIZE);
+        }
+        Assert.assertArrayEquals(input, gunzip(compressed.toByteArray()));
+    }
+
+    @Test
+    public void shouldCompressStringInParallel() throws IOException {
+        String text = new String(text(1024 * 1024), "UTF-8") + "\u05e9\u05dc\u05d5\u05dd";
+        Assert.assertEquals(text, ZipUtils.decompressString(ZipUtils.compressString(text, true)));
+        Assert.assertEquals("", ZipUtils.decompressString(ZipUtils.compressString("", true)));
+    }
+
+    @Test(expected = IOException.class)
+    public void shouldRejectWritesAfterFinish() throws IOException {
+        ParallelGzipOutputStream out = new ParallelGzipOutputStream(new ByteArrayOutputStream());
+        out.finish();
+        out.write(1);
+    }
+
+    /* --- Private methods --- */
+
+    private byte[] parallelGzip(byte[] input, int maxPendingBlocks) throws IOException {
+        ByteArrayOutputStream compressed = new ByteArrayOutputStream();
+        try (OutputStream out = new ParallelGzipOutputStream(compressed, executor, BLOCK_SIZE, Deflater.DEFAULT_COMPRESSION, maxPendingBlocks)) {
+            out.write(input);
+        }
+        return compressed.toByteArray();
+    }
+
+    private byte[] gunzip(byte[] compressed) throws IOException {
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        try (InputStream in = new GZIPInputStream(new ByteArrayInputStream(compressed))) {
+            byte[] buffer = new byte[8192];
+            int len;
+            while ((len = in.read(buffer)) > 0) {
+                out.write(buffer, 0, len);
+            }
+        }
+        return out.toByteArray();
+    }
+
+    /**
+     * @return Compressible JSON like text of the given length.
+     */
+    static byte[] text(int length) {
+        StringBuilder text = new StringBuilder(length + 100);
+        Random random = new Random(length);
+        while (text.length() < length) {
+            text.append("{\"groupId\":\"org.example").append(random.nextInt(50))
+                    .append("\",\"artifactId\":\"library-").append(random.nextInt(1000))
+                    .append("\",\"sha1\":\"").append(Long.toHexString(random.nextLong())).append("\"},");
+        }
+        text.setLength(length);
+        try {
+            return text.toString().getBytes("UTF-8");
+        } catch (UnsupportedEncodingException e) {
+            throw new IllegalStateException(e);
+        }
+    }
+}
@@ -0,0 +1,184 @@
+package org.whitesource.agent.utils;
+
+import com.google.gson.Gson;
+import org.whitesource.agent.api.dispatch.UpdateInventoryRequest;
+import org.whitesource.agent.api.model.AgentProjectInfo;
+import org.whitesource.agent.api.model.ChecksumType;
+import org.whitesource.agent.api.model.Coordinates;
+import org.whitesource.agent.api.model.DependencyInfo;
+import org.whitesource.agent.api.model.DependencyType;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Random;
+
+/**
+ * Compares the throughput and compression ratio of the {@link PayloadCodec}s, including parallel gzip, on
+ * update inventory JSON.
+ * <p>
+ * The JSON is either read from a file, such as an offline update request (zipped or not), or generated from
+ * Maven like dependency trees.
+ * <p>
+ * Usage: {@code PayloadCodecBenchmark [megabytes=64] [iterations=5] [warmup=2] [file=update-request.txt]
+ * [codecs=gzip:1,gzip,gzip:9,...]}
+ */
+public class PayloadCodecBenchmark {
+
+    /* --- Static members --- */
+
+    private static final int WRITE_SIZE = 64 * 1024;
+
+    /* --- Main --- */
+
+    public static void main(String[] args) throws IOException {
+        int megabytes = 64;
+        int iterations = 5;
+        int warmup = 2;
+        String file = null;
+        List<String> specs = new ArrayList<>();
+        for (String arg : args) {
+            String[] pair = arg.split("=", 2);
+            switch (pair[0]) {
+                case "megabytes":
+                    megabytes = Integer.parseInt(pair[1]);
+                    break;
+                case "iterations":
+                    iterations = Integer.parseInt(pair[1]);
+                    break;
+                case "warmup":
+                    warmup = Integer.parseInt(pair[1]);
+                    break;
+                case "file":
+                    file = pair[1];
+                    break;
+                case "codecs":
+                    Collections.addAll(specs, pair[1].split(","));
+                    break;
+                default:
+                    throw new IllegalArgumentException("Unknown argument " + arg);
+            }
+        }
+        if (specs.isEmpty()) {
+            Collections.addAll(specs, "gzip:1", "gzip:6", "gzip:9", "deflate:1", "deflate:6", "deflate:9");
+            if (ZstdPayloadCodec.isAvailable()) {
+                Collections.addAll(specs, "zstd:1", "zstd:3", "zstd:9");
+            }
+        }
+
+        byte[] input = file == null ? inventoryJson(megabytes * 1024 * 1024) : readJson(file);
+        System.out.println(String.format("%d bytes of inventory JSON, best of %d", input.length, iterations));
+        System.out.println(String.format("%-16s %12s %12s %8s", "codec", "MB/s", "compressed", "ratio"));
+        List<PayloadCodec> codecs = new ArrayList<>();
+        for (String spec : specs) {
+            codecs.add(PayloadCodecs.forName(spec));
+        }
+        codecs.add(PayloadCodecs.gzip().withParallel(true));
+        for (PayloadCodec codec : codecs) {
+            for (int i = 0; i < warmup; i++) {
+                compress(input, codec);
+            }
+            long bestNanos = Long.MAX_VALUE;
+            long compressedBytes = 0;
+            for (int i = 0; i < iterations; i++) {
+                long start = System.nanoTime();
+                compressedBytes = compress(input, codec);
+                bestNanos = Math.min(bestNanos, System.nanoTime() - start);
+            }
+            double megabytesPerSecond = input.length / (1024.0 * 1024.0) / (bestNanos / 1e9);
+            String name = codec instanceof GzipPayloadCodec && ((GzipPayloadCodec) codec).isParallel() ? codec + " parallel" : codec.toString();
+            System.out.println(String.format("%-16s %12.1f %12d %8.3f", name, megabytesPerSecond, compressedBytes,
+                    (double) compressedBytes / input.length));
+        }
+    }
+
+    /* --- Private methods --- */
+
+    private static long compress(byte[] input, PayloadCodec codec) throws IOException {
+        CountingOutputStream counter = new CountingOutputStream();
+        try (OutputStream out = codec.newOutputStream(counter)) {
+            for (int offset = 0; offset < input.length; offset += WRITE_SIZE) {
+                out.write(input, offset, Math.min(WRITE_SIZE, input.length - offset));
+            }
+        }
+        return counter.count;
+    }
+
+    private static byte[] readJson(String file) throws IOException {
+        String content = new String(Files.readAllBytes(Paths.get(file)), StandardCharsets.UTF_8).trim();
+        // zipped offline requests are base64 encoded gzip
+        return (content.startsWith("{") ? content : ZipUtils.decompressString(content)).getBytes(StandardCharsets.UTF_8);
+    }
+
+    /**
+     * @return Update inventory request JSON of about the given size, with dependency trees shaped like Maven projects.
+     */
+    static byte[] inventoryJson(int length) {
+        Random random = new Random(length);
+        List<AgentProjectInfo> projects = new ArrayList<>();
+        long size = 0;
+        while (size < length) {
+            AgentProjectInfo project = new AgentProjectInfo();
+            project.setCoordinates(new Coordinates("com.example.team" + random.nextInt(20), "service-" + projects.size(), "1.0." + random.nextInt(10)));
+            for (int i = 0; i < 200; i++) {
+                DependencyInfo dependency = dependency(random);
+                for (int j = random.nextInt(6); j > 0; j--) {
+                    dependency.getChildren().add(dependency(random));
+                }
+                project.getDependencies().add(dependency);
+            }
+            projects.add(project);
+            size = new Gson().toJson(project).length() * (long) projects.size();
+        }
+        UpdateInventoryRequest request = new UpdateInventoryRequest("orgToken", projects);
+        return new Gson().toJson(request).getBytes(StandardCharsets.UTF_8);
+    }
+
+    private static DependencyInfo dependency(Random random) {
+        int library = random.nextInt(5000);
+        String groupId = "org.library" + library % 300;
+        String artifactId = "library-" + library;
+        String version = random.nextInt(5) + "." + random.nextInt(20) + "." + random.nextInt(10);
+        DependencyInfo dependency = new DependencyInfo(groupId, artifactId, version);
+        dependency.setSha1(sha1(random));
+        dependency.setType("jar");
+        dependency.setScope(random.nextInt(4) == 0 ? "test" : "compile");
+        dependency.setFilename(artifactId + "-" + version + ".jar");
+        dependency.setSystemPath("/home/build/.m2/repository/" + groupId.replace('.', '/') + "/" + artifactId + "/" + version
+                + "/" + dependency.getFilename());
+        dependency.setDependencyType(DependencyType.MAVEN);
+        dependency.getChecksums().put(ChecksumType.SHA1_OTHER_PLATFORM, sha1(random));
+        return dependency;
+    }
+
+    private static String sha1(Random random) {
+        StringBuilder sha1 = new StringBuilder(40);
+        while (sha1.length() < 40) {
+            sha1.append(Long.toHexString(random.nextLong() | Long.MIN_VALUE));
+        }
+        sha1.setLength(40);
+        return sha1.toString();
+    }
+
+    /* --- Nested classes --- */
+
+    private static class CountingOutputStream extends OutputStream {
+
+        private long count;
+
+        @Override
+        public void write(int b) {
+            count++;
+        }
+
+        @Override
+        public void write(byte[] bytes, int offset, int length) {
+            count += length;
+        }
+    }
+}
@@ -0,0 +1,111 @@
+package org.whitesource.agent.utils;
+
+import org.junit.Assert;
+import org.junit.Assume;
+import org.junit.Test;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+
+public class PayloadCodecsTest {
+
+    @Test
+    public void shouldParseCodecNames() {
+        Assert.assertSame(PayloadCodecs.gzip(), PayloadCodecs.forName(null));
+        Assert.assertSame(PayloadCodecs.gzip(), PayloadCodecs.forName(" GZIP "));
+        PayloadCodec codec = PayloadCodecs.forName("gzip:9");
+        Assert.assertEquals(GzipPayloadCodec.NAME, codec.getName());
+        Assert.assertEquals(9, codec.getLevel());
+        codec = PayloadCodecs.forName("deflate : 1");
+        Assert.assertEquals(DeflatePayloadCodec.NAME, codec.getContentEncoding());
+        Assert.assertEquals(1, codec.getLevel());
+        Assert.assertTrue(PayloadCodecs.getAvailableNames().contains(DeflatePayloadCodec.NAME));
+    }
+
+    @Test
+    public void shouldRejectInvalidCodecs() {
+        for (String spec : new String[]{"lz4", "gzip:fast", "gzip:10", "deflate:-2"}) {
+            try {
+                PayloadCodecs.forName(spec);
+                Assert.fail("Expected " + spec + " to be rejected");
+            } catch (IllegalArgumentException e) {
+                // expected
+            }
+        }
+    }
+
+    @Test
+    public void shouldRoundTripAllCodecs() throws IOException {
+        byte[] input = ParallelGzipOutputStreamTest.text(300000);
+        for (String spec : new String[]{"gzip", "gzip:0", "gzip:1", "gzip:9", "deflate", "deflate:1", "deflate:9"}) {
+            PayloadCodec codec = PayloadCodecs.forName(spec);
+            Assert.assertArrayEquals(spec, input, decompress(codec, compress(codec, input)));
+        }
+        GzipPayloadCodec parallel = PayloadCodecs.gzip().withParallel(true).withLevel(1);
+        Assert.assertTrue(parallel.isParallel());
+        Assert.assertArrayEquals(input, decompress(parallel, compress(parallel, input)));
+    }
+
+    @Test
+    public void shouldTradeSpeedForRatio() throws IOException {
+        byte[] input = ParallelGzipOutputStreamTest.text(300000);
+        int fast = compress(PayloadCodecs.forName("gzip:1"), input).length;
+        int best = compress(PayloadCodecs.forName("gzip:9"), input).length;
+        int stored = compress(PayloadCodecs.forName("gzip:0"), input).length;
+        Assert.assertTrue(best <= fast);
+        Assert.assertTrue(fast < stored);
+        // no gzip header and a shorter trailer
+        Assert.assertTrue(compress(new DeflatePayloadCodec(), input).length < compress(PayloadCodecs.gzip(), input).length);
+    }
+
+    @Test
+    public void shouldCompressStringsWithCodecs() throws IOException {
+        String text = "{\"sha1\":\"caf\u00e9\"}";
+        Assert.assertEquals(ZipUtils.compressString(text), ZipUtils.compressString(text, PayloadCodecs.gzip()));
+        String deflated = ZipUtils.compressString(text, new DeflatePayloadCodec(9));
+        Assert.assertEquals(text, ZipUtils.decompressString(deflated, new DeflatePayloadCodec()));
+    }
+
+    @Test
+    public void shouldRoundTripZstdIfAvailable() throws IOException {
+        Assume.assumeTrue(ZstdPayloadCodec.isAvailable());
+        byte[] input = ParallelGzipOutputStreamTest.text(300000);
+        PayloadCodec codec = PayloadCodecs.forName("zstd");
+        Assert.assertArrayEquals(input, decompress(codec, compress(codec, input)));
+    }
+
+    @Test
+    public void shouldFailWithoutZstdLibrary() {
+        Assume.assumeFalse(ZstdPayloadCodec.isAvailable());
+        Assert.assertFalse(PayloadCodecs.getAvailableNames().contains(ZstdPayloadCodec.NAME));
+        try {
+            new ZstdPayloadCodec().newOutputStream(new ByteArrayOutputStream());
+            Assert.fail("Expected the codec to be unavailable");
+        } catch (IOException e) {
+            // expected
+        }
+    }
+
+    static byte[] compress(PayloadCodec codec, byte[] input) throws IOException {
+        ByteArrayOutputStream compressed = new ByteArrayOutputStream();
+        try (OutputStream out = codec.newOutputStream(compressed)) {
+            out.write(input);
+        }
+        return compressed.toByteArray();
+    }
+
+    static byte[] decompress(PayloadCodec codec, byte[] compressed) throws IOException {
+        ByteArrayOutputStream decompressed = new ByteArrayOutputStream();
+        try (InputStream in = codec.newInputStream(new ByteArrayInputStream(compressed))) {
+            byte[] buffer = new byte[8192];
+            int len;
+            while ((len = in.read(buffer)) > 0) {
+                decompressed.write(buffer, 0, len);
+            }
+        }
+        return decompressed.toByteArray();
+    }
+}
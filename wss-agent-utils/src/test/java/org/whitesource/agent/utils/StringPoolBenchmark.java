@@ -0,0 +1,80 @@
+package org.whitesource.agent.utils;
+
+import org.whitesource.agent.api.model.AgentProjectInfo;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Compares the heap retained by a fully read inventory, and the time to read it, with and without a
+ * {@link StringPool}.
+ * <p>
+ * Usage: {@code StringPoolBenchmark [megabytes=64] [iterations=3]}, best run with a fixed heap such as
+ * {@code -Xms2g -Xmx2g}.
+ */
+public class StringPoolBenchmark {
+
+    /* --- Static members --- */
+
+    // keeps the projects read reachable while the heap is measured
+    private static List<AgentProjectInfo> retainedProjects;
+
+    /* --- Main --- */
+
+    public static void main(String[] args) throws IOException {
+        int megabytes = 64;
+        int iterations = 3;
+        for (String arg : args) {
+            String[] pair = arg.split("=", 2);
+            switch (pair[0]) {
+                case "megabytes":
+                    megabytes = Integer.parseInt(pair[1]);
+                    break;
+                case "iterations":
+                    iterations = Integer.parseInt(pair[1]);
+                    break;
+                default:
+                    throw new IllegalArgumentException("Unknown argument " + arg);
+            }
+        }
+
+        byte[] json = PayloadCodecBenchmark.inventoryJson(megabytes * 1024 * 1024);
+        System.out.println(String.format("%d bytes of inventory JSON, best of %d", json.length, iterations));
+        System.out.println(String.format("%-12s %12s %14s", "strings", "read ms", "retained MB"));
+        for (boolean pooled : new boolean[]{false, true, false, true}) {
+            long bestNanos = Long.MAX_VALUE;
+            long retained = 0;
+            for (int i = 0; i < iterations; i++) {
+                long start = System.nanoTime();
+                retainedProjects = read(json, pooled ? new StringPool() : null);
+                bestNanos = Math.min(bestNanos, System.nanoTime() - start);
+                // measured as the heap the projects release, which ignores any other leftovers
+                long used = usedMemory();
+                retainedProjects = null;
+                retained = used - usedMemory();
+            }
+            System.out.println(String.format("%-12s %12d %14.1f", pooled ? "pooled" : "plain",
+                    bestNanos / 1000000, retained / (1024.0 * 1024.0)));
+        }
+    }
+
+    /* --- Private methods --- */
+
+    private static List<AgentProjectInfo> read(byte[] json, StringPool stringPool) throws IOException {
+        List<AgentProjectInfo> projects = new ArrayList<>();
+        try (CloseableIterator<AgentProjectInfo> iterator = JsonUtils.iterateProjects(new ByteArrayInputStream(json), stringPool)) {
+            iterator.forEachRemaining(projects::add);
+        }
+        return projects;
+    }
+
+    private static long usedMemory() {
+        Runtime runtime = Runtime.getRuntime();
+        for (int i = 0; i < 3; i++) {
+            System.gc();
+        }
+        return runtime.totalMemory() - runtime.freeMemory();
+    }
+}
@@ -0,0 +1,38 @@
+package org.whitesource.agent.utils;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+public class StringPoolTest {
+
+    @Test
+    public void shouldReturnPooledInstance() {
+        StringPool pool = new StringPool();
+        String first = pool.intern(new String("compile"));
+        Assert.assertSame(first, pool.intern(new String("compile")));
+        Assert.assertEquals("compile", first);
+        Assert.assertNull(pool.intern(null));
+        Assert.assertEquals(1, pool.size());
+    }
+
+    @Test
+    public void shouldSkipLongStrings() {
+        StringPool pool = new StringPool(10, 4);
+        String value = new String("12345");
+        Assert.assertSame(value, pool.intern(value));
+        Assert.assertNotSame(value, pool.intern(new String("12345")));
+        Assert.assertEquals(0, pool.size());
+    }
+
+    @Test
+    public void shouldStayBounded() {
+        StringPool pool = new StringPool(100, StringPool.DEFAULT_MAX_LENGTH);
+        for (int i = 0; i < 1000; i++) {
+            pool.intern("value-" + i);
+            Assert.assertTrue(pool.size() <= 100);
+        }
+        // repeating strings are pooled again after the pool starts over
+        String value = pool.intern(new String("value-0"));
+        Assert.assertSame(value, pool.intern(new String("value-0")));
+    }
+}
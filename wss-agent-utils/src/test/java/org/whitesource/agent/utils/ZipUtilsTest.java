@@ -1,5 +1,6 @@
 package org.whitesource.agent.utils;
 
+import org.apache.commons.codec.binary.Base64;
 import org.junit.Assert;
 import org.junit.Ignore;
 import org.junit.Test;
@@ -7,15 +8,159 @@ import org.whitesource.agent.api.dispatch.UpdateInventoryRequest;
 import org.whitesource.agent.api.model.AgentProjectInfo;
 
 import java.io.*;
+import java.nio.charset.StandardCharsets;
 import java.nio.file.Files;
 import java.nio.file.Path;
 import java.nio.file.Paths;
+import java.util.ArrayList;
 import java.util.List;
+import java.util.Random;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.zip.GZIPOutputStream;
 
 public class ZipUtilsTest {
 
     private static final String JAVA_TEMP_DIR = System.getProperty("java.io.tmpdir");
 
+    @Test
+    public void shouldMatchLegacyCompression() throws IOException {
+        StringBuilder large = new StringBuilder();
+        for (int i = 0; i < 50000; i++) {
+            large.append("{\"sha1\":\"").append(Integer.toHexString(i * 31)).append("\",\"name\":\"lib-").append(i % 97).append("\"},");
+        }
+        String[] inputs = {"", "a", "ab", "abc", "1234567890qwertyuiop", "\u05e9\u05dc\u05d5\u05dd \ud83d\ude00 caf\u00e9", large.toString()};
+        for (String input : inputs) {
+            String compressed = ZipUtils.compressString(input);
+            if (!input.isEmpty()) {
+                Assert.assertEquals(ZipUtils.compress(input), compressed);
+            }
+            Assert.assertEquals(input, ZipUtils.decompressString(compressed));
+        }
+        Assert.assertNull(ZipUtils.compressString(null));
+        Assert.assertNull(ZipUtils.decompressString(null));
+    }
+
+    @Test
+    public void shouldDecodeLeniently() throws IOException {
+        String input = "line one\nline two\n";
+        ByteArrayOutputStream gzip = new ByteArrayOutputStream();
+        try (OutputStream out = new GZIPOutputStream(gzip)) {
+            out.write(input.getBytes(StandardCharsets.UTF_8));
+        }
+        // line breaks, as written by MIME encoders, and the URL safe alphabet
+        Assert.assertEquals(input, ZipUtils.decompressString(new String(Base64.encodeBase64Chunked(gzip.toByteArray()), StandardCharsets.US_ASCII)));
+        Assert.assertEquals(input, ZipUtils.decompressString(Base64.encodeBase64URLSafeString(gzip.toByteArray())));
+    }
+
+    @Test(expected = IOException.class)
+    public void shouldFailOnInvalidData() throws IOException {
+        ZipUtils.decompressString(Base64.encodeBase64String("not gzip".getBytes(StandardCharsets.UTF_8)));
+    }
+
+    @Test
+    public void shouldCompressAndDecompressStreams() throws IOException {
+        byte[] input = new byte[100000];
+        new Random(7).nextBytes(input);
+
+        ByteArrayOutputStream compressed = new ByteArrayOutputStream();
+        ZipUtils.compressString(new ByteArrayInputStream(input), compressed);
+        Assert.assertEquals(Base64.encodeBase64String(gzip(input)), new String(compressed.toByteArray(), StandardCharsets.US_ASCII));
+
+        ByteArrayOutputStream decompressed = new ByteArrayOutputStream();
+        ZipUtils.decompressString(new ByteArrayInputStream(compressed.toByteArray()), decompressed);
+        Assert.assertArrayEquals(input, decompressed.toByteArray());
+    }
+
+    @Test
+    public void shouldFinishWithoutClosing() throws IOException {
+        ByteArrayOutputStream out = new ByteArrayOutputStream() {
+            @Override
+            public void close() {
+                Assert.fail("Underlying stream should stay open");
+            }
+        };
+        Base64GzipOutputStream stream = new Base64GzipOutputStream(out);
+        stream.write("finish".getBytes(StandardCharsets.UTF_8));
+        stream.finish();
+        Assert.assertEquals("finish", ZipUtils.decompressString(out.toString("US-ASCII")));
+    }
+
+    @Test
+    public void shouldCompressAndDecompressChunksInMemory() throws IOException {
+        StringBuilder large = new StringBuilder();
+        for (int i = 0; i < 40000; i++) {
+            // multi byte characters straddle the buffer boundaries
+            large.append("caf\u00e9 \ud83d\ude00 ").append(i);
+        }
+        String input = large.toString();
+        String compressed = ZipUtils.compressChunks(input);
+        Assert.assertEquals(ZipUtils.compress(input), compressed);
+
+        ByteArrayOutputStream decompressed = new ByteArrayOutputStream();
+        ZipUtils.decompressChunks(compressed, decompressed);
+        Assert.assertEquals(input, new String(decompressed.toByteArray(), StandardCharsets.UTF_8));
+
+        ByteArrayOutputStream raw = new ByteArrayOutputStream();
+        ZipUtils.decompressChunks(new ByteArrayInputStream(Base64.decodeBase64(compressed)), raw);
+        Assert.assertEquals(input, new String(raw.toByteArray(), StandardCharsets.UTF_8));
+
+        Assert.assertEquals("", ZipUtils.compressChunks(""));
+        Assert.assertNull(ZipUtils.compressChunks(null));
+    }
+
+    @Test
+    public void shouldReadConcatenatedMembers() throws IOException {
+        ByteArrayOutputStream members = new ByteArrayOutputStream();
+        members.write(gzip("first ".getBytes(StandardCharsets.UTF_8)));
+        members.write(gzip("second".getBytes(StandardCharsets.UTF_8)));
+        ByteArrayOutputStream decompressed = new ByteArrayOutputStream();
+        try (InputStream in = new PooledGzipInputStream(new ByteArrayInputStream(members.toByteArray()))) {
+            int b;
+            while ((b = in.read()) >= 0) {
+                decompressed.write(b);
+            }
+        }
+        Assert.assertEquals("first second", decompressed.toString("UTF-8"));
+    }
+
+    @Test(expected = IOException.class)
+    public void shouldFailOnTruncatedData() throws IOException {
+        byte[] gzip = gzip(new byte[10000]);
+        byte[] truncated = new byte[gzip.length - 4];
+        System.arraycopy(gzip, 0, truncated, 0, truncated.length);
+        ZipUtils.decompressChunks(new ByteArrayInputStream(truncated), new ByteArrayOutputStream());
+    }
+
+    @Test
+    public void shouldCompressConcurrently() throws Exception {
+        ExecutorService executor = Executors.newFixedThreadPool(8);
+        try {
+            List<Future<?>> futures = new ArrayList<>();
+            for (int i = 0; i < 64; i++) {
+                int seed = i;
+                futures.add(executor.submit(() -> {
+                    StringBuilder text = new StringBuilder();
+                    Random random = new Random(seed);
+                    for (int j = 0; j < 2000 + seed * 100; j++) {
+                        text.append(random.nextInt(1000)).append(',');
+                    }
+                    String input = text.toString();
+                    String compressed = ZipUtils.compressChunks(input);
+                    Assert.assertEquals(ZipUtils.compress(input), compressed);
+                    Assert.assertEquals(input, ZipUtils.decompressString(compressed));
+                    return null;
+                }));
+            }
+            for (Future<?> future : futures) {
+                future.get();
+            }
+        } finally {
+            executor.shutdownNow();
+        }
+    }
+
     @Ignore
     @Test
     public void shouldCompressAndDecompress() throws IOException {
@@ -79,4 +224,12 @@ public class ZipUtilsTest {
             Assert.assertNull(e);
         }
     }
+
+    private static byte[] gzip(byte[] input) throws IOException {
+        ByteArrayOutputStream gzip = new ByteArrayOutputStream();
+        try (OutputStream out = new GZIPOutputStream(gzip)) {
+            out.write(input);
+        }
+        return gzip.toByteArray();
+    }
 }